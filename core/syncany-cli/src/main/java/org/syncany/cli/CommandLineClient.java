@@ -57,15 +57,18 @@ import org.simpleframework.xml.core.Persister;
 import org.syncany.Client;
 import org.syncany.config.ConfigException;
 import org.syncany.config.ConfigHelper;
+import org.syncany.config.LocalEventBus;
 import org.syncany.config.LogFormatter;
 import org.syncany.config.Logging;
 import org.syncany.config.UserConfig;
 import org.syncany.config.to.PortTO;
+import org.syncany.operations.OperationMetrics;
 import org.syncany.operations.OperationOptions;
 import org.syncany.operations.daemon.DaemonOperation;
 import org.syncany.operations.daemon.WebServer;
 import org.syncany.operations.daemon.messages.AlreadySyncingResponse;
 import org.syncany.operations.daemon.messages.BadRequestResponse;
+import org.syncany.operations.daemon.messages.OperationMetricsSyncExternalEvent;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderResponse;
 import org.syncany.operations.daemon.messages.api.Request;
@@ -75,6 +78,8 @@ import org.syncany.util.EnvironmentUtil;
 import org.syncany.util.PidFileUtil;
 import org.syncany.util.StringUtil;
 
+import com.google.common.eventbus.Subscribe;
+
 /**
  * The command line client implements a typical CLI. It represents the first entry
  * point for the Syncany command line application and can be used to run all of the
@@ -110,6 +115,8 @@ public class CommandLineClient extends Client {
 
 	private String[] args;
 	private File localDir;
+	private File metricsFile;
+	private List<OperationMetrics> operationMetrics;
 
 	private PrintStream out;
 
@@ -141,6 +148,7 @@ public class CommandLineClient extends Client {
 			OptionSpec<Void> optionLogPrint = parser.acceptsAll(asList("print"));
 			OptionSpec<String> optionLogLevel = parser.acceptsAll(asList("loglevel")).withOptionalArg();
 			OptionSpec<Void> optionDebug = parser.acceptsAll(asList("d", "debug"));
+			OptionSpec<File> optionMetrics = parser.acceptsAll(asList("metrics")).withRequiredArg().ofType(File.class);
 			OptionSpec<Void> optionShortVersion = parser.acceptsAll(asList("v"));
 			OptionSpec<Void> optionFullVersion = parser.acceptsAll(asList("vv"));
 
@@ -190,6 +198,7 @@ public class CommandLineClient extends Client {
 			}
 
 			initLogOption(options, optionLog, optionLogLevel, optionLogPrint, optionDebug);
+			initMetricsOption(options, optionMetrics);
 
 			// Init command
 			return runCommand(command, commandName, commandArgs);
@@ -350,6 +359,14 @@ public class CommandLineClient extends Client {
 		}
 	}
 
+	private void initMetricsOption(OptionSet options, OptionSpec<File> optionMetrics) {
+		// --metrics=<file>
+		if (options.has(optionMetrics)) {
+			metricsFile = options.valueOf(optionMetrics);
+			operationMetrics = new ArrayList<OperationMetrics>();
+		}
+	}
+
 	private int runCommand(Command command, String commandName, String[] commandArgs) {
 		File portFile = null;
 
@@ -384,6 +401,10 @@ public class CommandLineClient extends Client {
 		command.setClient(this);
 		command.setLocalDir(localDir);
 
+		if (metricsFile != null) {
+			LocalEventBus.getInstance().register(this);
+		}
+
 		// Run!
 		try {
 			return command.execute(commandArgs);
@@ -392,6 +413,27 @@ public class CommandLineClient extends Client {
 			logger.log(Level.SEVERE, "Command " + command.toString() + " FAILED. ", e);
 			return showErrorAndExit(e.getMessage());
 		}
+		finally {
+			if (metricsFile != null) {
+				LocalEventBus.getInstance().unregister(this);
+				writeMetricsFile();
+			}
+		}
+	}
+
+	@Subscribe
+	public void onOperationMetrics(OperationMetricsSyncExternalEvent metricsEvent) {
+		operationMetrics.add(metricsEvent.getMetrics());
+	}
+
+	private void writeMetricsFile() {
+		try {
+			logger.log(Level.INFO, "Writing metrics of " + operationMetrics.size() + " operation(s) to " + metricsFile + " ...");
+			OperationMetrics.writeJsonFile(operationMetrics, metricsFile);
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot write metrics to file " + metricsFile, e);
+		}
 	}
 
 	private int sendToRest(Command command, String commandName, String[] commandArgs, File portFile) {
@@ -27,6 +27,11 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.IndexedMultiChunker;
+import org.syncany.chunk.Lz4Transformer;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.ZipMultiChunker;
 import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.DefaultRepoTOFactory;
 import org.syncany.config.to.RepoTO;
@@ -96,6 +101,8 @@ public class InitCommand extends AbstractInitCommand {
 		OptionSpec<Void> optionAddDaemon = parser.acceptsAll(asList("n", "add-daemon"));
 		OptionSpec<Void> optionShortUrl = parser.acceptsAll(asList("s", "short"));
 		OptionSpec<String> optionPassword = parser.acceptsAll(asList("password")).withRequiredArg();
+		OptionSpec<String> optionMultiChunker = parser.acceptsAll(asList("multichunker")).withRequiredArg();
+		OptionSpec<String> optionCompression = parser.acceptsAll(asList("compression")).withRequiredArg();
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -109,14 +116,18 @@ public class InitCommand extends AbstractInitCommand {
 		boolean createTargetPath = options.has(optionCreateTargetPath);
 		boolean advancedModeEnabled = options.has(optionAdvanced);
 		boolean encryptionEnabled = !options.has(optionNoEncryption);
-		boolean compressionEnabled = !options.has(optionNoCompression);
 
 		// Cipher specs: --no-encryption, --advanced
 		List<CipherSpec> cipherSpecs = getCipherSpecs(encryptionEnabled, advancedModeEnabled);
 
-		// Compression: --no-compression 
+		// Multichunker: --multichunker=<type>
+		String multiChunkerType = getMultiChunkerType(options, optionMultiChunker);
+		
+		// Compression: --no-compression, --compression=<type>
+		String compressionType = getCompressionType(options, optionNoCompression, optionCompression);
+		
 		// DefaultRepoTOFactory also creates default chunkers
-		RepoTOFactory repoTOFactory = new DefaultRepoTOFactory(compressionEnabled, cipherSpecs);
+		RepoTOFactory repoTOFactory = new DefaultRepoTOFactory(compressionType, cipherSpecs, multiChunkerType);
 
 		// Genlink options: --short
 		GenlinkOperationOptions genlinkOptions = new GenlinkOperationOptions();
@@ -143,6 +154,41 @@ public class InitCommand extends AbstractInitCommand {
 		return operationOptions;
 	}
 
+	private String getMultiChunkerType(OptionSet options, OptionSpec<String> optionMultiChunker) throws Exception {
+		if (!options.has(optionMultiChunker)) {
+			return ZipMultiChunker.TYPE;
+		}
+		
+		String multiChunkerType = options.valueOf(optionMultiChunker);
+		
+		if (MultiChunker.getInstance(multiChunkerType) == null) {
+			throw new Exception("Invalid multichunker type: " + multiChunkerType + ". Use " + ZipMultiChunker.TYPE + " or " + IndexedMultiChunker.TYPE + ".");
+		}
+		
+		return multiChunkerType;
+	}
+
+	private String getCompressionType(OptionSet options, OptionSpec<Void> optionNoCompression, OptionSpec<String> optionCompression) throws Exception {
+		if (options.has(optionNoCompression)) {
+			if (options.has(optionCompression)) {
+				throw new IllegalArgumentException("Cannot provide --compression and --no-compression. Conflicting options.");
+			}
+			
+			return null;
+		}
+		else if (!options.has(optionCompression)) {
+			return GzipTransformer.TYPE;
+		}
+		
+		String compressionType = options.valueOf(optionCompression);
+		
+		if (!GzipTransformer.TYPE.equals(compressionType) && !Lz4Transformer.TYPE.equals(compressionType)) {
+			throw new Exception("Invalid compression type: " + compressionType + ". Use " + GzipTransformer.TYPE + " or " + Lz4Transformer.TYPE + ".");
+		}
+		
+		return compressionType;
+	}
+
 	private String validateAndGetPassword(OptionSet options, OptionSpec<Void> optionNoEncryption, OptionSpec<String> optionPassword) {
 		if (!isInteractive) {
 			if (options.has(optionPassword) && options.has(optionNoEncryption)) {
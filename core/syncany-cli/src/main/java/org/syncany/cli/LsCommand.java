@@ -25,10 +25,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -51,8 +48,7 @@ public class LsCommand extends Command {
 	
 	private static final int CHECKSUM_LENGTH_LONG = 40;
 	private static final int CHECKSUM_LENGTH_SHORT = 10;	
-	private static final String DATE_FORMAT_PATTERN = "yy-MM-dd HH:mm:ss";
-	private static final DateFormat DATE_FORMAT = new SimpleDateFormat(DATE_FORMAT_PATTERN);
+	private static final DateFormat DATE_FORMAT = new SimpleDateFormat(CommandLineUtil.DATE_OPTION_FORMAT_PATTERN);
 	
 	private int checksumLength;
 	private boolean groupedVersions;
@@ -98,7 +94,7 @@ public class LsCommand extends Command {
 
 		// --date=..
 		if (options.has(optionDateStr)) {			
-			Date logViewDate = parseDateOption(options.valueOf(optionDateStr));
+			Date logViewDate = CommandLineUtil.parseDateOption(options.valueOf(optionDateStr));
 			operationOptions.setDate(logViewDate);
 		}
 		
@@ -298,29 +294,4 @@ public class LsCommand extends Command {
 		
 		return result;	
 	}
-	
-	protected Date parseDateOption(String dateStr) throws Exception {
-		Pattern relativeDatePattern = Pattern.compile("(\\d+(?:[.,]\\d+)?)(mo|[smhdwy])");		
-		Matcher relativeDateMatcher = relativeDatePattern.matcher(dateStr);		
-		
-		if (relativeDateMatcher.find()) {
-			long restoreDateMillies = CommandLineUtil.parseTimePeriod(dateStr)*1000;
-			
-			Date restoreDate = new Date(System.currentTimeMillis()-restoreDateMillies);
-			
-			logger.log(Level.FINE, "Restore date: "+restoreDate);
-			return restoreDate;
-		}
-		else {
-			try {
-				Date restoreDate = DATE_FORMAT.parse(dateStr);
-				
-				logger.log(Level.FINE, "Restore date: "+restoreDate);
-				return restoreDate;
-			}
-			catch (Exception e) {
-				throw new Exception("Invalid '--date' argument: " + dateStr + ", use relative date or absolute format: " + DATE_FORMAT_PATTERN);
-			}
-		}		
-	}
 }
@@ -26,6 +26,7 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
+import org.syncany.cli.util.CommandLineUtil;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.restore.RestoreOperationOptions;
@@ -63,6 +64,8 @@ public class RestoreCommand extends Command {
 		
 		OptionSpec<Integer> optionRevision = parser.acceptsAll(asList("r", "revision")).withRequiredArg().ofType(Integer.class);
 		OptionSpec<String> optionTarget = parser.acceptsAll(asList("t", "target")).withRequiredArg().ofType(String.class);
+		OptionSpec<String> optionPath = parser.acceptsAll(asList("p", "path")).withRequiredArg().ofType(String.class);
+		OptionSpec<String> optionDateStr = parser.acceptsAll(asList("D", "date")).withRequiredArg();
 		
 		OptionSet options = parser.parse(operationArgs);	
 		
@@ -76,6 +79,24 @@ public class RestoreCommand extends Command {
 			operationOptions.setRelativeTargetPath(options.valueOf(optionTarget));
 		}
 		
+		// --date=<date>
+		if (options.has(optionDateStr)) {
+			operationOptions.setDate(CommandLineUtil.parseDateOption(options.valueOf(optionDateStr)));
+		}
+		
+		// --path=<folder>
+		if (options.has(optionPath)) {
+			if (options.has(optionRevision)) {
+				throw new Exception("Invalid Syntax: --revision cannot be used with --path, use --date instead.");
+			}
+			
+			operationOptions.setSubtreePath(options.valueOf(optionPath));
+			return operationOptions;
+		}
+		else if (options.has(optionDateStr)) {
+			throw new Exception("Invalid Syntax: --date can only be used with --path.");
+		}
+		
 		// <file-history-id>
 		List<?> nonOptionArgs = options.nonOptionArguments();
 		
@@ -95,7 +116,13 @@ public class RestoreCommand extends Command {
 		
 		switch (concreteOperationResult.getResultCode()) {
 		case ACK:
-			out.println("File restored to " + concreteOperationResult.getTargetFile());
+			if (concreteOperationResult.getRestoredFileCount() == 1 && concreteOperationResult.getTargetFile().isFile()) {
+				out.println("File restored to " + concreteOperationResult.getTargetFile());
+			}
+			else {
+				out.println(concreteOperationResult.getRestoredFileCount() + " file(s) restored to " + concreteOperationResult.getTargetFile());
+			}
+			
 			break;
 			
 		case NACK_INVALID_FILE:
@@ -103,7 +130,7 @@ public class RestoreCommand extends Command {
 			break;
 			
 		case NACK_NO_FILE:
-			out.println("Could not restore file. No file by that ID or version found, or file ID prefix matches more than one file.");
+			out.println("Could not restore file. No file by that ID or version found, file ID prefix matches more than one file, or no files found in the given path.");
 			break;
 			
 		default:
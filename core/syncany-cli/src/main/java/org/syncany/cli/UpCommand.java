@@ -70,6 +70,9 @@ public class UpCommand extends Command {
 
 		OptionSpec<Void> optionForceUpload = parser.acceptsAll(asList("F", "force-upload"));
 		OptionSpec<Void> optionNoResumeUpload = parser.acceptsAll(asList("R", "no-resume"));
+		OptionSpec<Void> optionPipelinedUpload = parser.acceptsAll(asList("p", "pipelined"));
+		OptionSpec<Integer> optionBatchFiles = parser.acceptsAll(asList("batch-files")).withRequiredArg().ofType(Integer.class);
+		OptionSpec<Integer> optionBatchSize = parser.acceptsAll(asList("batch-size")).withRequiredArg().ofType(Integer.class);
 
 		OptionSet options = parser.parse(operationArgs);
 
@@ -82,6 +85,19 @@ public class UpCommand extends Command {
 		// -R, --no-resume
 		operationOptions.setResume(!options.has(optionNoResumeUpload));
 
+		// -p, --pipelined
+		operationOptions.setPipelinedUploadEnabled(options.has(optionPipelinedUpload));
+
+		// --batch-files=<count>
+		if (options.has(optionBatchFiles)) {
+			operationOptions.setTransactionFileLimit(options.valueOf(optionBatchFiles));
+		}
+
+		// --batch-size=<MB>
+		if (options.has(optionBatchSize)) {
+			operationOptions.setTransactionSizeLimit(options.valueOf(optionBatchSize) * 1024L * 1024L);
+		}
+
 		return operationOptions;
 	}
 
@@ -17,6 +17,8 @@
  */
 package org.syncany.cli.util;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,6 +28,8 @@ import java.util.regex.Pattern;
  * @author Pim Otte
  */
 public class CommandLineUtil {
+	public static final String DATE_OPTION_FORMAT_PATTERN = "yy-MM-dd HH:mm:ss";
+	
 	/**
 	 * Parses a string of type "1y2mo3w4d5h6m7s", where the units represent
 	 * years, months, weeks, days, hours, minutes and second respectively.
@@ -57,4 +61,27 @@ public class CommandLineUtil {
 		
 		return periodSeconds;
 	}
+
+	/**
+	 * Parses the value of a '--date' option, either relative to the current time
+	 * using a time period (see {@link #parseTimePeriod(String)}, e.g. "3d" for three days ago), 
+	 * or absolute in the format {@link #DATE_OPTION_FORMAT_PATTERN}.
+	 */
+	public static Date parseDateOption(String dateStr) throws Exception {
+		Pattern relativeDatePattern = Pattern.compile("(\\d+(?:[.,]\\d+)?)(mo|[smhdwy])");		
+		Matcher relativeDateMatcher = relativeDatePattern.matcher(dateStr);		
+		
+		if (relativeDateMatcher.find()) {
+			long restoreDateMillies = parseTimePeriod(dateStr)*1000;
+			return new Date(System.currentTimeMillis()-restoreDateMillies);
+		}
+		else {
+			try {
+				return new SimpleDateFormat(DATE_OPTION_FORMAT_PATTERN).parse(dateStr);
+			}
+			catch (Exception e) {
+				throw new Exception("Invalid '--date' argument: " + dateStr + ", use relative date or absolute format: " + DATE_OPTION_FORMAT_PATTERN);
+			}
+		}		
+	}
 }
@@ -17,6 +17,7 @@
  */
 package org.syncany.tests.integration.cli;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -34,7 +35,7 @@ import org.syncany.tests.util.TestConfigUtil;
  * @author Pim Otte
  */
 public class RestoreCommandTest {
-	// TODO [low] Write more restore tests: (1) change file, restore and compare file contents; (2) go back x versions, (3) restore folder 
+	// TODO [low] Write more restore tests: (1) change file, restore and compare file contents; (2) go back x versions 
 	
 	@Test
 	public void testCliSimpleRestore() throws Exception {
@@ -81,4 +82,39 @@ public class RestoreCommandTest {
 		assertTrue(new File(clientA.get("localdir"),"restoredfile").exists());
 		TestCliUtil.deleteTestLocalConfigAndData(clientA);		
 	}	
+	
+	@Test
+	public void testCliRestoreFolder() throws Exception {
+		// Setup
+		Map<String, String> connectionSettings = TestConfigUtil.createTestLocalConnectionSettings();
+		Map<String, String> clientA = TestCliUtil.createLocalTestEnvAndInit("A", connectionSettings);
+
+		// Run
+		new File(clientA.get("localdir"), "folder/subfolder").mkdirs();
+		
+		TestFileUtil.createRandomFile(new File(clientA.get("localdir"), "folder/file1"), 50L);
+		TestFileUtil.createRandomFile(new File(clientA.get("localdir"), "folder/subfolder/file2"), 50L);
+		TestFileUtil.createRandomFile(new File(clientA.get("localdir"), "file3"), 50L);
+		
+		new CommandLineClient(new String[] { 
+			 "--localdir", clientA.get("localdir"),
+			 "up" 
+		}).start();
+		
+		String[] cliOut = TestCliUtil.runAndCaptureOutput(new CommandLineClient(new String[] { 
+			 "--localdir", clientA.get("localdir"),
+			 "restore",
+			 "--path=folder",
+			 "--target=restoredfolder"
+		}));
+		
+		assertTrue(cliOut.length >= 1);
+		assertTrue(cliOut[0].startsWith("2 file(s) restored to "));
+		
+		assertTrue(new File(clientA.get("localdir"), "restoredfolder/folder/file1").exists());
+		assertTrue(new File(clientA.get("localdir"), "restoredfolder/folder/subfolder/file2").exists());
+		assertFalse(new File(clientA.get("localdir"), "restoredfolder/file3").exists());
+		
+		TestCliUtil.deleteTestLocalConfigAndData(clientA);		
+	}
 }
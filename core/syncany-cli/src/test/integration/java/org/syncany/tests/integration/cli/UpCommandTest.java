@@ -25,6 +25,7 @@ import static org.syncany.tests.util.TestAssertUtil.assertFileListEqualsExcludeL
 import java.io.File;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.junit.Test;
 import org.syncany.cli.CommandLineClient;
@@ -161,6 +162,33 @@ public class UpCommandTest {
 		TestCliUtil.deleteTestLocalConfigAndData(clientB);
 	}
 
+	@Test
+	public void testCliSyncUpWithMetrics() throws Exception {
+		Map<String, String> connectionSettings = TestConfigUtil.createTestLocalConnectionSettings();
+		Map<String, String> clientA = TestCliUtil.createLocalTestEnvAndInit("A", connectionSettings);
+
+		File metricsFile = new File(clientA.get("localdir") + "/../metrics-A.json");
+		TestFileUtil.createRandomFilesInDirectory(new File(clientA.get("localdir")), 20 * 1024, 3);
+
+		new CommandLineClient(new String[] {
+				"--localdir", clientA.get("localdir"),
+				"--metrics", metricsFile.getAbsolutePath(),
+				"up"
+		}).start();
+
+		assertTrue(metricsFile.exists());
+
+		String metricsJson = FileUtils.readFileToString(metricsFile);
+
+		assertTrue(metricsJson.contains("\"operationName\": \"up\""));
+		assertTrue(metricsJson.contains("\"filesProcessed\": 3"));
+		assertTrue(metricsJson.contains("\"phase\": \"INDEX\""));
+		assertTrue(metricsJson.contains("\"method\": \"upload\""));
+
+		metricsFile.delete();
+		TestCliUtil.deleteTestLocalConfigAndData(clientA);
+	}
+
 	public String toString(ByteArrayOutputStream bos) {
 		return new String(bos.toByteArray());
 	}
@@ -21,6 +21,9 @@ package org.syncany.chunk;
  * A chunk represent a certain part of a file. It is created during the
  * deduplication process by a {@link Chunker}. 
  * 
+ * <p>The content buffer of a chunk may be taken from a {@link ChunkBufferPool}. Once
+ * the chunk has been processed, {@link #release()} returns the buffer to the pool.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Chunk {
@@ -28,12 +31,31 @@ public class Chunk {
     private byte[] contents;
     private int size;
     private byte[] fileChecksum;
+    private ChunkBufferPool bufferPool;
 
     /*package*/ Chunk(byte[] checksum, byte[] contents, int size, byte[] fileChecksum) {
+        this(checksum, contents, size, fileChecksum, null);
+    }
+
+    /*package*/ Chunk(byte[] checksum, byte[] contents, int size, byte[] fileChecksum, ChunkBufferPool bufferPool) {
         this.checksum = checksum;
         this.contents = contents;
         this.size = size;
         this.fileChecksum = fileChecksum;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Returns the content buffer to the buffer pool it was taken from (if any), so that
+     * the chunker can reuse it for one of the next chunks. The content must not be accessed
+     * after calling this method. Calling this method is optional.
+     */
+    public void release() {
+        if (bufferPool != null && contents != null) {
+            bufferPool.release(contents);
+        }
+
+        contents = null;
     }
 
     public byte[] getChecksum() {
@@ -0,0 +1,79 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of equally sized byte buffers used by the {@link Chunker}s to read file
+ * contents and to hold the contents of {@link Chunk}s. Instead of allocating a new buffer
+ * for each chunk (or block of a file), a chunker acquires a buffer from the pool, and the
+ * buffer is returned to the pool once it is not needed anymore, e.g. via {@link Chunk#release()}
+ * after the chunk has been written to a {@link MultiChunk}.
+ *
+ * <p>Returning buffers is optional: If a buffer is not released, it is simply garbage
+ * collected, and the pool allocates a new one. The pool keeps at most a fixed number of
+ * buffers; additional released buffers are discarded.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ChunkBufferPool {
+	private static final int DEFAULT_MAX_POOLED_BUFFERS = 8;
+
+	private int bufferSize;
+	private int maxPooledBuffers;
+	private Deque<byte[]> pooledBuffers;
+
+	public ChunkBufferPool(int bufferSize) {
+		this(bufferSize, DEFAULT_MAX_POOLED_BUFFERS);
+	}
+
+	public ChunkBufferPool(int bufferSize, int maxPooledBuffers) {
+		this.bufferSize = bufferSize;
+		this.maxPooledBuffers = maxPooledBuffers;
+		this.pooledBuffers = new ArrayDeque<byte[]>(maxPooledBuffers);
+	}
+
+	/**
+	 * Returns a buffer of the pool's buffer size, either a previously
+	 * released one or a newly allocated buffer. The contents of the buffer are undefined.
+	 */
+	public synchronized byte[] acquire() {
+		byte[] buffer = pooledBuffers.pollFirst();
+		return (buffer != null) ? buffer : new byte[bufferSize];
+	}
+
+	/**
+	 * Returns the given buffer to the pool. The buffer must not be
+	 * used by the caller after calling this method.
+	 */
+	public synchronized void release(byte[] buffer) {
+		if (buffer.length == bufferSize && pooledBuffers.size() < maxPooledBuffers) {
+			pooledBuffers.addFirst(buffer);
+		}
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public synchronized int getPooledBufferCount() {
+		return pooledBuffers.size();
+	}
+}
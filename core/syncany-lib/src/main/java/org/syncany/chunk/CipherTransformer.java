@@ -43,6 +43,10 @@ import org.syncany.util.StringUtil;
  * key. It can be instantiated using a property list (from a config file) or
  * by passing the dependencies to the constructor.
  * 
+ * <p>By default, the transformer writes the stream format that all clients can
+ * read ({@link MultiCipherOutputStream#STREAM_VERSION}). The segmented format is
+ * only written if enabled via {@link #setStreamVersion(byte)}.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class CipherTransformer extends Transformer {
@@ -53,15 +57,18 @@ public class CipherTransformer extends Transformer {
 	
 	private List<CipherSpec> cipherSpecs;
 	private CipherSession cipherSession;
+	private byte streamVersion;
 	
 	public CipherTransformer() {
 		this.cipherSpecs = new ArrayList<CipherSpec>();
 		this.cipherSession = null;
+		this.streamVersion = MultiCipherOutputStream.STREAM_VERSION;
 	}
 	
     public CipherTransformer(List<CipherSpec> cipherSpecs, SaltedSecretKey masterKey) {
     	this.cipherSpecs = cipherSpecs;
     	this.cipherSession = new CipherSession(masterKey);
+    	this.streamVersion = MultiCipherOutputStream.STREAM_VERSION;
     }    
     
     /**
@@ -106,13 +113,22 @@ public class CipherTransformer extends Transformer {
 		cipherSession = new CipherSession(masterKey);
 	}
 
+	/**
+	 * Sets the stream format version written by this transformer, i.e. either 
+	 * {@link MultiCipherOutputStream#STREAM_VERSION_UNSEGMENTED} or {@link MultiCipherOutputStream#STREAM_VERSION_SEGMENTED}.
+	 * Reading is not affected; both versions can always be read.
+	 */
+	public void setStreamVersion(byte streamVersion) {
+		this.streamVersion = streamVersion;
+	}
+
 	@Override
 	public OutputStream createOutputStream(OutputStream out) throws IOException {
 		if (cipherSession == null) {
 			throw new RuntimeException("Cipher session is not initialized. Call init() before!");
 		}
 		
-    	return new MultiCipherOutputStream(out, cipherSpecs, cipherSession);    	
+    	return new MultiCipherOutputStream(out, cipherSpecs, cipherSession, streamVersion);    	
     }
 
     @Override
@@ -93,6 +93,8 @@ public class Deduper {
 					// old chunk
 					if (!listener.onChunk(chunk)) {
 						listener.onFileAddChunk(file, chunk);
+						chunk.release();
+
 						continue;
 					}
 
@@ -122,7 +124,10 @@ public class Deduper {
 						listener.onMultiChunkWrite(multiChunk, chunk);						
 					}
 
-					listener.onFileAddChunk(file, chunk);										
+					listener.onFileAddChunk(file, chunk);
+					
+					// Return chunk buffer to the chunker's pool (after it has been written to the multichunk)
+					chunk.release();
 				}
 
 				// Closing file is necessary!
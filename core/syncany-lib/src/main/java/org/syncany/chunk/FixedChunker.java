@@ -18,9 +18,10 @@
 package org.syncany.chunk;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -36,6 +37,9 @@ import java.util.logging.Logger;
  * <p>Details can be found in chapter 3.4 of the thesis at <a href="http://blog.philippheckel.com/2013/05/20/minimizing-remote-storage-usage-and-synchronization-time-using-deduplication-and-multichunking-syncany-as-an-example/3/#Fixed-Size%20Chunking">blog.philippheckel.com</a>.
  * The <tt>FixedChunker</tt> implements the chunker described in chapter 3.4.2.
  *
+ * <p>Files are read via a {@link FileChannel}, directly into chunk-sized buffers taken
+ * from a {@link ChunkBufferPool}. Buffers are returned to the pool via {@link Chunk#release()}.
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class FixedChunker extends Chunker {
@@ -46,6 +50,7 @@ public class FixedChunker extends Chunker {
 
 	private int chunkSize;
 	private String checksumAlgorithm;
+	private ChunkBufferPool chunkBufferPool;
 
 	/**
 	 * Creates a new fixed offset chunker with the default file/chunk 
@@ -66,11 +71,12 @@ public class FixedChunker extends Chunker {
 	public FixedChunker(int chunkSize, String checksumAlgorithm) {
 		this.chunkSize = chunkSize;
 		this.checksumAlgorithm = checksumAlgorithm;
+		this.chunkBufferPool = new ChunkBufferPool(chunkSize);
 	}
 
 	@Override
 	public ChunkEnumeration createChunks(File file) throws IOException {
-		return new FixedChunkEnumeration(new FileInputStream(file));
+		return new FixedChunkEnumeration(FileChannel.open(file.toPath(), StandardOpenOption.READ));
 	}
 
 	@Override
@@ -87,13 +93,13 @@ public class FixedChunker extends Chunker {
 		private MessageDigest digest;
 		private MessageDigest fileDigest;
 
-		private InputStream in;
-		private byte[] buffer;
+		private FileChannel channel;
+		private long remainingBytes;
 		private boolean closed;
 
-		public FixedChunkEnumeration(InputStream in) {
-			this.in = in;
-			this.buffer = new byte[chunkSize];
+		public FixedChunkEnumeration(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.remainingBytes = channel.size();
 			this.closed = false;
 
 			try {
@@ -103,41 +109,39 @@ public class FixedChunker extends Chunker {
 				this.fileDigest.reset();
 			}
 			catch (Exception e) {
+				close();
 				throw new RuntimeException(e);
 			}
 		}
 
 		@Override
 		public boolean hasMoreElements() {
-			if (closed) {
-				return false;
-			}
-
-			try {
-				return in.available() > 0;
-			}
-			catch (IOException ex) {
-				if (logger.isLoggable(Level.WARNING)) {
-					logger.log(Level.WARNING, "Error while reading from file input stream.", ex);
-				}
-
-				return false;
-			}
+			return !closed && remainingBytes > 0;
 		}
 
 		@Override
 		public Chunk nextElement() {
+			if (closed) {
+				return null;
+			}
+
+			byte[] buffer = chunkBufferPool.acquire();
+
 			try {
-				int read = in.read(buffer);
+				int read = readFully(buffer);
+
+				if (read == 0) {
+					chunkBufferPool.release(buffer);
+					close();
 
-				if (read == -1) {
 					return null;
 				}
 
+				remainingBytes -= read;
+
 				// Close if this was the last bytes
-				if (in.available() == 0) {
-					in.close();
-					closed = true;
+				if (remainingBytes <= 0 || read < buffer.length) {
+					close();
 				}
 
 				// Chunk checksum
@@ -149,22 +153,40 @@ public class FixedChunker extends Chunker {
 				byte[] fileChecksum = (closed) ? fileDigest.digest() : null;
 
 				// Create chunk
-				return new Chunk(digest.digest(), buffer, read, fileChecksum);
+				return new Chunk(digest.digest(), buffer, read, fileChecksum, chunkBufferPool);
 			}
 			catch (IOException ex) {
 				logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
+				chunkBufferPool.release(buffer);
+
 				return null;
 			}
 		}
 
 		@Override
 		public void close() {
+			closed = true;
+
 			try {
-				in.close();
+				channel.close();
 			}
 			catch (IOException e) {
 				logger.log(Level.INFO, "Error while closing", e);
 			}
 		}
+
+		/**
+		 * Reads from the channel until the buffer is full or the end of the
+		 * file is reached, and returns the number of bytes read.
+		 */
+		private int readFully(byte[] buffer) throws IOException {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+
+			while (byteBuffer.hasRemaining() && channel.read(byteBuffer) != -1) {
+				// Keep reading
+			}
+
+			return byteBuffer.position();
+		}
 	}
 }
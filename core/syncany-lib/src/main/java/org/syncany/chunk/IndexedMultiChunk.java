@@ -0,0 +1,352 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * Multichunk container format with a binary chunk index. Compared to the {@link ZipMultiChunk},
+ * chunks are located via a single hash map lookup by their raw checksum, and read with one
+ * positional read from a {@link FileChannel}.
+ *
+ * <p>The format is as follows (all numbers are big endian):
+ *
+ * <pre>
+ *   header:  magic "SyMC" (4 bytes), version (1 byte)
+ *   chunks:  for each chunk: 0x01, checksum length (1 byte), checksum, data length (int), data
+ *            0x00 (end of chunks)
+ *   index:   chunk count (int),
+ *            for each chunk: checksum length (1 byte), checksum, data offset (long), data length (int)
+ *   trailer: index offset (long), magic "SyMI" (4 bytes)
+ * </pre>
+ *
+ * <p>The trailer is at the end of the file, so a reader can load the index with two reads.
+ * The framed chunks allow reading a multichunk sequentially from a stream using {@link #read()},
+ * without the index. Random access via {@link #getChunkInputStream(byte[])} requires a
+ * multichunk opened from a file.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class IndexedMultiChunk extends MultiChunk {
+	private static final byte[] HEADER_MAGIC = new byte[] { 'S', 'y', 'M', 'C' };
+	private static final byte[] TRAILER_MAGIC = new byte[] { 'S', 'y', 'M', 'I' };
+	private static final byte FORMAT_VERSION = 1;
+
+	private static final int HEADER_LENGTH = HEADER_MAGIC.length + 1;
+	private static final int TRAILER_LENGTH = 8 + TRAILER_MAGIC.length;
+
+	private static final byte CHUNK_ENTRY_MARKER = 1;
+	private static final byte END_OF_CHUNKS_MARKER = 0;
+
+	// Write mode
+	private DataOutputStream dataOut;
+	private List<IndexEntry> writtenIndexEntries;
+	private long writePosition;
+
+	// Read mode (stream)
+	private DataInputStream dataIn;
+	private boolean headerRead;
+	private boolean endOfChunksRead;
+
+	// Read mode (file)
+	private FileChannel fileChannel;
+	private List<IndexEntry> indexEntries;
+	private Map<ByteBuffer, IndexEntry> indexEntriesByChecksum;
+	private int nextReadIndexEntry;
+
+	public IndexedMultiChunk(MultiChunkId id, int minSize, OutputStream os) throws IOException {
+		super(id, minSize);
+
+		this.dataOut = new DataOutputStream(new BufferedOutputStream(os));
+		this.writtenIndexEntries = new ArrayList<IndexEntry>();
+
+		dataOut.write(HEADER_MAGIC);
+		dataOut.writeByte(FORMAT_VERSION);
+
+		this.writePosition = HEADER_LENGTH;
+	}
+
+	public IndexedMultiChunk(InputStream is) {
+		super(0);
+
+		this.dataIn = new DataInputStream(new BufferedInputStream(is));
+		this.headerRead = false;
+		this.endOfChunksRead = false;
+	}
+
+	public IndexedMultiChunk(File file) throws IOException {
+		super(0);
+
+		this.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			readIndex();
+		}
+		catch (IOException e) {
+			fileChannel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean isFull() {
+		return size >= minSize * 1024; // minSize is in KB!
+	}
+
+	@Override
+	public void write(Chunk chunk) throws IOException {
+		byte[] checksum = chunk.getChecksum();
+		long dataOffset = writePosition + 1 + 1 + checksum.length + 4;
+
+		dataOut.writeByte(CHUNK_ENTRY_MARKER);
+		dataOut.writeByte(checksum.length);
+		dataOut.write(checksum);
+		dataOut.writeInt(chunk.getSize());
+		dataOut.write(chunk.getContent(), 0, chunk.getSize());
+
+		writtenIndexEntries.add(new IndexEntry(checksum, dataOffset, chunk.getSize()));
+
+		writePosition = dataOffset + chunk.getSize();
+		size += chunk.getSize();
+	}
+
+	@Override
+	public InputStream getChunkInputStream(byte[] checksum) throws IOException {
+		if (fileChannel == null) {
+			throw new IOException("Random access to chunks is only possible for multichunks opened from a file.");
+		}
+
+		IndexEntry indexEntry = indexEntriesByChecksum.get(ByteBuffer.wrap(checksum));
+
+		if (indexEntry == null) {
+			return null;
+		}
+
+		return new ByteArrayInputStream(readData(indexEntry));
+	}
+
+	@Override
+	public Chunk read() throws IOException {
+		if (fileChannel != null) {
+			return readFromFile();
+		}
+		else {
+			return readFromStream();
+		}
+	}
+
+	private Chunk readFromFile() throws IOException {
+		if (nextReadIndexEntry >= indexEntries.size()) {
+			return null;
+		}
+
+		IndexEntry indexEntry = indexEntries.get(nextReadIndexEntry++);
+		byte[] data = readData(indexEntry);
+
+		return new Chunk(indexEntry.checksum, data, data.length, null);
+	}
+
+	private Chunk readFromStream() throws IOException {
+		if (!headerRead) {
+			readAndVerifyHeader(dataIn);
+			headerRead = true;
+		}
+
+		if (endOfChunksRead) {
+			return null;
+		}
+
+		byte marker = dataIn.readByte();
+
+		if (marker == END_OF_CHUNKS_MARKER) {
+			endOfChunksRead = true;
+			return null;
+		}
+		else if (marker != CHUNK_ENTRY_MARKER) {
+			throw new IOException("Invalid multichunk: Unexpected chunk marker " + marker);
+		}
+
+		byte[] checksum = new byte[dataIn.readUnsignedByte()];
+		dataIn.readFully(checksum);
+
+		byte[] data = new byte[readLength(dataIn.readInt())];
+		dataIn.readFully(data);
+
+		return new Chunk(checksum, data, data.length, null);
+	}
+
+	private void readIndex() throws IOException {
+		long fileSize = fileChannel.size();
+
+		if (fileSize < HEADER_LENGTH + 1 + 4 + TRAILER_LENGTH) {
+			throw new IOException("Invalid multichunk: File too small (" + fileSize + " bytes)");
+		}
+
+		// Header and trailer
+		ByteBuffer headerBuffer = readFully(0, HEADER_LENGTH);
+		readAndVerifyHeader(new DataInputStream(new ByteArrayInputStream(headerBuffer.array())));
+
+		ByteBuffer trailerBuffer = readFully(fileSize - TRAILER_LENGTH, TRAILER_LENGTH);
+		long indexOffset = trailerBuffer.getLong();
+		byte[] trailerMagic = new byte[TRAILER_MAGIC.length];
+		trailerBuffer.get(trailerMagic);
+
+		if (!Arrays.equals(TRAILER_MAGIC, trailerMagic) || indexOffset < HEADER_LENGTH || indexOffset > fileSize - TRAILER_LENGTH) {
+			throw new IOException("Invalid multichunk: Invalid trailer.");
+		}
+
+		// Index
+		ByteBuffer indexBuffer = readFully(indexOffset, (int) (fileSize - TRAILER_LENGTH - indexOffset));
+
+		try {
+			int chunkCount = indexBuffer.getInt();
+
+			indexEntries = new ArrayList<IndexEntry>(chunkCount);
+			indexEntriesByChecksum = new HashMap<ByteBuffer, IndexEntry>(chunkCount * 2);
+
+			for (int i = 0; i < chunkCount; i++) {
+				byte[] checksum = new byte[indexBuffer.get() & 0xff];
+				indexBuffer.get(checksum);
+
+				long dataOffset = indexBuffer.getLong();
+				int dataLength = readLength(indexBuffer.getInt());
+
+				if (dataOffset < HEADER_LENGTH || dataOffset + dataLength > indexOffset) {
+					throw new IOException("Invalid multichunk: Index entry out of bounds.");
+				}
+
+				IndexEntry indexEntry = new IndexEntry(checksum, dataOffset, dataLength);
+
+				indexEntries.add(indexEntry);
+				indexEntriesByChecksum.put(ByteBuffer.wrap(checksum), indexEntry);
+			}
+		}
+		catch (RuntimeException e) {
+			throw new IOException("Invalid multichunk: Cannot read index.", e);
+		}
+	}
+
+	private void readAndVerifyHeader(DataInputStream headerIn) throws IOException {
+		byte[] headerMagic = new byte[HEADER_MAGIC.length];
+		headerIn.readFully(headerMagic);
+
+		if (!Arrays.equals(HEADER_MAGIC, headerMagic)) {
+			throw new IOException("Invalid multichunk: Header magic does not match.");
+		}
+
+		byte version = headerIn.readByte();
+
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Invalid multichunk: Unsupported format version " + version);
+		}
+	}
+
+	private byte[] readData(IndexEntry indexEntry) throws IOException {
+		return readFully(indexEntry.dataOffset, indexEntry.dataLength).array();
+	}
+
+	private ByteBuffer readFully(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			int read = fileChannel.read(buffer, position + buffer.position());
+
+			if (read < 0) {
+				throw new EOFException("Invalid multichunk: Unexpected end of file.");
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	private int readLength(int length) throws IOException {
+		if (length < 0) {
+			throw new IOException("Invalid multichunk: Negative chunk length.");
+		}
+
+		return length;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (dataOut != null) {
+			writeIndexAndTrailer();
+
+			dataOut.close();
+			dataOut = null;
+		}
+
+		if (dataIn != null) {
+			dataIn.close();
+		}
+
+		if (fileChannel != null) {
+			fileChannel.close();
+		}
+	}
+
+	private void writeIndexAndTrailer() throws IOException {
+		dataOut.writeByte(END_OF_CHUNKS_MARKER);
+
+		long indexOffset = writePosition + 1;
+
+		dataOut.writeInt(writtenIndexEntries.size());
+
+		for (IndexEntry indexEntry : writtenIndexEntries) {
+			dataOut.writeByte(indexEntry.checksum.length);
+			dataOut.write(indexEntry.checksum);
+			dataOut.writeLong(indexEntry.dataOffset);
+			dataOut.writeInt(indexEntry.dataLength);
+		}
+
+		dataOut.writeLong(indexOffset);
+		dataOut.write(TRAILER_MAGIC);
+	}
+
+	private static class IndexEntry {
+		private final byte[] checksum;
+		private final long dataOffset;
+		private final int dataLength;
+
+		public IndexEntry(byte[] checksum, long dataOffset, int dataLength) {
+			this.checksum = checksum;
+			this.dataOffset = dataOffset;
+			this.dataLength = dataLength;
+		}
+	}
+}
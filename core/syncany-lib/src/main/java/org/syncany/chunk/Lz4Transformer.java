@@ -0,0 +1,570 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Implements a {@link Transformer} that compresses the input/output stream
+ * using the LZ4 block compression algorithm (pure Java implementation). LZ4 trades
+ * compression ratio for speed: It compresses and uncompresses many times faster than
+ * {@link GzipTransformer}, at a somewhat lower ratio.
+ *
+ * <p>The stream is split into blocks of up to 64 KB, which are compressed independently.
+ * Blocks that do not compress -- e.g. parts of JPEGs, ZIP-based office documents or
+ * encrypted files -- are stored raw: If the byte entropy of a block is close to
+ * 8 bits per byte, compression is not even attempted, and if the compressed
+ * block does not save at least 1/32 of its size, the raw block is stored instead.
+ *
+ * <p>The stream format is as follows (all numbers are big endian):
+ *
+ * <pre>
+ *   header: magic "SyLZ" (4 bytes), version (1 byte)
+ *   blocks: for each block: 0x01, raw length (int), raw data; or
+ *                           0x02, raw length (int), compressed length (int), LZ4 block
+ *           0x00 (end of stream)
+ * </pre>
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class Lz4Transformer extends Transformer {
+	public static final String TYPE = "lz4";
+
+	private static final byte[] STREAM_MAGIC = new byte[] { 'S', 'y', 'L', 'Z' };
+	private static final byte STREAM_VERSION = 1;
+
+	private static final byte BLOCK_TYPE_END = 0;
+	private static final byte BLOCK_TYPE_RAW = 1;
+	private static final byte BLOCK_TYPE_LZ4 = 2;
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final double MAX_COMPRESSIBLE_ENTROPY = 7.9; // bits per byte
+
+	public Lz4Transformer() {
+		this(null);
+	}
+
+	public Lz4Transformer(Transformer nextTransformer) {
+		super(nextTransformer);
+	}
+
+	@Override
+	public void init(Map<String, String> settings) throws Exception {
+		// Nothing here
+	}
+
+	@Override
+	public OutputStream createOutputStream(OutputStream out) throws IOException {
+		if (nextTransformer == null) {
+			return new Lz4OutputStream(out);
+		}
+		else {
+			return new Lz4OutputStream(nextTransformer.createOutputStream(out));
+		}
+	}
+
+	@Override
+	public InputStream createInputStream(InputStream in) throws IOException {
+		if (nextTransformer == null) {
+			return new Lz4InputStream(in);
+		}
+		else {
+			return new Lz4InputStream(nextTransformer.createInputStream(in));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return (nextTransformer == null) ? "Lz4" : "Lz4-" + nextTransformer;
+	}
+
+	/**
+	 * Estimates the Shannon entropy (in bits per byte) of the given data from its
+	 * byte histogram. Random and already compressed data is close to 8 bits per byte.
+	 */
+	static double getEntropy(byte[] data, int length) {
+		if (length == 0) {
+			return 0;
+		}
+
+		int[] histogram = new int[256];
+
+		for (int i = 0; i < length; i++) {
+			histogram[data[i] & 0xff]++;
+		}
+
+		double entropy = 0;
+
+		for (int count : histogram) {
+			if (count > 0) {
+				double probability = (double) count / length;
+				entropy -= probability * Math.log(probability);
+			}
+		}
+
+		return entropy / Math.log(2);
+	}
+
+	/**
+	 * Output stream that buffers written bytes into blocks, and writes each
+	 * full block either compressed or raw to the underlying stream.
+	 */
+	public static class Lz4OutputStream extends OutputStream {
+		private DataOutputStream out;
+		private Lz4BlockCompressor compressor;
+
+		private byte[] block;
+		private int blockLength;
+		private byte[] compressedBlock;
+		private boolean closed;
+
+		public Lz4OutputStream(OutputStream out) throws IOException {
+			this.out = new DataOutputStream(out);
+			this.compressor = new Lz4BlockCompressor();
+
+			this.block = new byte[BLOCK_SIZE];
+			this.blockLength = 0;
+			this.compressedBlock = new byte[Lz4BlockCompressor.getMaxCompressedLength(BLOCK_SIZE)];
+			this.closed = false;
+
+			this.out.write(STREAM_MAGIC);
+			this.out.writeByte(STREAM_VERSION);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (blockLength == block.length) {
+				writeBlock();
+			}
+
+			block[blockLength++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (blockLength == block.length) {
+					writeBlock();
+				}
+
+				int copyLength = Math.min(len, block.length - blockLength);
+				System.arraycopy(b, off, block, blockLength, copyLength);
+
+				blockLength += copyLength;
+				off += copyLength;
+				len -= copyLength;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writeBlock();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+
+				writeBlock();
+				out.writeByte(BLOCK_TYPE_END);
+				out.close();
+			}
+		}
+
+		private void writeBlock() throws IOException {
+			if (blockLength == 0) {
+				return;
+			}
+
+			int compressedLength = -1;
+
+			if (getEntropy(block, blockLength) < MAX_COMPRESSIBLE_ENTROPY) {
+				compressedLength = compressor.compress(block, blockLength, compressedBlock);
+			}
+
+			if (compressedLength >= 0 && compressedLength < blockLength - blockLength / 32) {
+				out.writeByte(BLOCK_TYPE_LZ4);
+				out.writeInt(blockLength);
+				out.writeInt(compressedLength);
+				out.write(compressedBlock, 0, compressedLength);
+			}
+			else {
+				out.writeByte(BLOCK_TYPE_RAW);
+				out.writeInt(blockLength);
+				out.write(block, 0, blockLength);
+			}
+
+			blockLength = 0;
+		}
+	}
+
+	/**
+	 * Input stream that reads the blocks written by {@link Lz4OutputStream}, and
+	 * uncompresses them if necessary.
+	 */
+	public static class Lz4InputStream extends InputStream {
+		private DataInputStream in;
+
+		private byte[] block;
+		private int blockLength;
+		private int blockPosition;
+		private byte[] compressedBlock;
+		private boolean headerRead;
+		private boolean endOfStream;
+
+		public Lz4InputStream(InputStream in) {
+			this.in = new DataInputStream(in);
+
+			this.block = new byte[BLOCK_SIZE];
+			this.blockLength = 0;
+			this.blockPosition = 0;
+			this.compressedBlock = new byte[Lz4BlockCompressor.getMaxCompressedLength(BLOCK_SIZE)];
+			this.headerRead = false;
+			this.endOfStream = false;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (blockPosition == blockLength && !readBlock()) {
+				return -1;
+			}
+
+			return block[blockPosition++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			if (blockPosition == blockLength && !readBlock()) {
+				return -1;
+			}
+
+			int readLength = Math.min(len, blockLength - blockPosition);
+			System.arraycopy(block, blockPosition, b, off, readLength);
+
+			blockPosition += readLength;
+			return readLength;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return blockLength - blockPosition;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		private boolean readBlock() throws IOException {
+			if (!headerRead) {
+				readAndVerifyHeader();
+				headerRead = true;
+			}
+
+			// Skip empty blocks; not written by Lz4OutputStream, but valid
+			while (!endOfStream) {
+				byte blockType = in.readByte();
+
+				if (blockType == BLOCK_TYPE_END) {
+					blockLength = 0;
+					blockPosition = 0;
+					endOfStream = true;
+				}
+				else if (blockType == BLOCK_TYPE_RAW) {
+					blockLength = readLength(in.readInt(), BLOCK_SIZE);
+					blockPosition = 0;
+
+					in.readFully(block, 0, blockLength);
+				}
+				else if (blockType == BLOCK_TYPE_LZ4) {
+					blockLength = readLength(in.readInt(), BLOCK_SIZE);
+					blockPosition = 0;
+
+					int compressedLength = readLength(in.readInt(), compressedBlock.length);
+
+					in.readFully(compressedBlock, 0, compressedLength);
+					Lz4BlockCompressor.decompress(compressedBlock, compressedLength, block, blockLength);
+				}
+				else {
+					throw new IOException("Invalid LZ4 stream: Unknown block type " + blockType);
+				}
+
+				if (blockLength > 0) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		private void readAndVerifyHeader() throws IOException {
+			byte[] magic = new byte[STREAM_MAGIC.length];
+
+			try {
+				in.readFully(magic);
+			}
+			catch (EOFException e) {
+				throw new IOException("Invalid LZ4 stream: Header missing.", e);
+			}
+
+			if (!Arrays.equals(STREAM_MAGIC, magic)) {
+				throw new IOException("Invalid LZ4 stream: Header magic does not match.");
+			}
+
+			byte version = in.readByte();
+
+			if (version != STREAM_VERSION) {
+				throw new IOException("Invalid LZ4 stream: Unsupported version " + version);
+			}
+		}
+
+		private int readLength(int length, int maxLength) throws IOException {
+			if (length < 0 || length > maxLength) {
+				throw new IOException("Invalid LZ4 stream: Invalid block length " + length);
+			}
+
+			return length;
+		}
+	}
+
+	/**
+	 * Compressor and decompressor for the LZ4 block format. The compressor is a greedy
+	 * single-pass matcher with a hash table of recent 4-byte sequences, similar to the
+	 * 'fast' mode of the reference implementation. It skips ahead faster the longer it
+	 * does not find a match, so that incompressible input is passed quickly.
+	 */
+	static class Lz4BlockCompressor {
+		private static final int MIN_MATCH = 4;
+		private static final int LAST_LITERALS = 5;
+		private static final int MATCH_FIND_LIMIT = 12;
+		private static final int MAX_OFFSET = 65535;
+
+		private static final int HASH_LOG = 14;
+		private static final int SKIP_STRENGTH = 6;
+
+		private final int[] hashTable;
+
+		public Lz4BlockCompressor() {
+			this.hashTable = new int[1 << HASH_LOG];
+		}
+
+		public static int getMaxCompressedLength(int length) {
+			return length + length / 255 + 16;
+		}
+
+		/**
+		 * Compresses the first <tt>srcLength</tt> bytes of <tt>src</tt> into <tt>dst</tt>, and
+		 * returns the compressed length. The destination array must be at least
+		 * {@link #getMaxCompressedLength(int)} bytes long.
+		 */
+		public int compress(byte[] src, int srcLength, byte[] dst) {
+			Arrays.fill(hashTable, -1);
+
+			int srcPosition = 0;
+			int anchor = 0;
+			int dstPosition = 0;
+
+			int matchFindLimit = srcLength - MATCH_FIND_LIMIT;
+			int matchEndLimit = srcLength - LAST_LITERALS;
+			int searchCount = 1 << SKIP_STRENGTH;
+
+			while (srcPosition < matchFindLimit) {
+				int sequence = readInt(src, srcPosition);
+				int hash = hash(sequence);
+				int reference = hashTable[hash];
+
+				hashTable[hash] = srcPosition;
+
+				if (reference < 0 || srcPosition - reference > MAX_OFFSET || readInt(src, reference) != sequence) {
+					srcPosition += searchCount++ >>> SKIP_STRENGTH;
+					continue;
+				}
+
+				// Extend match backwards and forwards
+				while (srcPosition > anchor && reference > 0 && src[srcPosition - 1] == src[reference - 1]) {
+					srcPosition--;
+					reference--;
+				}
+
+				int matchLength = MIN_MATCH;
+
+				while (srcPosition + matchLength < matchEndLimit && src[srcPosition + matchLength] == src[reference + matchLength]) {
+					matchLength++;
+				}
+
+				dstPosition = writeSequence(src, anchor, srcPosition - anchor, srcPosition - reference, matchLength, dst, dstPosition);
+
+				srcPosition += matchLength;
+				anchor = srcPosition;
+				searchCount = 1 << SKIP_STRENGTH;
+			}
+
+			return writeLastLiterals(src, anchor, srcLength - anchor, dst, dstPosition);
+		}
+
+		/**
+		 * Uncompresses an LZ4 block of <tt>srcLength</tt> bytes into exactly
+		 * <tt>dstLength</tt> bytes of <tt>dst</tt>.
+		 *
+		 * @throws IOException If the block is corrupt or does not uncompress to the given length
+		 */
+		public static void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+			int srcPosition = 0;
+			int dstPosition = 0;
+
+			try {
+				while (true) {
+					int token = src[srcPosition++] & 0xff;
+
+					// Literals
+					int literalLength = token >>> 4;
+
+					if (literalLength == 15) {
+						int lengthByte;
+
+						do {
+							lengthByte = src[srcPosition++] & 0xff;
+							literalLength += lengthByte;
+						}
+						while (lengthByte == 255);
+					}
+
+					if (srcPosition + literalLength > srcLength || dstPosition + literalLength > dstLength) {
+						throw new IOException("Invalid LZ4 block: Literals out of bounds.");
+					}
+
+					System.arraycopy(src, srcPosition, dst, dstPosition, literalLength);
+
+					srcPosition += literalLength;
+					dstPosition += literalLength;
+
+					if (srcPosition == srcLength) {
+						break; // Last sequence has no match
+					}
+
+					// Match
+					int offset = (src[srcPosition] & 0xff) | ((src[srcPosition + 1] & 0xff) << 8);
+					srcPosition += 2;
+
+					if (offset == 0 || offset > dstPosition) {
+						throw new IOException("Invalid LZ4 block: Invalid match offset " + offset);
+					}
+
+					int matchLength = token & 0x0f;
+
+					if (matchLength == 15) {
+						int lengthByte;
+
+						do {
+							lengthByte = src[srcPosition++] & 0xff;
+							matchLength += lengthByte;
+						}
+						while (lengthByte == 255);
+					}
+
+					matchLength += MIN_MATCH;
+
+					if (dstPosition + matchLength > dstLength) {
+						throw new IOException("Invalid LZ4 block: Match out of bounds.");
+					}
+
+					int matchPosition = dstPosition - offset;
+
+					if (offset >= matchLength) {
+						System.arraycopy(dst, matchPosition, dst, dstPosition, matchLength);
+						dstPosition += matchLength;
+					}
+					else {
+						for (int i = 0; i < matchLength; i++) { // Overlapping copy
+							dst[dstPosition++] = dst[matchPosition + i];
+						}
+					}
+				}
+			}
+			catch (ArrayIndexOutOfBoundsException e) {
+				throw new IOException("Invalid LZ4 block: Unexpected end of block.", e);
+			}
+
+			if (dstPosition != dstLength) {
+				throw new IOException("Invalid LZ4 block: Expected " + dstLength + " bytes, but got " + dstPosition);
+			}
+		}
+
+		private static int writeSequence(byte[] src, int literalOffset, int literalLength, int matchOffset, int matchLength, byte[] dst, int dstPosition) {
+			int tokenPosition = dstPosition++;
+			int remainingMatchLength = matchLength - MIN_MATCH;
+
+			int token = (Math.min(literalLength, 15) << 4) | Math.min(remainingMatchLength, 15);
+			dst[tokenPosition] = (byte) token;
+
+			dstPosition = writeLengthBytes(literalLength, dst, dstPosition);
+
+			System.arraycopy(src, literalOffset, dst, dstPosition, literalLength);
+			dstPosition += literalLength;
+
+			dst[dstPosition++] = (byte) matchOffset;
+			dst[dstPosition++] = (byte) (matchOffset >>> 8);
+
+			return writeLengthBytes(remainingMatchLength, dst, dstPosition);
+		}
+
+		private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dst, int dstPosition) {
+			dst[dstPosition++] = (byte) (Math.min(literalLength, 15) << 4);
+			dstPosition = writeLengthBytes(literalLength, dst, dstPosition);
+
+			System.arraycopy(src, literalOffset, dst, dstPosition, literalLength);
+			return dstPosition + literalLength;
+		}
+
+		private static int writeLengthBytes(int length, byte[] dst, int dstPosition) {
+			if (length >= 15) {
+				length -= 15;
+
+				while (length >= 255) {
+					dst[dstPosition++] = (byte) 255;
+					length -= 255;
+				}
+
+				dst[dstPosition++] = (byte) length;
+			}
+
+			return dstPosition;
+		}
+
+		private static int readInt(byte[] data, int position) {
+			return (data[position] & 0xff) | ((data[position + 1] & 0xff) << 8) | ((data[position + 2] & 0xff) << 16) | ((data[position + 3] & 0xff) << 24);
+		}
+
+		private static int hash(int sequence) {
+			return (sequence * -1640531535) >>> (32 - HASH_LOG);
+		}
+	}
+}
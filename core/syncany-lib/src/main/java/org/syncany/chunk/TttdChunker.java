@@ -18,9 +18,10 @@
 package org.syncany.chunk;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,6 +51,10 @@ import java.util.logging.Logger;
  * breakpoints, TTTD simply cuts the chunk at the maximum chunk size. TTTD hence guarantees
  * to emit chunks with a minimum and maximum size.
  *
+ * <p>Files are read in large blocks via a {@link FileChannel}. Both the read buffers and the
+ * chunk buffers are taken from {@link ChunkBufferPool}s, so that no buffers have to be allocated
+ * per chunk (if chunks are released via {@link Chunk#release()}).
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  * @see <a href="http://www.hpl.hp.com/techreports/2005/HPL-2005-30R1.html">Original TTTD paper: A framework for analyzing and improving content-based chunking algorithms</a>,
  *      2005, Kave Eshghi and Hsiu Khuern Tang
@@ -60,6 +65,7 @@ public class TttdChunker extends Chunker {
 	public static final int DEFAULT_WINDOW_SIZE = 48; // like LBFS
 	public static final String DEFAULT_DIGEST_ALG = "SHA1";
 	public static final String DEFAULT_FINGERPRINT_ALG = "Adler32";
+	public static final int DEFAULT_READ_BUFFER_SIZE = 64 * 1024;
 
 	private int Tmin;
 	private int Tmax;
@@ -70,6 +76,9 @@ public class TttdChunker extends Chunker {
 	private String fingerprintAlgorithm;
 	private String name;
 
+	private ChunkBufferPool chunkBufferPool;
+	private ChunkBufferPool readBufferPool;
+
 	public TttdChunker(int Tmin, int Tmax, int D, int Ddash, int windowSize) {
 		this(Tmin, Tmax, D, Ddash, windowSize, DEFAULT_DIGEST_ALG, DEFAULT_FINGERPRINT_ALG);
 	}
@@ -110,6 +119,9 @@ public class TttdChunker extends Chunker {
 		this.fingerprintAlgorithm = fingerprintAlg;
 		this.name = name;
 
+		this.chunkBufferPool = new ChunkBufferPool(Tmax);
+		this.readBufferPool = new ChunkBufferPool(DEFAULT_READ_BUFFER_SIZE);
+
 		if (windowSize > Tmin) {
 			throw new IllegalArgumentException("Window size must be smaller than Tmin.");
 		}
@@ -117,7 +129,7 @@ public class TttdChunker extends Chunker {
 
 	@Override
 	public ChunkEnumeration createChunks(File file) throws IOException {
-		return new TTTDEnumeration(new FileInputStream(file));
+		return new TTTDEnumeration(FileChannel.open(file.toPath(), StandardOpenOption.READ));
 	}
 
 	@Override
@@ -131,9 +143,10 @@ public class TttdChunker extends Chunker {
 	}
 
 	public class TTTDEnumeration implements ChunkEnumeration {
-		private InputStream in;
+		private FileChannel channel;
 		private boolean closed;
 		private byte[] c;
+		private ByteBuffer cBuffer;
 		private int clen;
 		private int cpos;
 
@@ -141,11 +154,12 @@ public class TttdChunker extends Chunker {
 		private MessageDigest fileDigest;
 		private Fingerprinter fingerprinter;
 
-		public TTTDEnumeration(InputStream in) throws IOException {
-			this.in = in;
+		public TTTDEnumeration(FileChannel channel) throws IOException {
+			this.channel = channel;
 			this.closed = false;
-			this.c = new byte[8192];
-			this.clen = -1;
+			this.c = readBufferPool.acquire();
+			this.cBuffer = ByteBuffer.wrap(c);
+			this.clen = 0;
 			this.cpos = -1;
 
 			try {
@@ -156,6 +170,7 @@ public class TttdChunker extends Chunker {
 				fileDigest.reset();
 			}
 			catch (Exception e) {
+				close();
 				throw new RuntimeException(e);
 			}
 		}
@@ -165,6 +180,11 @@ public class TttdChunker extends Chunker {
 			return !closed;
 		}
 
+		/**
+		 * Returns the next chunk. Bytes are fingerprinted directly in the read buffer <tt>c</tt>,
+		 * and copied to the chunk buffer in runs (instead of byte by byte). The window at
+		 * <tt>Tmin</tt> is fingerprinted in the chunk buffer, so the run is copied before that.
+		 */
 		@Override
 		public Chunk nextElement() {
 			if (closed) {
@@ -174,17 +194,16 @@ public class TttdChunker extends Chunker {
 			chunkDigest.reset();
 			fingerprinter.reset();
 
+			byte[] buf = chunkBufferPool.acquire();
+
 			try {
-				int backupBreak = 0;
 				int breakpoint = -1;
-
-				byte[] buf = new byte[Tmax];
 				int bufpos = -1;
 
-				while (bufpos < buf.length - 1) {
-					if (cpos == -1 || cpos == clen - 1) {
+				while (bufpos < Tmax - 1 && breakpoint == -1) {
+					if (cpos == clen - 1) {
 						cpos = -1;
-						clen = readFromInputStreamFixed(c, in);//in.read(c);
+						clen = readBlock();
 
 						if (clen == -1) {
 							break;
@@ -193,50 +212,45 @@ public class TttdChunker extends Chunker {
 						fileDigest.update(c, 0, clen);
 					}
 
-					bufpos++;
-					cpos++;
-					buf[bufpos] = c[cpos];
+					int runStart = cpos + 1;
+					int runBufStart = bufpos + 1;
+					int runEnd = cpos + Math.min(clen - 1 - cpos, Tmax - 1 - bufpos);
 
-					if (bufpos < Tmin) {
-						continue;
-					}
-					else if (bufpos == Tmin) {
-						fingerprinter.check(buf, bufpos - windowSize, windowSize);
-					}
-					else {
-						fingerprinter.roll(buf[bufpos]);
-					}
+					while (cpos < runEnd) {
+						bufpos++;
+						cpos++;
 
-					int hash = fingerprinter.getValue();
+						if (bufpos < Tmin) {
+							continue;
+						}
+						else if (bufpos == Tmin) {
+							System.arraycopy(c, runStart, buf, runBufStart, bufpos - runBufStart);
 
-					// The value of r (right side) plays no role! #39  
-					if ((hash % Ddash) == Ddash - 1) {
-						backupBreak = bufpos;
-					}
+							runStart = cpos;
+							runBufStart = bufpos;
 
-					if ((hash % D) == D - 1) {
-						breakpoint = bufpos;
-						break;
-					}
+							fingerprinter.check(buf, bufpos - windowSize, windowSize);
+						}
+						else {
+							fingerprinter.roll(c[cpos]);
+						}
 
-					if (bufpos < Tmax) {
-						continue;
-					}
+						int hash = fingerprinter.getValue();
 
-					if (backupBreak != 0) {
-						breakpoint = backupBreak;
-						break;
-					}
-					else {
-						breakpoint = bufpos;
-						break;
+						// The value of r (right side) plays no role! #39
+						// Note: Chunks without breakpoint are cut at Tmax; the backup divisor D' is not used.
+						if ((hash % D) == D - 1) {
+							breakpoint = bufpos;
+							break;
+						}
 					}
+
+					System.arraycopy(c, runStart, buf, runBufStart, bufpos - runBufStart + 1);
 				}
 
 				// Close if this was the last bytes
 				if (clen == -1) {
-					in.close();
-					closed = true;
+					close();
 				}
 
 				// EOF as breakpoint
@@ -251,22 +265,32 @@ public class TttdChunker extends Chunker {
 				chunkDigest.update(buf, 0, breakpoint);
 
 				byte[] chunkChecksum = chunkDigest.digest();
-				byte[] chunkContents = buf;
 				int chunkSize = breakpoint;
 				byte[] fileChecksum = (clen == -1) ? fileDigest.digest() : null;
 
-				return new Chunk(chunkChecksum, chunkContents, chunkSize, fileChecksum);
+				return new Chunk(chunkChecksum, buf, chunkSize, fileChecksum, chunkBufferPool);
 			}
 			catch (IOException ex) {
 				logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
+				chunkBufferPool.release(buf);
+
 				return null;
 			}
 		}
 
 		@Override
 		public void close() {
+			closed = true;
+
+			if (c != null) {
+				readBufferPool.release(c);
+
+				c = null;
+				cBuffer = null;
+			}
+
 			try {
-				in.close();
+				channel.close();
 			}
 			catch (IOException e) {
 				logger.log(Level.INFO, "Error while closing", e);
@@ -274,24 +298,19 @@ public class TttdChunker extends Chunker {
 		}
 
 		/**
-		 * Fixes the read errors occurring with Cipher streams in the standard
-		 * Java read implementation.
+		 * Reads the next block from the file channel into the read buffer,
+		 * and returns the number of bytes read, or -1 if the end of the file is reached.
 		 */
-		private int readFromInputStreamFixed(byte[] readToBuffer, InputStream inputStream) throws IOException {
-			int bytesRead = 0;
-
-			while (bytesRead < readToBuffer.length) {
-				int byteRead = inputStream.read();
+		private int readBlock() throws IOException {
+			cBuffer.clear();
 
-				if (byteRead == -1) {
-					return (bytesRead != 0) ? bytesRead : -1;
-				}
+			int read = 0;
 
-				readToBuffer[bytesRead] = (byte) byteRead;
-				bytesRead++;
+			while (read == 0) {
+				read = channel.read(cBuffer);
 			}
 
-			return (bytesRead != 0) ? bytesRead : -1;
+			return read;
 		}
 	}
 }
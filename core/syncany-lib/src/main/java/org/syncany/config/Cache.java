@@ -19,14 +19,6 @@ package org.syncany.config;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 
@@ -35,16 +27,15 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * or other metadata files before upload, and as a download location for the same
  * files. 
  * 
- * <p>The cache implements an LRU strategy based on the last modified date of the 
- * cached files. When files are accessed using the respective getters, the last modified
- * date is updated. Using the {@link #clear()}/{@link #clear(long)} method, the cache
- * can be cleaned.
+ * <p>The cache implements an LRU strategy using a {@link CacheIndex}. When files are
+ * accessed using the respective getters, they are marked as recently used in the (in-memory)
+ * index; the files themselves are not touched. Using the {@link #clear()}/{@link #clear(long)}
+ * method, the cache can be cleaned. Files that are in use can be protected from being
+ * deleted using {@link #pin(File)}.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Cache {
-	private static final Logger logger = Logger.getLogger(Cache.class.getSimpleName());
-
     private static long DEFAULT_CACHE_KEEP_BYTES = 500*1024*1024;
 	private static String FILE_FORMAT_MULTICHUNK_ENCRYPTED = "multichunk-%s";
 	private static String FILE_FORMAT_MULTICHUNK_DECRYPTED = "multichunk-%s-decrypted";
@@ -52,10 +43,20 @@ public class Cache {
     
     private long keepBytes;
     private File cacheDir;
+    private CacheIndex cacheIndex;
     
     public Cache(File cacheDir) {
+    	this(cacheDir, null);
+    }
+
+    /**
+     * Creates a cache for the given directory, and persists its LRU index
+     * to the given file (if not <tt>null</tt>).
+     */
+    public Cache(File cacheDir, File cacheIndexFile) {
     	this.cacheDir = cacheDir;
     	this.keepBytes = DEFAULT_CACHE_KEEP_BYTES;
+    	this.cacheIndex = new CacheIndex(cacheDir, cacheIndexFile);
     }
     
     /**
@@ -107,34 +108,26 @@ public class Cache {
 	 * <p>This method should not be run while an operation is executed.
 	 */
 	public void clear(long keepBytes) {		
-		List<File> cacheFiles = getSortedFileList();
-			
-		// Determine total size
-		long totalSize = 0;
-		
-		for (File cacheFile : cacheFiles) {
-			totalSize += cacheFile.length();
-		}
-		
-		// Delete until total cache size <= keep size
-		if (totalSize > keepBytes) {
-			logger.log(Level.INFO, "Cache too large (" + (totalSize/1024) + " KB), deleting until <= " + (keepBytes/1024/1024) + " MB ...");
+		cacheIndex.evict(keepBytes);
+	}
+
+	/**
+	 * Returns the total size of the files in the cache.
+	 */
+	public long getSize() {
+		return cacheIndex.getTotalBytes();
+	}
+
+	/**
+	 * Protects the given cache file from being deleted by {@link #clear()}
+	 * until {@link #unpin(File)} is called.
+	 */
+	public void pin(File fileInCache) {
+		cacheIndex.pin(fileInCache.getName());
+	}
 
-			while (totalSize > keepBytes && cacheFiles.size() > 0) {
-				File eldestCacheFile = cacheFiles.remove(0);
-				
-				long fileSize = eldestCacheFile.length();
-				long fileLastModified = eldestCacheFile.lastModified();
-				
-				logger.log(Level.INFO, "- Deleting from cache (" + new Date(fileLastModified) + ", " + (fileSize/1024) + " KB): " + eldestCacheFile.getName());
-				
-				totalSize -= fileSize;
-				eldestCacheFile.delete();				
-			}
-		}
-		else {
-			logger.log(Level.INFO, "Cache size okay (" + (totalSize/1024) + " KB), no need to clean (keep size is " + (keepBytes/1024/1024) + " MB)");
-		}
+	public void unpin(File fileInCache) {
+		cacheIndex.unpin(fileInCache.getName());
 	}
 
 	/**
@@ -148,49 +141,19 @@ public class Cache {
        File tempFile = File.createTempFile(String.format("temp-%s-", name), ".tmp", cacheDir);
        tempFile.deleteOnExit();
        
+       cacheIndex.touch(tempFile.getName());
+       
        return tempFile;
     }
     
     /**
      * Returns the file using the given format and parameters, and 
-     * updates the last modified date of the file (used for LRU strategy).
+     * marks it as recently used in the cache index (used for LRU strategy).
      */
     private File getFileInCache(String format, Object... params) {
         File fileInCache = new File(cacheDir.getAbsoluteFile(), String.format(format, params));
-
-        if (fileInCache.exists()) {
-        	touchFile(fileInCache);
-        }
+        cacheIndex.touch(fileInCache.getName());
         
         return fileInCache;
     }
-    
-    /**
-     * Sets the last modified date of the given file to the current date/time.
-     */
-    private void touchFile(File fileInCache) {
-    	fileInCache.setLastModified(System.currentTimeMillis());
-    }
-    
-    /**
-     * Returns a list of all files in the cache, sorted by the last modified
-     * date -- eldest first.
-     */
-	private List<File> getSortedFileList() {
-		File[] cacheFilesList = cacheDir.listFiles();
-		List<File> sortedCacheFiles = new ArrayList<File>();
-		
-		if (cacheFilesList != null) {
-			sortedCacheFiles.addAll(Arrays.asList(cacheFilesList));
-			
-			Collections.sort(sortedCacheFiles, new Comparator<File>() {
-				@Override
-				public int compare(File file1, File file2) {				
-					return Long.compare(file1.lastModified(), file2.lastModified());
-				}
-			});
-		}
-		
-		return sortedCacheFiles;
-	}
 }
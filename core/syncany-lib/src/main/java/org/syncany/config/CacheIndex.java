@@ -0,0 +1,316 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.config;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The cache index keeps track of the files in the local {@link Cache} in least-recently-used
+ * order, together with their sizes and the total size of the cache. Accessing a file only
+ * updates the in-memory index; the files themselves are not touched.
+ *
+ * <p>The index is loaded lazily: On first use, the persisted index (if any) is read and
+ * reconciled with a single listing of the cache directory. Files that are not in the persisted
+ * index (e.g. because the application crashed) are added as the eldest entries, sorted by their
+ * last modified date. The index is written back after each eviction run.
+ *
+ * <p>Since callers write to the files returned by the cache, the size of an accessed file
+ * is only determined (or re-determined) when the cache is cleaned, and only for the files
+ * accessed since the last run. Files that are pinned are never evicted.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class CacheIndex {
+	private static final Logger logger = Logger.getLogger(CacheIndex.class.getSimpleName());
+	private static final long UNKNOWN_SIZE = -1;
+
+	private File cacheDir;
+	private File indexFile;
+
+	private boolean loaded;
+	private LinkedHashMap<String, Long> entries;
+	private Set<String> changedEntries;
+	private Map<String, Integer> pinnedEntries;
+	private long totalBytes;
+
+	/**
+	 * Creates a new cache index for the given directory.
+	 *
+	 * @param cacheDir Directory containing the cached files
+	 * @param indexFile File to persist the index to, or <tt>null</tt> to not persist the index
+	 */
+	public CacheIndex(File cacheDir, File indexFile) {
+		this.cacheDir = cacheDir;
+		this.indexFile = indexFile;
+
+		this.loaded = false;
+		this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		this.changedEntries = new HashSet<String>();
+		this.pinnedEntries = new HashMap<String, Integer>();
+		this.totalBytes = 0;
+	}
+
+	/**
+	 * Marks the given file as most recently used. The file does not have to exist yet;
+	 * its size is determined on the next call to {@link #evict(long)}.
+	 */
+	public synchronized void touch(String fileName) {
+		ensureLoaded();
+
+		if (entries.get(fileName) == null) {
+			entries.put(fileName, UNKNOWN_SIZE);
+		}
+
+		changedEntries.add(fileName);
+	}
+
+	/**
+	 * Protects the given file from being evicted until {@link #unpin(String)}
+	 * is called (as many times as this method).
+	 */
+	public synchronized void pin(String fileName) {
+		Integer pinCount = pinnedEntries.get(fileName);
+		pinnedEntries.put(fileName, (pinCount != null) ? pinCount + 1 : 1);
+	}
+
+	public synchronized void unpin(String fileName) {
+		Integer pinCount = pinnedEntries.get(fileName);
+
+		if (pinCount == null || pinCount <= 1) {
+			pinnedEntries.remove(fileName);
+		}
+		else {
+			pinnedEntries.put(fileName, pinCount - 1);
+		}
+	}
+
+	/**
+	 * Returns the total size of all cached files, updating the sizes
+	 * of the files accessed since the last call.
+	 */
+	public synchronized long getTotalBytes() {
+		ensureLoaded();
+		updateChangedEntries();
+
+		return totalBytes;
+	}
+
+	/**
+	 * Deletes the least recently used (and not pinned) files until at most
+	 * <tt>keepBytes</tt> bytes are left, and persists the index.
+	 */
+	public synchronized void evict(long keepBytes) {
+		ensureLoaded();
+		updateChangedEntries();
+
+		if (totalBytes > keepBytes) {
+			logger.log(Level.INFO, "Cache too large (" + (totalBytes / 1024) + " KB), deleting until <= " + (keepBytes / 1024 / 1024) + " MB ...");
+
+			Iterator<Entry<String, Long>> entryIterator = entries.entrySet().iterator();
+
+			while (totalBytes > keepBytes && entryIterator.hasNext()) {
+				Entry<String, Long> eldestEntry = entryIterator.next();
+
+				if (pinnedEntries.containsKey(eldestEntry.getKey())) {
+					logger.log(Level.INFO, "- Not deleting pinned file from cache: " + eldestEntry.getKey());
+				}
+				else {
+					logger.log(Level.INFO, "- Deleting from cache (" + (eldestEntry.getValue() / 1024) + " KB): " + eldestEntry.getKey());
+
+					new File(cacheDir, eldestEntry.getKey()).delete();
+
+					totalBytes -= eldestEntry.getValue();
+					entryIterator.remove();
+				}
+			}
+		}
+		else {
+			logger.log(Level.INFO, "Cache size okay (" + (totalBytes / 1024) + " KB), no need to clean (keep size is " + (keepBytes / 1024 / 1024)
+					+ " MB)");
+		}
+
+		save();
+	}
+
+	/**
+	 * Determines the sizes of all files accessed since the last call, and removes
+	 * the ones that do not exist (anymore). The changed entries are processed in LRU order,
+	 * because re-inserting them moves them to the end of the index.
+	 */
+	private void updateChangedEntries() {
+		if (changedEntries.isEmpty()) {
+			return;
+		}
+
+		List<String> changedFileNames = new ArrayList<String>();
+
+		for (String fileName : entries.keySet()) {
+			if (changedEntries.contains(fileName)) {
+				changedFileNames.add(fileName);
+			}
+		}
+
+		for (String fileName : changedFileNames) {
+			Long oldSize = entries.remove(fileName);
+			File file = new File(cacheDir, fileName);
+
+			if (oldSize != UNKNOWN_SIZE) {
+				totalBytes -= oldSize;
+			}
+
+			if (file.exists()) {
+				addEntry(fileName, file.length());
+			}
+		}
+
+		changedEntries.clear();
+	}
+
+	private void ensureLoaded() {
+		if (!loaded) {
+			load();
+			loaded = true;
+		}
+	}
+
+	/**
+	 * Reads the persisted index and reconciles it with the cache directory: Entries
+	 * for missing files are dropped, and unknown files are added as the eldest entries.
+	 * Note that loading inserts entries in access order, so the entries added first are
+	 * evicted first.
+	 */
+	private void load() {
+		String[] cacheFileNames = cacheDir.list();
+		Set<String> existingFileNames = new HashSet<String>();
+
+		if (cacheFileNames != null) {
+			Collections.addAll(existingFileNames, cacheFileNames);
+		}
+
+		LinkedHashMap<String, Long> persistedEntries = readIndexFile();
+		List<File> unknownFiles = new ArrayList<File>();
+
+		for (String fileName : existingFileNames) {
+			if (!persistedEntries.containsKey(fileName)) {
+				unknownFiles.add(new File(cacheDir, fileName));
+			}
+		}
+
+		Collections.sort(unknownFiles, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2) {
+				return Long.compare(file1.lastModified(), file2.lastModified());
+			}
+		});
+
+		for (File unknownFile : unknownFiles) {
+			addEntry(unknownFile.getName(), unknownFile.length());
+		}
+
+		for (Entry<String, Long> persistedEntry : persistedEntries.entrySet()) {
+			if (existingFileNames.contains(persistedEntry.getKey())) {
+				addEntry(persistedEntry.getKey(), persistedEntry.getValue());
+			}
+		}
+
+		logger.log(Level.INFO, "Cache index loaded: " + entries.size() + " file(s), " + unknownFiles.size() + " not indexed, " + (totalBytes / 1024)
+				+ " KB total.");
+	}
+
+	private void addEntry(String fileName, long size) {
+		entries.put(fileName, size);
+		totalBytes += size;
+	}
+
+	/**
+	 * Reads the index file, one entry per line (<tt>size name</tt>), eldest entry
+	 * first. Malformed lines are ignored; the files are then treated as unknown.
+	 */
+	private LinkedHashMap<String, Long> readIndexFile() {
+		LinkedHashMap<String, Long> persistedEntries = new LinkedHashMap<String, Long>();
+
+		if (indexFile == null || !indexFile.exists()) {
+			return persistedEntries;
+		}
+
+		try (BufferedReader indexReader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"))) {
+			String line;
+
+			while ((line = indexReader.readLine()) != null) {
+				int separatorIndex = line.indexOf(' ');
+
+				if (separatorIndex > 0) {
+					try {
+						persistedEntries.put(line.substring(separatorIndex + 1), Long.parseLong(line.substring(0, separatorIndex)));
+					}
+					catch (NumberFormatException e) {
+						logger.log(Level.FINE, "Ignoring invalid cache index entry: " + line);
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot read cache index " + indexFile + ", re-indexing cache.", e);
+			persistedEntries.clear();
+		}
+
+		return persistedEntries;
+	}
+
+	private void save() {
+		if (indexFile == null) {
+			return;
+		}
+
+		if (!indexFile.getParentFile().exists()) {
+			indexFile.getParentFile().mkdirs();
+		}
+
+		try (BufferedWriter indexWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile), "UTF-8"))) {
+			for (Entry<String, Long> entry : entries.entrySet()) {
+				if (entry.getValue() != UNKNOWN_SIZE) {
+					indexWriter.write(entry.getValue() + " " + entry.getKey());
+					indexWriter.newLine();
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot write cache index " + indexFile + ", ignoring.", e);
+		}
+	}
+}
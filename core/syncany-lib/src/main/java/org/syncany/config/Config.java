@@ -31,10 +31,12 @@ import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.RepoTO;
 import org.syncany.config.to.RepoTO.MultiChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
+import org.syncany.crypto.MultiCipherOutputStream;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.database.VectorClock;
 import org.syncany.plugins.Plugins;
+import org.syncany.plugins.transfer.TransactionCache;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferSettings;
 import org.syncany.util.FileUtil;
@@ -72,8 +74,11 @@ public class Config {
 	public static final String FILE_PORT = "port.xml";
 	public static final String FILE_TRANSACTION = "transaction-actions.xml";
 	public static final String FILE_TRANSACTION_DATABASE = "transaction-database.xml";
+	public static final String FILE_CACHE_INDEX = "cache-index.txt";
+	public static final String DIR_TRANSACTION_CACHE = "transaction-cache";
 
 	private byte[] repoId;
+	private int repoFormatVersion;
 	private String machineName;
 	private String displayName;
 	private File localDir;
@@ -86,12 +91,14 @@ public class Config {
 	private SaltedSecretKey masterKey;
 
 	private Cache cache;
+	private TransactionCache transactionCache;
 	private TransferPlugin plugin;
 	private TransferSettings transferSettings;
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
 	private IgnoredFiles ignoredFiles;
+	private boolean transferMetricsEnabled;
 
 	static {
 		UserConfig.init();
@@ -107,6 +114,7 @@ public class Config {
 		initMasterKey(configTO);
 		initDirectories(aLocalDir);
 		initCache(configTO);
+		initMetrics(configTO);
 		initIgnoredFile();
 		initRepo(repoTO);
 		initConnection(configTO);
@@ -131,13 +139,19 @@ public class Config {
 	}
 
 	private void initCache(ConfigTO configTO) {
-		cache = new Cache(cacheDir);
+		cache = new Cache(cacheDir, new File(stateDir, FILE_CACHE_INDEX));
+		transactionCache = new TransactionCache(new File(stateDir, DIR_TRANSACTION_CACHE));
 
 		if (configTO.getCacheKeepBytes() != null && configTO.getCacheKeepBytes() >= 0) {
 			cache.setKeepBytes(configTO.getCacheKeepBytes());
 		}
 	}
 
+	private void initMetrics(ConfigTO configTO) {
+		// Transfer metrics are enabled unless explicitly disabled
+		transferMetricsEnabled = configTO.getTransferMetrics() == null || configTO.getTransferMetrics();
+	}
+
 	private void initIgnoredFile() throws ConfigException {
 		File ignoreFile = new File(localDir, FILE_IGNORE);
 		ignoredFiles = new IgnoredFiles(ignoreFile);
@@ -146,6 +160,7 @@ public class Config {
 	private void initRepo(RepoTO repoTO) throws ConfigException {
 		try {
 			initRepoId(repoTO);
+			initRepoFormatVersion(repoTO);
 			initChunker(repoTO);
 			initMultiChunker(repoTO);
 			initTransformers(repoTO);
@@ -159,6 +174,10 @@ public class Config {
 		repoId = repoTO.getRepoId();
 	}
 
+	private void initRepoFormatVersion(RepoTO repoTO) {
+		repoFormatVersion = (repoTO.getFormatVersion() != null) ? repoTO.getFormatVersion() : RepoTO.FORMAT_VERSION_DEFAULT;
+	}
+
 	private void initChunker(RepoTO repoTO) throws Exception {
 		// TODO [feature request] make chunking options configurable, something like described in #29
 		// See: https://github.com/syncany/syncany/issues/29#issuecomment-43425647
@@ -205,6 +224,10 @@ public class Config {
 
 				transformer.init(transformerTO.getSettings());
 
+				if (transformer instanceof CipherTransformer && repoFormatVersion >= RepoTO.FORMAT_VERSION_2) {
+					((CipherTransformer) transformer).setStreamVersion(MultiCipherOutputStream.STREAM_VERSION_SEGMENTED);
+				}
+
 				if (lastTransformer != null) {
 					transformer.setNextTransformer(lastTransformer);
 				}
@@ -281,6 +304,10 @@ public class Config {
 		return repoId;
 	}
 
+	public int getRepoFormatVersion() {
+		return repoFormatVersion;
+	}
+
 	public Chunker getChunker() {
 		return chunker;
 	}
@@ -289,10 +316,22 @@ public class Config {
 		return cache;
 	}
 
+	public TransactionCache getTransactionCache() {
+		return transactionCache;
+	}
+
 	public IgnoredFiles getIgnoredFiles() {
 		return ignoredFiles;
 	}
 
+	public boolean isTransferMetricsEnabled() {
+		return transferMetricsEnabled;
+	}
+
+	public void setTransferMetricsEnabled(boolean transferMetricsEnabled) {
+		this.transferMetricsEnabled = transferMetricsEnabled;
+	}
+
 	public MultiChunker getMultiChunker() {
 		return multiChunker;
 	}
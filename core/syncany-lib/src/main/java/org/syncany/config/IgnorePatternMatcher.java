@@ -0,0 +1,254 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The ignore pattern matcher is an immutable, precompiled representation of the 
+ * rules in the ignore file (see {@link IgnoredFiles}). It is built once when the 
+ * ignore file is (re-)loaded, so that checking a path does not require recompiling 
+ * any regular expressions.
+ * 
+ * <p>Rules are sorted into different lookup structures, depending on their type:
+ * <ul>
+ *  <li>Exact paths (no wildcards) are looked up in a hash set.</li>
+ *  <li>Wildcard rules of the form <tt>*literal</tt> (e.g. <tt>*.tmp</tt>) are matched
+ *      by comparing the path's suffix against a set of suffixes (grouped by length).</li>
+ *  <li>All other wildcard rules are compiled to a regular expression and stored in a 
+ *      trie, indexed by their literal prefix (the part before the first wildcard). Only
+ *      the rules whose prefix matches the beginning of the path are evaluated.</li>
+ *  <li>Regular expressions (<tt>regex:...</tt>) are compiled once and evaluated in order.</li>
+ * </ul>
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class IgnorePatternMatcher {
+	private static final String REGEX_PREFIX = "regex:";
+	
+	private Set<String> exactPaths;
+	private Map<Integer, Set<String>> suffixesByLength;
+	private PrefixNode wildcardPrefixTrie;
+	private List<Pattern> regexPatterns;
+	
+	public IgnorePatternMatcher(Collection<String> ignoreRules) {
+		this.exactPaths = new HashSet<String>();
+		this.suffixesByLength = new HashMap<Integer, Set<String>>();
+		this.wildcardPrefixTrie = new PrefixNode();
+		this.regexPatterns = new ArrayList<Pattern>();
+		
+		for (String ignoreRule : ignoreRules) {
+			addRule(ignoreRule);
+		}
+	}
+	
+	/**
+	 * Checks whether the given (relative, database) file path matches 
+	 * any of the ignore rules.  
+	 */
+	public boolean matches(String filePath) {
+		return matchesExactPath(filePath) 
+			|| matchesSuffix(filePath) 
+			|| matchesWildcardPattern(filePath) 
+			|| matchesRegexPattern(filePath);
+	}
+	
+	public boolean isEmpty() {
+		return exactPaths.isEmpty() && suffixesByLength.isEmpty() && wildcardPrefixTrie.isEmpty() && regexPatterns.isEmpty();
+	}
+	
+	private void addRule(String ignoreRule) {
+		if (ignoreRule.isEmpty()) {
+			return;
+		}
+		
+		if (ignoreRule.startsWith(REGEX_PREFIX)) {
+			regexPatterns.add(Pattern.compile(ignoreRule.substring(REGEX_PREFIX.length())));
+		}
+		else {
+			int firstWildcardIndex = indexOfWildcard(ignoreRule, 0);
+
+			if (firstWildcardIndex < 0) {
+				exactPaths.add(ignoreRule);
+			}
+			else if (firstWildcardIndex == 0 && ignoreRule.charAt(0) == '*' && indexOfWildcard(ignoreRule, 1) < 0) {
+				addSuffix(ignoreRule.substring(1));
+			}
+			else {
+				String literalPrefix = ignoreRule.substring(0, firstWildcardIndex);
+				Pattern wildcardPattern = Pattern.compile(convertWildcardsToRegexp(ignoreRule));
+				
+				wildcardPrefixTrie.add(literalPrefix, wildcardPattern);
+			}
+		}
+	}
+
+	private void addSuffix(String suffix) {
+		Set<String> suffixes = suffixesByLength.get(suffix.length());
+		
+		if (suffixes == null) {
+			suffixes = new HashSet<String>();
+			suffixesByLength.put(suffix.length(), suffixes);
+		}
+		
+		suffixes.add(suffix);
+	}
+
+	private boolean matchesExactPath(String filePath) {
+		return exactPaths.contains(filePath);
+	}
+	
+	private boolean matchesSuffix(String filePath) {
+		for (Map.Entry<Integer, Set<String>> suffixesEntry : suffixesByLength.entrySet()) {
+			int suffixLength = suffixesEntry.getKey();
+			
+			if (filePath.length() >= suffixLength && suffixesEntry.getValue().contains(filePath.substring(filePath.length() - suffixLength))) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private boolean matchesWildcardPattern(String filePath) {
+		PrefixNode currentNode = wildcardPrefixTrie;
+		int pathIndex = 0;
+		
+		while (currentNode != null) {
+			for (Pattern pattern : currentNode.patterns) {
+				if (pattern.matcher(filePath).matches()) {
+					return true;
+				}
+			}
+			
+			if (pathIndex == filePath.length()) {
+				break;
+			}
+			
+			currentNode = currentNode.getChild(filePath.charAt(pathIndex++));
+		}
+		
+		return false;
+	}
+	
+	private boolean matchesRegexPattern(String filePath) {
+		for (Pattern pattern : regexPatterns) {
+			if (pattern.matcher(filePath).matches()) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private static int indexOfWildcard(String ignoreRule, int fromIndex) {
+		for (int i = fromIndex; i < ignoreRule.length(); i++) {
+			char c = ignoreRule.charAt(i);
+			
+			if (c == '*' || c == '?') {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private static String convertWildcardsToRegexp(String in) {
+		StringBuilder out = new StringBuilder("^");
+
+		for (int i = 0; i < in.length(); ++i) {
+			char c = in.charAt(i);
+
+			switch (c) {
+			case '*':
+				out.append(".*");
+				break;
+			case '?':
+				out.append('.');
+				break;
+			case '.':
+			case '$':
+			case '^':
+			case '{':
+			case '}':
+			case '[':
+			case ']':
+			case '(':
+			case ')':
+			case '|':
+			case '+':
+			case '\\':
+				out.append('\\');
+				out.append(c);
+				break;
+			default:
+				out.append(c);
+			}
+		}
+
+		out.append('$');
+
+		return out.toString();
+	}
+	
+	private static class PrefixNode {
+		private Map<Character, PrefixNode> children;
+		private List<Pattern> patterns;
+		
+		public PrefixNode() {
+			this.children = null;
+			this.patterns = new ArrayList<Pattern>(0);
+		}
+		
+		public void add(String literalPrefix, Pattern pattern) {
+			PrefixNode currentNode = this;
+			
+			for (int i = 0; i < literalPrefix.length(); i++) {
+				if (currentNode.children == null) {
+					currentNode.children = new HashMap<Character, PrefixNode>();
+				}
+				
+				PrefixNode childNode = currentNode.children.get(literalPrefix.charAt(i));
+				
+				if (childNode == null) {
+					childNode = new PrefixNode();
+					currentNode.children.put(literalPrefix.charAt(i), childNode);
+				}
+				
+				currentNode = childNode;
+			}
+			
+			currentNode.patterns.add(pattern);
+		}
+		
+		public PrefixNode getChild(char c) {
+			return (children != null) ? children.get(c) : null;
+		}
+		
+		public boolean isEmpty() {
+			return children == null && patterns.isEmpty();
+		}
+	}
+}
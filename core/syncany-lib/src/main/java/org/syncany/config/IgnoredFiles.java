@@ -19,28 +19,35 @@ package org.syncany.config;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class serves as a container of patterns of filenames
  * that should be ignored.
+ * 
+ * <p>The rules are compiled into an {@link IgnorePatternMatcher} whenever
+ * the ignore file is loaded, so that checking a file does not evaluate 
+ * each pattern from scratch. {@link #loadPatternsIfChanged()} only re-reads the
+ * file if its size or modification time differ from the last load.
  *
  * @author Pim Otte
  */
 public class IgnoredFiles {
-	private static final Logger logger = Logger.getLogger(ConfigHelper.class.getSimpleName());
-	private Set<String> ignorePatterns;
-	private Set<String> ignorePaths;
+	private static final Logger logger = Logger.getLogger(IgnoredFiles.class.getSimpleName());
+	
 	private File ignoreFile;
+	private volatile IgnorePatternMatcher ignorePatternMatcher;
+	
+	private long loadedIgnoreFileLastModified;
+	private long loadedIgnoreFileLength;
 
 	public IgnoredFiles(File ignoreFile) {
 		this.ignoreFile = ignoreFile;
-		this.ignorePatterns = new HashSet<String>();
-		this.ignorePaths = new HashSet<String>();
+		this.ignorePatternMatcher = new IgnorePatternMatcher(new ArrayList<String>());
 
 		loadPatterns();
 	}
@@ -50,47 +57,28 @@ public class IgnoredFiles {
 	 * Should only be called at indexing time.
 	 */
 	public boolean isFileIgnored(String filePath) {
-		// Check all exact paths
-		for (String path : ignorePaths) {
-			if (path.equals(filePath)) {
-				return true;
-			}
-		}
-
-		// Check all regular expressions
-		for (String pattern : ignorePatterns) {
-			if (filePath.matches(pattern)) {
-				return true;
-			}
-		}
-
-		return false;
+		return ignorePatternMatcher.matches(filePath);
 	}
 
-	public void loadPatterns() {
+	/**
+	 * (Re-)loads the ignore file and compiles its rules, replacing
+	 * all previously loaded rules. If the ignore file does not exist (anymore),
+	 * no files are ignored.
+	 */
+	public synchronized void loadPatterns() {
+		List<String> ignoreRules = new ArrayList<String>();
+
 		if (ignoreFile != null && ignoreFile.exists()) {
+			loadedIgnoreFileLastModified = ignoreFile.lastModified();
+			loadedIgnoreFileLength = ignoreFile.length();
+
 			try {
 				Scanner scanner = new Scanner(ignoreFile);
 
 				while (scanner.hasNextLine()) {
-					String ignorePattern = scanner.nextLine();
-
-					if (!ignorePattern.isEmpty()) {
-						if (ignorePattern.startsWith("regex:")) {
-							// Chop off regex: indicator
-							ignorePatterns.add(ignorePattern.substring(6));
-						}
-						else {
-							if (ignorePattern.contains("*") || ignorePattern.contains("?")) {
-								// wildcards handling, converting them to regexps
-								ignorePatterns.add(convertWildcardsToRegexp(ignorePattern));
-							}
-							else {
-								ignorePaths.add(ignorePattern);
-							}
-						}
-					}
+					ignoreRules.add(scanner.nextLine());
 				}
+				
 				scanner.close();
 			}
 			catch (FileNotFoundException e) {
@@ -98,47 +86,31 @@ public class IgnoredFiles {
 			}
 		}
 		else {
-			// In case the ignoreFile has been deleted, reset patterns
-			ignorePatterns = new HashSet<String>();
-			ignorePaths = new HashSet<String>();
+			loadedIgnoreFileLastModified = 0;
+			loadedIgnoreFileLength = 0;
 		}
+		
+		ignorePatternMatcher = new IgnorePatternMatcher(ignoreRules);
 	}
-
-	private static String convertWildcardsToRegexp(String in) {
-		StringBuilder out = new StringBuilder("^");
-
-		for (int i = 0; i < in.length(); ++i) {
-			char c = in.charAt(i);
-
-			switch (c) {
-			case '*':
-				out.append(".*");
-				break;
-			case '?':
-				out.append('.');
-				break;
-			case '.':
-			case '$':
-			case '^':
-			case '{':
-			case '}':
-			case '[':
-			case ']':
-			case '(':
-			case ')':
-			case '|':
-			case '+':
-			case '\\':
-				out.append('\\');
-				out.append(c);
-				break;
-			default:
-				out.append(c);
-			}
+	
+	/**
+	 * Reloads the ignore file only if it was created, deleted or modified 
+	 * since the last call to {@link #loadPatterns()}. Returns true if the rules
+	 * have been reloaded, false otherwise.
+	 */
+	public synchronized boolean loadPatternsIfChanged() {
+		boolean ignoreFileExists = ignoreFile != null && ignoreFile.exists();
+		
+		long currentLastModified = (ignoreFileExists) ? ignoreFile.lastModified() : 0;
+		long currentLength = (ignoreFileExists) ? ignoreFile.length() : 0;
+		
+		if (currentLastModified != loadedIgnoreFileLastModified || currentLength != loadedIgnoreFileLength) {
+			logger.log(Level.INFO, "Ignore file changed, reloading ignore patterns ...");
+			loadPatterns();
+			
+			return true;
 		}
-
-		out.append('$');
-
-		return out.toString();
+		
+		return false;
 	}
 }
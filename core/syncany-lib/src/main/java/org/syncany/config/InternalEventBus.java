@@ -17,8 +17,10 @@
  */
 package org.syncany.config;
 
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,14 +31,52 @@ import com.google.common.eventbus.EventBus;
  * daemon. It provides a publish/subscribe mechanism within a
  * single JVM.
  * 
+ * <p>By default, events are delivered synchronously, i.e. in the thread
+ * calling {@link #post(Object)}. If {@link #startAsyncDispatch(int, OverflowPolicy) asynchronous dispatch}
+ * is enabled, events for which {@link #isAsyncEvent(Object)} returns <tt>true</tt> are
+ * put in a bounded queue and delivered by a separate dispatcher thread, so that slow 
+ * subscribers do not block the posting thread. While such an event is waiting in the queue, 
+ * it is replaced by newer events with the same {@link #getCoalescingKey(Object) coalescing key},
+ * i.e. only the latest of these events is delivered.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class InternalEventBus {
 	protected static final Logger logger = Logger.getLogger(InternalEventBus.class.getSimpleName());
 	private static Map<Class<? extends InternalEventBus>, InternalEventBus> instances = new HashMap<>();
 	
+	/**
+	 * Defines the behavior of {@link InternalEventBus#post(Object) post()} if the 
+	 * asynchronous dispatch queue is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The posting thread waits until the dispatcher thread has delivered
+		 * enough events (backpressure).
+		 */
+		BLOCK, 
+		
+		/**
+		 * Events with a coalescing key (progress events) are dropped. All other 
+		 * events still block the posting thread, because losing them might break 
+		 * request/response handling.
+		 */
+		DROP
+	}
+	
 	protected EventBus eventBus;
 	
+	private Object queueLock;
+	private ArrayDeque<QueuedEvent> queue;
+	private Map<Object, QueuedEvent> queuedCoalescableEvents;
+	private int queueSize;
+	private OverflowPolicy overflowPolicy;
+	private volatile Thread dispatchThread;
+	private boolean dispatchRunning;
+	
+	private AtomicLong coalescedEventCount;
+	private AtomicLong droppedEventCount;
+	
 	@SuppressWarnings("unchecked")
 	protected static <T extends InternalEventBus> T getInstance(Class<T> eventBusClass) {
 		T eventBusInstance = (T) instances.get(eventBusClass);
@@ -58,6 +98,16 @@ public abstract class InternalEventBus {
 	
 	protected InternalEventBus() {
 		this.eventBus = new EventBus(this.getClass().getName());
+		
+		this.queueLock = new Object();
+		this.queue = new ArrayDeque<QueuedEvent>();
+		this.queuedCoalescableEvents = new HashMap<Object, QueuedEvent>();
+		this.dispatchThread = null;
+		this.dispatchRunning = false;
+		
+		this.coalescedEventCount = new AtomicLong(0);
+		this.droppedEventCount = new AtomicLong(0);
+		
 		logger.log(Level.INFO, "Event bus: Created event bus " + this.getClass().getName());
 	}
 	
@@ -72,7 +122,224 @@ public abstract class InternalEventBus {
 	}	
 	
 	public void post(Object event) {
-		logger.log(Level.INFO, "Event bus '" + this.getClass().getSimpleName() + "': Posting event " + event.getClass().getSimpleName() + " (" + event + ") ...");
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "Event bus ''{0}'': Posting event {1} ...", new Object[] { this.getClass().getSimpleName(), event.getClass().getSimpleName() });
+		}
+		
+		boolean dispatchSynchronously = dispatchThread == null || Thread.currentThread() == dispatchThread || !isAsyncEvent(event);
+		
+		if (dispatchSynchronously) {
+			eventBus.post(event);
+		}
+		else {
+			enqueue(event);
+		}
+	}
+	
+	/**
+	 * Starts the dispatcher thread and delivers all future {@link #isAsyncEvent(Object) asynchronous events}
+	 * through a queue with the given maximum size. If the dispatcher is already running, this method
+	 * does nothing.
+	 * 
+	 * @param queueSize Maximum number of events waiting in the queue
+	 * @param overflowPolicy Defines what happens when the queue is full
+	 */
+	public void startAsyncDispatch(int queueSize, OverflowPolicy overflowPolicy) {
+		synchronized (queueLock) {
+			if (dispatchThread != null) {
+				return;
+			}
+			
+			logger.log(Level.INFO, "Event bus '" + this.getClass().getSimpleName() + "': Starting asynchronous dispatch (queue size " + queueSize + ", policy " + overflowPolicy + ") ...");
+			
+			this.queueSize = Math.max(1, queueSize);
+			this.overflowPolicy = overflowPolicy;
+			this.dispatchRunning = true;
+			
+			this.dispatchThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					dispatchQueuedEvents();
+				}			
+			}, "EventDispatch");
+			
+			this.dispatchThread.setDaemon(true);
+			this.dispatchThread.start();
+		}
+	}
+	
+	/**
+	 * Stops the dispatcher thread after all queued events have been delivered.
+	 * Future events are delivered synchronously again. 
+	 */
+	public void stopAsyncDispatch() {
+		Thread stoppingDispatchThread = null;
+		
+		synchronized (queueLock) {
+			if (dispatchThread == null) {
+				return;
+			}
+
+			logger.log(Level.INFO, "Event bus '" + this.getClass().getSimpleName() + "': Stopping asynchronous dispatch ...");
+
+			stoppingDispatchThread = dispatchThread;			
+			dispatchRunning = false;
+			
+			queueLock.notifyAll();
+		}
+		
+		if (Thread.currentThread() != stoppingDispatchThread) {
+			try {
+				stoppingDispatchThread.join();
+			}
+			catch (InterruptedException e) {
+				logger.log(Level.FINE, "Interrupted while waiting for dispatcher thread.", e);
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		synchronized (queueLock) {
+			dispatchThread = null;
+		}
+	}
+	
+	public boolean isAsyncDispatchRunning() {
+		return dispatchThread != null;
+	}
+	
+	/**
+	 * Returns the number of events that were replaced by a newer event 
+	 * with the same coalescing key before they were delivered.
+	 */
+	public long getCoalescedEventCount() {
+		return coalescedEventCount.get();
+	}
+	
+	/**
+	 * Returns the number of events that were dropped because the queue
+	 * was full (only with {@link OverflowPolicy#DROP}).
+	 */
+	public long getDroppedEventCount() {
+		return droppedEventCount.get();
+	}
+	
+	/**
+	 * Returns whether the given event may be delivered asynchronously if 
+	 * {@link #startAsyncDispatch(int, OverflowPolicy) asynchronous dispatch} is enabled.
+	 * Events for which this method returns <tt>false</tt> are always delivered in
+	 * the posting thread. Subclasses should only return <tt>true</tt> for events that 
+	 * nobody waits for synchronously.
+	 */
+	protected boolean isAsyncEvent(Object event) {
+		return true;
+	}
+	
+	/**
+	 * Returns a key identifying events that supersede each other, or <tt>null</tt>
+	 * if the event must always be delivered. If an asynchronous event with the same key 
+	 * is still waiting in the queue, it is replaced by the new event. 
+	 */
+	protected Object getCoalescingKey(Object event) {
+		return null;
+	}
+	
+	private void enqueue(Object event) {
+		Object coalescingKey = getCoalescingKey(event);
+		
+		synchronized (queueLock) {
+			if (coalescingKey != null) {
+				QueuedEvent queuedEvent = queuedCoalescableEvents.get(coalescingKey);
+				
+				if (queuedEvent != null) {
+					queuedEvent.event = event;
+					coalescedEventCount.incrementAndGet();
+					
+					return;
+				}
+			}
+			else {
+				// Events without key act as a barrier: Earlier progress events must 
+				// not be replaced by events posted after this one. 
+				queuedCoalescableEvents.clear();
+			}
+			
+			while (queue.size() >= queueSize && dispatchRunning) {
+				if (overflowPolicy == OverflowPolicy.DROP && coalescingKey != null) {
+					droppedEventCount.incrementAndGet();
+					return;
+				}
+				
+				try {
+					queueLock.wait();
+				}
+				catch (InterruptedException e) {
+					logger.log(Level.FINE, "Interrupted while waiting for free space in event queue. Dropping event.", e);
+					droppedEventCount.incrementAndGet();
+					
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			
+			if (!dispatchRunning) {
+				// Dispatcher was stopped while waiting; deliver in this thread (outside the lock)
+				queueLock.notifyAll();
+			}
+			else {
+				QueuedEvent queuedEvent = new QueuedEvent(event, coalescingKey);
+				queue.add(queuedEvent);
+				
+				if (coalescingKey != null) {
+					queuedCoalescableEvents.put(coalescingKey, queuedEvent);
+				}
+	
+				queueLock.notifyAll();
+				return;
+			}
+		}
+		
 		eventBus.post(event);
 	}
+	
+	private void dispatchQueuedEvents() {
+		while (true) {
+			Object event = null;
+			
+			synchronized (queueLock) {
+				while (queue.isEmpty() && dispatchRunning) {
+					try {
+						queueLock.wait();
+					}
+					catch (InterruptedException e) {
+						logger.log(Level.FINE, "Dispatcher thread interrupted. Ignoring.", e);
+					}
+				}
+				
+				if (queue.isEmpty()) {
+					break; // Stopped and all events delivered
+				}
+				
+				QueuedEvent queuedEvent = queue.poll();
+				
+				if (queuedEvent.coalescingKey != null && queuedCoalescableEvents.get(queuedEvent.coalescingKey) == queuedEvent) {
+					queuedCoalescableEvents.remove(queuedEvent.coalescingKey);
+				}
+				
+				event = queuedEvent.event;
+				queueLock.notifyAll();
+			}
+			
+			eventBus.post(event);
+		}
+	}
+	
+	private static class QueuedEvent {
+		private Object event;
+		private Object coalescingKey;
+		
+		public QueuedEvent(Object event, Object coalescingKey) {
+			this.event = event;
+			this.coalescingKey = coalescingKey;
+		}
+	}
 }
@@ -17,6 +17,11 @@
  */
 package org.syncany.config;
 
+import java.util.Arrays;
+
+import org.syncany.operations.daemon.messages.api.CoalescableEvent;
+import org.syncany.operations.daemon.messages.api.ExternalEvent;
+
 /**
  * The local event bus is used to pass messages and events between
  * operations and commands, as well as to replace traditional listeners.
@@ -24,10 +29,30 @@ package org.syncany.config;
  * <p>It is heavily used by the daemon to distribute requests and responses
  * into the application; and to pass responses back to the daemon. 
  * 
+ * <p>If asynchronous dispatch is enabled, only {@link ExternalEvent}s are
+ * delivered asynchronously. Requests and responses are always delivered 
+ * synchronously, because their senders might wait for them. {@link CoalescableEvent}s
+ * of the same type and coalescing key replace each other while they are queued. 
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class LocalEventBus extends InternalEventBus {	
 	public static LocalEventBus getInstance() {
 		return InternalEventBus.getInstance(LocalEventBus.class);
 	}
+	
+	@Override
+	protected boolean isAsyncEvent(Object event) {
+		return event instanceof ExternalEvent;
+	}
+	
+	@Override
+	protected Object getCoalescingKey(Object event) {
+		if (event instanceof CoalescableEvent) {
+			return Arrays.asList(event.getClass(), ((CoalescableEvent) event).getCoalescingKey());
+		}
+		else {
+			return null;
+		}
+	}
 }
@@ -63,6 +63,9 @@ public class ConfigTO {
 	@Element(name = "cacheKeepBytes", required = false)
 	private Long cacheKeepBytes;
 
+	@Element(name = "transferMetrics", required = false)
+	private Boolean transferMetrics;
+
 	public static ConfigTO load(File file) throws ConfigException {
 		try {
 			Registry registry = new Registry();
@@ -144,4 +147,11 @@ public class ConfigTO {
 		this.cacheKeepBytes = cacheKeepBytes;
 	}
 
+	public Boolean getTransferMetrics() {
+		return transferMetrics;
+	}
+
+	public void setTransferMetrics(Boolean transferMetrics) {
+		this.transferMetrics = transferMetrics;
+	}
 }
@@ -31,6 +31,12 @@ public class DaemonConfigTO {
 	@Element(name = "webServer", required = false)
 	private WebServerTO webServer = new WebServerTO();
 
+	@Element(name = "eventBus", required = false)
+	private EventBusTO eventBus = new EventBusTO();
+
+	@Element(name = "scheduler", required = false)
+	private SchedulerTO scheduler = new SchedulerTO();
+
 	@ElementList(name = "folders", entry = "folder", required = true)
 	private ArrayList<FolderTO> folders = new ArrayList<FolderTO>();
 
@@ -81,6 +87,22 @@ public class DaemonConfigTO {
 		this.webServer = webServer;
 	}
 
+	public EventBusTO getEventBus() {
+		return eventBus;
+	}
+
+	public void setEventBus(EventBusTO eventBus) {
+		this.eventBus = eventBus;
+	}
+
+	public SchedulerTO getScheduler() {
+		return scheduler;
+	}
+
+	public void setScheduler(SchedulerTO scheduler) {
+		this.scheduler = scheduler;
+	}
+
 	public PortTO getPortTO() {
 		return portTO;
 	}
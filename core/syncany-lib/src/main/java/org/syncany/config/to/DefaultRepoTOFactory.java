@@ -27,6 +27,8 @@ import org.syncany.chunk.Chunker;
 import org.syncany.chunk.CipherTransformer;
 import org.syncany.chunk.FixedChunker;
 import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.IndexedMultiChunker;
+import org.syncany.chunk.Lz4Transformer;
 import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.ZipMultiChunker;
 import org.syncany.config.to.RepoTO.ChunkerTO;
@@ -49,9 +51,27 @@ public class DefaultRepoTOFactory implements RepoTOFactory {
 	private List<TransformerTO> transformersTO;
 
 	public DefaultRepoTOFactory(boolean gzipEnabled, List<CipherSpec> cipherSpecs) {
+		this(gzipEnabled, cipherSpecs, ZipMultiChunker.TYPE);
+	}
+
+	/**
+	 * Creates a factory whose repositories use the given multichunker type (e.g. 
+	 * {@link ZipMultiChunker#TYPE} or {@link IndexedMultiChunker#TYPE}), instead of
+	 * the default zip multichunker.
+	 */
+	public DefaultRepoTOFactory(boolean gzipEnabled, List<CipherSpec> cipherSpecs, String multiChunkerType) {
+		this((gzipEnabled) ? GzipTransformer.TYPE : null, cipherSpecs, multiChunkerType);
+	}
+
+	/**
+	 * Creates a factory whose repositories use the given compression transformer type
+	 * (e.g. {@link GzipTransformer#TYPE} or {@link Lz4Transformer#TYPE}), or no compression
+	 * if the type is <tt>null</tt>.
+	 */
+	public DefaultRepoTOFactory(String compressionType, List<CipherSpec> cipherSpecs, String multiChunkerType) {
 		chunkerTO = getDefaultChunkerTO();
-		multiChunkerTO = getDefaultMultiChunkerTO();
-		transformersTO = getTransformersTO(gzipEnabled, cipherSpecs);
+		multiChunkerTO = getDefaultMultiChunkerTO(multiChunkerType);
+		transformersTO = getTransformersTO(compressionType, cipherSpecs);
 	}
 
 	public RepoTO createRepoTO() {
@@ -59,10 +79,14 @@ public class DefaultRepoTOFactory implements RepoTOFactory {
 	}
 
 	public List<TransformerTO> getTransformersTO(boolean gzipEnabled, List<CipherSpec> cipherSpecs) {
+		return getTransformersTO((gzipEnabled) ? GzipTransformer.TYPE : null, cipherSpecs);
+	}
+
+	public List<TransformerTO> getTransformersTO(String compressionType, List<CipherSpec> cipherSpecs) {
 		List<TransformerTO> transformersTO = new ArrayList<TransformerTO>();
 
-		if (gzipEnabled) {
-			transformersTO.add(getGzipTransformerTO());
+		if (compressionType != null) {
+			transformersTO.add(getCompressionTransformerTO(compressionType));
 		}
 
 		if (cipherSpecs.size() > 0) {
@@ -102,9 +126,13 @@ public class DefaultRepoTOFactory implements RepoTOFactory {
 	}
 
 	protected MultiChunkerTO getDefaultMultiChunkerTO() {
+		return getDefaultMultiChunkerTO(ZipMultiChunker.TYPE);
+	}
+
+	protected MultiChunkerTO getDefaultMultiChunkerTO(String multiChunkerType) {
 		MultiChunkerTO multichunkerTO = new MultiChunkerTO();
 
-		multichunkerTO.setType(ZipMultiChunker.TYPE);
+		multichunkerTO.setType(multiChunkerType);
 		multichunkerTO.setSettings(new HashMap<String, String>());
 		multichunkerTO.getSettings().put(MultiChunker.PROPERTY_SIZE, "4096");
 
@@ -112,10 +140,14 @@ public class DefaultRepoTOFactory implements RepoTOFactory {
 	}
 
 	protected TransformerTO getGzipTransformerTO() {
-		TransformerTO gzipTransformerTO = new TransformerTO();
-		gzipTransformerTO.setType(GzipTransformer.TYPE);
+		return getCompressionTransformerTO(GzipTransformer.TYPE);
+	}
+
+	protected TransformerTO getCompressionTransformerTO(String compressionType) {
+		TransformerTO compressionTransformerTO = new TransformerTO();
+		compressionTransformerTO.setType(compressionType);
 
-		return gzipTransformerTO;
+		return compressionTransformerTO;
 	}
 
 	protected TransformerTO getCipherTransformerTO(List<CipherSpec> cipherSpec) {
@@ -0,0 +1,67 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.config.to;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.Root;
+import org.syncany.config.InternalEventBus.OverflowPolicy;
+
+/**
+ * Configures the event dispatching of the daemon's event bus. If asynchronous
+ * dispatch is enabled, events for external subscribers (e.g. web socket clients)
+ * are delivered by a separate thread, so that slow subscribers do not slow down
+ * the synchronization. 
+ * 
+ * @see org.syncany.config.InternalEventBus
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+@Root(strict = false)
+public class EventBusTO {
+	@Element(required = false)
+	private boolean async = true;
+	
+	@Element(required = false)
+	private int queueSize = 1000;
+	
+	@Element(required = false)
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	public boolean isAsync() {
+		return async;
+	}
+
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+}
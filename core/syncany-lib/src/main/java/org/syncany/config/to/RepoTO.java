@@ -52,10 +52,26 @@ import org.syncany.util.StringUtil;
  */
 @Root(name = "repo", strict = false)
 public class RepoTO {
+	/**
+	 * Repository format understood by all clients. Repositories without
+	 * a format version element are in this format.
+	 */
+	public static final int FORMAT_VERSION_DEFAULT = 1;
+
+	/**
+	 * Repository format that may only be used if all clients of the repository
+	 * support it: Clients maintain the remote generation file, and the cipher
+	 * transformer writes segmented streams.
+	 */
+	public static final int FORMAT_VERSION_2 = 2;
+
 	@Element(name = "repoid", required = true)
 	private String repoIdEncoded;
 	private byte[] repoId;
 
+	@Element(name = "formatversion", required = false)
+	private Integer formatVersion;
+
 	@Element(name = "chunker", required = false)
 	private ChunkerTO chunker;
 
@@ -73,6 +89,14 @@ public class RepoTO {
 		this.repoId = repoId;
 	}
 
+	public Integer getFormatVersion() {
+		return formatVersion;
+	}
+
+	public void setFormatVersion(Integer formatVersion) {
+		this.formatVersion = formatVersion;
+	}
+
 	public void save(File file) throws ConfigException {
 		try {
 			new Persister().write(this, file);
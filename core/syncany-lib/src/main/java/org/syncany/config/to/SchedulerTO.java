@@ -0,0 +1,70 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.config.to;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementMap;
+import org.simpleframework.xml.Root;
+
+/**
+ * Configures the daemon's sync scheduler, i.e. how many sync runs of the watched
+ * folders may run at the same time, and how many of them may talk to the same
+ * remote host at the same time. Per-host limits can be overridden for individual
+ * hosts using the <tt>hostLimits</tt> map.
+ * 
+ * @see org.syncany.operations.daemon.SyncScheduler
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+@Root(strict = false)
+public class SchedulerTO {
+	@Element(required = false)
+	private int maxConcurrentSyncs = 4;
+	
+	@Element(required = false)
+	private int maxSyncsPerHost = 2;
+	
+	@ElementMap(name = "hostLimits", entry = "host", key = "name", required = false, attribute = true)
+	private HashMap<String, Integer> hostLimits = new HashMap<String, Integer>();
+
+	public int getMaxConcurrentSyncs() {
+		return maxConcurrentSyncs;
+	}
+
+	public void setMaxConcurrentSyncs(int maxConcurrentSyncs) {
+		this.maxConcurrentSyncs = maxConcurrentSyncs;
+	}
+
+	public int getMaxSyncsPerHost() {
+		return maxSyncsPerHost;
+	}
+
+	public void setMaxSyncsPerHost(int maxSyncsPerHost) {
+		this.maxSyncsPerHost = maxSyncsPerHost;
+	}
+
+	public Map<String, Integer> getHostLimits() {
+		return hostLimits;
+	}
+
+	public void setHostLimits(Map<String, Integer> hostLimits) {
+		this.hostLimits = new HashMap<String, Integer>(hostLimits);
+	}
+}
@@ -110,6 +110,9 @@ public abstract class CipherParams {
 	 * <p><b>Warning:</b> Changing this constant may lead to unrecoverable ciphertext data
 	 * Do not change this constant unless you know what you are doing! 
 	 * 
+	 * <p>This instance is only used as a prototype and must not be used directly;
+	 * {@link CipherUtil} creates a copy of it for each thread.
+	 * 
      * @see #KEY_DERIVATION_INFO
      */
     public static final Digest KEY_DERIVATION_DIGEST = new SHA256Digest(); 
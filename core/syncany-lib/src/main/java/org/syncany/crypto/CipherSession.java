@@ -17,16 +17,21 @@
  */
 package org.syncany.crypto;
 
+import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
+
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 
 import org.syncany.util.StringUtil;
@@ -49,8 +54,13 @@ import org.syncany.util.StringUtil;
  *
  *   <li>Keys used by {@link MultiCipherInputStream} (when reading files) are
  *       cached in order to minimize the amount of keys that have to be created when
- *       files are processed.
+ *       files are processed. The least recently used key is evicted first.
  * </ul>
+ * 
+ * <p>A cipher session is safe for concurrent use: the {@link org.syncany.chunk.CipherTransformer} 
+ * (and with it the cipher session) is shared by the whole application, so multiple
+ * threads may encrypt and decrypt at the same time. Key derivation happens outside 
+ * of any lock.
  *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -59,12 +69,14 @@ public class CipherSession {
 	private static final int DEFAULT_SECRET_KEY_READ_CACHE_SIZE = 20;
 	private static final int DEFAULT_SECRET_KEY_WRITE_REUSE_COUNT = 100;
 
+	private static final ThreadLocal<Mac> headerHmac = new ThreadLocal<Mac>();
+
 	private SecretKey masterKey;
 
-	private Map<CipherSpecWithSalt, SecretKeyCacheEntry> secretKeyReadCache;
+	private Map<CipherSpecWithSalt, SaltedSecretKey> secretKeyReadCache;
 	private int secretKeyReadCacheSize;
 
-	private Map<CipherSpec, SecretKeyCacheEntry> secretKeyWriteCache;
+	private ConcurrentMap<CipherSpec, SecretKeyCacheEntry> secretKeyWriteCache;
 	private int secretKeyWriteReuseCount;
 
 	/**
@@ -92,13 +104,21 @@ public class CipherSession {
 	 * @param secretKeyReadCacheSize Number of read keys to store in the cache (higher means more performance, but more memory usage)
 	 * @param secretKeyWriteReuseCount Number of times to reuse a write key (higher means more performance, but lower security)
 	 */
-	public CipherSession(SaltedSecretKey masterKey, int secretKeyReadCacheSize, int secretKeyWriteReuseCount) {
+	public CipherSession(SaltedSecretKey masterKey, final int secretKeyReadCacheSize, int secretKeyWriteReuseCount) {
 		this.masterKey = masterKey;
 
-		this.secretKeyReadCache = new LinkedHashMap<CipherSpecWithSalt, SecretKeyCacheEntry>();
+		this.secretKeyReadCache = new LinkedHashMap<CipherSpecWithSalt, SaltedSecretKey>(secretKeyReadCacheSize, 0.75f, true) {
+			private static final long serialVersionUID = -5472409633425467512L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CipherSpecWithSalt, SaltedSecretKey> eldest) {
+				return size() > secretKeyReadCacheSize;
+			}			
+		};
+		
 		this.secretKeyReadCacheSize = secretKeyReadCacheSize;
 
-		this.secretKeyWriteCache = new HashMap<CipherSpec, SecretKeyCacheEntry>();
+		this.secretKeyWriteCache = new ConcurrentHashMap<CipherSpec, SecretKeyCacheEntry>();
 		this.secretKeyWriteReuseCount = secretKeyWriteReuseCount;
 	}
 
@@ -117,48 +137,47 @@ public class CipherSession {
 	 * <p>If a new key needs to be created, {@link CipherUtil} is used to do so.
 	 *
 	 * <p>Contrary to the read cache, the write cache key is a only {@link CipherSpec}, i.e. only one secret key
-	 * per cipher spec can be held in the cache.
+	 * per cipher spec can be held in the cache. Reserving a use of the cached key and replacing a used-up key 
+	 * are atomic, so no key is handed out more often than the threshold, even if called concurrently.
 	 *
 	 * @param cipherSpec Defines the type of key to be created (or retrieved); used as key for the cache retrieval
 	 * @return Returns a newly created secret key or a cached key
 	 * @throws Exception If an error occurs with key creation
 	 */
 	public SaltedSecretKey getWriteSecretKey(CipherSpec cipherSpec) throws Exception {
-		SecretKeyCacheEntry secretKeyCacheEntry = secretKeyWriteCache.get(cipherSpec);
-
-		// Remove key if use more than X times
-		if (secretKeyCacheEntry != null && secretKeyCacheEntry.getUseCount() >= secretKeyWriteReuseCount) {
-			logger.log(Level.FINE, "- Removed WRITE secret key from cache, because it was used " + secretKeyCacheEntry.getUseCount() + " times.");
-
-			secretKeyWriteCache.remove(cipherSpec);
-			secretKeyCacheEntry = null;
-		}
-
-		// Return cached key, or create a new one
-		if (secretKeyCacheEntry != null) {
-			secretKeyCacheEntry.increaseUseCount();
+		while (true) {
+			SecretKeyCacheEntry secretKeyCacheEntry = secretKeyWriteCache.get(cipherSpec);
+
+			// Return cached key, unless it was used more than X times
+			if (secretKeyCacheEntry != null) {
+				if (secretKeyCacheEntry.reserveUse(secretKeyWriteReuseCount)) {
+					logger.log(Level.FINE, "- Using CACHED WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
+							+ StringUtil.toHex(secretKeyCacheEntry.getSaltedSecretKey().getSalt()));
+					return secretKeyCacheEntry.getSaltedSecretKey();
+				}
+				
+				if (secretKeyWriteCache.remove(cipherSpec, secretKeyCacheEntry)) {
+					logger.log(Level.FINE, "- Removed WRITE secret key from cache, because it was used " + secretKeyWriteReuseCount + " times.");
+				}
+			}
 
-			logger.log(Level.FINE, "- Using CACHED WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
-					+ StringUtil.toHex(secretKeyCacheEntry.getSaltedSecretKey().getSalt()));
-			return secretKeyCacheEntry.getSaltedSecretKey();
-		}
-		else {
+			// Create a new one; if another thread was faster, use its key instead 
 			SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec);
-
-			secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
-			secretKeyWriteCache.put(cipherSpec, secretKeyCacheEntry);
-
-			logger.log(Level.FINE, "- Created NEW WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
-					+ ", and added to cache, with salt " + StringUtil.toHex(saltedSecretKey.getSalt()));
-			return saltedSecretKey;
+			SecretKeyCacheEntry newSecretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
+			
+			if (secretKeyWriteCache.putIfAbsent(cipherSpec, newSecretKeyCacheEntry) == null) {
+				logger.log(Level.FINE, "- Created NEW WRITE secret key " + saltedSecretKey.getAlgorithm()
+						+ ", and added to cache, with salt " + StringUtil.toHex(saltedSecretKey.getSalt()));
+				return saltedSecretKey;
+			}
 		}
 	}
 
 	/**
 	 * Creates a new secret key or retrieves it from the read cache. If the given cipher spec / salt combination
-	 * is found in the cache, the cached secret key is returned. If not, a new key is created. Keys are removed
-	 * from the cache when the cache reached the size defined by {@link #secretKeyReadCacheSize} (as set in
-	 * {@link #CipherSession(SaltedSecretKey, int, int) the constructor}.
+	 * is found in the cache, the cached secret key is returned. If not, a new key is created. If the cache reached
+	 * the size defined by {@link #secretKeyReadCacheSize} (as set in {@link #CipherSession(SaltedSecretKey, int, int) 
+	 * the constructor}, the least recently used key is removed from the cache.
 	 *
 	 * <p>If a new key needs to be created, {@link CipherUtil} is used to do so.
 	 *
@@ -172,31 +191,47 @@ public class CipherSession {
 	 */
 	public SaltedSecretKey getReadSecretKey(CipherSpec cipherSpec, byte[] salt) throws Exception {
 		CipherSpecWithSalt cipherSpecWithSalt = new CipherSpecWithSalt(cipherSpec, salt);
-		SecretKeyCacheEntry secretKeyCacheEntry = secretKeyReadCache.get(cipherSpecWithSalt);
+		SaltedSecretKey saltedSecretKey = null;
+		
+		synchronized (secretKeyReadCache) {
+			saltedSecretKey = secretKeyReadCache.get(cipherSpecWithSalt);
+		}
 
-		if (secretKeyCacheEntry != null) {
-			logger.log(Level.FINE, "- Using CACHED READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
-					+ StringUtil.toHex(salt));
-			return secretKeyCacheEntry.getSaltedSecretKey();
+		if (saltedSecretKey != null) {
+			logger.log(Level.FINE, "- Using CACHED READ secret key " + saltedSecretKey.getAlgorithm() + ", with salt " + StringUtil.toHex(salt));
+			return saltedSecretKey;
 		}
 		else {
-			if (secretKeyReadCache.size() >= secretKeyReadCacheSize) {
-				CipherSpecWithSalt firstKey = secretKeyReadCache.keySet().iterator().next();
-				secretKeyReadCache.remove(firstKey);
-
-				logger.log(Level.FINE, "- Removed oldest READ secret key from cache.");
+			// Derive outside of the lock; if two threads derive the same key, both keys are identical
+			saltedSecretKey = createSaltedSecretKey(cipherSpec, salt);
+			
+			synchronized (secretKeyReadCache) {
+				secretKeyReadCache.put(cipherSpecWithSalt, saltedSecretKey);
 			}
 
-			SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec, salt);
-			secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
-
-			secretKeyReadCache.put(cipherSpecWithSalt, secretKeyCacheEntry);
-
-			logger.log(Level.FINE, "- Created NEW READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
-					+ ", and added to cache, with salt " + StringUtil.toHex(salt));
+			logger.log(Level.FINE, "- Created NEW READ secret key " + saltedSecretKey.getAlgorithm() + ", and added to cache, with salt "
+					+ StringUtil.toHex(salt));
 			return saltedSecretKey;
 		}
 	}
+	
+	/**
+	 * Returns a {@link Mac} for the {@link MultiCipherOutputStream#HMAC_SPEC header HMAC}, initialized
+	 * with the given key. To avoid looking up the algorithm for every stream, the instance is 
+	 * reused per thread; it must therefore not be used anymore after the next call to this method 
+	 * from the same thread.
+	 */
+	public Mac getHeaderHmac(SecretKey hmacSecretKey) throws Exception {
+		Mac hmac = headerHmac.get();
+		
+		if (hmac == null) {
+			hmac = Mac.getInstance(MultiCipherOutputStream.HMAC_SPEC.getAlgorithm(), CRYPTO_PROVIDER_ID);
+			headerHmac.set(hmac);
+		}
+		
+		hmac.init(hmacSecretKey);
+		return hmac;
+	}
 
 	private SaltedSecretKey createSaltedSecretKey(CipherSpec cipherSpec) throws InvalidKeySpecException, NoSuchAlgorithmException,
 	NoSuchProviderException {
@@ -211,23 +246,32 @@ public class CipherSession {
 
 	private static class SecretKeyCacheEntry {
 		private SaltedSecretKey saltedSecretKey;
-		private int useCount;
+		private AtomicInteger useCount;
 
 		public SecretKeyCacheEntry(SaltedSecretKey saltedSecretKey) {
 			this.saltedSecretKey = saltedSecretKey;
-			this.useCount = 1;
+			this.useCount = new AtomicInteger(1);
 		}
 
 		public SaltedSecretKey getSaltedSecretKey() {
 			return saltedSecretKey;
 		}
 
-		public int getUseCount() {
-			return useCount;
-		}
-
-		public void increaseUseCount() {
-			useCount++;
+		/**
+		 * Atomically increases the use count, unless the key has already 
+		 * been used the given number of times. Returns true if the key may be used.
+		 */
+		public boolean reserveUse(int maxUseCount) {
+			while (true) {
+				int currentUseCount = useCount.get();
+				
+				if (currentUseCount >= maxUseCount) {
+					return false;
+				}
+				else if (useCount.compareAndSet(currentUseCount, currentUseCount + 1)) {
+					return true;
+				}
+			}
 		}
 	}
 
@@ -81,6 +81,13 @@ public abstract class CipherSpec {
 
 	public abstract InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException;
 
+	/**
+	 * Creates a {@link SegmentCipher} for the given key, used by the segmented
+	 * stream format of the {@link MultiCipherOutputStream}. Implementations should
+	 * prefer the JDK's cipher implementations where they exist.
+	 */
+	public abstract SegmentCipher newSegmentCipher(byte[] secretKey) throws CipherException;
+
 	@Override
 	public String toString() {
 		return algorithm + ", " + keySize + " bit";
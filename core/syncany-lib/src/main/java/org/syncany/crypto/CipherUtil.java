@@ -71,11 +71,13 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
 import org.bouncycastle.crypto.params.HKDFParameters;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.Memoable;
 
 /**
  * The cipher utility provides functions to create a master key using PBKDF2,
@@ -96,6 +98,17 @@ public class CipherUtil {
 	 */
 	private static final String ALPHABETIC_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
 
+	/**
+	 * Key derivation generators, one per thread. The underlying digest keeps state
+	 * while a key is derived, so a generator cannot be shared between threads.
+	 */
+	private static final ThreadLocal<HKDFBytesGenerator> keyDerivationGenerator = new ThreadLocal<HKDFBytesGenerator>() {
+		@Override
+		protected HKDFBytesGenerator initialValue() {
+			return new HKDFBytesGenerator((Digest) ((Memoable) KEY_DERIVATION_DIGEST).copy());
+		}
+	};
+
 	private static AtomicBoolean initialized = new AtomicBoolean(false);
 	private static AtomicBoolean unlimitedStrengthEnabled = new AtomicBoolean(false);
 	private static SecureRandom secureRandom = new SecureRandom();
@@ -239,7 +252,7 @@ public class CipherUtil {
 	public static SaltedSecretKey createDerivedKey(byte[] inputKeyMaterial, byte[] inputSalt, String outputKeyAlgorithm, int outputKeySize)
 			throws InvalidKeySpecException, NoSuchAlgorithmException, NoSuchProviderException {
 
-		HKDFBytesGenerator hkdf = new HKDFBytesGenerator(KEY_DERIVATION_DIGEST);
+		HKDFBytesGenerator hkdf = keyDerivationGenerator.get();
 		hkdf.init(new HKDFParameters(inputKeyMaterial, inputSalt, KEY_DERIVATION_INFO));
 
 		byte[] derivedKey = new byte[outputKeySize / 8];
@@ -17,15 +17,29 @@
  */
 package org.syncany.crypto;
 
-import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
-
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 
+/**
+ * Implements an input stream that decrypts streams written by the
+ * {@link MultiCipherOutputStream}, i.e. reads and verifies the header and 
+ * then decrypts the ciphertext using all ciphers listed in the header. 
+ * 
+ * <p>Streams of the current, segmented format are decrypted segment by segment,
+ * so memory usage is bounded by the segment size. Streams of the previous
+ * format ({@link MultiCipherOutputStream#STREAM_VERSION_UNSEGMENTED}) are
+ * decrypted using the cipher specs' cipher input streams.
+ * 
+ * @see MultiCipherOutputStream
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
 public class MultiCipherInputStream extends InputStream {
 	private InputStream underlyingInputStream;
 
@@ -34,6 +48,20 @@ public class MultiCipherInputStream extends InputStream {
 	
 	private boolean headerRead;
 	private Mac headerHmac;
+	private byte streamVersion;
+
+	private List<SegmentCipher> segmentCiphers;
+	private List<byte[]> segmentCipherIvs;
+	
+	private byte[] sealedSegmentBuffer;
+	private byte[][] openBuffers;
+	private int lookaheadByte;
+	private int segmentIndex;
+	private boolean lastSegmentRead;
+	
+	private byte[] segment;
+	private int segmentOffset;
+	private int segmentLength;
 		
 	public MultiCipherInputStream(InputStream in, CipherSession cipherSession) throws IOException {
 		this.underlyingInputStream = in;		
@@ -43,41 +71,103 @@ public class MultiCipherInputStream extends InputStream {
 		
 		this.headerRead = false;		
 		this.headerHmac = null;		
+		
+		this.segmentCiphers = new ArrayList<SegmentCipher>();
+		this.segmentCipherIvs = new ArrayList<byte[]>();
+		this.lookaheadByte = -1;
+		this.segmentIndex = 0;
+		this.lastSegmentRead = false;
+		
+		this.segment = null;
+		this.segmentOffset = 0;
+		this.segmentLength = 0;
 	}
 
 	@Override
 	public int read() throws IOException {
 		readHeader();
-		return cipherInputStream.read();
+		
+		if (cipherInputStream != null) {
+			return cipherInputStream.read();
+		}
+		else {
+			while (segmentOffset == segmentLength) {
+				if (!readSegment()) {
+					return -1;
+				}
+			}
+			
+			return segment[segmentOffset++] & 0xff;
+		}
 	}
 	
 	@Override
 	public int read(byte[] b) throws IOException {
-		readHeader();
-		return cipherInputStream.read(b, 0, b.length);
+		return read(b, 0, b.length);
 	}
 	
 	@Override
 	public int read(byte[] b, int off, int len) throws IOException {
 		readHeader();
-		return cipherInputStream.read(b, off, len);
+		
+		if (cipherInputStream != null) {
+			return cipherInputStream.read(b, off, len);
+		}
+		else if (len == 0) {
+			return 0;
+		}
+		else {
+			while (segmentOffset == segmentLength) {
+				if (!readSegment()) {
+					return -1;
+				}
+			}
+			
+			int readLength = Math.min(len, segmentLength - segmentOffset);
+			System.arraycopy(segment, segmentOffset, b, off, readLength);
+			
+			segmentOffset += readLength;
+			return readLength;
+		}
 	}
 	
 	@Override
 	public void close() throws IOException {
-		cipherInputStream.close();
+		if (cipherInputStream != null) {
+			cipherInputStream.close();
+		}
+		else {
+			underlyingInputStream.close();
+		}
 	}	
 	
 	private void readHeader() throws IOException {
 		if (!headerRead) {
 			try {
 				readAndVerifyMagicNoHmac(underlyingInputStream);
-				readAndVerifyVersionNoHmac(underlyingInputStream);
+				streamVersion = readAndVerifyVersionNoHmac(underlyingInputStream);
 
 				headerHmac = readHmacSaltAndInitHmac(underlyingInputStream, cipherSession);				
-				cipherInputStream = readCipherSpecsAndUpdateHmac(underlyingInputStream, headerHmac, cipherSession);
-
-				readAndVerifyHmac(underlyingInputStream, headerHmac);			
+				
+				if (streamVersion == MultiCipherOutputStream.STREAM_VERSION_UNSEGMENTED) {
+					cipherInputStream = readCipherSpecsAndUpdateHmac(underlyingInputStream, headerHmac, cipherSession);
+					readAndVerifyHmac(underlyingInputStream, headerHmac);			
+				}
+				else {
+					headerHmac.update(streamVersion);
+					
+					int segmentOverhead = readSegmentCipherSpecsAndUpdateHmac(underlyingInputStream, headerHmac, cipherSession);
+					int segmentSize = ByteBuffer.wrap(readAndUpdateHmac(underlyingInputStream, 4, headerHmac)).getInt();
+					
+					readAndVerifyHmac(underlyingInputStream, headerHmac);
+					
+					if (segmentSize <= 0 || segmentSize > MultiCipherOutputStream.MAX_SEGMENT_SIZE) {
+						throw new IOException("Invalid segment size: " + segmentSize);
+					}
+					
+					sealedSegmentBuffer = new byte[segmentSize + segmentOverhead];
+					openBuffers = new byte[][] { new byte[segmentSize + segmentOverhead], new byte[segmentSize + segmentOverhead] };
+				}
 			}
 			catch (Exception e) {
 				throw new IOException(e);
@@ -86,6 +176,57 @@ public class MultiCipherInputStream extends InputStream {
 			headerRead = true;
 		}
 	}
+	
+	/**
+	 * Reads and opens the next segment. The last segment is either shorter than a full
+	 * segment, or it is followed by the end of the stream; the latter is detected by
+	 * reading one byte ahead. Returns false if the last segment has already been read.
+	 */
+	private boolean readSegment() throws IOException {
+		if (lastSegmentRead) {
+			return false;
+		}
+		
+		int sealedLength = 0;
+		
+		if (lookaheadByte >= 0) {
+			sealedSegmentBuffer[sealedLength++] = (byte) lookaheadByte;
+			lookaheadByte = -1;
+		}
+		
+		int read = 0;
+		
+		while (sealedLength < sealedSegmentBuffer.length && -1 != (read = underlyingInputStream.read(sealedSegmentBuffer, sealedLength, sealedSegmentBuffer.length - sealedLength))) {
+			sealedLength += read;
+		}
+		
+		boolean lastSegment = sealedLength < sealedSegmentBuffer.length || -1 == (lookaheadByte = underlyingInputStream.read());
+		
+		try {
+			byte[] openedSegment = sealedSegmentBuffer;
+			int openedLength = sealedLength;
+			
+			for (int i = 0; i < segmentCiphers.size(); i++) {
+				byte[] nonce = MultiCipherOutputStream.createSegmentNonce(segmentCipherIvs.get(i), segmentIndex, lastSegment);
+				byte[] openBuffer = openBuffers[i % 2];
+				
+				openedLength = segmentCiphers.get(i).open(nonce, openedSegment, 0, openedLength, openBuffer, 0);
+				openedSegment = openBuffer;
+			}
+
+			segment = openedSegment;
+			segmentOffset = 0;
+			segmentLength = openedLength;
+		}
+		catch (CipherException e) {
+			throw new IOException("Integrity exception: Cannot open segment " + segmentIndex + ".", e);
+		}
+		
+		segmentIndex++;
+		lastSegmentRead = lastSegment;
+		
+		return true;
+	}
 
 	private void readAndVerifyMagicNoHmac(InputStream inputStream) throws IOException {
 		byte[] streamMagic = new byte[MultiCipherOutputStream.STREAM_MAGIC.length];
@@ -96,22 +237,21 @@ public class MultiCipherInputStream extends InputStream {
 		}
 	}
 
-	private void readAndVerifyVersionNoHmac(InputStream inputStream) throws IOException {
+	private byte readAndVerifyVersionNoHmac(InputStream inputStream) throws IOException {
 		byte streamVersion = (byte) inputStream.read();
 		
-		if (streamVersion != MultiCipherOutputStream.STREAM_VERSION) {
+		if (streamVersion != MultiCipherOutputStream.STREAM_VERSION_SEGMENTED && streamVersion != MultiCipherOutputStream.STREAM_VERSION_UNSEGMENTED) {
 			throw new IOException("Stream version not supported: "+streamVersion);
 		}		
+		
+		return streamVersion;
 	}
 	
 	private Mac readHmacSaltAndInitHmac(InputStream inputStream, CipherSession cipherSession) throws Exception {
 		byte[] hmacSalt = readNoHmac(inputStream, MultiCipherOutputStream.SALT_SIZE);
 		SecretKey hmacSecretKey = cipherSession.getReadSecretKey(MultiCipherOutputStream.HMAC_SPEC, hmacSalt);
 		
-		Mac hmac = Mac.getInstance(MultiCipherOutputStream.HMAC_SPEC.getAlgorithm(), CRYPTO_PROVIDER_ID);
-		hmac.init(hmacSecretKey);	
-		
-		return hmac;
+		return cipherSession.getHeaderHmac(hmacSecretKey);
 	}
 	
 	private InputStream readCipherSpecsAndUpdateHmac(InputStream underlyingInputStream, Mac hmac, CipherSession cipherSession) throws Exception {
@@ -135,6 +275,33 @@ public class MultiCipherInputStream extends InputStream {
 		
 		return nestedCipherInputStream;
 	}
+	
+	private int readSegmentCipherSpecsAndUpdateHmac(InputStream underlyingInputStream, Mac hmac, CipherSession cipherSession) throws Exception {
+		int cipherSpecCount = readByteAndUpdateHmac(underlyingInputStream, hmac);		
+		int segmentOverhead = 0;
+		
+		for (int i=0; i<cipherSpecCount; i++) {
+			int cipherSpecId = readByteAndUpdateHmac(underlyingInputStream, hmac);				
+			CipherSpec cipherSpec = CipherSpecs.getCipherSpec(cipherSpecId);
+			
+			if (cipherSpec == null) {
+				throw new IOException("Cannot find cipher spec with ID "+cipherSpecId);
+			}
+
+			byte[] salt = readAndUpdateHmac(underlyingInputStream, MultiCipherOutputStream.SALT_SIZE, hmac);
+			byte[] iv = readAndUpdateHmac(underlyingInputStream, cipherSpec.getIvSize()/8, hmac);
+			
+			SecretKey secretKey = cipherSession.getReadSecretKey(cipherSpec, salt);			
+			SegmentCipher segmentCipher = cipherSpec.newSegmentCipher(secretKey.getEncoded());
+			
+			segmentCiphers.add(segmentCipher);
+			segmentCipherIvs.add(iv);
+			
+			segmentOverhead += segmentCipher.getOverhead();
+		}	 
+		
+		return segmentOverhead;
+	}
 
 	private void readAndVerifyHmac(InputStream inputStream, Mac hmac) throws Exception {
 		byte[] calculatedHeaderHmac = hmac.doFinal();
@@ -17,10 +17,11 @@
  */
 package org.syncany.crypto;
 
-import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
-
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.crypto.Mac;
@@ -36,7 +37,7 @@ import org.syncany.crypto.specs.HmacSha256CipherSpec;
  *    Length           HMAC'd           Description
  *    ----------------------------------------------
  *    04               no               "Sy" 0x02 0x05 (4 bytes)
- *    01               no               Version (1 byte)
+ *    01               yes (in header)  Version (1 byte, HMAC'd since version 2)
  *    12               no               HMAC salt             
  *    01               yes (in header)  Cipher count (=n, 1 byte)
  *    
@@ -45,10 +46,25 @@ import org.syncany.crypto.specs.HmacSha256CipherSpec;
  *      12             yes (in header)  Salt for cipher i (12 bytes)
  *      aa             yes (in header)  IV for cipher i (cipher specific length, 0..x)
  *      
+ *    04               yes (in header)  Segment size (=s, 4 bytes, since version 2)
  *    20               no               Header HMAC (20 bytes, for "HmacSHA1")
- *    bb               yes (in mode)    Ciphertext (HMAC'd by mode, e.g. GCM)
+ *    
+ *    for each segment j (version 2):
+ *      bb             yes (in mode)    Sealed segment (s bytes plaintext, plus n tags)
+ *      
+ *    bb               yes (in mode)    Ciphertext (version 1, HMAC'd by mode, e.g. GCM)
  * </pre>
  * 
+ * <p>In version 2, the plaintext is split into segments of a fixed size, each of
+ * which is sealed separately by all ciphers (STREAM construction). The nonce of a segment 
+ * is derived from the cipher's IV, the segment number and a flag that marks the last 
+ * segment. Reordering, dropping or truncating segments is therefore detected, and
+ * a reader never has to hold back more than one segment. 
+ * 
+ * <p>Since older clients can only read version 1 (one continuous GCM ciphertext per cipher),
+ * version 1 is written unless version 2 is explicitly requested, i.e. only if all clients
+ * of a repository support it. The {@link MultiCipherInputStream} reads both versions.
+ * 
  * It follows a few Do's and Don'ts:
  * - http://blog.cryptographyengineering.com/2011/11/how-not-to-use-symmetric-encryption.html
  * - http://security.stackexchange.com/questions/30170/after-how-much-data-encryption-aes-256-we-should-change-key
@@ -62,52 +78,124 @@ import org.syncany.crypto.specs.HmacSha256CipherSpec;
  */
 public class MultiCipherOutputStream extends OutputStream {
 	public static final byte[] STREAM_MAGIC = new byte[] { 0x53, 0x79, 0x02, 0x05 };
-	public static final byte STREAM_VERSION = 1;
+	public static final byte STREAM_VERSION_UNSEGMENTED = 1;
+	public static final byte STREAM_VERSION_SEGMENTED = 2;
+	public static final byte STREAM_VERSION = STREAM_VERSION_UNSEGMENTED;
 
 	public static final int SALT_SIZE = 12;	
+	public static final int SEGMENT_SIZE = 64 * 1024;
+	public static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
 	public static final CipherSpec HMAC_SPEC = new HmacSha256CipherSpec();
 	
 	private OutputStream underlyingOutputStream;
 	
 	private List<CipherSpec> cipherSpecs;
 	private CipherSession cipherSession;
+	private byte streamVersion;
 	private OutputStream cipherOutputStream;
+	
+	private List<SegmentCipher> segmentCiphers;
+	private List<byte[]> segmentCipherIvs;
+
+	private byte[] segmentBuffer;
+	private int segmentBufferLength;
+	private byte[][] sealBuffers;
+	private int segmentIndex;
 
 	private boolean headerWritten;	
+	private boolean closed;
 	private Mac headerHmac;
 	
 	public MultiCipherOutputStream(OutputStream out, List<CipherSpec> cipherSpecs, CipherSession cipherSession) throws IOException {
+		this(out, cipherSpecs, cipherSession, STREAM_VERSION);
+	}
+	
+	public MultiCipherOutputStream(OutputStream out, List<CipherSpec> cipherSpecs, CipherSession cipherSession, byte streamVersion) throws IOException {
+		if (streamVersion != STREAM_VERSION_UNSEGMENTED && streamVersion != STREAM_VERSION_SEGMENTED) {
+			throw new IllegalArgumentException("Stream version not supported: " + streamVersion);
+		}
+		
 		this.underlyingOutputStream = out;	
 		
 		this.cipherSpecs = cipherSpecs;		
 		this.cipherSession = cipherSession;		
+		this.streamVersion = streamVersion;
 		this.cipherOutputStream = null;
+
+		this.segmentCiphers = new ArrayList<SegmentCipher>();
+		this.segmentCipherIvs = new ArrayList<byte[]>();
+		this.segmentBuffer = null;
+		this.segmentBufferLength = 0;
+		this.sealBuffers = null;
+		this.segmentIndex = 0;
 		
 		this.headerWritten = false;
+		this.closed = false;
 		this.headerHmac = null;		
 	}
 	
 	@Override
 	public void write(int b) throws IOException {
 		writeHeader();
-		cipherOutputStream.write(b);		
+		
+		if (cipherOutputStream != null) {
+			cipherOutputStream.write(b);
+			return;
+		}
+		
+		if (segmentBufferLength == segmentBuffer.length) {
+			writeSegment(false);
+		}
+		
+		segmentBuffer[segmentBufferLength++] = (byte) b;
 	}
 	
 	@Override
 	public void write(byte[] b) throws IOException {
-		writeHeader();
-		cipherOutputStream.write(b, 0, b.length);
+		write(b, 0, b.length);
 	}
 	
 	@Override
 	public void write(byte[] b, int off, int len) throws IOException {
 		writeHeader();
-		cipherOutputStream.write(b, off, len);
+		
+		if (cipherOutputStream != null) {
+			cipherOutputStream.write(b, off, len);
+			return;
+		}
+		
+		while (len > 0) {
+			// Only seal a full segment once more data arrives; the last
+			// segment must be sealed with the 'last segment' flag in close() 
+			
+			if (segmentBufferLength == segmentBuffer.length) {
+				writeSegment(false);
+			}
+			
+			int copyLength = Math.min(len, segmentBuffer.length - segmentBufferLength);
+			System.arraycopy(b, off, segmentBuffer, segmentBufferLength, copyLength);
+			
+			segmentBufferLength += copyLength;
+			off += copyLength;
+			len -= copyLength;
+		}
 	}
 	
 	@Override
 	public void close() throws IOException {
-		cipherOutputStream.close();
+		if (!closed) {
+			writeHeader();
+
+			if (cipherOutputStream != null) {
+				cipherOutputStream.close();
+			}
+			else {
+				writeSegment(true);
+				underlyingOutputStream.close();
+			}
+
+			closed = true;
+		}
 	}
 		
 	private void writeHeader() throws IOException {
@@ -116,28 +204,20 @@ public class MultiCipherOutputStream extends OutputStream {
 				// Initialize header HMAC
 				SaltedSecretKey hmacSecretKey = cipherSession.getWriteSecretKey(HMAC_SPEC);
 
-				headerHmac = Mac.getInstance(HMAC_SPEC.getAlgorithm(), CRYPTO_PROVIDER_ID);
-				headerHmac.init(hmacSecretKey);
+				headerHmac = cipherSession.getHeaderHmac(hmacSecretKey);
 
 				// Write header
 				writeNoHmac(underlyingOutputStream, STREAM_MAGIC);
-				writeNoHmac(underlyingOutputStream, STREAM_VERSION);
+				writeNoHmac(underlyingOutputStream, streamVersion);
 				writeNoHmac(underlyingOutputStream, hmacSecretKey.getSalt());			
-				writeAndUpdateHmac(underlyingOutputStream, cipherSpecs.size());
-
-				cipherOutputStream = underlyingOutputStream;
-
-				for (CipherSpec cipherSpec : cipherSpecs) { 
-					SaltedSecretKey saltedSecretKey = cipherSession.getWriteSecretKey(cipherSpec);				
-					byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize()/8);
-
-					writeAndUpdateHmac(underlyingOutputStream, cipherSpec.getId());
-					writeAndUpdateHmac(underlyingOutputStream, saltedSecretKey.getSalt());
-					writeAndUpdateHmac(underlyingOutputStream, iv);
-
-					cipherOutputStream = cipherSpec.newCipherOutputStream(cipherOutputStream, saltedSecretKey.getEncoded(), iv);	        
-				}	
-
+				
+				if (streamVersion == STREAM_VERSION_UNSEGMENTED) {
+					writeUnsegmentedCipherSpecs();
+				}
+				else {
+					writeSegmentedCipherSpecs();
+				}
+				
 				writeNoHmac(underlyingOutputStream, headerHmac.doFinal());
 			}
 			catch (Exception e) {
@@ -146,6 +226,97 @@ public class MultiCipherOutputStream extends OutputStream {
 			headerWritten = true;
 		}
 	}	
+	
+	private void writeUnsegmentedCipherSpecs() throws Exception {
+		writeAndUpdateHmac(underlyingOutputStream, cipherSpecs.size());
+
+		cipherOutputStream = underlyingOutputStream;
+
+		for (CipherSpec cipherSpec : cipherSpecs) { 
+			SaltedSecretKey saltedSecretKey = cipherSession.getWriteSecretKey(cipherSpec);				
+			byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize()/8);
+
+			writeAndUpdateHmac(underlyingOutputStream, cipherSpec.getId());
+			writeAndUpdateHmac(underlyingOutputStream, saltedSecretKey.getSalt());
+			writeAndUpdateHmac(underlyingOutputStream, iv);
+
+			cipherOutputStream = cipherSpec.newCipherOutputStream(cipherOutputStream, saltedSecretKey.getEncoded(), iv);	        
+		}	
+	}
+	
+	private void writeSegmentedCipherSpecs() throws Exception {
+		headerHmac.update(streamVersion);
+		writeAndUpdateHmac(underlyingOutputStream, cipherSpecs.size());
+
+		int segmentOverhead = 0;
+		
+		for (CipherSpec cipherSpec : cipherSpecs) { 
+			SaltedSecretKey saltedSecretKey = cipherSession.getWriteSecretKey(cipherSpec);				
+			byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize()/8);
+
+			writeAndUpdateHmac(underlyingOutputStream, cipherSpec.getId());
+			writeAndUpdateHmac(underlyingOutputStream, saltedSecretKey.getSalt());
+			writeAndUpdateHmac(underlyingOutputStream, iv);
+
+			SegmentCipher segmentCipher = cipherSpec.newSegmentCipher(saltedSecretKey.getEncoded());
+			segmentOverhead += segmentCipher.getOverhead();
+			
+			segmentCiphers.add(segmentCipher);
+			segmentCipherIvs.add(iv);
+		}	
+
+		writeAndUpdateHmac(underlyingOutputStream, ByteBuffer.allocate(4).putInt(SEGMENT_SIZE).array());
+		
+		segmentBuffer = new byte[SEGMENT_SIZE];
+		sealBuffers = new byte[][] { new byte[SEGMENT_SIZE + segmentOverhead], new byte[SEGMENT_SIZE + segmentOverhead] };
+	}
+	
+	private void writeSegment(boolean lastSegment) throws IOException {
+		try {
+			byte[] segment = segmentBuffer;
+			int segmentLength = segmentBufferLength;
+			
+			// Seal with the innermost cipher first, so that the first cipher
+			// spec is the outermost layer (same nesting as in version 1)
+			
+			for (int i = segmentCiphers.size() - 1; i >= 0; i--) {
+				byte[] nonce = createSegmentNonce(segmentCipherIvs.get(i), segmentIndex, lastSegment);
+				byte[] sealBuffer = sealBuffers[i % 2];
+				
+				segmentLength = segmentCiphers.get(i).seal(nonce, segment, 0, segmentLength, sealBuffer, 0);
+				segment = sealBuffer;
+			}
+			
+			underlyingOutputStream.write(segment, 0, segmentLength);
+			
+			segmentBufferLength = 0;
+			segmentIndex++;
+		}
+		catch (CipherException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Derives the nonce of a segment from the IV of a cipher by XOR'ing the
+	 * segment number (4 bytes) and the 'last segment' flag (1 byte) into the 
+	 * last five bytes of the IV.
+	 */
+	static byte[] createSegmentNonce(byte[] iv, int segmentIndex, boolean lastSegment) throws IOException {
+		if (segmentIndex < 0) {
+			throw new IOException("Too many segments in stream.");
+		}
+		
+		byte[] nonce = Arrays.copyOf(iv, iv.length);
+		
+		nonce[nonce.length - 5] ^= (byte) (segmentIndex >>> 24);
+		nonce[nonce.length - 4] ^= (byte) (segmentIndex >>> 16);
+		nonce[nonce.length - 3] ^= (byte) (segmentIndex >>> 8);
+		nonce[nonce.length - 2] ^= (byte) segmentIndex;
+		nonce[nonce.length - 1] ^= (byte) ((lastSegment) ? 1 : 0);
+		
+		return nonce;
+	}
 
 	private void writeNoHmac(OutputStream outputStream, byte[] bytes) throws IOException {
 		outputStream.write(bytes);
@@ -0,0 +1,59 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+/**
+ * A segment cipher seals and opens fixed-size, independently authenticated
+ * segments of a stream. It is used by the segmented stream format of the 
+ * {@link MultiCipherOutputStream} and {@link MultiCipherInputStream}.
+ * 
+ * <p>Unlike a cipher stream, a segment cipher never has to hold back data
+ * beyond a single segment, so decrypting a large file only requires constant
+ * memory. Each segment must be sealed with a unique nonce; the caller is 
+ * responsible for deriving these nonces.
+ * 
+ * <p>Implementations are not thread-safe.
+ *
+ * @see CipherSpec#newSegmentCipher(byte[])
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface SegmentCipher {
+	/**
+	 * Returns the number of bytes a sealed segment is longer than the
+	 * plaintext segment, i.e. the size of the authentication tag.
+	 */
+	public int getOverhead();
+	
+	/**
+	 * Encrypts and authenticates the given plaintext segment and writes the result
+	 * to the output buffer. The output buffer must have room for the input length
+	 * plus {@link #getOverhead()} bytes. 
+	 * 
+	 * @return Number of bytes written to the output buffer
+	 */
+	public int seal(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException;
+	
+	/**
+	 * Verifies and decrypts the given sealed segment and writes the plaintext
+	 * to the output buffer. If the segment was altered, or if it was sealed with 
+	 * a different nonce, a {@link CipherException} is thrown.
+	 * 
+	 * @return Number of bytes written to the output buffer
+	 */
+	public int open(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException;
+}
@@ -19,6 +19,8 @@ package org.syncany.crypto.specs;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.modes.AEADBlockCipher;
@@ -27,12 +29,14 @@ import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.SegmentCipher;
 
 /**
  * @author pheckel
  *
  */
 public abstract class AesGcmCipherSpec extends CipherSpec {
+	private static final Logger logger = Logger.getLogger(AesGcmCipherSpec.class.getSimpleName());
 	private static final int MAC_SIZE = 128;		
 
 	public AesGcmCipherSpec(int id, String algorithm, int keySize, int ivSize, boolean needsUnlimitedStrength) {
@@ -54,4 +58,15 @@ public abstract class AesGcmCipherSpec extends CipherSpec {
 		
 		return new org.bouncycastle.crypto.io.CipherInputStream(underlyingInputStream, cipher);
 	}
+
+	@Override
+	public SegmentCipher newSegmentCipher(byte[] secretKey) throws CipherException {
+		try {
+			return new JceGcmSegmentCipher("AES", secretKey);
+		}
+		catch (CipherException e) {
+			logger.log(Level.FINE, "JCE cipher for AES/GCM not available, falling back to BouncyCastle engine.", e);
+			return new BcGcmSegmentCipher(new AESEngine(), secretKey);
+		}
+	}
 }
@@ -0,0 +1,74 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto.specs;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.modes.AEADBlockCipher;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.syncany.crypto.CipherException;
+import org.syncany.crypto.SegmentCipher;
+
+/**
+ * Segment cipher using BouncyCastle's GCM mode on top of an arbitrary
+ * block cipher engine. This is used for ciphers that the JDK does not provide
+ * (such as Twofish), and as a fallback if the JDK cipher is not available.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class BcGcmSegmentCipher implements SegmentCipher {
+	private static final int MAC_SIZE = 128;
+
+	private AEADBlockCipher cipher;
+	private KeyParameter keyParameter;
+	
+	public BcGcmSegmentCipher(BlockCipher engine, byte[] secretKey) {
+		this.cipher = new GCMBlockCipher(engine);
+		this.keyParameter = new KeyParameter(secretKey);
+	}
+	
+	@Override
+	public int getOverhead() {
+		return MAC_SIZE / 8;
+	}
+
+	@Override
+	public int seal(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException {
+		return doFinal(true, nonce, input, inputOffset, inputLength, output, outputOffset);
+	}
+
+	@Override
+	public int open(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException {
+		return doFinal(false, nonce, input, inputOffset, inputLength, output, outputOffset);
+	}
+	
+	private int doFinal(boolean forEncryption, byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException {
+		try {
+			cipher.init(forEncryption, new AEADParameters(keyParameter, MAC_SIZE, nonce));
+			
+			int outputLength = cipher.processBytes(input, inputOffset, inputLength, output, outputOffset);
+			outputLength += cipher.doFinal(output, outputOffset + outputLength);
+			
+			return outputLength;
+		}
+		catch (Exception e) {
+			throw new CipherException("Cannot " + ((forEncryption) ? "seal" : "open") + " segment.", e);
+		}
+	}
+}
@@ -22,6 +22,7 @@ import java.io.OutputStream;
 
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.SegmentCipher;
 
 /**
  * @author pheckel
@@ -41,4 +42,9 @@ public class HmacSha256CipherSpec extends CipherSpec {
 	public InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException {
 		throw new RuntimeException("Cannot create cipher.");
 	}
+
+	@Override
+	public SegmentCipher newSegmentCipher(byte[] secretKey) throws CipherException {
+		throw new RuntimeException("Cannot create cipher.");
+	}
 }
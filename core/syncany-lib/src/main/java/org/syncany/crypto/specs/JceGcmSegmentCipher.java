@@ -0,0 +1,108 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto.specs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.syncany.crypto.CipherException;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SegmentCipher;
+
+/**
+ * Segment cipher using the GCM implementation of the JDK's default
+ * crypto provider ("SunJCE"). Unlike the pure-Java BouncyCastle engines, the JDK
+ * implementation is backed by the JVM's AES intrinsics (AES-NI) where available.
+ * 
+ * <p>Since every segment is sealed or opened in a single init/doFinal call, the 
+ * underlying {@link Cipher} instances are reused per thread rather than per stream.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class JceGcmSegmentCipher implements SegmentCipher {
+	private static final String JCE_PROVIDER_ID = "SunJCE";
+	private static final int MAC_SIZE = 128;
+
+	private static final ThreadLocal<Map<String, Cipher>> threadCiphers = new ThreadLocal<Map<String, Cipher>>() {
+		@Override
+		protected Map<String, Cipher> initialValue() {
+			return new HashMap<String, Cipher>();
+		}
+	};
+	
+	private String transformation;
+	private SecretKeySpec secretKeySpec;
+	
+	public JceGcmSegmentCipher(String keyAlgorithm, byte[] secretKey) throws CipherException {
+		try {
+			this.transformation = keyAlgorithm + "/GCM/NoPadding";
+			this.secretKeySpec = new SecretKeySpec(secretKey, keyAlgorithm);
+			
+			// Fail early if the key is not supported (e.g. restricted key length policy); a separate cipher
+			// and a random IV are used, because SunJCE refuses to encrypt twice with the same key and IV
+			Cipher probeCipher = Cipher.getInstance(transformation, JCE_PROVIDER_ID);
+			probeCipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, new GCMParameterSpec(MAC_SIZE, CipherUtil.createRandomArray(12)));
+		}
+		catch (Exception e) {
+			throw new CipherException("Cannot create JCE cipher for " + keyAlgorithm + "/GCM", e);
+		}
+	}
+	
+	@Override
+	public int getOverhead() {
+		return MAC_SIZE / 8;
+	}
+
+	@Override
+	public int seal(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException {
+		return doFinal(Cipher.ENCRYPT_MODE, nonce, input, inputOffset, inputLength, output, outputOffset);
+	}
+
+	@Override
+	public int open(byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException {
+		return doFinal(Cipher.DECRYPT_MODE, nonce, input, inputOffset, inputLength, output, outputOffset);
+	}
+	
+	private int doFinal(int mode, byte[] nonce, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws CipherException {
+		try {
+			Cipher cipher = getCipher();
+			
+			cipher.init(mode, secretKeySpec, new GCMParameterSpec(MAC_SIZE, nonce));
+			return cipher.doFinal(input, inputOffset, inputLength, output, outputOffset);
+		}
+		catch (Exception e) {
+			throw new CipherException("Cannot " + ((mode == Cipher.ENCRYPT_MODE) ? "seal" : "open") + " segment.", e);
+		}
+	}
+	
+	private Cipher getCipher() throws Exception {
+		Map<String, Cipher> ciphers = threadCiphers.get();
+		Cipher cipher = ciphers.get(transformation);
+		
+		if (cipher == null) {
+			cipher = Cipher.getInstance(transformation, JCE_PROVIDER_ID);
+			ciphers.put(transformation, cipher);
+		}
+		
+		return cipher;
+	}
+}
@@ -27,6 +27,7 @@ import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.SegmentCipher;
 
 public abstract class TwofishGcmCipherSpec extends CipherSpec {
 	private static final int MAC_SIZE = 128;		
@@ -50,4 +51,9 @@ public abstract class TwofishGcmCipherSpec extends CipherSpec {
 		
 		return new org.bouncycastle.crypto.io.CipherInputStream(underlyingInputStream, cipher);
 	}
+
+	@Override
+	public SegmentCipher newSegmentCipher(byte[] secretKey) throws CipherException {
+		return new BcGcmSegmentCipher(new TwofishEngine(), secretKey);
+	}
 }
@@ -0,0 +1,360 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.syncany.database.VectorClock.VectorClockComparison;
+
+/**
+ * Immutable, compact representation of a {@link VectorClock}. Instead of a map of
+ * boxed values, a compact clock consists of two parallel arrays: the IDs of the clients
+ * (machine names) and their logical times. Client names are interned in a global
+ * table, so that each name is only stored once and the clocks only hold <tt>int</tt> IDs.
+ *
+ * <p>The entries are sorted by client ID, so that two clocks can be compared
+ * in a single pass and without allocating any objects, see
+ * {@link #compare(CompactVectorClock, CompactVectorClock)}. Serialized clocks can be
+ * parsed with {@link #parseVectorClock(String)}, which does not use regular expressions.
+ *
+ * <p>The {@link VectorClock} remains the mutable facade used throughout the application;
+ * it creates (and caches) its compact representation via {@link VectorClock#toCompactVectorClock()}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public final class CompactVectorClock {
+	private static final ClientNameTable CLIENT_NAMES = new ClientNameTable();
+	private static final CompactVectorClock EMPTY = new CompactVectorClock(new int[0], new long[0]);
+
+	private final int[] clientIds;
+	private final long[] times;
+
+	private CompactVectorClock(int[] clientIds, long[] times) {
+		this.clientIds = clientIds;
+		this.times = times;
+	}
+
+	/**
+	 * Creates a compact clock from the entries of the given vector clock.
+	 */
+	public static CompactVectorClock valueOf(VectorClock vectorClock) {
+		if (vectorClock.isEmpty()) {
+			return EMPTY;
+		}
+
+		int[] clientIds = new int[vectorClock.size()];
+		long[] times = new long[vectorClock.size()];
+		int size = 0;
+
+		for (Map.Entry<String, Long> clockEntry : vectorClock.entrySet()) {
+			clientIds[size] = CLIENT_NAMES.getClientId(clockEntry.getKey());
+			times[size] = clockEntry.getValue();
+			size++;
+		}
+
+		return createSorted(clientIds, times, size);
+	}
+
+	/**
+	 * Converts a serialized vector clock, e.g. <tt>(A4,B12)</tt>, into a compact
+	 * clock. This method is equivalent to {@link VectorClock#parseVectorClock(String)}, but
+	 * parses the string by hand instead of using regular expressions.
+	 *
+	 * @throws IllegalArgumentException If the given string is not a valid vector clock
+	 */
+	public static CompactVectorClock parseVectorClock(String serializedVectorClock) {
+		int length = serializedVectorClock.length();
+
+		if (length < 2 || serializedVectorClock.charAt(0) != '(' || serializedVectorClock.charAt(length - 1) != ')') {
+			throw new IllegalArgumentException("Not a valid vector clock: " + serializedVectorClock);
+		}
+		else if (length == 2) {
+			return EMPTY;
+		}
+
+		int entryCount = 1;
+
+		for (int pos = 1; pos < length - 1; pos++) {
+			char c = serializedVectorClock.charAt(pos);
+
+			if (c == ',') {
+				entryCount++;
+			}
+			else if (c == '(' || c == ')') {
+				throw new IllegalArgumentException("Not a valid vector clock: " + serializedVectorClock);
+			}
+		}
+
+		int[] clientIds = new int[entryCount];
+		long[] times = new long[entryCount];
+		int pos = 1;
+
+		for (int entry = 0; entry < entryCount; entry++) {
+			int nameStart = pos;
+
+			while (pos < length - 1 && isMachineNameChar(serializedVectorClock.charAt(pos))) {
+				pos++;
+			}
+
+			int timeStart = pos;
+			long time = 0;
+
+			while (pos < length - 1 && isDigit(serializedVectorClock.charAt(pos))) {
+				if (time > (Long.MAX_VALUE - 9) / 10) {
+					throw new IllegalArgumentException("Not a valid vector clock, time out of range: " + serializedVectorClock);
+				}
+
+				time = time * 10 + (serializedVectorClock.charAt(pos) - '0');
+				pos++;
+			}
+
+			boolean entryEnd = pos == length - 1 || serializedVectorClock.charAt(pos) == ',';
+
+			if (nameStart == timeStart || timeStart == pos || !entryEnd) {
+				throw new IllegalArgumentException("Not a valid vector clock, entry does not match pattern: " + serializedVectorClock);
+			}
+
+			clientIds[entry] = CLIENT_NAMES.getClientId(serializedVectorClock.substring(nameStart, timeStart));
+			times[entry] = time;
+			pos++; // Skip ','
+		}
+
+		return createSorted(clientIds, times, entryCount);
+	}
+
+	/**
+	 * Sorts the given entries by client ID (insertion sort, clocks are small and
+	 * typically already sorted) and removes duplicate clients. Like with {@link Map#put(Object, Object)},
+	 * the last value of a client wins.
+	 */
+	private static CompactVectorClock createSorted(int[] clientIds, long[] times, int size) {
+		for (int i = 1; i < size; i++) {
+			int clientId = clientIds[i];
+			long time = times[i];
+			int j = i - 1;
+
+			while (j >= 0 && clientIds[j] > clientId) {
+				clientIds[j + 1] = clientIds[j];
+				times[j + 1] = times[j];
+				j--;
+			}
+
+			clientIds[j + 1] = clientId;
+			times[j + 1] = time;
+		}
+
+		int uniqueSize = 0;
+
+		for (int i = 0; i < size; i++) {
+			if (uniqueSize > 0 && clientIds[uniqueSize - 1] == clientIds[i]) {
+				times[uniqueSize - 1] = times[i];
+			}
+			else {
+				clientIds[uniqueSize] = clientIds[i];
+				times[uniqueSize] = times[i];
+				uniqueSize++;
+			}
+		}
+
+		if (uniqueSize < clientIds.length) {
+			return new CompactVectorClock(Arrays.copyOf(clientIds, uniqueSize), Arrays.copyOf(times, uniqueSize));
+		}
+		else {
+			return new CompactVectorClock(clientIds, times);
+		}
+	}
+
+	private static boolean isMachineNameChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Compares two compact clocks. This method returns the same results as
+	 * {@link VectorClock#compare(VectorClock, VectorClock)}, i.e. missing entries are
+	 * treated as zero, but it walks both clocks in a single pass and does not allocate
+	 * any objects.
+	 *
+	 * @param clock1 First clock being compared
+	 * @param clock2 Second clock being compared
+	 * @return Value indicating how the first clock relates to the second clock
+	 */
+	public static VectorClockComparison compare(CompactVectorClock clock1, CompactVectorClock clock2) {
+		int[] clientIds1 = clock1.clientIds;
+		int[] clientIds2 = clock2.clientIds;
+		long[] times1 = clock1.times;
+		long[] times2 = clock2.times;
+
+		boolean isGreater = false; // Clock 1 has at least one entry greater than clock 2
+		boolean isSmaller = false; // Clock 1 has at least one entry smaller than clock 2
+
+		int pos1 = 0;
+		int pos2 = 0;
+
+		while ((pos1 < clientIds1.length || pos2 < clientIds2.length) && !(isGreater && isSmaller)) {
+			long time1;
+			long time2;
+
+			if (pos2 == clientIds2.length || (pos1 < clientIds1.length && clientIds1[pos1] < clientIds2[pos2])) {
+				time1 = times1[pos1++];
+				time2 = 0;
+			}
+			else if (pos1 == clientIds1.length || clientIds2[pos2] < clientIds1[pos1]) {
+				time1 = 0;
+				time2 = times2[pos2++];
+			}
+			else {
+				time1 = times1[pos1++];
+				time2 = times2[pos2++];
+			}
+
+			if (time1 > time2) {
+				isGreater = true;
+			}
+			else if (time1 < time2) {
+				isSmaller = true;
+			}
+		}
+
+		if (!isGreater && !isSmaller) {
+			return VectorClockComparison.EQUAL;
+		}
+		else if (isGreater && !isSmaller) {
+			return VectorClockComparison.GREATER;
+		}
+		else if (isSmaller && !isGreater) {
+			return VectorClockComparison.SMALLER;
+		}
+		else {
+			return VectorClockComparison.SIMULTANEOUS;
+		}
+	}
+
+	/**
+	 * Returns the logical time of the given client, or 0 if the
+	 * client is not part of this clock.
+	 */
+	public long getClock(String unit) {
+		Integer clientId = CLIENT_NAMES.findClientId(unit);
+
+		if (clientId != null) {
+			int pos = Arrays.binarySearch(clientIds, clientId);
+
+			if (pos >= 0) {
+				return times[pos];
+			}
+		}
+
+		return 0;
+	}
+
+	public int size() {
+		return clientIds.length;
+	}
+
+	/**
+	 * Converts this compact clock to a (mutable) {@link VectorClock}.
+	 */
+	public VectorClock toVectorClock() {
+		VectorClock vectorClock = new VectorClock();
+
+		for (int pos = 0; pos < clientIds.length; pos++) {
+			vectorClock.put(CLIENT_NAMES.getClientName(clientIds[pos]), times[pos]);
+		}
+
+		return vectorClock;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(clientIds) + Arrays.hashCode(times);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CompactVectorClock)) {
+			return false;
+		}
+		CompactVectorClock other = (CompactVectorClock) obj;
+		return Arrays.equals(clientIds, other.clientIds) && Arrays.equals(times, other.times);
+	}
+
+	/**
+	 * Returns the serialized clock, sorted by client name (not client ID),
+	 * identical to {@link VectorClock#toString()}.
+	 */
+	@Override
+	public String toString() {
+		return toVectorClock().toString();
+	}
+
+	/**
+	 * Global table of interned client names. Client IDs are assigned in
+	 * the order in which the client names are first seen, and never removed.
+	 */
+	private static class ClientNameTable {
+		private Map<String, Integer> clientIds;
+		private volatile String[] clientNames;
+
+		public ClientNameTable() {
+			this.clientIds = new ConcurrentHashMap<String, Integer>();
+			this.clientNames = new String[16];
+		}
+
+		public Integer findClientId(String clientName) {
+			return clientIds.get(clientName);
+		}
+
+		public int getClientId(String clientName) {
+			Integer clientId = clientIds.get(clientName);
+			return (clientId != null) ? clientId : addClientName(clientName);
+		}
+
+		public String getClientName(int clientId) {
+			return clientNames[clientId];
+		}
+
+		private synchronized int addClientName(String clientName) {
+			Integer clientId = clientIds.get(clientName);
+
+			if (clientId == null) {
+				int newClientId = clientIds.size();
+
+				if (newClientId == clientNames.length) {
+					clientNames = Arrays.copyOf(clientNames, clientNames.length * 2);
+				}
+
+				clientNames[newClientId] = clientName;
+				clientIds.put(clientName, newClientId);
+
+				return newClientId;
+			}
+			else {
+				return clientId;
+			}
+		}
+	}
+}
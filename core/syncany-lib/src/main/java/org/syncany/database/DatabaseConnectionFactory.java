@@ -32,6 +32,7 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.database.dao.StatementCache;
 import org.syncany.util.FileUtil;
 import org.syncany.util.SqlRunner;
 
@@ -52,6 +53,7 @@ public class DatabaseConnectionFactory {
 	public static final String DATABASE_CONNECTION_FILE_STRING = "jdbc:hsqldb:file:%DATABASEFILE%;user=sa;password=;create=true;write_delay=false;hsqldb.write_delay=false;shutdown=true";
 	public static final String DATABASE_RESOURCE_PATTERN = "/org/syncany/database/sql/%s";
 	public static final String DATABASE_RESOURCE_CREATE_ALL = "script.create.all.sql";
+	public static final String DATABASE_RESOURCE_UPGRADE_FILEVERSION_CURRENT = "script.upgrade.fileversion_current.sql";
 
 	public static final Map<String, String> DATABASE_STATEMENTS = new HashMap<String, String>();
 
@@ -70,6 +72,9 @@ public class DatabaseConnectionFactory {
 	 * application tables are present, a valid connection is returned. If not, the database is created
 	 * and the application tables are created.
 	 *
+	 * <p>The returned connection caches the prepared statements of the DAOs
+	 * (see {@link StatementCache}).
+	 *
 	 * @param databaseFile File at which to create/load the database
 	 * @return Returns a valid database connection
 	 */
@@ -135,8 +140,11 @@ public class DatabaseConnectionFactory {
 			if (!tablesExist(connection)) {
 				createTables(connection);
 			}
+			else if (!currentFileTreeTableExists(connection)) {
+				upgradeTables(connection, DATABASE_RESOURCE_UPGRADE_FILEVERSION_CURRENT);
+			}
 
-			return connection;
+			return StatementCache.createCachingConnection(connection);
 		}
 		catch (Exception e) {
 			if (e.getCause() != null) {
@@ -160,6 +168,27 @@ public class DatabaseConnectionFactory {
 		}
 	}
 
+	private static boolean currentFileTreeTableExists(Connection connection) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement("select count(*) from fileversion_current")) {
+			preparedStatement.executeQuery().close();
+			return true;
+		}
+		catch (SQLException e) {
+			logger.log(Level.FINE, "Failed to execute SQL", e);
+			return false;
+		}
+	}
+
+	private static void upgradeTables(Connection connection, String upgradeResourceIdentifier) throws SQLException, IOException {
+		logger.log(Level.INFO, "Database tables outdated. Upgrading tables using " + upgradeResourceIdentifier);
+
+		connection.setAutoCommit(true);
+
+		SqlRunner.runScript(connection, getStatementInputStream(upgradeResourceIdentifier));
+
+		connection.setAutoCommit(false);
+	}
+
 	private static void createTables(Connection connection) throws SQLException, IOException {
 		logger.log(Level.INFO, "Database has no tables. Creating tables from " + DATABASE_RESOURCE_CREATE_ALL);
 
@@ -0,0 +1,139 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.syncany.database.FileContent.FileChecksum;
+
+/**
+ * The file fingerprint cache remembers the checksums of local files that have been
+ * calculated during an operation, so that a file does not have to be read again later in
+ * the same operation. A checksum is identified by the file's path, size, last modified date and
+ * file key (i.e. the inode on Unix-like systems, if available). If any of these differ when the
+ * checksum is looked up, the file is considered changed and no checksum is returned.
+ *
+ * <p>Like Git's index, the cache guards against "racily clean" files: A file whose last modified
+ * date is not clearly before the time its checksum was recorded may have been changed again within
+ * the resolution of the file system's timestamps, without any visible change of its attributes. The
+ * checksums of such files are not returned, i.e. these files are read again.
+ *
+ * <p>The cache is filled by the {@link FileVersionComparator} (e.g. during the status operation)
+ * and used by the indexer to skip reading files whose content is already known. It is
+ * meant to live only as long as a single operation. Checksums that are no longer needed
+ * should be {@link #remove(File) removed}, so that the cache only holds the checksums of
+ * files that are still to be indexed.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class FileFingerprintCache {
+	/**
+	 * Resolution of last modified dates assumed for the local file system. Two seconds
+	 * is the coarsest common resolution (FAT); most file systems are much more precise.
+	 */
+	public static final long TIMESTAMP_RESOLUTION = 2000;
+
+	private Map<String, FileFingerprint> fingerprints;
+
+	public FileFingerprintCache() {
+		this.fingerprints = new HashMap<String, FileFingerprint>();
+	}
+
+	/**
+	 * Stores the checksum of the given file. The given attributes must have been
+	 * read <i>before</i> the checksum was calculated.
+	 */
+	public synchronized void put(File file, BasicFileAttributes fileAttributes, FileChecksum checksum) {
+		fingerprints.put(file.getAbsolutePath(), new FileFingerprint(fileAttributes, checksum, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Returns the checksum of the given file, if the file has been checksummed before and its
+	 * attributes match the given attributes. Returns <tt>null</tt> otherwise, and if the file was
+	 * modified too close to the time its checksum was recorded (see {@link #TIMESTAMP_RESOLUTION}).
+	 */
+	public synchronized FileChecksum get(File file, BasicFileAttributes fileAttributes) {
+		FileFingerprint fingerprint = fingerprints.get(file.getAbsolutePath());
+
+		if (fingerprint != null && fingerprint.matches(fileAttributes) && !fingerprint.isRacy()) {
+			return fingerprint.checksum;
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the checksum of the given file, if the file has been checksummed before and
+	 * has not changed since. Returns <tt>null</tt> otherwise. In contrast to
+	 * {@link #get(File, BasicFileAttributes)}, this method reads the file attributes itself.
+	 */
+	public FileChecksum get(File file) throws IOException {
+		synchronized (this) {
+			if (!fingerprints.containsKey(file.getAbsolutePath())) {
+				return null;
+			}
+		}
+
+		BasicFileAttributes fileAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		return get(file, fileAttributes);
+	}
+
+	/**
+	 * Removes the checksum of the given file, e.g. because it has been looked up already, or
+	 * because the file is not going to be indexed.
+	 */
+	public synchronized void remove(File file) {
+		fingerprints.remove(file.getAbsolutePath());
+	}
+
+	public synchronized int size() {
+		return fingerprints.size();
+	}
+
+	private static class FileFingerprint {
+		private long size;
+		private long lastModified;
+		private Object fileKey;
+		private FileChecksum checksum;
+		private long recordedTime;
+
+		public FileFingerprint(BasicFileAttributes fileAttributes, FileChecksum checksum, long recordedTime) {
+			this.size = fileAttributes.size();
+			this.lastModified = fileAttributes.lastModifiedTime().toMillis();
+			this.fileKey = fileAttributes.fileKey();
+			this.checksum = checksum;
+			this.recordedTime = recordedTime;
+		}
+
+		public boolean isRacy() {
+			return lastModified >= recordedTime - TIMESTAMP_RESOLUTION;
+		}
+
+		public boolean matches(BasicFileAttributes fileAttributes) {
+			boolean fileKeyMatches = (fileKey == null) ? fileAttributes.fileKey() == null : fileKey.equals(fileAttributes.fileKey());
+			return size == fileAttributes.size() && lastModified == fileAttributes.lastModifiedTime().toMillis() && fileKeyMatches;
+		}
+	}
+}
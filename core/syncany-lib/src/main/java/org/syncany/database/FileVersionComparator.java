@@ -62,6 +62,8 @@ public class FileVersionComparator {
 	private static final Logger logger = Logger.getLogger(FileVersionComparator.class.getSimpleName());
 	private File rootFolder;
 	private String checksumAlgorithm;
+	private FileFingerprintCache fileFingerprintCache;
+	private boolean checksumOnlyIfRequired;
 
 	/**
 	 * Creates a new file version comparator helper class.
@@ -74,8 +76,32 @@ public class FileVersionComparator {
 	 * @param checksumAlgorithm Digest algorithm for checksum calculation, e.g. "SHA1" or "MD5"
 	 */
 	public FileVersionComparator(File rootFolder, String checksumAlgorithm) {
+		this(rootFolder, checksumAlgorithm, null);
+	}
+
+	/**
+	 * Creates a new file version comparator helper class that stores all calculated file
+	 * checksums in the given {@link FileFingerprintCache}, and that takes checksums from the
+	 * cache instead of re-reading files that have not changed (if the cache is not <tt>null</tt>).
+	 *
+	 * @param rootFolder Base folder to determine a relative path to
+	 * @param checksumAlgorithm Digest algorithm for checksum calculation, e.g. "SHA1" or "MD5"
+	 * @param fileFingerprintCache Cache for calculated file checksums, or <tt>null</tt>
+	 */
+	public FileVersionComparator(File rootFolder, String checksumAlgorithm, FileFingerprintCache fileFingerprintCache) {
 		this.rootFolder = rootFolder;
 		this.checksumAlgorithm = checksumAlgorithm;
+		this.fileFingerprintCache = fileFingerprintCache;
+		this.checksumOnlyIfRequired = false;
+	}
+
+	/**
+	 * Defines whether a forced checksum of a local file is only calculated if it can affect the
+	 * result of a comparison, i.e. not if the file types or sizes differ. If enabled, the
+	 * actual file properties of such a comparison do not contain a checksum. Disabled by default.
+	 */
+	public void setChecksumOnlyIfRequired(boolean checksumOnlyIfRequired) {
+		this.checksumOnlyIfRequired = checksumOnlyIfRequired;
 	}
 
 	/**
@@ -117,7 +143,8 @@ public class FileVersionComparator {
 	 *
 	 * <p>If the <tt>actualFileKnownChecksum</tt> parameter is set and a checksum comparison is necessary, this
 	 * parameter is used to compare checksums. If not and force checksum is enabled, the checksum is calculated
-	 * and compared.
+	 * and compared. If {@link #setChecksumOnlyIfRequired(boolean)} is enabled, the checksum is only calculated
+	 * if it can affect the result, i.e. not if the file types or sizes differ.
 	 *
 	 * @param expectedFileVersion The expected file version (that is compared to the actual file)
 	 * @param actualFile The actual file (that is compared to the expected file version)
@@ -129,11 +156,26 @@ public class FileVersionComparator {
 			boolean actualFileForceChecksum) {
 
 		FileProperties expectedLocalFileVersionProperties = captureFileProperties(expectedLocalFileVersion);
-		FileProperties actualFileProperties = captureFileProperties(actualLocalFile, actualFileKnownChecksum, actualFileForceChecksum);
+		boolean checksumLater = checksumOnlyIfRequired && actualFileForceChecksum && actualFileKnownChecksum == null;
+		FileProperties actualFileProperties = captureFileProperties(actualLocalFile, actualFileKnownChecksum, actualFileForceChecksum && !checksumLater);
+
+		if (checksumLater && isChecksumRequired(expectedLocalFileVersionProperties, actualFileProperties)) {
+			actualFileProperties = captureFileProperties(actualLocalFile, null, true);
+		}
 
 		return compare(expectedLocalFileVersionProperties, actualFileProperties, actualFileForceChecksum);
 	}
 
+	/**
+	 * Returns whether the checksum of the actual file can make a difference when comparing the
+	 * given properties. If the file types or sizes differ, the comparison has a result without it.
+	 */
+	private boolean isChecksumRequired(FileProperties expectedFileProperties, FileProperties actualFileProperties) {
+		return expectedFileProperties != null && expectedFileProperties.exists() && actualFileProperties.exists()
+				&& expectedFileProperties.getType() == FileType.FILE && actualFileProperties.getType() == FileType.FILE
+				&& expectedFileProperties.getSize() == actualFileProperties.getSize();
+	}
+
 	public FileVersionComparison compare(FileProperties expectedFileProperties, FileProperties actualFileProperties, boolean compareChecksums) {
 		FileVersionComparison fileComparison = new FileVersionComparison();
 
@@ -462,7 +504,7 @@ public class FileVersionComparator {
 				if (fileProperties.type == FileType.FILE && forceChecksum) {
 					try {
 						if (fileProperties.size > 0) {
-							fileProperties.checksum = new FileChecksum(FileUtil.createChecksum(file, checksumAlgorithm));
+							fileProperties.checksum = createChecksum(file, fileAttributes);
 						}
 						else {
 							fileProperties.checksum = null;
@@ -496,6 +538,20 @@ public class FileVersionComparator {
 		}
 	}
 
+	private FileChecksum createChecksum(File file, BasicFileAttributes fileAttributes) throws NoSuchAlgorithmException, IOException {
+		FileChecksum checksum = (fileFingerprintCache != null) ? fileFingerprintCache.get(file, fileAttributes) : null;
+
+		if (checksum == null) {
+			checksum = new FileChecksum(FileUtil.createChecksum(file, checksumAlgorithm));
+
+			if (fileFingerprintCache != null) {
+				fileFingerprintCache.put(file, fileAttributes, checksum);
+			}
+		}
+
+		return checksum;
+	}
+
 	public FileProperties captureFileProperties(FileVersion fileVersion) {
 		if (fileVersion == null) {
 			return null;
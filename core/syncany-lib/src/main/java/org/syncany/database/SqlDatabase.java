@@ -24,6 +24,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -144,6 +145,18 @@ public class SqlDatabase {
 		applicationDao.writeCleanupTime(cleanupTime);		
 	}
 
+	public String getRepoGeneration() {
+		return applicationDao.getRepoGeneration();
+	}
+	
+	public Long getRepoGenerationTime() {
+		return applicationDao.getRepoGenerationTime();
+	}
+	
+	public void writeRepoGeneration(String repoGeneration, long repoGenerationTime) {
+		applicationDao.writeRepoGeneration(repoGeneration, repoGenerationTime);		
+	}
+
 	public void deleteAll() {
 		applicationDao.deleteAll();
 	}
@@ -218,6 +231,14 @@ public class SqlDatabase {
 		return fileHistoryDao.getFileHistoriesWithLastVersion();
 	}
 
+	public PartialFileHistory getFileHistoryWithLastVersion(String relativePath) {
+		return fileHistoryDao.getFileHistoryWithLastVersion(relativePath);
+	}
+
+	public List<PartialFileHistory> getFileHistoriesWithLastVersionByChecksum(FileChecksum fileContentChecksum) {
+		return fileHistoryDao.getFileHistoriesWithLastVersionByChecksum(fileContentChecksum);
+	}
+
 	private void removeUnreferencedFileHistories() throws SQLException {
 		fileHistoryDao.removeUnreferencedFileHistories();
 	}
@@ -228,7 +249,7 @@ public class SqlDatabase {
 
 	// File Version
 
-	public Map<String, FileVersion> getCurrentFileTree() {
+	public NavigableMap<String, FileVersion> getCurrentFileTree() {
 		return fileVersionDao.getCurrentFileTree();
 	}
 
@@ -17,8 +17,8 @@
  */
 package org.syncany.database;
 
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -35,19 +35,17 @@ import java.util.regex.Pattern;
  *  <li>Event A and B happened simultaneously (no cause/effect relationship)</li>
  * </ul>
  *
+ * <p>Comparing and parsing clocks is delegated to the immutable {@link CompactVectorClock}.
+ * The compact representation of a clock is created on first use and cached until the
+ * clock is modified via {@link #put(String, Long) put()}, {@link #remove(Object) remove()}
+ * or {@link #clear()}.
+ *
  * @author Frits de Nijs
  * @author Peter Dijkshoorn
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class VectorClock extends TreeMap<String, Long> {
 	private static final long serialVersionUID = 109876543L;	
-	
-	private static final Pattern CLOCK_PATTERN = Pattern.compile("\\(([^)]*)\\)");
-	private static final int CLOCK_PATTERN_GROUP_CONTENT = 1;
-	
-	private static final Pattern ENTRY_PATTERN = Pattern.compile("([a-zA-Z]+)(\\d+)");
-	private static final int ENTRY_PATTERN_GROUP_NAME = 1;
-	private static final int ENTRY_PATTERN_GROUP_TIME = 2;
 
 	public static final Pattern MACHINE_PATTERN = Pattern.compile("[a-zA-Z]+");	
 
@@ -55,6 +53,8 @@ public class VectorClock extends TreeMap<String, Long> {
 		SMALLER, GREATER, EQUAL, SIMULTANEOUS;
 	}
 
+	private transient CompactVectorClock compactVectorClock;
+
 	/**
 	 * Increases the component of a unit by 1.
 	 *
@@ -108,6 +108,45 @@ public class VectorClock extends TreeMap<String, Long> {
 		return lResult;
 	}
 
+	@Override
+	public Long put(String unit, Long value) {
+		compactVectorClock = null;
+		return super.put(unit, value);
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends Long> map) {
+		compactVectorClock = null;
+		super.putAll(map);
+	}
+
+	@Override
+	public Long remove(Object unit) {
+		compactVectorClock = null;
+		return super.remove(unit);
+	}
+
+	@Override
+	public void clear() {
+		compactVectorClock = null;
+		super.clear();
+	}
+
+	/**
+	 * Returns the immutable compact representation of this clock. The compact
+	 * clock is cached until this clock is modified.
+	 */
+	public CompactVectorClock toCompactVectorClock() {
+		CompactVectorClock currentCompactVectorClock = compactVectorClock;
+
+		if (currentCompactVectorClock == null) {
+			currentCompactVectorClock = CompactVectorClock.valueOf(this);
+			compactVectorClock = currentCompactVectorClock;
+		}
+
+		return currentCompactVectorClock;
+	}
+
 	@Override
 	public VectorClock clone() {
 		return (VectorClock) super.clone();
@@ -142,35 +181,15 @@ public class VectorClock extends TreeMap<String, Long> {
 	/**
 	 * Converts a serialized vector clock back into a {@link VectorClock} object.
 	 * @see #toString()
+	 * @see CompactVectorClock#parseVectorClock(String)
 	 */
 	public static VectorClock parseVectorClock(String serializedVectorClock) {
-		VectorClock vectorClock = new VectorClock();
-		
-		Matcher clockMatcher = CLOCK_PATTERN.matcher(serializedVectorClock);
-		
-		if (clockMatcher.matches()) {
-			String clockContents = clockMatcher.group(CLOCK_PATTERN_GROUP_CONTENT);
-			String[] clockEntries = clockContents.split(",");
-			
-			for (String clockEntry : clockEntries) {
-				Matcher clockEntryMatcher = ENTRY_PATTERN.matcher(clockEntry);
-				
-				if (clockEntryMatcher.matches()) {
-					String machineName = clockEntryMatcher.group(ENTRY_PATTERN_GROUP_NAME);
-					Long clockValue = Long.parseLong(clockEntryMatcher.group(ENTRY_PATTERN_GROUP_TIME));
-					
-					vectorClock.put(machineName, clockValue);
-				}
-				else {
-					throw new IllegalArgumentException("Not a valid vector clock, entry does not match pattern: " + clockEntry);
-				}
-			}
-			
-			return vectorClock;
-		}
-		else {
-			throw new IllegalArgumentException("Not a valid vector clock: " + serializedVectorClock);
-		}
+		CompactVectorClock compactVectorClock = CompactVectorClock.parseVectorClock(serializedVectorClock);
+
+		VectorClock vectorClock = compactVectorClock.toVectorClock();
+		vectorClock.compactVectorClock = compactVectorClock;
+
+		return vectorClock;
 	}
 
 	/**
@@ -181,59 +200,14 @@ public class VectorClock extends TreeMap<String, Long> {
 	 * Two. VectorComparison.SMALLER If One < Two. VectorComparison.SIMULTANEOUS
 	 * If One != Two.
 	 *
+	 * <p>The clocks are compared using their (cached) compact representation,
+	 * see {@link CompactVectorClock#compare(CompactVectorClock, CompactVectorClock)}.
+	 *
 	 * @param clock1 First Clock being compared.
 	 * @param clock2 Second Clock being compared.
 	 * @return VectorComparison value indicating how One relates to Two.
 	 */
 	public static VectorClockComparison compare(VectorClock clock1, VectorClock clock2) {
-		// Initially we assume it is all possible things.
-		boolean isEqual = true;
-		boolean isGreater = true;
-		boolean isSmaller = true;
-
-		// Go over all elements in Clock one.
-		for (String lEntry : clock1.keySet()) {
-			// Compare if also present in clock two.
-			if (clock2.containsKey(lEntry)) {
-				// If there is a difference, it can never be equal.
-				// Greater / smaller depends on the difference.
-				if (clock1.get(lEntry) < clock2.get(lEntry)) {
-					isEqual = false;
-					isGreater = false;
-				}
-				if (clock1.get(lEntry) > clock2.get(lEntry)) {
-					isEqual = false;
-					isSmaller = false;
-				}
-			}
-			// Else assume zero (default value is 0).
-			else if (clock1.get(lEntry) != 0) {
-				isEqual = false;
-				isSmaller = false;
-			}
-		}
-
-		// Go over all elements in Clock two.
-		for (String lEntry : clock2.keySet()) {
-			// Only elements we have not found in One still need to be checked.
-			if (!clock1.containsKey(lEntry) && (clock2.get(lEntry) != 0)) {
-				isEqual = false;
-				isGreater = false;
-			}
-		}
-
-		// Return based on determined information.
-		if (isEqual) {
-			return VectorClockComparison.EQUAL;
-		}
-		else if (isGreater && !isSmaller) {
-			return VectorClockComparison.GREATER;
-		}
-		else if (isSmaller && !isGreater) {
-			return VectorClockComparison.SMALLER;
-		}
-		else {
-			return VectorClockComparison.SIMULTANEOUS;
-		}
+		return CompactVectorClock.compare(clock1.toCompactVectorClock(), clock2.toCompactVectorClock());
 	}
 }
@@ -29,6 +29,10 @@ import org.syncany.util.SqlRunner;
  * Small helper class to implement common tasks for the inheriting 
  * SQL data access objects.
  * 
+ * <p>Statements returned by {@link #getStatement(String)} are taken from a 
+ * per-connection {@link StatementCache}, and their execution is measured in
+ * {@link SqlMetrics}.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class AbstractSqlDao {
@@ -46,8 +50,14 @@ public abstract class AbstractSqlDao {
 		return getStatement(connection, resourceId);
 	}
 	
+	/**
+	 * Returns a prepared statement for the given SQL resource id. Statements are cached per
+	 * connection (see {@link StatementCache}), so the returned statement must always be closed
+	 * by the caller to make it available for the next call. Execution times and row counts
+	 * are recorded in {@link SqlMetrics}.
+	 */
 	protected PreparedStatement getStatement(Connection overrideConnection, String resourceId) throws SQLException {
-		return overrideConnection.prepareStatement(DatabaseConnectionFactory.getStatement(resourceId));
+		return StatementCache.forConnection(overrideConnection).getStatement(resourceId);
 	}
 	
 	protected void runScript(String resourceId) throws SQLException, IOException {
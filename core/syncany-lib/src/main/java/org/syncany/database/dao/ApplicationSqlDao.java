@@ -168,6 +168,19 @@ public class ApplicationSqlDao extends AbstractSqlDao {
 		writeSetting("cleanupTime", "" + cleanupTime);
 	}
 
+	public String getRepoGeneration() {
+		return readSetting("repoGeneration");
+	}
+
+	public Long getRepoGenerationTime() {
+		return readSettingAsLong("repoGenerationTime");
+	}
+
+	public void writeRepoGeneration(String repoGeneration, long repoGenerationTime) {
+		writeSetting("repoGeneration", repoGeneration);
+		writeSetting("repoGenerationTime", "" + repoGenerationTime);
+	}
+
 	public Long readSettingAsLong(String key) {
 		try {
 			String strValue = readSetting(key);
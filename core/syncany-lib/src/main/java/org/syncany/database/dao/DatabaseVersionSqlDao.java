@@ -95,6 +95,10 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 			preparedStatement.setString(2, vectorClock.toString());
 
 			preparedStatement.executeUpdate();
+			
+			// The versions of this database version are not master anymore
+			fileVersionDao.updateCurrentFileVersions(vectorClock);
+			
 			connection.commit();
 		}
 		catch (SQLException e) {
@@ -148,6 +152,14 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		fileContentDao.writeFileContents(connection, databaseVersionId, databaseVersion.getFileContents());
 		fileHistoryDao.writeFileHistories(connection, databaseVersionId, databaseVersion.getFileHistories());
 
+		List<FileHistoryId> fileHistoryIds = new ArrayList<FileHistoryId>();
+		
+		for (PartialFileHistory fileHistory : databaseVersion.getFileHistories()) {
+			fileHistoryIds.add(fileHistory.getFileHistoryId());
+		}
+		
+		fileVersionDao.updateCurrentFileVersions(connection, fileHistoryIds);
+
 		return databaseVersionId;
 	}
 
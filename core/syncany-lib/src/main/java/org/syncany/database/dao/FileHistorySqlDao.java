@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.logging.Logger;
 
 import org.syncany.database.DatabaseVersion.DatabaseVersionStatus;
+import org.syncany.database.FileContent.FileChecksum;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersion.FileType;
@@ -234,28 +235,67 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	}
 
 	public List<PartialFileHistory> getFileHistoriesWithLastVersion() {
-		List<PartialFileHistory> fileHistories = new ArrayList<PartialFileHistory>();
-
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesWithLastVersion.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				while (resultSet.next()) {
-					FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
-					FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
+				return createFileHistoriesWithLastVersionFromResult(resultSet);
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
-					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
-					fileHistory.addFileVersion(lastFileVersion);
+	/**
+	 * Returns the file history whose last version has the given path (and is not deleted),
+	 * or <tt>null</tt> if there is no such file history. Only the last version is loaded.
+	 */
+	public PartialFileHistory getFileHistoryWithLastVersion(String relativePath) {
+		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoryWithLastVersion.sql")) {
+			preparedStatement.setString(1, relativePath);
 
-					fileHistories.add(fileHistory);
-				}
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				List<PartialFileHistory> fileHistories = createFileHistoriesWithLastVersionFromResult(resultSet);
+				return (fileHistories.size() > 0) ? fileHistories.get(0) : null;
 			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
-			return fileHistories;
+	/**
+	 * Returns the file histories whose last version has the given checksum (and is not deleted).
+	 * Only the last version of each file history is loaded.
+	 */
+	public List<PartialFileHistory> getFileHistoriesWithLastVersionByChecksum(FileChecksum fileContentChecksum) {
+		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesWithLastVersionByChecksum.sql")) {
+			preparedStatement.setString(1, fileContentChecksum.toString());
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return createFileHistoriesWithLastVersionFromResult(resultSet);
+			}
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private List<PartialFileHistory> createFileHistoriesWithLastVersionFromResult(ResultSet resultSet) throws SQLException {
+		List<PartialFileHistory> fileHistories = new ArrayList<PartialFileHistory>();
+
+		while (resultSet.next()) {
+			FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+			FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
+
+			PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
+			fileHistory.addFileVersion(lastFileVersion);
+
+			fileHistories.add(fileHistory);
+		}
+
+		return fileHistories;
+	}
+
 	public List<PartialFileHistory> getPurgeFileHistoriesWithFileVersions(VectorClock purgeDatabaseVersionVectorClock) {
 		List<PartialFileHistory> fileHistories = new ArrayList<PartialFileHistory>();
 
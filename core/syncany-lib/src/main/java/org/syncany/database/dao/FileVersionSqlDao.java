@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
@@ -40,6 +41,7 @@ import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.util.StringUtil;
 
@@ -142,6 +144,8 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 				preparedStatement.executeBatch();
 			}
+			
+			updateCurrentFileVersions(connection, purgeFileVersions.keySet());
 		}
 	}
 
@@ -159,22 +163,87 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 				preparedStatement.executeBatch();
 			}
+			
+			updateCurrentFileVersions(connection, purgeFileVersions.keySet());
+		}
+	}
+	
+	/**
+	 * Updates the materialized current file tree (table <i>fileversion_current</i>) for the 
+	 * given file histories: The last {@link FileVersion} of each history in a <tt>MASTER</tt> 
+	 * database version replaces the history's current entry. Histories without any master
+	 * versions are removed from the current file tree.
+	 *
+	 * <p>This method must be called whenever the master file versions of a history change,
+	 * i.e. when file versions are added or removed, or when a database version is marked dirty.
+	 *
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 *
+	 * @param connection The connection used to execute the statements
+	 * @param fileHistoryIds Identifiers of the file histories to update
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public void updateCurrentFileVersions(Connection connection, Collection<FileHistoryId> fileHistoryIds) throws SQLException {
+		if (fileHistoryIds.size() > 0) {
+			try (PreparedStatement preparedStatement = getStatement(connection, "fileversion_current.delete.all.removeCurrentFileVersions.sql")) {
+				for (FileHistoryId fileHistoryId : fileHistoryIds) {
+					preparedStatement.setString(1, fileHistoryId.toString());
+					preparedStatement.addBatch();
+				}
+				
+				preparedStatement.executeBatch();
+			}
+			
+			try (PreparedStatement preparedStatement = getStatement(connection, "fileversion_current.insert.master.writeCurrentFileVersions.sql")) {
+				for (FileHistoryId fileHistoryId : fileHistoryIds) {
+					preparedStatement.setString(1, fileHistoryId.toString());
+					preparedStatement.setString(2, fileHistoryId.toString());
+					preparedStatement.addBatch();
+				}
+				
+				preparedStatement.executeBatch();
+			}
 		}
 	}
 
+	/**
+	 * Updates the materialized current file tree (table <i>fileversion_current</i>) for all 
+	 * file histories that have file versions in the database version with the given vector clock.
+	 *
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 *
+	 * @see #updateCurrentFileVersions(Connection, Collection)
+	 */
+	public void updateCurrentFileVersions(VectorClock databaseVersionVectorClock) throws SQLException {
+		List<FileHistoryId> fileHistoryIds = new ArrayList<FileHistoryId>();
+		
+		try (PreparedStatement preparedStatement = getStatement("fileversion.select.all.getFileHistoryIdsForDatabaseVersion.sql")) {
+			preparedStatement.setString(1, databaseVersionVectorClock.toString());
+			
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					fileHistoryIds.add(FileHistoryId.parseFileId(resultSet.getString("filehistory_id")));
+				}
+			}
+		}
+		
+		updateCurrentFileVersions(connection, fileHistoryIds);
+	}
+
 	/**
 	 * Queries the database for the currently active {@link FileVersion}s and returns it
 	 * as a map. If the current file tree (on the disk) has not changed, the result will
 	 * match the files on the disk.
 	 *
 	 * <p>Keys in the returned map correspond to the file version's relative file path,
-	 * and values to the actual {@link FileVersion} object.
+	 * and values to the actual {@link FileVersion} object. The map is sorted by path, so
+	 * that the contents of a folder can be looked up as a range of keys.
 	 *
 	 * @return Returns the current file tree as a map of relative paths to {@link FileVersion} objects
 	 */
-	public Map<String, FileVersion> getCurrentFileTree() {
+	public NavigableMap<String, FileVersion> getCurrentFileTree() {
 		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getCurrentFileTree.sql")) {
-			Map<String, FileVersion> fileTree = new TreeMap<>();
+			NavigableMap<String, FileVersion> fileTree = new TreeMap<>();
 			List<FileVersion> fileList = getFileTree(preparedStatement);
 			
 			for (FileVersion fileVersion : fileList) {
@@ -229,8 +298,6 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			pathExpression = (pathExpression == null || "".equals(pathExpression)) ? "%" : pathExpression;
 		}
 		
-		date = (date == null) ? new Date(4133984461000L) : date;
-
 		int slashCount = StringUtil.substrCount(pathExpression, "/");
 		int filterMinSlashCount = (recursive || fileHistoryId) ? 0 : slashCount;
 		int filterMaxSlashCount = (recursive || fileHistoryId) ? Integer.MAX_VALUE : slashCount;
@@ -240,25 +307,53 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		
 		if (logger.isLoggable(Level.INFO)) {
 			logger.log(Level.INFO, " getFileTree(path = " + pathExpression + ", history = " + fileHistoryPrefix + ", minSlash = "
-					+ filterMinSlashCount + ", maxSlash = " + filterMaxSlashCount + ", date <= " + date + ", types = " 
+					+ filterMinSlashCount + ", maxSlash = " + filterMaxSlashCount + ", date <= " + ((date != null) ? date : "now") + ", types = " 
 					+ StringUtil.join(fileTypesStr, ", "));
 		}
 
-		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFilteredFileTree.sql")) {
-			preparedStatement.setString(1, fileStatusNotEqualTo);
-			preparedStatement.setString(2, pathExpression);
-			preparedStatement.setString(3, fileHistoryPrefix);
-			preparedStatement.setInt(4, filterMinSlashCount);
-			preparedStatement.setInt(5, filterMaxSlashCount);
-			preparedStatement.setArray(6, connection.createArrayOf("varchar", fileTypesStr));
-			preparedStatement.setTimestamp(7, new Timestamp(date.getTime()));
-
-			return getFileTree(preparedStatement);
+		// The current file tree can be used, unless a point in time is requested;
+		// for the non-recursive case, the parent path is known from the expression  
+		
+		if (date == null) {
+			String parentPathExpression = (filterMaxSlashCount == Integer.MAX_VALUE) ? "%" : getParentPath(pathExpression);
+			
+			try (PreparedStatement preparedStatement = getStatement("fileversion_current.select.master.getFilteredCurrentFileTree.sql")) {
+				preparedStatement.setString(1, fileStatusNotEqualTo);
+				preparedStatement.setString(2, pathExpression);
+				preparedStatement.setString(3, fileHistoryPrefix);
+				preparedStatement.setString(4, parentPathExpression);
+				preparedStatement.setInt(5, filterMinSlashCount);
+				preparedStatement.setInt(6, filterMaxSlashCount);
+				preparedStatement.setArray(7, connection.createArrayOf("varchar", fileTypesStr));
+
+				return getFileTree(preparedStatement);
+			}
+			catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
 		}
-		catch (SQLException e) {
-			throw new RuntimeException(e);
+		else {
+			try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFilteredFileTree.sql")) {
+				preparedStatement.setString(1, fileStatusNotEqualTo);
+				preparedStatement.setString(2, pathExpression);
+				preparedStatement.setString(3, fileHistoryPrefix);
+				preparedStatement.setInt(4, filterMinSlashCount);
+				preparedStatement.setInt(5, filterMaxSlashCount);
+				preparedStatement.setArray(6, connection.createArrayOf("varchar", fileTypesStr));
+				preparedStatement.setTimestamp(7, new Timestamp(date.getTime()));
+	
+				return getFileTree(preparedStatement);
+			}
+			catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
 		}
 	}
+	
+	private String getParentPath(String pathExpression) {
+		int lastSlashIndex = pathExpression.lastIndexOf('/');
+		return (lastSlashIndex >= 0) ? pathExpression.substring(0, lastSlashIndex) : "";
+	}
 
 	private String[] createFileTypesArray(Set<FileType> fileTypes) {
 		String[] fileTypesStr = null;
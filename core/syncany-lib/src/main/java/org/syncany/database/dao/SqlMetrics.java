@@ -0,0 +1,161 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects execution counts, execution times and row counts per SQL resource
+ * (e.g. <tt>chunk.select.all.loadChunkCache.sql</tt>). The numbers are recorded by
+ * the statements handed out by {@link AbstractSqlDao#getStatement(String)}, and
+ * are shared by all database connections of the JVM.
+ *
+ * <p>For queries, the time is the time spent in <tt>executeQuery()</tt> and the
+ * row count is the number of rows read by the caller. For updates and batches, the
+ * row count is the number of rows changed.
+ *
+ * <p>Use {@link #getSnapshot()} to read the current numbers, and {@link #reset()} to
+ * start counting from zero, e.g. before an operation.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SqlMetrics {
+	private static final ConcurrentMap<String, ResourceCounter> resourceCounters = new ConcurrentHashMap<String, ResourceCounter>();
+
+	private SqlMetrics() {
+		// Static only
+	}
+
+	/**
+	 * Records one execution of the statement loaded from the given SQL resource.
+	 */
+	public static void record(String resourceId, long executionTimeNanos, long rowCount) {
+		ResourceCounter resourceCounter = resourceCounters.get(resourceId);
+
+		if (resourceCounter == null) {
+			ResourceCounter newResourceCounter = new ResourceCounter();
+			resourceCounter = resourceCounters.putIfAbsent(resourceId, newResourceCounter);
+
+			if (resourceCounter == null) {
+				resourceCounter = newResourceCounter;
+			}
+		}
+
+		resourceCounter.executions.incrementAndGet();
+		resourceCounter.executionTimeNanos.addAndGet(executionTimeNanos);
+		resourceCounter.rowCount.addAndGet(Math.max(0, rowCount));
+
+		long maxExecutionTimeNanos;
+
+		do {
+			maxExecutionTimeNanos = resourceCounter.maxExecutionTimeNanos.get();
+		}
+		while (executionTimeNanos > maxExecutionTimeNanos && !resourceCounter.maxExecutionTimeNanos.compareAndSet(maxExecutionTimeNanos, executionTimeNanos));
+	}
+
+	/**
+	 * Returns the current numbers of all SQL resources that have been executed
+	 * since the last {@link #reset()}, sorted by total execution time (descending).
+	 */
+	public static List<ResourceMetrics> getSnapshot() {
+		List<ResourceMetrics> snapshot = new ArrayList<ResourceMetrics>();
+
+		for (String resourceId : resourceCounters.keySet()) {
+			ResourceCounter resourceCounter = resourceCounters.get(resourceId);
+
+			if (resourceCounter != null) {
+				snapshot.add(new ResourceMetrics(resourceId, resourceCounter.executions.get(), resourceCounter.executionTimeNanos.get(),
+						resourceCounter.maxExecutionTimeNanos.get(), resourceCounter.rowCount.get()));
+			}
+		}
+
+		Collections.sort(snapshot, new Comparator<ResourceMetrics>() {
+			@Override
+			public int compare(ResourceMetrics metrics1, ResourceMetrics metrics2) {
+				return Long.compare(metrics2.getExecutionTimeNanos(), metrics1.getExecutionTimeNanos());
+			}
+		});
+
+		return snapshot;
+	}
+
+	/**
+	 * Discards all recorded numbers.
+	 */
+	public static void reset() {
+		resourceCounters.clear();
+	}
+
+	private static class ResourceCounter {
+		private final AtomicLong executions = new AtomicLong();
+		private final AtomicLong executionTimeNanos = new AtomicLong();
+		private final AtomicLong maxExecutionTimeNanos = new AtomicLong();
+		private final AtomicLong rowCount = new AtomicLong();
+	}
+
+	/**
+	 * Immutable numbers of a single SQL resource, as returned by {@link SqlMetrics#getSnapshot()}.
+	 */
+	public static class ResourceMetrics {
+		private final String resourceId;
+		private final long executions;
+		private final long executionTimeNanos;
+		private final long maxExecutionTimeNanos;
+		private final long rowCount;
+
+		public ResourceMetrics(String resourceId, long executions, long executionTimeNanos, long maxExecutionTimeNanos, long rowCount) {
+			this.resourceId = resourceId;
+			this.executions = executions;
+			this.executionTimeNanos = executionTimeNanos;
+			this.maxExecutionTimeNanos = maxExecutionTimeNanos;
+			this.rowCount = rowCount;
+		}
+
+		public String getResourceId() {
+			return resourceId;
+		}
+
+		public long getExecutions() {
+			return executions;
+		}
+
+		public long getExecutionTimeNanos() {
+			return executionTimeNanos;
+		}
+
+		public long getMaxExecutionTimeNanos() {
+			return maxExecutionTimeNanos;
+		}
+
+		public long getRowCount() {
+			return rowCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d execution(s), %d ms total, %d ms max, %d row(s)", resourceId, executions,
+					executionTimeNanos / 1000000, maxExecutionTimeNanos / 1000000, rowCount);
+		}
+	}
+}
@@ -0,0 +1,350 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.DatabaseConnectionFactory;
+
+/**
+ * Caches the prepared statements of a database connection by SQL resource id,
+ * so that statements are parsed and planned only once per connection instead of
+ * once per DAO call.
+ *
+ * <p>The statements handed out by {@link #getStatement(String)} are wrappers around the
+ * cached statements: Closing a wrapper does not close the underlying statement, but
+ * resets its parameters and batch and returns it to the cache. If a statement for the same
+ * resource is requested while another one is still in use (e.g. in nested calls), a new
+ * statement is prepared; only one idle statement per resource is kept. Statements whose
+ * result set is still open when they are closed are not reused. The wrappers also
+ * record execution times and row counts in {@link SqlMetrics}.
+ *
+ * <p>A cache belongs to exactly one connection: {@link #createCachingConnection(Connection)}
+ * wraps a connection, and the wrapper holds the cache. There is no global registry, so 
+ * DAOs on different connections do not contend for a lock, and a cache becomes garbage
+ * together with its connection. Closing the wrapper closes the cached statements. Connections
+ * that have not been wrapped get an uncached statement for every call.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class StatementCache {
+	private static final Logger logger = Logger.getLogger(StatementCache.class.getSimpleName());
+
+	private final Connection connection;
+	private final Map<String, PreparedStatement> idleStatements;
+	private final boolean enabled;
+
+	private StatementCache(Connection connection, boolean enabled) {
+		this.connection = connection;
+		this.idleStatements = new HashMap<String, PreparedStatement>();
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Wraps the given connection in a connection that holds its own statement cache. 
+	 * The returned connection must be passed to the DAOs for statements to be cached.
+	 */
+	public static Connection createCachingConnection(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(), new Class<?>[] { Connection.class },
+				new CachingConnectionHandler(connection));
+	}
+
+	/**
+	 * Returns the statement cache of the given connection. If the connection has not been
+	 * created by {@link #createCachingConnection(Connection)}, a non-caching instance is returned.
+	 */
+	static StatementCache forConnection(Connection connection) {
+		if (Proxy.isProxyClass(connection.getClass())) {
+			InvocationHandler invocationHandler = Proxy.getInvocationHandler(connection);
+
+			if (invocationHandler instanceof CachingConnectionHandler) {
+				return ((CachingConnectionHandler) invocationHandler).statementCache;
+			}
+		}
+
+		return new StatementCache(connection, false);
+	}
+
+	/**
+	 * Returns a prepared statement for the given SQL resource id, either from
+	 * the cache or newly prepared. The statement must be closed by the caller.
+	 */
+	public PreparedStatement getStatement(String resourceId) throws SQLException {
+		PreparedStatement preparedStatement;
+
+		synchronized (idleStatements) {
+			preparedStatement = idleStatements.remove(resourceId);
+		}
+
+		if (preparedStatement == null) {
+			preparedStatement = connection.prepareStatement(DatabaseConnectionFactory.getStatement(resourceId));
+		}
+
+		return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+				new CachedStatementHandler(resourceId, preparedStatement));
+	}
+
+	private void releaseStatement(String resourceId, PreparedStatement preparedStatement) throws SQLException {
+		boolean returnedToCache = false;
+
+		if (enabled && !connection.isClosed()) {
+			try {
+				preparedStatement.clearParameters();
+				preparedStatement.clearBatch();
+
+				synchronized (idleStatements) {
+					if (!idleStatements.containsKey(resourceId)) {
+						idleStatements.put(resourceId, preparedStatement);
+						returnedToCache = true;
+					}
+				}
+			}
+			catch (SQLException e) {
+				logger.log(Level.FINE, "Cannot reset statement " + resourceId + "; closing it.", e);
+			}
+		}
+
+		if (!returnedToCache) {
+			preparedStatement.close();
+		}
+	}
+
+	private void closeIdleStatements() {
+		synchronized (idleStatements) {
+			for (PreparedStatement preparedStatement : idleStatements.values()) {
+				try {
+					preparedStatement.close();
+				}
+				catch (SQLException e) {
+					logger.log(Level.FINE, "Cannot close cached statement.", e);
+				}
+			}
+
+			idleStatements.clear();
+		}
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Handles calls to a caching connection: Holds the connection's statement cache and
+	 * closes the cached statements when the connection is closed. All other calls are
+	 * passed to the underlying connection.
+	 */
+	private static class CachingConnectionHandler implements InvocationHandler {
+		private final Connection connection;
+		private final StatementCache statementCache;
+
+		public CachingConnectionHandler(Connection connection) {
+			this.connection = connection;
+			this.statementCache = new StatementCache(connection, true);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+
+			if ("close".equals(methodName) && (args == null || args.length == 0)) {
+				statementCache.closeIdleStatements();
+				connection.close();
+
+				return null;
+			}
+			else if ("equals".equals(methodName) && args != null && args.length == 1) {
+				return proxy == args[0];
+			}
+			else if ("hashCode".equals(methodName) && (args == null || args.length == 0)) {
+				return System.identityHashCode(proxy);
+			}
+			else {
+				return StatementCache.invoke(connection, method, args);
+			}
+		}
+	}
+
+	/**
+	 * Handles calls to a handed-out statement: Returns the statement to the cache on
+	 * <tt>close()</tt>, and measures the <tt>execute*()</tt> methods.
+	 */
+	private class CachedStatementHandler implements InvocationHandler {
+		private final String resourceId;
+		private final PreparedStatement preparedStatement;
+
+		private ResultSet openResultSet;
+		private boolean closed;
+
+		public CachedStatementHandler(String resourceId, PreparedStatement preparedStatement) {
+			this.resourceId = resourceId;
+			this.preparedStatement = preparedStatement;
+			this.closed = false;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+
+			if ("close".equals(methodName) && (args == null || args.length == 0)) {
+				close();
+				return null;
+			}
+			else if ("isClosed".equals(methodName) && (args == null || args.length == 0)) {
+				return closed;
+			}
+			else if (closed) {
+				throw new SQLException("Statement " + resourceId + " is closed.");
+			}
+			else if ("executeQuery".equals(methodName) && (args == null || args.length == 0)) {
+				closeOpenResultSet();
+
+				long startTime = System.nanoTime();
+				ResultSet resultSet = preparedStatement.executeQuery();
+				long executionTimeNanos = System.nanoTime() - startTime;
+
+				openResultSet = (ResultSet) Proxy.newProxyInstance(StatementCache.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+						new CountingResultSetHandler(resourceId, resultSet, executionTimeNanos));
+
+				return openResultSet;
+			}
+			else if ("executeUpdate".equals(methodName) && (args == null || args.length == 0)) {
+				long startTime = System.nanoTime();
+				int updateCount = preparedStatement.executeUpdate();
+
+				SqlMetrics.record(resourceId, System.nanoTime() - startTime, updateCount);
+				return updateCount;
+			}
+			else if ("executeBatch".equals(methodName)) {
+				long startTime = System.nanoTime();
+				int[] updateCounts = preparedStatement.executeBatch();
+				long updateCountSum = 0;
+
+				for (int updateCount : updateCounts) {
+					updateCountSum += Math.max(0, updateCount);
+				}
+
+				SqlMetrics.record(resourceId, System.nanoTime() - startTime, updateCountSum);
+				return updateCounts;
+			}
+			else if ("execute".equals(methodName) && (args == null || args.length == 0)) {
+				long startTime = System.nanoTime();
+				boolean hasResultSet = preparedStatement.execute();
+
+				SqlMetrics.record(resourceId, System.nanoTime() - startTime, (hasResultSet) ? 0 : preparedStatement.getUpdateCount());
+				return hasResultSet;
+			}
+			else {
+				return StatementCache.invoke(preparedStatement, method, args);
+			}
+		}
+
+		private void close() throws SQLException {
+			if (!closed) {
+				closed = true;
+
+				if (openResultSet != null && !openResultSet.isClosed()) {
+					// Some DAOs keep reading the result set after closing the statement (e.g.
+					// to return an iterator), so this statement cannot be used again.
+
+					preparedStatement.close();
+				}
+				else {
+					releaseStatement(resourceId, preparedStatement);
+				}
+			}
+		}
+
+		private void closeOpenResultSet() throws SQLException {
+			if (openResultSet != null) {
+				openResultSet.close();
+				openResultSet = null;
+			}
+		}
+	}
+
+	/**
+	 * Counts the rows read from a result set, and records the query in
+	 * {@link SqlMetrics} when the result set is exhausted or closed.
+	 */
+	private static class CountingResultSetHandler implements InvocationHandler {
+		private final String resourceId;
+		private final ResultSet resultSet;
+		private final long executionTimeNanos;
+
+		private long rowCount;
+		private boolean recorded;
+
+		public CountingResultSetHandler(String resourceId, ResultSet resultSet, long executionTimeNanos) {
+			this.resourceId = resourceId;
+			this.resultSet = resultSet;
+			this.executionTimeNanos = executionTimeNanos;
+			this.rowCount = 0;
+			this.recorded = false;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+
+			if ("next".equals(methodName)) {
+				boolean hasNext = resultSet.next();
+
+				if (hasNext) {
+					rowCount++;
+				}
+				else {
+					recordMetrics();
+				}
+
+				return hasNext;
+			}
+			else if ("close".equals(methodName) && (args == null || args.length == 0)) {
+				recordMetrics();
+				resultSet.close();
+
+				return null;
+			}
+			else {
+				return StatementCache.invoke(resultSet, method, args);
+			}
+		}
+
+		private void recordMetrics() {
+			if (!recorded) {
+				recorded = true;
+				SqlMetrics.record(resourceId, executionTimeNanos, rowCount);
+			}
+		}
+	}
+}
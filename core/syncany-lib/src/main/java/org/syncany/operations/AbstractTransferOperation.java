@@ -25,10 +25,13 @@ import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
+import org.syncany.operations.daemon.messages.OperationMetricsSyncExternalEvent;
+import org.syncany.plugins.transfer.InstrumentedTransferManager;
 import org.syncany.plugins.transfer.RetriableTransferManager;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransactionAwareTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferMetrics;
 import org.syncany.plugins.transfer.files.ActionRemoteFile;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
@@ -39,7 +42,9 @@ import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
  * or the remote repository.
  *
  * <p>This abstract class offers convenience methods to handle {@link ActionRemoteFile} as well
- * as to handle the connection and local cache.
+ * as to handle the connection and local cache. It also creates the {@link OperationMetrics} of
+ * the operation, and measures all calls to the transfer manager (unless transfer metrics
+ * are disabled in the config).
  *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -59,11 +64,13 @@ public abstract class AbstractTransferOperation extends Operation {
 	protected ActionFileHandler actionHandler;
 
 	protected LocalEventBus eventBus;
+	protected OperationMetrics metrics;
 
 	public AbstractTransferOperation(Config config, String operationName) {
 		super(config);
 
 		this.eventBus = LocalEventBus.getInstance();
+		this.metrics = new OperationMetrics(operationName);
 
 		// Do NOT reuse TransferManager for action file renewal; see #140
 
@@ -78,11 +85,36 @@ public abstract class AbstractTransferOperation extends Operation {
 	}
 
 	private TransactionAwareTransferManager createReliableTransferManager(Config config) throws StorageException {
-		return new TransactionAwareTransferManager(createRetriableTransferManager(config), config);
+		TransactionAwareTransferManager transactionAwareTransferManager = new TransactionAwareTransferManager(createRetriableTransferManager(config), config);
+
+		if (config.isTransferMetricsEnabled()) {
+			transactionAwareTransferManager.setTransferMetrics(metrics.getTransferMetrics());
+		}
+
+		return transactionAwareTransferManager;
 	}
 
 	private TransferManager createRetriableTransferManager(Config config) throws StorageException {
-		return new RetriableTransferManager(config.getTransferPlugin().createTransferManager(config.getConnection(), config));
+		TransferManager pluginTransferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
+
+		if (config.isTransferMetricsEnabled()) {
+			TransferMetrics transferMetrics = metrics.getTransferMetrics();
+			return new RetriableTransferManager(new InstrumentedTransferManager(pluginTransferManager, transferMetrics), transferMetrics);
+		}
+		else {
+			return new RetriableTransferManager(pluginTransferManager);
+		}
+	}
+
+	/**
+	 * Stops the operation's time and posts its metrics to the event bus. Must be
+	 * called once when the operation ends, after the end event was fired.
+	 */
+	protected void fireMetricsEvent() {
+		metrics.finish();
+
+		logger.log(Level.INFO, "Operation metrics: " + metrics);
+		eventBus.post(new OperationMetricsSyncExternalEvent(config.getLocalDir().getAbsolutePath(), metrics));
 	}
 
 	protected void startOperation() throws Exception {
@@ -38,6 +38,7 @@ import org.syncany.database.FileVersion;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.SqlDatabase;
+import org.syncany.operations.StreamingAssembler.AssembledFile;
 import org.syncany.util.StringUtil;
 
 /**
@@ -46,7 +47,9 @@ import org.syncany.util.StringUtil;
  * multichunker, etc.).
  * 
  * <p>It uses the local {@link SqlDatabase} and an optional {@link MemoryDatabase}
- * to perform file checksum and chunk checksum lookups.   
+ * to perform file checksum and chunk checksum lookups. If a {@link StreamingAssembler}
+ * is given, files that have already been reconstructed while downloading are taken
+ * from it instead of being assembled from the decrypted multichunks.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -56,15 +59,21 @@ public class Assembler {
 	private Config config;
 	private SqlDatabase localDatabase;
 	private MemoryDatabase memoryDatabase;
+	private StreamingAssembler streamingAssembler;
 	
 	public Assembler(Config config, SqlDatabase localDatabase) {
 		this(config, localDatabase, null);
 	}
 	
 	public Assembler(Config config, SqlDatabase localDatabase, MemoryDatabase memoryDatabase) {
+		this(config, localDatabase, memoryDatabase, null);
+	}
+
+	public Assembler(Config config, SqlDatabase localDatabase, MemoryDatabase memoryDatabase, StreamingAssembler streamingAssembler) {
 		this.config = config;
 		this.localDatabase = localDatabase;
 		this.memoryDatabase = memoryDatabase;
+		this.streamingAssembler = streamingAssembler;
 	}
 
 	/**
@@ -72,6 +81,23 @@ public class Assembler {
 	 * to the cached file after successfully assembling the file. 
 	 */
 	public File assembleToCache(FileVersion fileVersion) throws Exception {
+		// Take file that has been reconstructed while downloading
+		AssembledFile streamedFile = (streamingAssembler != null) ? streamingAssembler.takeAssembledFile(fileVersion.getChecksum()) : null;
+
+		if (streamedFile != null) {
+			logger.log(Level.INFO, "     - Using streamed file " + streamedFile.getFile() + " for " + fileVersion.getPath() + " ...");
+			
+			try {
+				validateChecksum(fileVersion.getChecksum().getBytes(), streamedFile.getChecksum());
+			}
+			catch (Exception e) {
+				streamedFile.getFile().delete();
+				throw e;
+			}
+			
+			return streamedFile.getFile();
+		}
+		
 		File reconstructedFileInCache = config.getCache().createTempFile("reconstructedFileVersion");
 		logger.log(Level.INFO, "     - Creating file " + fileVersion.getPath() + " to " + reconstructedFileInCache + " ...");
 
@@ -110,20 +136,26 @@ public class Assembler {
 				}
 
 				File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkIdForChunk);
+				config.getCache().pin(decryptedMultiChunkFile);
 
-				MultiChunk multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
-				InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes());
+				try {
+					MultiChunk multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
+					InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes());
 
-				byte[] buffer = new byte[4096];
-				int read = 0;
+					byte[] buffer = new byte[4096];
+					int read = 0;
 
-				while (-1 != (read = chunkInputStream.read(buffer))) {
-					reconstructedFileChecksum.update(buffer, 0, read);
-					reconstructedFileOutputStream.write(buffer, 0, read);
-				}
+					while (-1 != (read = chunkInputStream.read(buffer))) {
+						reconstructedFileChecksum.update(buffer, 0, read);
+						reconstructedFileOutputStream.write(buffer, 0, read);
+					}
 
-				chunkInputStream.close();
-				multiChunk.close();
+					chunkInputStream.close();
+					multiChunk.close();
+				}
+				finally {
+					config.getCache().unpin(decryptedMultiChunkFile);
+				}
 			}
 		}
 
@@ -133,11 +165,15 @@ public class Assembler {
 		byte[] reconstructedFileExpectedChecksum = fileContent.getChecksum().getBytes();
 		byte[] reconstructedFileActualChecksum = reconstructedFileChecksum.digest();
 		
+		validateChecksum(reconstructedFileExpectedChecksum, reconstructedFileActualChecksum);
+		
+		return reconstructedFileInCache;
+	}	
+	
+	private void validateChecksum(byte[] reconstructedFileExpectedChecksum, byte[] reconstructedFileActualChecksum) throws Exception {
 		if (!Arrays.equals(reconstructedFileActualChecksum, reconstructedFileExpectedChecksum)) {
 			throw new Exception("Checksums do not match: expected " + StringUtil.toHex(reconstructedFileExpectedChecksum) + " != actual "
 					+ StringUtil.toHex(reconstructedFileActualChecksum));
 		}
-		
-		return reconstructedFileInCache;
-	}	
+	}
 }
@@ -31,6 +31,7 @@ import org.apache.commons.io.IOUtils;
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.OperationMetrics.Phase;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferManager;
@@ -38,7 +39,8 @@ import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 
 /**
  * The downloader uses a {@link TransferManager} to download a given set of multichunks,
- * decrypt them and store them in the local cache folder. 
+ * decrypt them and store them in the local cache folder. Alternatively, decrypted multichunks
+ * can be passed directly to a {@link StreamingAssembler} to re-assemble files from them.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -48,11 +50,22 @@ public class Downloader {
 	private Config config;
 	private TransferManager transferManager;
 	private LocalEventBus eventBus;
+	private OperationMetrics metrics;
 
 	public Downloader(Config config, TransferManager transferManager) {
+		this(config, transferManager, null);
+	}
+
+	/**
+	 * Creates a downloader that adds the time spent downloading and decrypting 
+	 * multichunks to the {@link Phase#DOWNLOAD} and {@link Phase#DECRYPT} phases
+	 * of the given metrics (if not <tt>null</tt>).
+	 */
+	public Downloader(Config config, TransferManager transferManager, OperationMetrics metrics) {
 		this.config = config;
 		this.transferManager = transferManager;
 		this.eventBus = LocalEventBus.getInstance();
+		this.metrics = metrics;
 	}
 
 	/** 
@@ -60,6 +73,18 @@ public class Downloader {
 	 * to the local cache folder. 
 	 */
 	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
+		downloadAndDecryptMultiChunks(unknownMultiChunkIds, null);
+	}
+
+	/** 
+	 * Downloads the given multichunks from the remote storage (in the order of the given set)
+	 * and decrypts them. Multichunks streamed by the given {@link StreamingAssembler} (if not
+	 * <tt>null</tt>) are passed to the assembler while decrypting them; all other multichunks
+	 * are decrypted to the local cache folder. 
+	 */
+	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds, StreamingAssembler streamingAssembler) throws StorageException,
+			IOException {
+		
 		logger.log(Level.INFO, "Downloading and extracting multichunks ...");
 
 		int multiChunkNumber = 0;
@@ -69,9 +94,11 @@ public class Downloader {
 			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
 			MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
 
+			boolean streamMultiChunk = streamingAssembler != null && streamingAssembler.isStreamed(multiChunkId);
+
 			multiChunkNumber++;
 
-			if (localDecryptedMultiChunkFile.exists()) {
+			if (!streamMultiChunk && localDecryptedMultiChunkFile.exists()) {
 				logger.log(Level.INFO, "  + Decrypted multichunk exists locally " + multiChunkId + ". No need to download it!");
 			}
 			else {
@@ -79,18 +106,30 @@ public class Downloader {
 						unknownMultiChunkIds.size()));
 
 				logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
+				long downloadStartTime = System.nanoTime();
+
 				transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+				addPhaseTime(Phase.DOWNLOAD, System.nanoTime() - downloadStartTime);
+
+				long decryptStartTime = System.nanoTime();
 
 				try {
-					logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
 					InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
-					OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
 
-					IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+					if (streamMultiChunk) {
+						logger.log(Level.INFO, "  + Decrypting and assembling multichunk " + multiChunkId + " ...");
+						streamingAssembler.assemble(multiChunkId, multiChunkInputStream);
+					}
+					else {
+						logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
+						OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+	
+						IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+	
+						decryptedMultiChunkOutputStream.close();
+					}
 
-					decryptedMultiChunkOutputStream.close();
 					multiChunkInputStream.close();
-
 				}
 				catch (IOException e) {
 					// Security: Deleting the multichunk if the decryption/extraction failed is important!
@@ -108,10 +147,18 @@ public class Downloader {
 				finally {
 					logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
 					localEncryptedMultiChunkFile.delete();
+
+					addPhaseTime(Phase.DECRYPT, System.nanoTime() - decryptStartTime);
 				}
 			}
 		}
 
 		transferManager.disconnect();
 	}
+
+	private void addPhaseTime(Phase phase, long timeNanos) {
+		if (metrics != null) {
+			metrics.addPhaseTime(phase, timeNanos);
+		}
+	}
 }
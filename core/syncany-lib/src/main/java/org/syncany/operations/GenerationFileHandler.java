@@ -0,0 +1,238 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.syncany.config.Config;
+import org.syncany.config.to.RepoTO;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.database.SqlDatabase;
+import org.syncany.operations.down.DownOperation;
+import org.syncany.operations.up.UpOperation;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.GenerationRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.util.StringUtil;
+
+/**
+ * The generation file handler reads and updates the repository's {@link GenerationRemoteFile}.
+ * It allows the {@link DownOperation} and the {@link UpOperation} to determine whether 
+ * the remote database folder needs to be listed at all, using a single (small) download.
+ * 
+ * <p>The generation file contains a random token, which is replaced by a new token 
+ * whenever a client commits new database files. After a client has completely listed 
+ * and processed the remote databases, it remembers the token it read <i>before</i> the
+ * listing in the local database. As long as the remote token matches the remembered 
+ * one, no new databases can have been committed (by new clients).
+ * 
+ * <p>Clients that do not know about the generation file do not update it. To make sure
+ * their changes are picked up eventually, the remembered token is only trusted for 
+ * {@link #GENERATION_TRUST_TIME} milliseconds; after that, a full listing is performed. 
+ * Repositories without a generation file are always listed.
+ * 
+ * <p>The generation file is only read and written if the repository format version is at
+ * least {@link RepoTO#FORMAT_VERSION_2}. For older repositories, this class does not perform 
+ * any remote operations and the remote databases are always listed. Like all other files,
+ * the generation file is written through the repository's transformer (i.e. encrypted).
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class GenerationFileHandler {
+	private static final Logger logger = Logger.getLogger(GenerationFileHandler.class.getSimpleName());
+
+	/**
+	 * Defines the time for which an unchanged generation token is trusted before the
+	 * remote databases are listed again, in case older clients have written to the repo.
+	 */
+	public static final long GENERATION_TRUST_TIME = 10 * 60 * 1000;
+
+	private static final int GENERATION_TOKEN_SIZE = 16;
+
+	private Config config;
+	private TransferManager transferManager;
+	private SqlDatabase localDatabase;
+
+	public GenerationFileHandler(Config config, TransferManager transferManager, SqlDatabase localDatabase) {
+		this.config = config;
+		this.transferManager = transferManager;
+		this.localDatabase = localDatabase;
+	}
+
+	/**
+	 * Returns true if the repository format supports the generation file, i.e. if all
+	 * clients of the repository maintain it.
+	 */
+	public boolean isEnabled() {
+		return config.getRepoFormatVersion() >= RepoTO.FORMAT_VERSION_2;
+	}
+
+	/**
+	 * Downloads and returns the current remote generation token, or <tt>null</tt> if
+	 * the repository does not have a generation file (e.g. only older clients have written
+	 * to it), if it cannot be read, or if the repository format does not support it.
+	 */
+	public String readRemoteGeneration() {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		File tempGenerationFile = null;
+
+		try {
+			tempGenerationFile = config.getCache().createTempFile("generation");
+			transferManager.download(new GenerationRemoteFile(), tempGenerationFile);
+
+			String remoteGeneration = readGenerationFile(tempGenerationFile);
+			logger.log(Level.INFO, "Remote generation is " + remoteGeneration);
+
+			return (!remoteGeneration.isEmpty()) ? remoteGeneration : null;
+		}
+		catch (StorageFileNotFoundException e) {
+			logger.log(Level.INFO, "No remote generation file found (repo written by older client). Listing remote files.");
+			return null;
+		}
+		catch (Exception e) {
+			logger.log(Level.INFO, "Cannot read remote generation file. Listing remote files.", e);
+			return null;
+		}
+		finally {
+			if (tempGenerationFile != null) {
+				tempGenerationFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the given remote generation token equals the one remembered after the last 
+	 * complete listing, and that listing is not older than {@link #GENERATION_TRUST_TIME}. If this method
+	 * returns true, the remote repository does not contain any unknown databases.
+	 */
+	public boolean isRemoteGenerationKnown(String remoteGeneration) {
+		if (remoteGeneration == null) {
+			return false;
+		}
+
+		String knownGeneration = localDatabase.getRepoGeneration();
+		Long knownGenerationTime = localDatabase.getRepoGenerationTime();
+
+		if (knownGeneration == null || knownGenerationTime == null || !knownGeneration.equals(remoteGeneration)) {
+			return false;
+		}
+		else if (System.currentTimeMillis() - knownGenerationTime > GENERATION_TRUST_TIME) {
+			logger.log(Level.INFO, "Remote generation unchanged, but last full listing is too old. Listing remote files.");
+			return false;
+		}
+		else {
+			return true;
+		}
+	}
+
+	/**
+	 * Remembers the given remote generation token (read before a complete listing) in the 
+	 * local database. The local database is <b>not</b> committed by this method.
+	 */
+	public void rememberRemoteGeneration(String remoteGeneration) {
+		if (remoteGeneration != null) {
+			localDatabase.writeRepoGeneration(remoteGeneration, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Replaces the remote generation file with a new random token. This method must be called
+	 * after new database files have been committed to the repository.
+	 * 
+	 * <p>Since not all plugins can overwrite files, the new token is first uploaded to a temporary
+	 * file, the old generation file is deleted and the temporary file is then moved in its place. 
+	 * Clients reading the generation file in between will not find it and fall back to listing
+	 * the remote files. 
+	 * 
+	 * <p>If any of these steps fail, the old generation file is deleted, so that other clients
+	 * list the remote files instead of trusting an outdated token. Only if that fails as well,
+	 * an exception is thrown.
+	 * 
+	 * <p>If the repository format does not support the generation file, this method does nothing.
+	 * 
+	 * @throws StorageException If the old generation file could neither be replaced nor deleted
+	 */
+	public void updateRemoteGeneration() throws StorageException {
+		if (!isEnabled()) {
+			return;
+		}
+
+		File tempGenerationFile = null;
+		GenerationRemoteFile generationRemoteFile = new GenerationRemoteFile();
+
+		try {
+			String newGeneration = StringUtil.toHex(CipherUtil.createRandomArray(GENERATION_TOKEN_SIZE));
+			logger.log(Level.INFO, "Updating remote generation to " + newGeneration + " ...");
+
+			tempGenerationFile = config.getCache().createTempFile("generation");
+			writeGenerationFile(tempGenerationFile, newGeneration);
+
+			TempRemoteFile tempGenerationRemoteFile = new TempRemoteFile(generationRemoteFile);
+			transferManager.upload(tempGenerationFile, tempGenerationRemoteFile);
+
+			deleteRemoteGeneration(generationRemoteFile);
+			transferManager.move(tempGenerationRemoteFile, generationRemoteFile);
+		}
+		catch (StorageException | IOException e) {
+			logger.log(Level.WARNING, "Cannot update remote generation file. Deleting it, so other clients list the remote files.", e);
+			
+			try {
+				deleteRemoteGeneration(generationRemoteFile);
+			}
+			catch (StorageException deleteException) {
+				throw new StorageException("Cannot update or delete remote generation file. Other clients may not detect new databases.", e);
+			}
+		}
+		finally {
+			if (tempGenerationFile != null) {
+				tempGenerationFile.delete();
+			}
+		}
+	}
+
+	private String readGenerationFile(File generationFile) throws IOException {
+		try (InputStream generationInputStream = config.getTransformer().createInputStream(new FileInputStream(generationFile))) {
+			return IOUtils.toString(generationInputStream).trim();
+		}
+	}
+
+	private void writeGenerationFile(File generationFile, String generation) throws IOException {
+		try (OutputStream generationOutputStream = config.getTransformer().createOutputStream(new FileOutputStream(generationFile))) {
+			IOUtils.write(generation, generationOutputStream);
+		}
+	}
+
+	private void deleteRemoteGeneration(GenerationRemoteFile generationRemoteFile) throws StorageException {
+		if (!transferManager.delete(generationRemoteFile)) {
+			throw new StorageException("Unable to delete remote generation file.");
+		}
+	}
+}
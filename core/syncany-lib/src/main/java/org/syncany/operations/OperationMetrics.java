@@ -0,0 +1,351 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementList;
+import org.syncany.plugins.transfer.TransferMetrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Operation metrics record how long the phases of a single operation run
+ * took (e.g. indexing, uploading, assembling files), how many local files and bytes
+ * were processed, and how the calls to the transfer manager performed (see {@link TransferMetrics}).
+ *
+ * <p>Transfer operations create their metrics when they are instantiated and post them as
+ * an {@link org.syncany.operations.daemon.messages.OperationMetricsSyncExternalEvent OperationMetricsSyncExternalEvent}
+ * when they end. The metrics can be serialized to XML (for the daemon API), and to JSON
+ * using {@link #toJson(List)}.
+ *
+ * <p>Phases are measured either as a block using {@link #startPhase(Phase)} and {@link #stopPhase(Phase)},
+ * or by adding up individual durations using {@link #addPhaseTime(Phase, long)}. A phase's duration
+ * is the sum of these measurements. Phases may overlap (e.g. if they are measured in different
+ * threads), and work is attributed to the phase that was measured while it happened: Pipelined
+ * multichunk uploads run during {@link Phase#INDEX}, and streamed files are assembled during
+ * {@link Phase#DECRYPT}. The sum of all phase durations is therefore neither the duration of the
+ * operation, nor the time spent in phases.
+ *
+ * <p>Wall-clock times are reported separately: {@link #getDurationMillis()} is the duration of the
+ * whole operation, and {@link #getPhaseWallClockMillis()} is the time during which at least one phase
+ * was running. The difference between the sum of the phase durations and the latter is the time
+ * that was counted more than once (see {@link #getPhaseOverlapMillis()}).
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class OperationMetrics {
+	public enum Phase {
+		/** Analyzing the local folder and/or listing the remote repository */
+		STATUS,
+
+		/** Chunking and deduplicating new or changed files */
+		INDEX,
+
+		/** Uploading multichunks and databases, and moving them to their final location */
+		UPLOAD,
+
+		/** Committing the local database and updating the remote generation */
+		COMMIT,
+
+		/** Writing new database versions to the local database */
+		PERSIST,
+
+		/** Downloading databases and multichunks */
+		DOWNLOAD,
+
+		/** Decrypting/uncompressing and reading downloaded databases and multichunks */
+		DECRYPT,
+
+		/** Assembling files from multichunks and moving them to the local folder */
+		ASSEMBLE,
+
+		/** Applying all other file system actions, e.g. deletions, renames and folders */
+		APPLY,
+
+		/** Removing old file versions and unused multichunks (cleanup) */
+		REMOVE_OLD_VERSIONS,
+
+		/** Merging remote database files (cleanup) */
+		MERGE
+	}
+
+	@Element(name = "operation", required = true)
+	private String operationName;
+
+	@Element(name = "startTime", required = true)
+	private long startTime;
+
+	@Element(name = "durationMillis", required = true)
+	private long durationMillis;
+
+	@Element(name = "filesProcessed", required = true)
+	private long filesProcessed;
+
+	@Element(name = "bytesProcessed", required = true)
+	private long bytesProcessed;
+
+	@Element(name = "phaseWallClockMillis", required = false)
+	private long phaseWallClockMillis;
+
+	@ElementList(name = "phases", entry = "phase", required = false)
+	private ArrayList<PhaseMetrics> phases;
+
+	@Element(name = "transfers", required = true)
+	private TransferMetrics transferMetrics;
+
+	private transient long startNanos;
+	private transient Map<Phase, Long> runningPhaseStartNanos;
+
+	private transient long phaseWallClockNanos;
+	private transient long phaseWallClockCoveredUntilNanos;
+	private transient long phaseWallClockOpenSinceNanos;
+	private transient int openPhaseCount;
+
+	public OperationMetrics() {
+		// Required by Simple
+	}
+
+	public OperationMetrics(String operationName) {
+		this.operationName = operationName;
+		this.startTime = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+		this.phaseWallClockCoveredUntilNanos = startNanos;
+		this.phases = new ArrayList<PhaseMetrics>();
+		this.transferMetrics = new TransferMetrics();
+		this.runningPhaseStartNanos = new EnumMap<Phase, Long>(Phase.class);
+	}
+
+	public synchronized void startPhase(Phase phase) {
+		long nowNanos = System.nanoTime();
+
+		if (runningPhaseStartNanos.put(phase, nowNanos) == null) {
+			if (openPhaseCount == 0) {
+				phaseWallClockOpenSinceNanos = Math.max(nowNanos, phaseWallClockCoveredUntilNanos);
+			}
+
+			openPhaseCount++;
+		}
+	}
+
+	public synchronized void stopPhase(Phase phase) {
+		Long phaseStartNanos = runningPhaseStartNanos.remove(phase);
+
+		if (phaseStartNanos != null) {
+			long nowNanos = System.nanoTime();
+
+			addPhaseMetrics(phase, nowNanos - phaseStartNanos);
+			openPhaseCount--;
+
+			if (openPhaseCount == 0) {
+				phaseWallClockNanos += nowNanos - phaseWallClockOpenSinceNanos;
+				phaseWallClockCoveredUntilNanos = nowNanos;
+			}
+		}
+	}
+
+	/**
+	 * Adds the given duration (in nanoseconds) to the given phase, and counts
+	 * the phase as run once more. The duration is assumed to have ended just now.
+	 */
+	public synchronized void addPhaseTime(Phase phase, long timeNanos) {
+		long nowNanos = System.nanoTime();
+		long phaseStartNanos = Math.max(nowNanos - timeNanos, phaseWallClockCoveredUntilNanos);
+
+		addPhaseMetrics(phase, timeNanos);
+
+		// Only count the wall-clock time not yet covered by another phase
+		if (openPhaseCount > 0) {
+			phaseWallClockOpenSinceNanos = Math.min(phaseWallClockOpenSinceNanos, phaseStartNanos);
+		}
+		else if (nowNanos > phaseStartNanos) {
+			phaseWallClockNanos += nowNanos - phaseStartNanos;
+			phaseWallClockCoveredUntilNanos = nowNanos;
+		}
+	}
+
+	private void addPhaseMetrics(Phase phase, long timeNanos) {
+		PhaseMetrics phaseMetrics = getPhase(phase);
+
+		if (phaseMetrics == null) {
+			phaseMetrics = new PhaseMetrics(phase);
+			phases.add(phaseMetrics);
+		}
+
+		phaseMetrics.count++;
+		phaseMetrics.durationNanos += timeNanos;
+		phaseMetrics.durationMillis = phaseMetrics.durationNanos / 1000000;
+	}
+
+	public synchronized void addFilesProcessed(long files) {
+		filesProcessed += files;
+	}
+
+	public synchronized void addBytesProcessed(long bytes) {
+		bytesProcessed += bytes;
+	}
+
+	/**
+	 * Stops the time of the operation. Phases that are still running
+	 * are stopped as well.
+	 */
+	public synchronized void finish() {
+		for (Phase runningPhase : new ArrayList<Phase>(runningPhaseStartNanos.keySet())) {
+			stopPhase(runningPhase);
+		}
+
+		durationMillis = (System.nanoTime() - startNanos) / 1000000;
+		phaseWallClockMillis = phaseWallClockNanos / 1000000;
+	}
+
+	public String getOperationName() {
+		return operationName;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public synchronized long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Returns the wall-clock time during which at least one phase was
+	 * running. This is at most the duration of the operation.
+	 */
+	public synchronized long getPhaseWallClockMillis() {
+		return phaseWallClockMillis;
+	}
+
+	/**
+	 * Returns the time that was attributed to more than one phase, i.e. the
+	 * sum of all phase durations minus the {@link #getPhaseWallClockMillis() wall-clock time}
+	 * during which phases were running.
+	 */
+	public synchronized long getPhaseOverlapMillis() {
+		long phaseDurationMillis = 0;
+
+		for (PhaseMetrics phaseMetrics : phases) {
+			phaseDurationMillis += phaseMetrics.durationMillis;
+		}
+
+		return Math.max(0, phaseDurationMillis - phaseWallClockMillis);
+	}
+
+	public synchronized long getFilesProcessed() {
+		return filesProcessed;
+	}
+
+	public synchronized long getBytesProcessed() {
+		return bytesProcessed;
+	}
+
+	public synchronized List<PhaseMetrics> getPhases() {
+		return new ArrayList<PhaseMetrics>(phases);
+	}
+
+	/**
+	 * Returns the numbers of the given phase, or <tt>null</tt>
+	 * if the phase has not been run.
+	 */
+	public synchronized PhaseMetrics getPhase(Phase phase) {
+		for (PhaseMetrics phaseMetrics : phases) {
+			if (phaseMetrics.phase == phase) {
+				return phaseMetrics;
+			}
+		}
+
+		return null;
+	}
+
+	public TransferMetrics getTransferMetrics() {
+		return transferMetrics;
+	}
+
+	/**
+	 * Serializes the given metrics as a JSON array, e.g. to write
+	 * them to a file after a command has finished.
+	 */
+	public static String toJson(List<OperationMetrics> operationMetrics) {
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		return gson.toJson(operationMetrics);
+	}
+
+	public static void writeJsonFile(List<OperationMetrics> operationMetrics, File jsonFile) throws IOException {
+		try (Writer jsonWriter = new FileWriter(jsonFile)) {
+			jsonWriter.write(toJson(operationMetrics));
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return operationName + ": " + durationMillis + " ms (" + phaseWallClockMillis + " ms in phases), " + filesProcessed + " file(s), " + bytesProcessed + " byte(s), phases " + phases
+				+ ", transfers " + transferMetrics;
+	}
+
+	/**
+	 * Duration and number of runs of a single phase.
+	 */
+	public static class PhaseMetrics {
+		@Element(name = "name", required = true)
+		private Phase phase;
+
+		@Element(name = "count", required = true)
+		private long count;
+
+		@Element(name = "durationMillis", required = true)
+		private long durationMillis;
+
+		private transient long durationNanos;
+
+		public PhaseMetrics() {
+			// Required by Simple
+		}
+
+		public PhaseMetrics(Phase phase) {
+			this.phase = phase;
+		}
+
+		public Phase getPhase() {
+			return phase;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		@Override
+		public String toString() {
+			return phase + "=" + durationMillis + "ms";
+		}
+	}
+}
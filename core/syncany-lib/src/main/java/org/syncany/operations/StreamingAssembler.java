@@ -0,0 +1,439 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * The streaming assembler re-assembles files directly from the decrypted multichunk
+ * streams of the {@link Downloader}, without writing the decrypted multichunks to the
+ * local cache first. While a multichunk is decrypted, its chunks are read sequentially
+ * and appended to the reconstructed files in the cache. The {@link Assembler} then
+ * picks up these files instead of assembling them from decrypted multichunk files.
+ *
+ * <p>Only file contents whose chunks can be written in a single pass are streamed. A
+ * file content is streamed if it is created by exactly one file system action, if it does
+ * not contain the same chunk twice, and if all of its multichunks are freshly downloaded
+ * and not needed by any other (non-streamed) file. All other multichunks are decrypted
+ * to the cache as before. Chunks of a streamed file content must appear as one consecutive
+ * run per multichunk (which is how the {@link org.syncany.chunk.Deduper Deduper} writes them).
+ * Within a multichunk, chunks arriving out of order are buffered until they can be written.
+ *
+ * <p>Usage: Add file contents using {@link #addFileContent(FileContent, List)} and multichunks
+ * that must be decrypted to the cache using {@link #addMaterializedMultiChunks(Collection)},
+ * then call {@link #prepare(Set)} to determine the download order. After the download,
+ * reconstructed files can be retrieved via {@link #takeAssembledFile(FileChecksum)}. Files
+ * that were not taken are deleted by {@link #close()}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class StreamingAssembler {
+	private static final Logger logger = Logger.getLogger(StreamingAssembler.class.getSimpleName());
+
+	private Config config;
+
+	private Map<FileChecksum, AssemblyTarget> targets;
+	private Set<FileChecksum> excludedFileContents;
+	private Set<MultiChunkId> materializedMultiChunkIds;
+
+	private Map<MultiChunkId, Map<ChunkChecksum, List<AssemblyTarget>>> chunkTargetsByMultiChunk;
+
+	public StreamingAssembler(Config config) {
+		this.config = config;
+
+		this.targets = new LinkedHashMap<FileChecksum, AssemblyTarget>();
+		this.excludedFileContents = new HashSet<FileChecksum>();
+		this.materializedMultiChunkIds = new HashSet<MultiChunkId>();
+
+		this.chunkTargetsByMultiChunk = new HashMap<MultiChunkId, Map<ChunkChecksum, List<AssemblyTarget>>>();
+	}
+
+	/**
+	 * Adds a file content that is a candidate for streaming reassembly. The given list contains the
+	 * multichunk identifier for each of the chunks of the file content (in the same order). Adding
+	 * the same file content twice excludes it from streaming reassembly.
+	 */
+	public void addFileContent(FileContent fileContent, List<MultiChunkId> chunkMultiChunkIds) {
+		FileChecksum fileChecksum = fileContent.getChecksum();
+
+		if (excludedFileContents.contains(fileChecksum)) {
+			materializedMultiChunkIds.addAll(chunkMultiChunkIds);
+		}
+		else if (targets.containsKey(fileChecksum)) {
+			logger.log(Level.FINE, "- File content " + fileChecksum + " is needed more than once, not streaming it.");
+
+			excludedFileContents.add(fileChecksum);
+			materializedMultiChunkIds.addAll(targets.remove(fileChecksum).chunkMultiChunkIds);
+			materializedMultiChunkIds.addAll(chunkMultiChunkIds);
+		}
+		else if (new HashSet<ChunkChecksum>(fileContent.getChunks()).size() != fileContent.getChunks().size()) {
+			logger.log(Level.FINE, "- File content " + fileChecksum + " contains duplicate chunks, not streaming it.");
+
+			excludedFileContents.add(fileChecksum);
+			materializedMultiChunkIds.addAll(chunkMultiChunkIds);
+		}
+		else {
+			targets.put(fileChecksum, new AssemblyTarget(fileChecksum, fileContent.getChunks(), chunkMultiChunkIds));
+		}
+	}
+
+	/**
+	 * Marks the given multichunks as required by files that are not streamed, i.e.
+	 * these multichunks must be decrypted to the local cache.
+	 */
+	public void addMaterializedMultiChunks(Collection<MultiChunkId> multiChunkIds) {
+		materializedMultiChunkIds.addAll(multiChunkIds);
+	}
+
+	/**
+	 * Determines which file contents can be streamed and returns the given multichunks
+	 * in the order in which they must be downloaded: Streamed multichunks first, in the order
+	 * in which they are needed by the streamed files, then all other multichunks.
+	 */
+	public Set<MultiChunkId> prepare(Set<MultiChunkId> requiredMultiChunkIds) {
+		// Multichunks already in the cache must not be streamed
+		for (MultiChunkId multiChunkId : requiredMultiChunkIds) {
+			if (config.getCache().getDecryptedMultiChunkFile(multiChunkId).exists()) {
+				materializedMultiChunkIds.add(multiChunkId);
+			}
+		}
+
+		// Remove targets until all remaining ones can be written in a single pass
+		Map<MultiChunkId, Integer> streamedMultiChunkOrder;
+		boolean targetRemoved;
+
+		do {
+			streamedMultiChunkOrder = determineMultiChunkOrder();
+			targetRemoved = false;
+
+			Iterator<AssemblyTarget> targetIterator = targets.values().iterator();
+
+			while (targetIterator.hasNext()) {
+				AssemblyTarget target = targetIterator.next();
+
+				if (!isStreamable(target, streamedMultiChunkOrder)) {
+					logger.log(Level.FINE, "- File content " + target.fileChecksum + " cannot be assembled in a single pass, not streaming it.");
+
+					materializedMultiChunkIds.addAll(target.chunkMultiChunkIds);
+					targetIterator.remove();
+					targetRemoved = true;
+				}
+			}
+		}
+		while (targetRemoved);
+
+		// Index chunks to streamed files
+		for (AssemblyTarget target : targets.values()) {
+			for (int i = 0; i < target.chunks.size(); i++) {
+				Map<ChunkChecksum, List<AssemblyTarget>> chunkTargets = chunkTargetsByMultiChunk.get(target.chunkMultiChunkIds.get(i));
+
+				if (chunkTargets == null) {
+					chunkTargets = new HashMap<ChunkChecksum, List<AssemblyTarget>>();
+					chunkTargetsByMultiChunk.put(target.chunkMultiChunkIds.get(i), chunkTargets);
+				}
+
+				List<AssemblyTarget> targetsForChunk = chunkTargets.get(target.chunks.get(i));
+
+				if (targetsForChunk == null) {
+					targetsForChunk = new ArrayList<AssemblyTarget>();
+					chunkTargets.put(target.chunks.get(i), targetsForChunk);
+				}
+
+				targetsForChunk.add(target);
+			}
+		}
+
+		logger.log(Level.INFO, "- Streaming " + targets.size() + " file(s) from " + chunkTargetsByMultiChunk.size() + " multichunk(s), "
+				+ (requiredMultiChunkIds.size() - chunkTargetsByMultiChunk.size()) + " multichunk(s) will be decrypted to the cache.");
+
+		// Download order
+		Set<MultiChunkId> orderedMultiChunkIds = new LinkedHashSet<MultiChunkId>(streamedMultiChunkOrder.keySet());
+		orderedMultiChunkIds.addAll(requiredMultiChunkIds);
+
+		return orderedMultiChunkIds;
+	}
+
+	/**
+	 * Orders the multichunks of all streamed files by their first occurrence.
+	 */
+	private Map<MultiChunkId, Integer> determineMultiChunkOrder() {
+		Map<MultiChunkId, Integer> multiChunkOrder = new LinkedHashMap<MultiChunkId, Integer>();
+
+		for (AssemblyTarget target : targets.values()) {
+			for (MultiChunkId multiChunkId : target.chunkMultiChunkIds) {
+				if (!multiChunkOrder.containsKey(multiChunkId)) {
+					multiChunkOrder.put(multiChunkId, multiChunkOrder.size());
+				}
+			}
+		}
+
+		return multiChunkOrder;
+	}
+
+	/**
+	 * A target is streamable if none of its multichunks must be decrypted to the cache, and if
+	 * its chunks come from the multichunks in download order, i.e. each multichunk provides one
+	 * consecutive run of chunks.
+	 */
+	private boolean isStreamable(AssemblyTarget target, Map<MultiChunkId, Integer> multiChunkOrder) {
+		int lastMultiChunkPosition = -1;
+
+		for (MultiChunkId multiChunkId : target.chunkMultiChunkIds) {
+			int multiChunkPosition = multiChunkOrder.get(multiChunkId);
+
+			if (materializedMultiChunkIds.contains(multiChunkId) || multiChunkPosition < lastMultiChunkPosition) {
+				return false;
+			}
+
+			lastMultiChunkPosition = multiChunkPosition;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns whether the given multichunk is streamed, i.e. whether it should be passed
+	 * to {@link #assemble(MultiChunkId, InputStream)} instead of being decrypted to the cache.
+	 */
+	public boolean isStreamed(MultiChunkId multiChunkId) {
+		return chunkTargetsByMultiChunk.containsKey(multiChunkId);
+	}
+
+	/**
+	 * Reads the chunks of the given decrypted multichunk stream sequentially and writes them
+	 * to the reconstructed files. If the multichunk does not contain all expected chunks,
+	 * the affected files are deleted and an exception is thrown.
+	 *
+	 * <p>Note that the checksums of the reconstructed files are not verified by this method,
+	 * this is done by the {@link Assembler}.
+	 */
+	public void assemble(MultiChunkId multiChunkId, InputStream decryptedMultiChunkInputStream) throws IOException {
+		Map<ChunkChecksum, List<AssemblyTarget>> chunkTargets = chunkTargetsByMultiChunk.get(multiChunkId);
+		MultiChunk multiChunk = config.getMultiChunker().createMultiChunk(decryptedMultiChunkInputStream);
+
+		try {
+			Chunk chunk = null;
+
+			while (null != (chunk = multiChunk.read())) {
+				ChunkChecksum chunkChecksum = new ChunkChecksum(chunk.getChecksum());
+				List<AssemblyTarget> targetsForChunk = chunkTargets.get(chunkChecksum);
+
+				if (targetsForChunk != null) {
+					for (AssemblyTarget target : targetsForChunk) {
+						target.write(chunkChecksum, chunk.getContent(), chunk.getSize());
+					}
+				}
+			}
+
+			for (AssemblyTarget target : getTargets(chunkTargets)) {
+				target.checkMultiChunkComplete(multiChunkId);
+			}
+		}
+		catch (IOException e) {
+			for (AssemblyTarget target : getTargets(chunkTargets)) {
+				target.delete();
+			}
+
+			throw e;
+		}
+		finally {
+			multiChunk.close();
+		}
+	}
+
+	private Set<AssemblyTarget> getTargets(Map<ChunkChecksum, List<AssemblyTarget>> chunkTargets) {
+		Set<AssemblyTarget> targetsInMultiChunk = new LinkedHashSet<AssemblyTarget>();
+
+		for (List<AssemblyTarget> targetsForChunk : chunkTargets.values()) {
+			targetsInMultiChunk.addAll(targetsForChunk);
+		}
+
+		return targetsInMultiChunk;
+	}
+
+	/**
+	 * Returns the reconstructed file for the given file content, if it has been assembled
+	 * completely. The returned file is owned by the caller from then on, i.e. it is not
+	 * deleted by {@link #close()}. Returns <tt>null</tt> if the file content has not been streamed.
+	 */
+	public AssembledFile takeAssembledFile(FileChecksum fileChecksum) {
+		if (fileChecksum == null) {
+			return null;
+		}
+
+		AssemblyTarget target = targets.get(fileChecksum);
+
+		if (target == null || target.actualChecksum == null) {
+			return null;
+		}
+
+		targets.remove(fileChecksum);
+		return new AssembledFile(target.file, target.actualChecksum);
+	}
+
+	/**
+	 * Deletes all reconstructed files that have not been taken via {@link #takeAssembledFile(FileChecksum)}.
+	 */
+	public void close() {
+		for (AssemblyTarget target : targets.values()) {
+			target.delete();
+		}
+
+		targets.clear();
+	}
+
+	/**
+	 * A completely reconstructed file in the cache, along with
+	 * the checksum calculated while writing it.
+	 */
+	public static class AssembledFile {
+		private File file;
+		private byte[] checksum;
+
+		public AssembledFile(File file, byte[] checksum) {
+			this.file = file;
+			this.checksum = checksum;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public byte[] getChecksum() {
+			return checksum;
+		}
+	}
+
+	private class AssemblyTarget {
+		private FileChecksum fileChecksum;
+		private List<ChunkChecksum> chunks;
+		private List<MultiChunkId> chunkMultiChunkIds;
+
+		private int nextChunkIndex;
+		private Map<ChunkChecksum, byte[]> pendingChunks;
+
+		private File file;
+		private OutputStream fileOutputStream;
+		private MessageDigest fileDigest;
+		private byte[] actualChecksum;
+
+		public AssemblyTarget(FileChecksum fileChecksum, List<ChunkChecksum> chunks, List<MultiChunkId> chunkMultiChunkIds) {
+			this.fileChecksum = fileChecksum;
+			this.chunks = chunks;
+			this.chunkMultiChunkIds = chunkMultiChunkIds;
+
+			this.nextChunkIndex = 0;
+			this.pendingChunks = new HashMap<ChunkChecksum, byte[]>();
+		}
+
+		public void write(ChunkChecksum chunkChecksum, byte[] content, int size) throws IOException {
+			if (nextChunkIndex < chunks.size() && chunks.get(nextChunkIndex).equals(chunkChecksum)) {
+				writeChunk(content, size);
+
+				while (nextChunkIndex < chunks.size() && pendingChunks.containsKey(chunks.get(nextChunkIndex))) {
+					byte[] pendingContent = pendingChunks.remove(chunks.get(nextChunkIndex));
+					writeChunk(pendingContent, pendingContent.length);
+				}
+			}
+			else if (!pendingChunks.containsKey(chunkChecksum)) {
+				byte[] pendingContent = new byte[size];
+				System.arraycopy(content, 0, pendingContent, 0, size);
+
+				pendingChunks.put(chunkChecksum, pendingContent);
+			}
+		}
+
+		private void writeChunk(byte[] content, int size) throws IOException {
+			if (fileOutputStream == null) {
+				open();
+			}
+
+			fileDigest.update(content, 0, size);
+			fileOutputStream.write(content, 0, size);
+
+			nextChunkIndex++;
+
+			if (nextChunkIndex == chunks.size()) {
+				fileOutputStream.close();
+				actualChecksum = fileDigest.digest();
+			}
+		}
+
+		private void open() throws IOException {
+			try {
+				file = config.getCache().createTempFile("reconstructedFileVersion");
+				fileOutputStream = new FileOutputStream(file);
+				fileDigest = MessageDigest.getInstance(config.getChunker().getChecksumAlgorithm());
+
+				logger.log(Level.INFO, "  + Streaming file content " + fileChecksum + " to " + file + " ...");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IOException("Cannot create file digest.", e);
+			}
+		}
+
+		public void checkMultiChunkComplete(MultiChunkId multiChunkId) throws IOException {
+			boolean chunksMissing = nextChunkIndex < chunks.size() && chunkMultiChunkIds.get(nextChunkIndex).equals(multiChunkId);
+
+			if (chunksMissing || !pendingChunks.isEmpty()) {
+				throw new IOException("Multichunk " + multiChunkId + " does not contain all expected chunks of file content " + fileChecksum);
+			}
+		}
+
+		public void delete() {
+			try {
+				if (fileOutputStream != null) {
+					fileOutputStream.close();
+				}
+			}
+			catch (IOException e) {
+				logger.log(Level.FINE, "Cannot close reconstructed file " + file + "; ignoring.", e);
+			}
+
+			if (file != null) {
+				file.delete();
+			}
+		}
+	}
+}
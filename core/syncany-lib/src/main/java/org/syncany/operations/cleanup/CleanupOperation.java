@@ -45,6 +45,8 @@ import org.syncany.database.SqlDatabase;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.FileVersionSqlDao;
 import org.syncany.operations.AbstractTransferOperation;
+import org.syncany.operations.GenerationFileHandler;
+import org.syncany.operations.OperationMetrics.Phase;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
 import org.syncany.operations.daemon.messages.CleanupEndSyncExternalEvent;
@@ -105,6 +107,7 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 	private SqlDatabase localDatabase;
 	private RemoteTransaction remoteTransaction;
+	private GenerationFileHandler generationFileHandler;
 
 	public CleanupOperation(Config config) {
 		this(config, new CleanupOperationOptions());
@@ -115,7 +118,9 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		this.options = options;
 		this.result = new CleanupOperationResult();
+		this.result.setMetrics(metrics);
 		this.localDatabase = new SqlDatabase(config);
+		this.generationFileHandler = new GenerationFileHandler(config, transferManager.getUnderlyingTransferManager(), localDatabase);
 	}
 
 	@Override
@@ -125,12 +130,16 @@ public class CleanupOperation extends AbstractTransferOperation {
 		logger.log(Level.INFO, "--------------------------------------------");
 
 		// Do initial check out remote repository preconditions
+		metrics.startPhase(Phase.STATUS);
 		CleanupResultCode preconditionResult = checkPreconditions();
+		metrics.stopPhase(Phase.STATUS);
 
 		fireStartEvent();
 		if (preconditionResult != CleanupResultCode.OK) {
+			result.setResultCode(preconditionResult);
 			fireEndEvent();
-			return new CleanupOperationResult(preconditionResult);
+
+			return result;
 		}
 
 		fireCleanupNeededEvent();
@@ -144,8 +153,11 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		if (blockingTransactionExist) {
 			finishOperation();
+
+			result.setResultCode(CleanupResultCode.NOK_REPO_BLOCKED);
 			fireEndEvent();
-			return new CleanupOperationResult(CleanupResultCode.NOK_REPO_BLOCKED);
+
+			return result;
 		}
 
 		// Wait two seconds (conservative cleanup, see #104)
@@ -153,12 +165,17 @@ public class CleanupOperation extends AbstractTransferOperation {
 		Thread.sleep(BEFORE_DOUBLE_CHECK_TIME);
 
 		// Check again. No other clients should be busy, because we waited BEFORE_DOUBLE_CHECK_TIME
+		metrics.startPhase(Phase.STATUS);
 		preconditionResult = checkPreconditions();
+		metrics.stopPhase(Phase.STATUS);
 
 		if (preconditionResult != CleanupResultCode.OK) {
 			finishOperation();
+
+			result.setResultCode(preconditionResult);
 			fireEndEvent();
-			return new CleanupOperationResult(preconditionResult);
+
+			return result;
 		}
 
 		// If we do cleanup, we are no longer allowed to resume a transaction
@@ -168,13 +185,18 @@ public class CleanupOperation extends AbstractTransferOperation {
 		logger.log(Level.INFO, "Cleanup: Starting transaction.");
 		remoteTransaction = new RemoteTransaction(config, transferManager);
 
+		metrics.startPhase(Phase.REMOVE_OLD_VERSIONS);
 		removeOldVersions();
 
 		if (options.isRemoveUnreferencedTemporaryFiles()) {
 			transferManager.removeUnreferencedTemporaryFiles();
 		}
 
+		metrics.stopPhase(Phase.REMOVE_OLD_VERSIONS);
+
+		metrics.startPhase(Phase.MERGE);
 		mergeRemoteFiles();
+		metrics.stopPhase(Phase.MERGE);
 
 		// We went succesfully through the entire operation and checked everything. Hence we update the last cleanup time.
 		updateLastCleanupTime();
@@ -213,6 +235,7 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 	private void fireEndEvent() {
 		eventBus.post(new CleanupEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), result));
+		fireMetricsEvent();
 	}
 
 	/**
@@ -548,6 +571,9 @@ public class CleanupOperation extends AbstractTransferOperation {
 		}
 
 		logger.log(Level.INFO, "Cleanup: SUCCESS COMMITTING TX.");
+
+		// Tell other clients that the databases have changed
+		generationFileHandler.updateRemoteGeneration();
 	}
 
 	/**
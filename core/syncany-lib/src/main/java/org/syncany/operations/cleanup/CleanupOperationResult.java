@@ -18,6 +18,7 @@
 package org.syncany.operations.cleanup;
 
 import org.simpleframework.xml.Element;
+import org.syncany.operations.OperationMetrics;
 import org.syncany.operations.OperationResult;
 
 public class CleanupOperationResult implements OperationResult {
@@ -40,6 +41,8 @@ public class CleanupOperationResult implements OperationResult {
 	@Element(name = "removedMultiChunksSize", required = false)
 	private long removedMultiChunksSize;
 
+	private OperationMetrics metrics;
+
 	public CleanupOperationResult() {
 		this(CleanupResultCode.OK_NOTHING_DONE);
 	}
@@ -91,4 +94,12 @@ public class CleanupOperationResult implements OperationResult {
 	public void setRemovedMultiChunksSize(long removedMultiChunksSize) {
 		this.removedMultiChunksSize = removedMultiChunksSize;
 	}
-}
\ No newline at end of file
+
+	public OperationMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(OperationMetrics metrics) {
+		this.metrics = metrics;
+	}
+}
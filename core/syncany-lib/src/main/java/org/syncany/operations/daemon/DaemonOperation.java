@@ -29,6 +29,7 @@ import org.syncany.config.DaemonConfigHelper;
 import org.syncany.config.LocalEventBus;
 import org.syncany.config.UserConfig;
 import org.syncany.config.to.DaemonConfigTO;
+import org.syncany.config.to.EventBusTO;
 import org.syncany.config.to.FolderTO;
 import org.syncany.config.to.PortTO;
 import org.syncany.config.to.UserTO;
@@ -202,6 +203,7 @@ public class DaemonOperation extends Operation {
 		initEventBus();		
 		loadOrCreateConfig();
 		
+		startAsyncEventDispatch();
 		startWebServer();
 		startWatchServer();
 		
@@ -238,6 +240,14 @@ public class DaemonOperation extends Operation {
 		eventBus.register(this);
 	}
 
+	private void startAsyncEventDispatch() {
+		EventBusTO eventBusConfig = daemonConfig.getEventBus();
+		
+		if (eventBusConfig != null && eventBusConfig.isAsync()) {
+			eventBus.startAsyncDispatch(eventBusConfig.getQueueSize(), eventBusConfig.getOverflowPolicy());
+		}
+	}
+
 	private void enterControlLoop() throws IOException, ServiceAlreadyStartedException {
 		logger.log(Level.INFO, "Starting daemon control server ...");
 
@@ -248,6 +258,8 @@ public class DaemonOperation extends Operation {
 	// General stopping and reloading functions
 
 	private void stopOperation() {
+		eventBus.stopAsyncDispatch(); // Deliver queued events before stopping the web server
+		
 		stopWebServer();
 		stopWatchServer();
 	}
@@ -0,0 +1,117 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon;
+
+import java.io.File;
+import java.util.Date;
+
+import org.simpleframework.xml.Element;
+
+/**
+ * A scheduled sync represents a sync run of a watched folder in the 
+ * {@link SyncScheduler}, either waiting for a free slot or currently running.
+ * It is used to expose the scheduler's queue state via the daemon API.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ScheduledSync {
+	public enum SyncState {
+		WAITING, RUNNING
+	}
+
+	@Element(name = "folder", required = true)
+	private File folder;
+
+	@Element(name = "host", required = true)
+	private String host;
+
+	@Element(name = "state", required = true)
+	private SyncState state;
+
+	@Element(name = "priority", required = true)
+	private boolean priority;
+
+	@Element(name = "queued", required = true)
+	private Date queued;
+
+	@Element(name = "started", required = false)
+	private Date started;
+
+	private boolean cancelled;
+
+	public ScheduledSync() {
+		// Nothing.
+	}
+
+	public ScheduledSync(File folder, String host, boolean priority) {
+		this.folder = folder;
+		this.host = host;
+		this.state = SyncState.WAITING;
+		this.priority = priority;
+		this.queued = new Date();
+		this.started = null;
+		this.cancelled = false;
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public SyncState getState() {
+		return state;
+	}
+
+	public boolean isPriority() {
+		return priority;
+	}
+
+	public Date getQueued() {
+		return queued;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	void setRunning() {
+		this.state = SyncState.RUNNING;
+		this.started = new Date();
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	void setCancelled() {
+		this.cancelled = true;
+	}
+
+	ScheduledSync copy() {
+		ScheduledSync copy = new ScheduledSync(folder, host, priority);
+
+		copy.state = state;
+		copy.queued = queued;
+		copy.started = started;
+
+		return copy;
+	}
+}
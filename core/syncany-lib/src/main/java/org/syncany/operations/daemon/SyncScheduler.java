@@ -0,0 +1,253 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.config.to.SchedulerTO;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransferSettings;
+
+/**
+ * The sync scheduler coordinates the sync runs of all folders managed by the
+ * {@link WatchServer}. Before a {@link org.syncany.operations.watch.WatchOperation WatchOperation}
+ * runs its down/up/cleanup cycle, it must {@link #acquire(Config, boolean) acquire} a slot from 
+ * the scheduler, and {@link #release(File) release} it afterwards.
+ * 
+ * <p>The scheduler enforces:
+ * <ul>
+ *  <li>a global limit of concurrently running syncs (see {@link SchedulerTO#getMaxConcurrentSyncs()}),</li>
+ *  <li>a limit of concurrently running syncs per remote host (see {@link SchedulerTO#getMaxSyncsPerHost()}),
+ *      so that many folders on the same server do not overload it,</li>
+ *  <li>first-come-first-served ordering among waiting folders, with folders that have pending 
+ *      file system watcher events being served before folders that only poll periodically.</li>
+ * </ul>
+ * 
+ * <p>Since a folder can only wait for one slot at a time and is queued at the end 
+ * again after its sync run, no folder can monopolize the slots.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SyncScheduler {
+	private static final Logger logger = Logger.getLogger(SyncScheduler.class.getSimpleName());
+	private static final String[] HOST_FIELD_NAMES = new String[] { "hostname", "host", "server" };
+
+	private SchedulerTO settings;
+
+	private LinkedList<ScheduledSync> priorityQueue;
+	private LinkedList<ScheduledSync> normalQueue;
+	private Map<File, ScheduledSync> runningSyncs;
+	private Map<String, Integer> runningSyncsPerHost;
+
+	public SyncScheduler(SchedulerTO settings) {
+		this.settings = (settings != null) ? settings : new SchedulerTO();
+
+		this.priorityQueue = new LinkedList<ScheduledSync>();
+		this.normalQueue = new LinkedList<ScheduledSync>();
+		this.runningSyncs = new HashMap<File, ScheduledSync>();
+		this.runningSyncsPerHost = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Waits until the sync of the given folder may run, i.e. until it is first in the
+	 * queue and neither the global nor the host limit is reached. 
+	 * 
+	 * @param config Config of the folder to sync; used to determine the remote host
+	 * @param priority True if the folder has pending file system events, false otherwise
+	 * @return True if a slot was acquired (and must be released), false if the request was cancelled
+	 * @throws InterruptedException If the thread was interrupted while waiting
+	 */
+	public boolean acquire(Config config, boolean priority) throws InterruptedException {
+		return acquire(config.getLocalDir(), getHostKey(config), priority);
+	}
+
+	/**
+	 * Waits until the sync of the given folder may run. 
+	 * 
+	 * @see #acquire(Config, boolean)
+	 */
+	public synchronized boolean acquire(File localDir, String host, boolean priority) throws InterruptedException {
+		if (runningSyncs.containsKey(localDir)) {
+			throw new IllegalStateException("Sync for folder " + localDir + " is already running.");
+		}
+		
+		ScheduledSync scheduledSync = new ScheduledSync(localDir, host, priority);
+		LinkedList<ScheduledSync> queue = (priority) ? priorityQueue : normalQueue;
+
+		queue.add(scheduledSync);
+		logger.log(Level.INFO, "Scheduler: Queued sync for {0} (host {1}, priority {2}); {3} waiting, {4} running.", new Object[] { localDir,
+				scheduledSync.getHost(), priority, priorityQueue.size() + normalQueue.size(), runningSyncs.size() });
+
+		try {
+			while (!scheduledSync.isCancelled()) {
+				if (scheduledSync == findNextRunnableSync()) {
+					queue.remove(scheduledSync);
+					scheduledSync.setRunning();
+
+					runningSyncs.put(localDir, scheduledSync);
+					runningSyncsPerHost.put(scheduledSync.getHost(), getRunningSyncCount(scheduledSync.getHost()) + 1);
+
+					logger.log(Level.INFO, "Scheduler: Starting sync for {0}; {1} running.", new Object[] { localDir, runningSyncs.size() });
+					return true;
+				}
+
+				wait();
+			}
+
+			logger.log(Level.INFO, "Scheduler: Sync for {0} cancelled while waiting.", localDir);
+			return false;
+		}
+		finally {
+			if (queue.remove(scheduledSync)) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Releases the slot acquired by the given folder, and wakes up the waiting 
+	 * folders. Does nothing if no sync is running for this folder.
+	 */
+	public synchronized void release(File localDir) {
+		ScheduledSync scheduledSync = runningSyncs.remove(localDir);
+
+		if (scheduledSync != null) {
+			int runningHostSyncCount = getRunningSyncCount(scheduledSync.getHost()) - 1;
+
+			if (runningHostSyncCount > 0) {
+				runningSyncsPerHost.put(scheduledSync.getHost(), runningHostSyncCount);
+			}
+			else {
+				runningSyncsPerHost.remove(scheduledSync.getHost());
+			}
+
+			logger.log(Level.INFO, "Scheduler: Finished sync for {0}; {1} running.", new Object[] { localDir, runningSyncs.size() });
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Cancels a waiting sync request of the given folder, e.g. because the
+	 * watch is being stopped. The waiting {@link #acquire(Config, boolean)} call returns 
+	 * <tt>false</tt>. Running syncs are not affected.
+	 */
+	public synchronized void cancel(File localDir) {
+		for (ScheduledSync scheduledSync : getWaitingSyncs()) {
+			if (scheduledSync.getFolder().equals(localDir)) {
+				scheduledSync.setCancelled();
+			}
+		}
+
+		notifyAll();
+	}
+
+	/**
+	 * Returns a snapshot of the scheduler's queue: All running syncs, followed by the
+	 * waiting syncs in the order in which they will be served (not taking the host limits
+	 * into account).
+	 */
+	public synchronized List<ScheduledSync> getQueueState() {
+		List<ScheduledSync> queueState = new ArrayList<ScheduledSync>();
+
+		for (ScheduledSync scheduledSync : runningSyncs.values()) {
+			queueState.add(scheduledSync.copy());
+		}
+
+		for (ScheduledSync scheduledSync : getWaitingSyncs()) {
+			queueState.add(scheduledSync.copy());
+		}
+
+		return queueState;
+	}
+
+	public SchedulerTO getSettings() {
+		return settings;
+	}
+
+	private ScheduledSync findNextRunnableSync() {
+		if (runningSyncs.size() >= Math.max(1, settings.getMaxConcurrentSyncs())) {
+			return null;
+		}
+
+		Iterator<ScheduledSync> waitingSyncs = getWaitingSyncs().iterator();
+
+		while (waitingSyncs.hasNext()) {
+			ScheduledSync scheduledSync = waitingSyncs.next();
+
+			if (!scheduledSync.isCancelled() && getRunningSyncCount(scheduledSync.getHost()) < getHostLimit(scheduledSync.getHost())) {
+				return scheduledSync;
+			}
+		}
+
+		return null;
+	}
+
+	private List<ScheduledSync> getWaitingSyncs() {
+		List<ScheduledSync> waitingSyncs = new ArrayList<ScheduledSync>(priorityQueue);
+		waitingSyncs.addAll(normalQueue);
+
+		return waitingSyncs;
+	}
+
+	private int getRunningSyncCount(String host) {
+		Integer runningSyncCount = runningSyncsPerHost.get(host);
+		return (runningSyncCount != null) ? runningSyncCount : 0;
+	}
+
+	private int getHostLimit(String host) {
+		Integer hostLimit = settings.getHostLimits().get(host);
+		return Math.max(1, (hostLimit != null) ? hostLimit : settings.getMaxSyncsPerHost());
+	}
+
+	/**
+	 * Determines the remote host of a folder's storage connection. Since the transfer 
+	 * settings are plugin-specific, this method looks for commonly used host field names, and
+	 * falls back to the plugin type if no such field exists (e.g. for the local plugin). 
+	 */
+	public static String getHostKey(Config config) {
+		TransferSettings connection = config.getConnection();
+
+		if (connection == null) {
+			return "unknown";
+		}
+
+		for (String hostFieldName : HOST_FIELD_NAMES) {
+			try {
+				String host = connection.getField(hostFieldName);
+
+				if (host != null) {
+					return connection.getType() + ":" + host.toLowerCase();
+				}
+			}
+			catch (StorageException e) {
+				// Field does not exist in this plugin, try next.
+			}
+		}
+
+		return connection.getType();
+	}
+}
@@ -18,6 +18,9 @@
 package org.syncany.operations.daemon;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,14 +29,21 @@ import org.syncany.config.Config;
 import org.syncany.config.ConfigException;
 import org.syncany.config.LocalEventBus;
 import org.syncany.config.to.PortTO;
+import org.syncany.operations.OperationMetrics;
 import org.syncany.operations.daemon.messages.AlreadySyncingResponse;
 import org.syncany.operations.daemon.messages.BadRequestResponse;
+import org.syncany.operations.daemon.messages.GetOperationMetricsFolderRequest;
+import org.syncany.operations.daemon.messages.GetOperationMetricsFolderResponse;
+import org.syncany.operations.daemon.messages.GetTransferMetricsFolderRequest;
+import org.syncany.operations.daemon.messages.GetTransferMetricsFolderResponse;
+import org.syncany.operations.daemon.messages.OperationMetricsSyncExternalEvent;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
 import org.syncany.operations.watch.WatchOperation;
 import org.syncany.operations.watch.WatchOperationOptions;
 import org.syncany.operations.watch.WatchOperationResult;
+import org.syncany.plugins.transfer.TransferMetrics;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -41,6 +51,11 @@ import com.google.common.eventbus.Subscribe;
  * The watch operation thread runs a {@link WatchOperation} in a thread. The
  * underlying thred can be started using the {@link #start()} method, and stopped
  * gracefully using {@link #stop()}.
+ * 
+ * <p>The runner also remembers the {@link OperationMetrics} of the last run of each
+ * operation in its folder, and returns them for a {@link GetOperationMetricsFolderRequest}.
+ * The {@link TransferMetrics} of all operations since the runner was started are summed up,
+ * and returned for a {@link GetTransferMetricsFolderRequest}.
  *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -52,12 +67,20 @@ public class WatchRunner {
 	private Thread watchThread;
 	private WatchOperation watchOperation;
 	private WatchOperationResult watchOperationResult;
+	private SyncScheduler syncScheduler;
 	private LocalEventBus eventBus;
+	private Map<String, OperationMetrics> lastOperationMetrics;
+	private TransferMetrics totalTransferMetrics;
 
-	public WatchRunner(Config config, WatchOperationOptions watchOperationOptions, PortTO portTO) throws ConfigException {
+	public WatchRunner(Config config, WatchOperationOptions watchOperationOptions, PortTO portTO, SyncScheduler syncScheduler) throws ConfigException {
 		this.config = config;
 		this.portTO = portTO;
+		this.syncScheduler = syncScheduler;
+		
 		this.watchOperation = new WatchOperation(config, watchOperationOptions);
+		this.watchOperation.setSyncScheduler(syncScheduler);
+		this.lastOperationMetrics = new TreeMap<String, OperationMetrics>();
+		this.totalTransferMetrics = new TransferMetrics();
 
 		this.eventBus = LocalEventBus.getInstance();
 		this.eventBus.register(this);
@@ -95,6 +118,8 @@ public class WatchRunner {
 
 	public void stop() {
 		watchOperation.stop();
+		syncScheduler.cancel(config.getLocalDir());
+		
 		config.getPortFile().delete();
 
 		watchThread = null;
@@ -117,7 +142,14 @@ public class WatchRunner {
 			logger.log(Level.INFO, "Received " + folderRequest);
 
 			try {
-				if (!watchOperation.isSyncRunning() && !watchOperation.isSyncRequested()) {
+				if (folderRequest instanceof GetOperationMetricsFolderRequest) {
+					// Metrics are read-only, so they can be returned while syncing
+					eventBus.post(new GetOperationMetricsFolderResponse(folderRequest.getId(), folderRequest.getRoot(), getLastOperationMetrics()));
+				}
+				else if (folderRequest instanceof GetTransferMetricsFolderRequest) {
+					eventBus.post(new GetTransferMetricsFolderResponse(folderRequest.getId(), folderRequest.getRoot(), getTotalTransferMetrics()));
+				}
+				else if (!watchOperation.isSyncRunning() && !watchOperation.isSyncRequested()) {
 					watchOperation.pause();
 
 					FolderRequestHandler handler = FolderRequestHandler.createFolderRequestHandler(folderRequest, config);
@@ -140,4 +172,30 @@ public class WatchRunner {
 			}
 		}
 	}
+
+	@Subscribe
+	public void onOperationMetrics(OperationMetricsSyncExternalEvent metricsEvent) {
+		File metricsRootFolder = new File(metricsEvent.getRoot());
+
+		if (metricsRootFolder.equals(config.getLocalDir())) {
+			synchronized (lastOperationMetrics) {
+				lastOperationMetrics.put(metricsEvent.getMetrics().getOperationName(), metricsEvent.getMetrics());
+			}
+
+			totalTransferMetrics.add(metricsEvent.getMetrics().getTransferMetrics());
+		}
+	}
+
+	private ArrayList<OperationMetrics> getLastOperationMetrics() {
+		synchronized (lastOperationMetrics) {
+			return new ArrayList<OperationMetrics>(lastOperationMetrics.values());
+		}
+	}
+
+	private TransferMetrics getTotalTransferMetrics() {
+		TransferMetrics totalTransferMetricsCopy = new TransferMetrics();
+		totalTransferMetricsCopy.add(totalTransferMetrics);
+
+		return totalTransferMetricsCopy;
+	}
 }
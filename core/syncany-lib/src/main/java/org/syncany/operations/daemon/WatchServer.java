@@ -37,6 +37,8 @@ import org.syncany.operations.daemon.messages.AddWatchManagementRequest;
 import org.syncany.operations.daemon.messages.AddWatchManagementResponse;
 import org.syncany.operations.daemon.messages.BadRequestResponse;
 import org.syncany.operations.daemon.messages.DaemonReloadedExternalEvent;
+import org.syncany.operations.daemon.messages.ListScheduledSyncsManagementRequest;
+import org.syncany.operations.daemon.messages.ListScheduledSyncsManagementResponse;
 import org.syncany.operations.daemon.messages.ListWatchesManagementRequest;
 import org.syncany.operations.daemon.messages.ListWatchesManagementResponse;
 import org.syncany.operations.daemon.messages.RemoveWatchManagementRequest;
@@ -56,6 +58,9 @@ import com.google.common.eventbus.Subscribe;
  * with {@link #start()} or {@link #reload()}, it first reads the daemon configuration file
  * and then runs new threads for each configured Syncany folder. Invalid or non-existing folders
  * are ignored.
+ * 
+ * <p>The sync runs of all watched folders are coordinated by a shared {@link SyncScheduler},
+ * which limits the number of concurrent syncs (globally and per remote host).
  *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -64,11 +69,13 @@ public class WatchServer {
 
 	private DaemonConfigTO daemonConfig;
 	private Map<File, WatchRunner> watchOperations;
+	private SyncScheduler syncScheduler;
 	private LocalEventBus eventBus;
 
 	public WatchServer() {
 		this.daemonConfig = null;
 		this.watchOperations = new TreeMap<File, WatchRunner>();
+		this.syncScheduler = new SyncScheduler(null);
 
 		this.eventBus = LocalEventBus.getInstance();
 		this.eventBus.register(this);
@@ -89,6 +96,8 @@ public class WatchServer {
 			Map<File, FolderTO> watchedFolders = getFolderMap(daemonConfigTO.getFolders());
 
 			stopAllWatchOperations();
+			
+			syncScheduler = new SyncScheduler(daemonConfigTO.getScheduler());
 			startWatchOperations(watchedFolders);
 
 			fireDaemonReloadedEvent();
@@ -129,7 +138,7 @@ public class WatchServer {
 						watchOptions = new WatchOperationOptions();
 					}
 
-					WatchRunner watchRunner = new WatchRunner(watchConfig, watchOptions, daemonConfig.getPortTO());
+					WatchRunner watchRunner = new WatchRunner(watchConfig, watchOptions, daemonConfig.getPortTO(), syncScheduler);
 					watchRunner.start();
 
 					watchOperations.put(localDir, watchRunner);
@@ -232,6 +241,14 @@ public class WatchServer {
 		eventBus.post(new ListWatchesManagementResponse(request.getId(), watchList));
 	}
 
+	@Subscribe
+	public void onListScheduledSyncsRequestReceived(ListScheduledSyncsManagementRequest request) {
+		int maxConcurrentSyncs = syncScheduler.getSettings().getMaxConcurrentSyncs();
+		int maxSyncsPerHost = syncScheduler.getSettings().getMaxSyncsPerHost();
+		
+		eventBus.post(new ListScheduledSyncsManagementResponse(request.getId(), maxConcurrentSyncs, maxSyncsPerHost, syncScheduler.getQueueState()));
+	}
+
 	@Subscribe
 	public void onAddWatchRequestReceived(AddWatchManagementRequest request) {
 		File rootFolder = request.getWatch();
@@ -0,0 +1,61 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementList;
+import org.syncany.operations.daemon.ScheduledSync;
+import org.syncany.operations.daemon.messages.api.ManagementResponse;
+
+public class ListScheduledSyncsManagementResponse extends ManagementResponse {
+	@Element(required = true)
+	private int maxConcurrentSyncs;
+	
+	@Element(required = true)
+	private int maxSyncsPerHost;
+	
+	@ElementList(required = true, entry = "sync")
+	private ArrayList<ScheduledSync> syncs;	
+	
+	public ListScheduledSyncsManagementResponse() {
+		// Nothing
+	}
+	
+	public ListScheduledSyncsManagementResponse(int requestId, int maxConcurrentSyncs, int maxSyncsPerHost, List<ScheduledSync> syncs) {
+		super(200, requestId, null);
+		
+		this.maxConcurrentSyncs = maxConcurrentSyncs;
+		this.maxSyncsPerHost = maxSyncsPerHost;
+		this.syncs = new ArrayList<ScheduledSync>(syncs);
+	}	
+	
+	public int getMaxConcurrentSyncs() {
+		return maxConcurrentSyncs;
+	}
+	
+	public int getMaxSyncsPerHost() {
+		return maxSyncsPerHost;
+	}
+	
+	public ArrayList<ScheduledSync> getSyncs() {
+		return syncs;
+	}
+}
@@ -17,7 +17,9 @@
  */
 package org.syncany.operations.daemon.messages;
 
-public class UpUploadFileSyncExternalEvent extends SyncExternalEvent {
+import org.syncany.operations.daemon.messages.api.CoalescableEvent;
+
+public class UpUploadFileSyncExternalEvent extends SyncExternalEvent implements CoalescableEvent {
 	private String filename;
 
 	public UpUploadFileSyncExternalEvent() {
@@ -32,4 +34,9 @@ public class UpUploadFileSyncExternalEvent extends SyncExternalEvent {
 	public String getFilename() {
 		return filename;
 	}
+
+	@Override
+	public String getCoalescingKey() {
+		return getRoot();
+	}
 }
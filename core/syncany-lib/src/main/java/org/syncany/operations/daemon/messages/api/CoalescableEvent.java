@@ -0,0 +1,38 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon.messages.api;
+
+import org.syncany.config.LocalEventBus;
+
+/**
+ * Coalescable events are frequently posted progress {@link Event}s, for 
+ * which only the latest state is relevant to subscribers.
+ * 
+ * <p>If the {@link LocalEventBus} dispatches events asynchronously, a coalescable 
+ * event still waiting to be delivered is replaced by a newer event of the same type 
+ * and with the same {@link #getCoalescingKey() coalescing key}. 
+ *  
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface CoalescableEvent {
+	/**
+	 * Returns the key to distinguish events of the same type that must
+	 * not replace each other, e.g. events for different sync folders.
+	 */
+	public String getCoalescingKey();
+}
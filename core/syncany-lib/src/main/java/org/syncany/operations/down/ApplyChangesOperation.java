@@ -17,6 +17,7 @@
  */
 package org.syncany.operations.down;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -35,7 +36,10 @@ import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Downloader;
 import org.syncany.operations.Operation;
+import org.syncany.operations.OperationMetrics;
+import org.syncany.operations.OperationMetrics.Phase;
 import org.syncany.operations.OperationResult;
+import org.syncany.operations.StreamingAssembler;
 import org.syncany.operations.down.actions.FileCreatingFileSystemAction;
 import org.syncany.operations.down.actions.FileSystemAction;
 import org.syncany.plugins.transfer.TransferManager;
@@ -50,6 +54,8 @@ import org.syncany.plugins.transfer.TransferManager;
  *  <li>Determine, download and decrypt required multi chunks from remote storage from file actions
  *      (implemented in {@link #determineMultiChunksToDownload(FileVersion, MemoryDatabase, MemoryDatabase) determineMultiChunksToDownload()},
  *      and {@link #downloadAndDecryptMultiChunks(Set) downloadAndDecryptMultiChunks()})</li>
+ *  <li>Files whose multichunks are all freshly downloaded are re-assembled while decrypting the multichunks,
+ *      using the {@link StreamingAssembler}; the multichunks for all other files are decrypted to the cache</li>
  *  <li>Apply file system actions locally, creating conflict files where necessary if local file does
  *      not match the expected file (implemented in {@link #applyFileSystemActions(List) applyFileSystemActions()} </li>
  * </ul>
@@ -61,6 +67,8 @@ public class ApplyChangesOperation extends Operation {
 
 	private SqlDatabase localDatabase;
 	private Downloader downloader;
+	private StreamingAssembler streamingAssembler;
+	private OperationMetrics metrics;
 
 	private MemoryDatabase winnersDatabase;
 	private DownOperationResult result;
@@ -69,12 +77,14 @@ public class ApplyChangesOperation extends Operation {
 	private List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion;
 
 	public ApplyChangesOperation(Config config, SqlDatabase localDatabase, TransferManager transferManager, MemoryDatabase winnersDatabase,
-			DownOperationResult result, boolean cleanupOccurred, List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) {
+			DownOperationResult result, boolean cleanupOccurred, List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion,
+			OperationMetrics metrics) {
 		
 		super(config);
 		
 		this.localDatabase = localDatabase;
-		this.downloader = new Downloader(config, transferManager);
+		this.downloader = new Downloader(config, transferManager, metrics);
+		this.metrics = metrics;
 		this.winnersDatabase = winnersDatabase;
 		this.result = result;
 		this.cleanupOccurred = cleanupOccurred;
@@ -95,12 +105,20 @@ public class ApplyChangesOperation extends Operation {
 			actions = actionReconciliator.determineFileSystemActions(winnersDatabase);
 		}
 
-		Set<MultiChunkId> unknownMultiChunks = determineRequiredMultiChunks(actions, winnersDatabase);
+		streamingAssembler = new StreamingAssembler(config);
 		
-		downloader.downloadAndDecryptMultiChunks(unknownMultiChunks);
-		result.getDownloadedMultiChunks().addAll(unknownMultiChunks);
-
-		applyFileSystemActions(actions);
+		try {
+			Set<MultiChunkId> unknownMultiChunks = determineRequiredMultiChunks(actions, winnersDatabase);
+			unknownMultiChunks = streamingAssembler.prepare(unknownMultiChunks);
+			
+			downloader.downloadAndDecryptMultiChunks(unknownMultiChunks, streamingAssembler);
+			result.getDownloadedMultiChunks().addAll(unknownMultiChunks);
+	
+			applyFileSystemActions(actions);
+		}
+		finally {
+			streamingAssembler.close();
+		}
 		
 		return null;
 	}
@@ -114,6 +132,7 @@ public class ApplyChangesOperation extends Operation {
 
 		for (FileSystemAction action : actions) {
 			if (action instanceof FileCreatingFileSystemAction) { // TODO [low] This adds ALL multichunks even though some might be available locally
+				((FileCreatingFileSystemAction) action).setStreamingAssembler(streamingAssembler);
 				multiChunksToDownload.addAll(determineMultiChunksToDownload(action.getFile2(), winnersDatabase));
 			}
 		}
@@ -133,6 +152,7 @@ public class ApplyChangesOperation extends Operation {
 		
 		if (multiChunkIds.size() > 0) {
 			multiChunksToDownload.addAll(multiChunkIds);
+			streamingAssembler.addMaterializedMultiChunks(multiChunkIds);
 		}
 		else {
 			// Second: We don't know it locally; must be from the winners database
@@ -146,6 +166,7 @@ public class ApplyChangesOperation extends Operation {
 				// and return the chunk positions in the local files ChunkPosition (chunk123 at file12, offset 200, size 250)
 				
 				Map<ChunkChecksum, MultiChunkId> checksumsWithMultiChunkIds = localDatabase.getMultiChunkIdsByChecksums(fileChunks);
+				List<MultiChunkId> chunkMultiChunkIds = new ArrayList<MultiChunkId>(fileChunks.size());
 				
 				for (ChunkChecksum chunkChecksum : fileChunks) {
 					MultiChunkId multiChunkIdForChunk = checksumsWithMultiChunkIds.get(chunkChecksum);
@@ -161,7 +182,11 @@ public class ApplyChangesOperation extends Operation {
 						logger.log(Level.INFO, "  + Adding multichunk " + multiChunkIdForChunk + " to download list ...");
 						multiChunksToDownload.add(multiChunkIdForChunk);
 					}
+					
+					chunkMultiChunkIds.add(multiChunkIdForChunk);
 				}
+				
+				streamingAssembler.addFileContent(winningFileContent, chunkMultiChunkIds);
 			}
 		}
 		
@@ -191,7 +216,20 @@ public class ApplyChangesOperation extends Operation {
 			// Note that exceptions are not caught here, to prevent 
 			// apply-failed-delete-on-up situations.
 			
-			action.execute(); 
+			long actionStartTime = System.nanoTime();
+			action.execute();
+
+			if (action instanceof FileCreatingFileSystemAction) {
+				metrics.addPhaseTime(Phase.ASSEMBLE, System.nanoTime() - actionStartTime);
+				metrics.addFilesProcessed(1);
+
+				if (action.getFile2() != null && action.getFile2().getSize() != null) {
+					metrics.addBytesProcessed(action.getFile2().getSize());
+				}
+			}
+			else {
+				metrics.addPhaseTime(Phase.APPLY, System.nanoTime() - actionStartTime);
+			}
 		}
 	}
 }
@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +44,8 @@ import org.syncany.database.VectorClock;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
+import org.syncany.operations.GenerationFileHandler;
+import org.syncany.operations.OperationMetrics.Phase;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.daemon.messages.DownChangesDetectedSyncExternalEvent;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
@@ -69,6 +72,8 @@ import com.google.common.collect.Sets.SetView;
  *
  * <p>The general operation flow is as follows:
  * <ol>
+ *  <li>Check whether the remote generation file has changed since the last complete listing; if
+ *      not, skip the rest (see {@link GenerationFileHandler})</li>
  *  <li>List all database versions on the remote storage using the {@link LsRemoteOperation}
  *      (implemented in {@link #listUnknownRemoteDatabases(MemoryDatabase, TransferManager) listUnknownRemoteDatabases()}</li>
  *  <li>Download unknown databases using a {@link TransferManager} (if any), skip the rest down otherwise
@@ -98,6 +103,8 @@ public class DownOperation extends AbstractTransferOperation {
 	private SqlDatabase localDatabase;
 	private DatabaseReconciliator databaseReconciliator;
 	private DatabaseXmlSerializer databaseSerializer;
+	private GenerationFileHandler generationFileHandler;
+	private String remoteGeneration;
 
 	public DownOperation(Config config) {
 		this(config, new DownOperationOptions());
@@ -108,10 +115,13 @@ public class DownOperation extends AbstractTransferOperation {
 
 		this.options = options;
 		this.result = new DownOperationResult();
+		this.result.setMetrics(metrics);
 
 		this.localDatabase = new SqlDatabase(config);
 		this.databaseReconciliator = new DatabaseReconciliator();
 		this.databaseSerializer = new DatabaseXmlSerializer(config.getTransformer());
+		this.generationFileHandler = new GenerationFileHandler(config, transferManager.getUnderlyingTransferManager(), localDatabase);
+		this.remoteGeneration = null;
 	}
 
 	/**
@@ -134,7 +144,11 @@ public class DownOperation extends AbstractTransferOperation {
 
 		fireStartEvent();
 
-		if (!checkPreconditions()) {
+		metrics.startPhase(Phase.STATUS);
+		boolean preconditionsMet = checkPreconditions();
+		metrics.stopPhase(Phase.STATUS);
+
+		if (!preconditionsMet) {
 			fireEndEvent();
 			return result;
 		}
@@ -148,8 +162,14 @@ public class DownOperation extends AbstractTransferOperation {
 		DatabaseBranch localBranch = localDatabase.getLocalDatabaseBranch();
 		List<DatabaseRemoteFile> newRemoteDatabases = result.getLsRemoteResult().getUnknownRemoteDatabases();
 
+		metrics.startPhase(Phase.DOWNLOAD);
 		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = downloadUnknownRemoteDatabases(newRemoteDatabases);
+		metrics.stopPhase(Phase.DOWNLOAD);
+
+		metrics.startPhase(Phase.DECRYPT);
 		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = readUnknownDatabaseVersionHeaders(unknownRemoteDatabasesInCache);
+		metrics.stopPhase(Phase.DECRYPT);
+
 		Map<DatabaseVersionHeader, File> databaseVersionLocations = findDatabaseVersionLocations(remoteDatabaseHeaders, unknownRemoteDatabasesInCache);
 
 		Map<String, CleanupRemoteFile> remoteCleanupFiles = getRemoteCleanupFiles();
@@ -189,11 +209,19 @@ public class DownOperation extends AbstractTransferOperation {
 			applyWinnersBranch(localBranch, winnersBranch, databaseVersionLocations, cleanupOccurred,
 					preDeleteFileHistoriesWithLastVersion);
 
+			metrics.startPhase(Phase.PERSIST);
+
 			persistMuddyMultiChunks(winnersBranch, allBranches, databaseVersionLocations);
 			removeNonMuddyMultiChunks();
 
 			localDatabase.writeKnownRemoteDatabases(newRemoteDatabases);
+			generationFileHandler.rememberRemoteGeneration(remoteGeneration);
+
+			metrics.stopPhase(Phase.PERSIST);
+			metrics.startPhase(Phase.COMMIT);
+
 			localDatabase.commit();
+			metrics.stopPhase(Phase.COMMIT);
 		}
 		catch (Exception e) {
 			localDatabase.rollback();
@@ -217,6 +245,7 @@ public class DownOperation extends AbstractTransferOperation {
 
 	private void fireEndEvent() {
 		eventBus.post(new DownEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), result.getResultCode(), result.getChangeSet()));
+		fireMetricsEvent();
 	}
 
 	/**
@@ -236,6 +265,18 @@ public class DownOperation extends AbstractTransferOperation {
 			return false;
 		}
 
+		// Check if anything has been committed since the last complete listing (single download)
+		remoteGeneration = generationFileHandler.readRemoteGeneration();
+
+		if (generationFileHandler.isRemoteGenerationKnown(remoteGeneration)) {
+			logger.log(Level.INFO, "* Remote generation unchanged. Nothing new. Skipping down operation.");
+
+			result.setLsRemoteResult(new LsRemoteOperationResult(new ArrayList<DatabaseRemoteFile>()));
+			result.setResultCode(DownResultCode.OK_NO_REMOTE_CHANGES);
+
+			return false;
+		}
+
 		// Check which remote databases to download based on the last local vector clock
 		LsRemoteOperationResult lsRemoteResult = listUnknownRemoteDatabases();
 		result.setLsRemoteResult(lsRemoteResult);
@@ -244,6 +285,9 @@ public class DownOperation extends AbstractTransferOperation {
 			logger.log(Level.INFO, "* Nothing new. Skipping down operation.");
 			result.setResultCode(DownResultCode.OK_NO_REMOTE_CHANGES);
 
+			generationFileHandler.rememberRemoteGeneration(remoteGeneration);
+			localDatabase.commit();
+
 			return false;
 		}
 
@@ -451,17 +495,22 @@ public class DownOperation extends AbstractTransferOperation {
 		}
 		else {
 			logger.log(Level.INFO, "Loading winners database (DEFAULT) ...");
+
+			metrics.startPhase(Phase.DECRYPT);
 			MemoryDatabase winnersDatabase = readWinnersDatabase(winnersApplyBranch, databaseVersionLocations);
+			metrics.stopPhase(Phase.DECRYPT);
 
 			if (options.isApplyChanges()) {
 				new ApplyChangesOperation(config, localDatabase, transferManager, winnersDatabase, result, cleanupOccurred,
-						preDeleteFileHistoriesWithLastVersion).execute();
+						preDeleteFileHistoriesWithLastVersion, metrics).execute();
 			}
 			else {
 				logger.log(Level.INFO, "Doing nothing on the file system, because --no-apply switched on");
 			}
 
+			metrics.startPhase(Phase.PERSIST);
 			persistDatabaseVersions(winnersApplyBranch, winnersDatabase);
+			metrics.stopPhase(Phase.PERSIST);
 
 			result.setResultCode(DownResultCode.OK_WITH_REMOTE_CHANGES);
 		}
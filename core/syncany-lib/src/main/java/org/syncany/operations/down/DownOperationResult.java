@@ -25,6 +25,7 @@ import java.util.Set;
 import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.operations.ChangeSet;
+import org.syncany.operations.OperationMetrics;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.ls_remote.LsRemoteOperationResult;
 
@@ -39,6 +40,7 @@ public class DownOperationResult implements OperationResult {
 	private Set<String> downloadedUnknownDatabases = new HashSet<String>();
 	private Set<MultiChunkId> downloadedMultiChunks = new HashSet<MultiChunkId>();
 	private LsRemoteOperationResult lsRemoteResult = null;
+	private OperationMetrics metrics;
 
 	public DownResultCode getResultCode() {
 		return resultCode;
@@ -87,4 +89,12 @@ public class DownOperationResult implements OperationResult {
 	public void setLsRemoteResult(LsRemoteOperationResult lsRemoteResult) {
 		this.lsRemoteResult = lsRemoteResult;
 	}
+
+	public OperationMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(OperationMetrics metrics) {
+		this.metrics = metrics;
+	}
 }
\ No newline at end of file
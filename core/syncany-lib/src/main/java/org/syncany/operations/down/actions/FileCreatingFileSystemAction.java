@@ -26,13 +26,24 @@ import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Assembler;
+import org.syncany.operations.StreamingAssembler;
 import org.syncany.util.NormalizedPath;
 
 public abstract class FileCreatingFileSystemAction extends FileSystemAction {
+	private StreamingAssembler streamingAssembler;
+	
 	public FileCreatingFileSystemAction(Config config, MemoryDatabase winningDatabase, FileVersion file1, FileVersion file2) {
 		super(config, winningDatabase, file1, file2);				
 	}
 
+	/**
+	 * Sets the streaming assembler from which files reconstructed during the
+	 * download are taken (optional).
+	 */
+	public void setStreamingAssembler(StreamingAssembler streamingAssembler) {
+		this.streamingAssembler = streamingAssembler;
+	}
+
 	protected void createFileFolderOrSymlink(FileVersion reconstructedFileVersion) throws Exception {
 		if (reconstructedFileVersion.getType() == FileType.FILE) {
 			createFile(reconstructedFileVersion);
@@ -76,8 +87,11 @@ public abstract class FileCreatingFileSystemAction extends FileSystemAction {
 	}
 	
 	protected File assembleFileToCache(FileVersion reconstructedFileVersion) throws Exception {
-		SqlDatabase localDatabase = new SqlDatabase(config);
-		Assembler assembler = new Assembler(config, localDatabase, winningDatabase);
+		return assembleFileToCache(reconstructedFileVersion, new SqlDatabase(config));
+	}
+	
+	protected File assembleFileToCache(FileVersion reconstructedFileVersion, SqlDatabase localDatabase) throws Exception {
+		Assembler assembler = new Assembler(config, localDatabase, winningDatabase, streamingAssembler);
 
 		File reconstructedFileInCache = assembler.assembleToCache(reconstructedFileVersion);
 		 
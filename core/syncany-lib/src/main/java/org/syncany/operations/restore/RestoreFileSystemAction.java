@@ -25,14 +25,28 @@ import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.MemoryDatabase;
+import org.syncany.database.SqlDatabase;
 import org.syncany.operations.down.actions.FileCreatingFileSystemAction;
 import org.syncany.util.NormalizedPath;
 
 public class RestoreFileSystemAction extends FileCreatingFileSystemAction {
 	private String relativeTargetPath;
+	private SqlDatabase localDatabase;
 	
 	public RestoreFileSystemAction(Config config, FileVersion fileVersion, String relativeTargetPath) {
+		this(config, null, fileVersion, relativeTargetPath);
+	}
+	
+	/**
+	 * Creates a restore action that assembles the file using the given local database,
+	 * instead of opening a new database connection. This is used to restore many files
+	 * in a row (see {@link RestoreOperation}). The database must not be used by another
+	 * thread at the same time. 
+	 */
+	public RestoreFileSystemAction(Config config, SqlDatabase localDatabase, FileVersion fileVersion, String relativeTargetPath) {
 		super(config, new MemoryDatabase(), null, fileVersion);
+		
+		this.localDatabase = localDatabase;
 		this.relativeTargetPath = relativeTargetPath;
 	}
 
@@ -50,7 +64,7 @@ public class RestoreFileSystemAction extends FileCreatingFileSystemAction {
 			}
 			
 			// Assemble file to cache
-			File cacheFile = assembleFileToCache(fileVersion2);
+			File cacheFile = (localDatabase != null) ? assembleFileToCache(fileVersion2, localDatabase) : assembleFileToCache(fileVersion2);
 			
 			// Find target path & folder
 			NormalizedPath targetPath = findTargetPath();
@@ -17,10 +17,22 @@
  */
 package org.syncany.operations.restore;
 
+import java.io.File;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,11 +47,29 @@ import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.Downloader;
 import org.syncany.operations.restore.RestoreOperationResult.RestoreResultCode;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.util.EnvironmentUtil;
+import org.syncany.util.FileUtil;
+import org.syncany.util.NormalizedPath;
 
+/**
+ * The restore operation restores old or deleted files from the remote storage.
+ * 
+ * <p>In its default mode, it restores a single version of a single file history.
+ * If a subtree path is given in the {@link RestoreOperationOptions}, it restores all files
+ * below that folder (recursively) as they were at the given date, or as they are now if no
+ * date is given: The multichunks required for all of these files are determined and
+ * downloaded once, and the files are then assembled by multiple threads into the target
+ * folder, keeping their relative paths.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
 public class RestoreOperation extends AbstractTransferOperation {
 	private static final Logger logger = Logger.getLogger(RestoreOperation.class.getSimpleName());
 	public static final String ACTION_ID = "restore";
 	
+	private static final int RESTORE_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static final String RESTORE_FOLDER_DATE_FORMAT = "yyyy-MM-dd HH-mm-ss";
+	
 	private RestoreOperationOptions options;
 	
 	private SqlDatabase localDatabase;
@@ -63,6 +93,10 @@ public class RestoreOperation extends AbstractTransferOperation {
 		logger.log(Level.INFO, "Running 'Restore' at client " + config.getMachineName() + " ...");
 		logger.log(Level.INFO, "--------------------------------------------");
 		
+		if (options.getSubtreePath() != null) {
+			return restoreSubtree();
+		}
+		
 		// Find file history
 		FileHistoryId restoreFileHistoryId = findFileHistoryId();
 
@@ -125,4 +159,192 @@ public class RestoreOperation extends AbstractTransferOperation {
 			downloader.downloadAndDecryptMultiChunks(multiChunksToDownload);
 		}
 	}
+
+	private RestoreOperationResult restoreSubtree() throws Exception {
+		// Find file versions
+		String subtreePath = normalizeSubtreePath(options.getSubtreePath());
+		List<FileVersion> restoreFileVersions = findSubtreeFileVersions(subtreePath);
+
+		if (restoreFileVersions.size() == 0) {
+			return new RestoreOperationResult(RestoreResultCode.NACK_NO_FILE);
+		}
+		
+		logger.log(Level.INFO, "Restoring " + restoreFileVersions.size() + " file version(s) in subtree '" + subtreePath + "' at "
+				+ ((options.getDate() != null) ? options.getDate() : "now") + " ...");
+
+		// Download all required multichunks at once
+		downloadMultiChunks(restoreFileVersions);
+
+		// Restore folders and symlinks, then assemble files in parallel
+		String relativeTargetFolder = findRelativeTargetFolder();
+		File targetFolder = new NormalizedPath(config.getLocalDir(), relativeTargetFolder).toFile();
+		
+		Queue<FileVersion> restoreFiles = new ConcurrentLinkedQueue<FileVersion>();
+		
+		for (FileVersion restoreFileVersion : restoreFileVersions) {
+			if (restoreFileVersion.getType() == FileType.FOLDER) {
+				restoreFolder(targetFolder, restoreFileVersion);
+			}
+			else if (restoreFileVersion.getType() == FileType.SYMLINK) {
+				restoreSymlink(targetFolder, restoreFileVersion);
+			}
+			else {
+				restoreFiles.add(restoreFileVersion);
+			}
+		}
+		
+		int restoredFileCount = restoreFiles.size();
+		restoreFilesInParallel(relativeTargetFolder, restoreFiles);
+
+		return new RestoreOperationResult(RestoreResultCode.ACK, targetFolder, restoredFileCount);
+	}
+
+	private String normalizeSubtreePath(String subtreePath) {
+		String normalizedSubtreePath = subtreePath.replace('\\', '/');
+		
+		while (normalizedSubtreePath.startsWith("/")) {
+			normalizedSubtreePath = normalizedSubtreePath.substring(1);
+		}
+		
+		while (normalizedSubtreePath.endsWith("/")) {
+			normalizedSubtreePath = normalizedSubtreePath.substring(0, normalizedSubtreePath.length() - 1);
+		}
+		
+		return normalizedSubtreePath;
+	}
+
+	private List<FileVersion> findSubtreeFileVersions(String subtreePath) {
+		String subtreePrefix = ("".equals(subtreePath)) ? "" : subtreePath + "/";
+		
+		List<FileVersion> fileTree = localDatabase.getFileList(subtreePrefix + "%", options.getDate(), false, true, false, EnumSet.allOf(FileType.class));
+		List<FileVersion> subtreeFileVersions = new ArrayList<FileVersion>();
+		
+		// The path expression is a LIKE pattern, so '_' and '%' in folder names
+		// might match more than the subtree. Filter again to be sure.
+		
+		for (FileVersion fileVersion : fileTree) {
+			if (fileVersion.getPath().startsWith(subtreePrefix)) {
+				subtreeFileVersions.add(fileVersion);
+			}
+		}
+		
+		return subtreeFileVersions;
+	}
+
+	private String findRelativeTargetFolder() {
+		if (options.getRelativeTargetPath() != null) {
+			return options.getRelativeTargetPath();
+		}
+		else {
+			Date restoreDate = (options.getDate() != null) ? options.getDate() : new Date();
+			return "restored " + new SimpleDateFormat(RESTORE_FOLDER_DATE_FORMAT).format(restoreDate);
+		}
+	}
+
+	private void downloadMultiChunks(List<FileVersion> restoreFileVersions) throws StorageException, IOException {
+		Set<FileChecksum> restoreFileChecksums = new HashSet<FileChecksum>();
+		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
+		
+		for (FileVersion restoreFileVersion : restoreFileVersions) {
+			if (restoreFileVersion.getType() == FileType.FILE && restoreFileVersion.getChecksum() != null) {
+				restoreFileChecksums.add(restoreFileVersion.getChecksum());
+			}
+		}
+		
+		for (FileChecksum restoreFileChecksum : restoreFileChecksums) {
+			multiChunksToDownload.addAll(localDatabase.getMultiChunkIds(restoreFileChecksum));
+		}
+
+		logger.log(Level.INFO, "Downloading " + multiChunksToDownload.size() + " multichunk(s) to restore " + restoreFileChecksums.size() 
+				+ " file content(s) ...");
+		
+		downloader.downloadAndDecryptMultiChunks(multiChunksToDownload);
+	}
+
+	private void restoreFolder(File targetFolder, FileVersion folderVersion) throws IOException {
+		File restoredFolder = new File(targetFolder, folderVersion.getPath());
+		
+		if (!restoredFolder.isDirectory() && !restoredFolder.mkdirs()) {
+			throw new IOException("Cannot create folder " + restoredFolder);
+		}
+	}
+
+	private void restoreSymlink(File targetFolder, FileVersion symlinkVersion) throws Exception {
+		File restoredSymlink = new File(targetFolder, symlinkVersion.getPath());
+		
+		if (EnvironmentUtil.symlinksSupported()) {
+			restoredSymlink.getParentFile().mkdirs();
+			FileUtil.createSymlink(symlinkVersion.getLinkTarget(), restoredSymlink);
+		}
+		else {
+			logger.log(Level.INFO, "- Skipping symlink (not supported) at " + restoredSymlink + " (target: " + symlinkVersion.getLinkTarget() + ")");
+		}
+	}
+
+	private void restoreFilesInParallel(String relativeTargetFolder, Queue<FileVersion> restoreFiles) throws Exception {
+		int threadCount = Math.min(RESTORE_THREAD_COUNT, Math.max(1, restoreFiles.size()));
+		
+		ExecutorService restoreExecutor = Executors.newFixedThreadPool(threadCount);
+		List<Future<Void>> restoreWorkerResults = new ArrayList<Future<Void>>();
+
+		logger.log(Level.INFO, "Assembling " + restoreFiles.size() + " file(s) with " + threadCount + " thread(s) ...");
+
+		try {
+			for (int i = 0; i < threadCount; i++) {
+				restoreWorkerResults.add(restoreExecutor.submit(new RestoreWorker(relativeTargetFolder, restoreFiles)));
+			}
+			
+			for (Future<Void> restoreWorkerResult : restoreWorkerResults) {
+				restoreWorkerResult.get();
+			}
+		}
+		catch (ExecutionException e) {
+			restoreFiles.clear(); // Stop other workers
+			
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			else {
+				throw e;
+			}
+		}
+		finally {
+			restoreExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * Assembles files from the shared queue until it is empty. Each worker 
+	 * uses its own database connection.
+	 */
+	private class RestoreWorker implements Callable<Void> {
+		private String relativeTargetFolder;
+		private Queue<FileVersion> restoreFiles;
+		
+		public RestoreWorker(String relativeTargetFolder, Queue<FileVersion> restoreFiles) {
+			this.relativeTargetFolder = relativeTargetFolder;
+			this.restoreFiles = restoreFiles;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			SqlDatabase workerDatabase = new SqlDatabase(config);
+			
+			try {
+				FileVersion restoreFileVersion;
+				
+				while ((restoreFileVersion = restoreFiles.poll()) != null) {
+					logger.log(Level.INFO, "- Restoring: " + restoreFileVersion);
+					
+					String relativeTargetPath = relativeTargetFolder + "/" + restoreFileVersion.getPath();
+					new RestoreFileSystemAction(config, workerDatabase, restoreFileVersion, relativeTargetPath).execute();
+				}
+				
+				return null;
+			}
+			finally {
+				workerDatabase.getConnection().close();
+			}
+		}
+	}
 }
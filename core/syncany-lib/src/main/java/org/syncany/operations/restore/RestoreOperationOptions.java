@@ -17,12 +17,21 @@
  */
 package org.syncany.operations.restore;
 
+import java.util.Date;
+
 import org.simpleframework.xml.Element;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.operations.OperationOptions;
 
+/**
+ * Options for the {@link RestoreOperation}. The operation either restores a single
+ * file version (identified by {@link #setFileHistoryId(FileHistoryId) file history} and
+ * {@link #setFileVersion(Integer) version}), or -- if a {@link #setSubtreePath(String) subtree path}
+ * is set -- all files below that folder as they were at the given {@link #setDate(Date) date}.
+ * In the latter case, the relative target path is the folder the subtree is restored to.
+ */
 public class RestoreOperationOptions implements OperationOptions {
-	@Element(required = true)	
+	@Element(required = false)	
 	private FileHistoryId fileHistoryId;
 	
 	@Element(required = false)
@@ -30,6 +39,12 @@ public class RestoreOperationOptions implements OperationOptions {
 	
 	@Element(required = false)
 	private String relativeTargetPath;
+	
+	@Element(required = false)
+	private String subtreePath;
+	
+	@Element(required = false)
+	private Date date;
 
 	public FileHistoryId getFileHistoryId() {
 		return fileHistoryId;
@@ -54,4 +69,20 @@ public class RestoreOperationOptions implements OperationOptions {
 	public void setRelativeTargetPath(String relativeTargetPath) {
 		this.relativeTargetPath = relativeTargetPath;
 	}
-}
\ No newline at end of file
+
+	public String getSubtreePath() {
+		return subtreePath;
+	}
+
+	public void setSubtreePath(String subtreePath) {
+		this.subtreePath = subtreePath;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public void setDate(Date date) {
+		this.date = date;
+	}
+}
@@ -28,6 +28,7 @@ public class RestoreOperationResult implements OperationResult {
 	
 	private RestoreResultCode resultCode;
 	private File targetFile;
+	private int restoredFileCount;
 	
 	public RestoreOperationResult() {
 		// Nothing.
@@ -38,8 +39,13 @@ public class RestoreOperationResult implements OperationResult {
 	}
 	
 	public RestoreOperationResult(RestoreResultCode resultCode, File targetFile) {
+		this(resultCode, targetFile, (targetFile != null) ? 1 : 0);
+	}
+	
+	public RestoreOperationResult(RestoreResultCode resultCode, File targetFile, int restoredFileCount) {
 		this.resultCode = resultCode;
 		this.targetFile = targetFile;
+		this.restoredFileCount = restoredFileCount;
 	}
 	
 	public RestoreResultCode getResultCode() {
@@ -57,4 +63,12 @@ public class RestoreOperationResult implements OperationResult {
 	public void setTargetFile(File targetFile) {
 		this.targetFile = targetFile;
 	}
-}
\ No newline at end of file
+
+	public int getRestoredFileCount() {
+		return restoredFileCount;
+	}
+	
+	public void setRestoredFileCount(int restoredFileCount) {
+		this.restoredFileCount = restoredFileCount;
+	}
+}
@@ -26,14 +26,21 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
+import org.syncany.database.FileFingerprintCache;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.FileVersionComparator;
 import org.syncany.database.FileVersionComparator.FileVersionComparison;
 import org.syncany.database.SqlDatabase;
@@ -47,6 +54,10 @@ import org.syncany.util.FileUtil;
  * The status operation analyzes the local file tree and compares it to the current local
  * database. It uses the {@link FileVersionComparator} to determine differences and returns
  * new/changed/deleted files in form of a {@link ChangeSet}.
+ * 
+ * <p>If {@link StatusOperationOptions#getScopePaths() scope paths} are given, only these
+ * folders are analyzed (see {@link #findLocalChangesInScope(Map, Set)}). Otherwise, the
+ * entire local file tree is walked.
  *   
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -54,6 +65,7 @@ public class StatusOperation extends Operation {
 	private static final Logger logger = Logger.getLogger(StatusOperation.class.getSimpleName());	
 	
 	private FileVersionComparator fileVersionComparator; 
+	private FileFingerprintCache fileFingerprintCache;
 	private SqlDatabase localDatabase;
 	private StatusOperationOptions options;
 	
@@ -64,9 +76,22 @@ public class StatusOperation extends Operation {
 	}	
 	
 	public StatusOperation(Config config, StatusOperationOptions options) {
+		this(config, options, null);
+	}
+	
+	/**
+	 * Creates a status operation that stores the checksums of all files it reads
+	 * in the given {@link FileFingerprintCache} (if not <tt>null</tt>), so that the calling
+	 * operation does not have to read these files again. With a cache, forced checksums
+	 * are only calculated if they can affect a comparison. The checksums of unchanged
+	 * files are removed from the cache again.
+	 */
+	public StatusOperation(Config config, StatusOperationOptions options, FileFingerprintCache fileFingerprintCache) {
 		super(config);		
 		
-		this.fileVersionComparator = new FileVersionComparator(config.getLocalDir(), config.getChunker().getChecksumAlgorithm());
+		this.fileVersionComparator = new FileVersionComparator(config.getLocalDir(), config.getChunker().getChecksumAlgorithm(), fileFingerprintCache);
+		this.fileVersionComparator.setChecksumOnlyIfRequired(fileFingerprintCache != null);
+		this.fileFingerprintCache = fileFingerprintCache;
 		this.localDatabase = new SqlDatabase(config);
 		this.options = options;		
 		
@@ -87,12 +112,19 @@ public class StatusOperation extends Operation {
 			logger.log(Level.INFO, "Delete missing files DISABLED.");
 		}
 		
+		if (options != null && options.getScopePaths() != null) {
+			logger.log(Level.INFO, "Analysis limited to {0} folder(s).", options.getScopePaths().size());
+		}
+		
 		// Get local database
 		logger.log(Level.INFO, "Querying current file tree from database ...");				
 		eventBus.post(new StatusStartSyncExternalEvent(config.getLocalDir().getAbsolutePath()));		
 		
 		// Path to actual file version
-		final Map<String, FileVersion> filesInDatabase = localDatabase.getCurrentFileTree();
+		final NavigableMap<String, FileVersion> filesInDatabase = localDatabase.getCurrentFileTree();
+
+		// Pick up changes to the ignore file (rules are only recompiled if it changed)
+		config.getIgnoredFiles().loadPatternsIfChanged();
 
 		// Find local changes
 		logger.log(Level.INFO, "Analyzing local folder "+config.getLocalDir()+" ...");								
@@ -111,7 +143,11 @@ public class StatusOperation extends Operation {
 		return statusResult;
 	}
 
-	private ChangeSet findLocalChanges(final Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
+	private ChangeSet findLocalChanges(final NavigableMap<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
+		if (options != null && options.getScopePaths() != null) {
+			return findLocalChangesInScope(filesInDatabase, options.getScopePaths());
+		}
+		
 		ChangeSet localChanges = findLocalChangedAndNewFiles(config.getLocalDir(), filesInDatabase);
 		
 		if (options == null || options.isDelete()) {
@@ -124,12 +160,134 @@ public class StatusOperation extends Operation {
 	private ChangeSet findLocalChangedAndNewFiles(final File root, Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
 		Path rootPath = Paths.get(root.getAbsolutePath());
 		
-		StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase);		
+		StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase, null);		
 		Files.walkFileTree(rootPath, fileVisitor);
 		
 		return fileVisitor.getChangeSet();		
 	}
 	
+	/**
+	 * Analyzes only the given folders (relative database paths) instead of the entire
+	 * file tree. For each scope folder, the direct children are compared to the database.
+	 * Sub-folders are only descended into if they are not yet known to the database, i.e.
+	 * if they are new. Known sub-folders are expected to be in the scope themselves if 
+	 * their contents changed.
+	 * 
+	 * <p>Deleted files are detected by checking the existence of all database entries
+	 * whose parent folder is in scope. If such an entry is a folder and it has vanished,
+	 * all entries below it are marked as deleted as well. Both are looked up as key ranges
+	 * of the (sorted) current file tree, so that the database entries outside the scope
+	 * are not visited.
+	 */
+	private ChangeSet findLocalChangesInScope(NavigableMap<String, FileVersion> filesInDatabase, Set<String> scopePaths) throws IOException {
+		Path rootPath = Paths.get(config.getLocalDir().getAbsolutePath());
+		StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase, scopePaths);		
+
+		for (String scopePath : scopePaths) {
+			File scopeFolder = new File(config.getLocalDir(), scopePath);
+			
+			if (isIgnoredOrInIgnoredFolder(scopePath)) {
+				logger.log(Level.FINE, "- Ignoring folder {0}", scopePath);
+			}
+			else if (FileUtil.isDirectory(scopeFolder)) {
+				logger.log(Level.FINE, "- Analyzing folder {0} ...", scopePath);
+				Files.walkFileTree(Paths.get(scopeFolder.getAbsolutePath()), fileVisitor);
+			}
+		}
+		
+		ChangeSet localChanges = fileVisitor.getChangeSet();
+
+		if (options.isDelete()) {
+			findAndAppendDeletedFilesInScope(localChanges, filesInDatabase, scopePaths);
+		}
+		
+		return localChanges;
+	}
+	
+	private void findAndAppendDeletedFilesInScope(ChangeSet localChanges, NavigableMap<String, FileVersion> filesInDatabase, Set<String> scopePaths) {
+		Set<String> vanishedFolders = new HashSet<String>();
+		
+		for (String scopePath : scopePaths) {
+			for (FileVersion lastLocalVersion : getChildren(filesInDatabase, scopePath)) {
+				if (lastLocalVersion.getStatus() != FileStatus.DELETED) {
+					File lastLocalVersionOnDisk = new File(config.getLocalDir() + File.separator + lastLocalVersion.getPath());
+	
+					if (!FileUtil.exists(lastLocalVersionOnDisk)) {
+						localChanges.getDeletedFiles().add(lastLocalVersion.getPath());
+						
+						if (lastLocalVersion.getType() == FileType.FOLDER) {
+							vanishedFolders.add(lastLocalVersion.getPath());
+						}
+					}
+				}
+			}
+		}
+		
+		for (String vanishedFolder : vanishedFolders) {
+			for (FileVersion lastLocalVersion : getDescendants(filesInDatabase, vanishedFolder).values()) {
+				if (lastLocalVersion.getStatus() != FileStatus.DELETED) {
+					localChanges.getDeletedFiles().add(lastLocalVersion.getPath());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the direct children of the given folder (empty string for the root folder). The
+	 * sub-trees of child folders are skipped, i.e. the lookup costs one range query per child.
+	 */
+	private List<FileVersion> getChildren(NavigableMap<String, FileVersion> filesInDatabase, String folderPath) {
+		String pathPrefix = "".equals(folderPath) ? "" : folderPath + "/";
+		List<FileVersion> children = new ArrayList<FileVersion>();
+		
+		String path = filesInDatabase.ceilingKey(pathPrefix);
+		
+		while (path != null && path.startsWith(pathPrefix)) {
+			int nextSlashIndex = path.indexOf('/', pathPrefix.length());
+			
+			if (nextSlashIndex < 0) {
+				children.add(filesInDatabase.get(path));
+				path = filesInDatabase.higherKey(path);
+			}
+			else {
+				path = filesInDatabase.ceilingKey(getDescendantsUpperBound(path.substring(0, nextSlashIndex)));
+			}
+		}
+		
+		return children;
+	}
+	
+	/**
+	 * Returns all entries below the given folder. Since '/' sorts right before '0', 
+	 * these are exactly the keys in the range <tt>[folder/, folder0)</tt>.
+	 */
+	private NavigableMap<String, FileVersion> getDescendants(NavigableMap<String, FileVersion> filesInDatabase, String folderPath) {
+		return filesInDatabase.subMap(folderPath + "/", true, getDescendantsUpperBound(folderPath), false);
+	}
+	
+	private String getDescendantsUpperBound(String folderPath) {
+		return folderPath + (char) ('/' + 1);
+	}
+	
+	private boolean isIgnoredOrInIgnoredFolder(String path) {
+		String currentPath = path;
+		
+		while (!"".equals(currentPath)) {
+			if (config.getIgnoredFiles().isFileIgnored(currentPath)) {
+				return true;
+			}
+			
+			currentPath = getParentPath(currentPath);
+		}
+		
+		return false;
+	}
+	
+	private String getParentPath(String path) {
+		int lastSlashIndex = path.lastIndexOf('/');
+		return (lastSlashIndex > 0) ? path.substring(0, lastSlashIndex) : "";
+	}
+	
 	private void findAndAppendDeletedFiles(ChangeSet localChanges, Map<String,FileVersion> filesInDatabase) {
 		for (FileVersion lastLocalVersion : filesInDatabase.values()) {
 			// Check if file exists, remove if it doesn't
@@ -151,11 +309,13 @@ public class StatusOperation extends Operation {
 		private Path root;
 		private ChangeSet changeSet;		
 		private Map<String, FileVersion> currentFileTree;
+		private Set<String> scopePaths;
 		
-		public StatusFileVisitor(Path root, Map<String, FileVersion> currentFileTree) {
+		public StatusFileVisitor(Path root, Map<String, FileVersion> currentFileTree, Set<String> scopePaths) {
 			this.root = root;
 			this.changeSet = new ChangeSet();
 			this.currentFileTree = currentFileTree;
+			this.scopePaths = scopePaths;
 		}
 
 		public ChangeSet getChangeSet() {
@@ -195,12 +355,23 @@ public class StatusOperation extends Operation {
 			FileVersion expectedLastFileVersion = currentFileTree.get(relativeFilePath);
 			
 			if (expectedLastFileVersion != null) {				
-				// Compare
+				// Compare (only read the file if it looks unchanged; a file with different
+				// size or modification date is reported as changed anyway)
 				boolean forceChecksum = options != null && options.isForceChecksum();
-				FileVersionComparison fileVersionComparison = fileVersionComparator.compare(expectedLastFileVersion, actualLocalFile.toFile(), forceChecksum); 
+				FileVersionComparison fileVersionComparison = fileVersionComparator.compare(expectedLastFileVersion, actualLocalFile.toFile(), false); 
+				
+				if (forceChecksum && fileVersionComparison.areEqual()) {
+					fileVersionComparison = fileVersionComparator.compare(expectedLastFileVersion, actualLocalFile.toFile(), true);
+				}
 				
 				if (fileVersionComparison.areEqual()) {
-					changeSet.getUnchangedFiles().add(relativeFilePath);
+					if (options == null || options.isIncludeUnchanged()) {
+						changeSet.getUnchangedFiles().add(relativeFilePath);
+					}
+					
+					if (fileFingerprintCache != null) {
+						fileFingerprintCache.remove(actualLocalFile.toFile());
+					}
 				}
 				else {
 					changeSet.getChangedFiles().add(relativeFilePath);
@@ -230,7 +401,19 @@ public class StatusOperation extends Operation {
 		}
 		
 		@Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException { 
-			return visitFile(dir, attrs);
+			FileVisitResult visitResult = visitFile(dir, attrs);
+			
+			// Don't descend into known folders that are not in scope
+			if (scopePaths != null && visitResult == FileVisitResult.CONTINUE) {
+				String relativeDirPath = FileUtil.getRelativeDatabasePath(root.toFile(), dir.toFile());
+				boolean isKnownFolder = currentFileTree.containsKey(relativeDirPath);
+				
+				if (isKnownFolder && !scopePaths.contains(relativeDirPath)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+			}
+			
+			return visitResult;
 		}
 
 		@Override
@@ -17,6 +17,8 @@
  */
 package org.syncany.operations.status;
 
+import java.util.Set;
+
 import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 import org.syncany.operations.OperationOptions;
@@ -29,6 +31,10 @@ public class StatusOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean delete = true;
 
+	private Set<String> scopePaths = null;
+
+	private boolean includeUnchanged = true;
+
 	public boolean isForceChecksum() {
 		return forceChecksum;
 	}
@@ -44,4 +50,42 @@ public class StatusOperationOptions implements OperationOptions {
 	public void setDelete(boolean delete) {
 		this.delete = delete;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the relative folder paths the status analysis is limited to,
+	 * or <tt>null</tt> if the entire file tree is to be analyzed.
+	 * 
+	 * @see #setScopePaths(Set)
+	 */
+	public Set<String> getScopePaths() {
+		return scopePaths;
+	}
+
+	/**
+	 * Limits the status analysis to the given folders (relative database paths, 
+	 * with the empty string denoting the root folder). Only the direct children of 
+	 * these folders are compared to the database, plus the entire contents of 
+	 * folders that are not yet known to the database.
+	 * 
+	 * <p>This is used by the {@link org.syncany.operations.watch.WatchOperation WatchOperation}
+	 * to only analyze the folders reported by the file system watcher. Setting the scope 
+	 * paths to <tt>null</tt> (the default) analyzes the entire file tree.
+	 */
+	public void setScopePaths(Set<String> scopePaths) {
+		this.scopePaths = scopePaths;
+	}
+
+	public boolean isIncludeUnchanged() {
+		return includeUnchanged;
+	}
+
+	/**
+	 * Defines whether unchanged files are listed in the resulting change set (default).
+	 * 
+	 * <p>The {@link org.syncany.operations.up.UpOperation UpOperation} does not need the unchanged
+	 * files, and disables this to keep the change set small for large folders.
+	 */
+	public void setIncludeUnchanged(boolean includeUnchanged) {
+		this.includeUnchanged = includeUnchanged;
+	}
+}
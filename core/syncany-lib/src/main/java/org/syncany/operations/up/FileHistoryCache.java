@@ -0,0 +1,83 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.up;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.SqlDatabase;
+
+/**
+ * The file history cache looks up the last versions of file histories by path and by
+ * checksum for the {@link Indexer}. Lookups are answered by the local database (using the
+ * current file tree, i.e. only the last versions of non-deleted file histories), and the
+ * results are remembered, so that each path and checksum is only queried once.
+ *
+ * <p>A cache is meant to be used for a single database version, i.e. by a single indexer.
+ * If a change set is indexed in several batches, each batch is persisted in the local
+ * database before the next batch is indexed, so that the next batch's cache sees the changes
+ * of earlier batches. The memory used by the cache is therefore bounded by the batch,
+ * and not by the number of files in the local database.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class FileHistoryCache {
+	private SqlDatabase localDatabase;
+
+	private Map<String, PartialFileHistory> filePathCache;
+	private Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache;
+
+	public FileHistoryCache(SqlDatabase localDatabase) {
+		this.localDatabase = localDatabase;
+
+		this.filePathCache = new HashMap<String, PartialFileHistory>();
+		this.fileChecksumCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
+	}
+
+	/**
+	 * Returns the non-deleted file history whose last version has the given path, or <tt>null</tt>
+	 * if there is no such file history.
+	 */
+	public PartialFileHistory getFileHistoryByPath(String path) {
+		if (!filePathCache.containsKey(path)) {
+			filePathCache.put(path, localDatabase.getFileHistoryWithLastVersion(path));
+		}
+
+		return filePathCache.get(path);
+	}
+
+	/**
+	 * Returns the non-deleted file histories whose last version has the given checksum (possibly
+	 * an empty list). The returned list is cached, and can be modified by the caller, e.g. to
+	 * make sure that a file history is not matched twice.
+	 */
+	public List<PartialFileHistory> getFileHistoriesByChecksum(FileChecksum checksum) {
+		List<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(checksum);
+
+		if (fileHistoriesWithSameChecksum == null) {
+			fileHistoriesWithSameChecksum = new ArrayList<PartialFileHistory>(localDatabase.getFileHistoriesWithLastVersionByChecksum(checksum));
+			fileChecksumCache.put(checksum, fileHistoriesWithSameChecksum);
+		}
+
+		return fileHistoriesWithSameChecksum;
+	}
+}
@@ -20,7 +20,6 @@ package org.syncany.operations.up;
 import java.io.File;
 import java.io.IOException;
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -40,6 +39,7 @@ import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.DatabaseVersion;
 import org.syncany.database.FileContent;
 import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileFingerprintCache;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileStatus;
 import org.syncany.database.FileVersion.FileType;
@@ -55,6 +55,7 @@ import org.syncany.database.SqlDatabase;
 import org.syncany.operations.daemon.messages.UpIndexChangesDetectedSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpIndexEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpIndexStartSyncExternalEvent;
+import org.syncany.plugins.transfer.StorageException;
 import org.syncany.util.EnvironmentUtil;
 import org.syncany.util.FileUtil;
 import org.syncany.util.StringUtil;
@@ -84,14 +85,31 @@ public class Indexer {
 
 	private Config config;
 	private Deduper deduper;
+	private MultiChunkUploader multiChunkUploader;
+	private FileFingerprintCache fileFingerprintCache;
+	private FileHistoryCache fileHistoryCache;
 	private SqlDatabase localDatabase;
 
 	private LocalEventBus eventBus;
 
-	public Indexer(Config config, Deduper deduper) {
+	/**
+	 * Creates a new indexer. All but the first two arguments are optional (may be <tt>null</tt>).
+	 *
+	 * @param config Config of the local Syncany folder
+	 * @param deduper Deduper to break the files into chunks and multichunks
+	 * @param multiChunkUploader If set, each closed multichunk is handed to the uploader, so that multichunks
+	 *        are uploaded while indexing continues; otherwise, multichunks are only written to the cache
+	 * @param fileFingerprintCache If set, the checksums of files are looked up in the cache; files whose checksum
+	 *        is in the cache and whose content is already known are not chunked again
+	 */
+	public Indexer(Config config, Deduper deduper, MultiChunkUploader multiChunkUploader, FileFingerprintCache fileFingerprintCache) {
+
 		this.config = config;
 		this.deduper = deduper;
+		this.multiChunkUploader = multiChunkUploader;
+		this.fileFingerprintCache = fileFingerprintCache;
 		this.localDatabase = new SqlDatabase(config);
+		this.fileHistoryCache = new FileHistoryCache(localDatabase);
 
 		this.eventBus = LocalEventBus.getInstance();
 	}
@@ -110,59 +128,46 @@ public class Indexer {
 	 * @throws IOException If the chunking/deduplication cannot read/process any of the files
 	 */
 	public DatabaseVersion index(List<File> files) throws IOException {
-		DatabaseVersion newDatabaseVersion = new DatabaseVersion();
-
-		// Load file history cache
-		List<PartialFileHistory> fileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
+		return index(files, true);
+	}
 
-		// TODO [medium] This should be in FileHistoryDao
-		Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache = fillFileChecksumCache(fileHistoriesWithLastVersion);
-		Map<String, PartialFileHistory> filePathCache = fillFilePathCache(fileHistoriesWithLastVersion);
+	/**
+	 * Same as {@link #index(List)}, but allows skipping the detection of deleted files. This is
+	 * used if a change set is indexed in several batches: Deleted files are then only detected
+	 * in the last batch, because files that were renamed might only be indexed in a later batch.
+	 * Files replaced by a file of another type (e.g. a folder replaced by a file) are detected
+	 * in every batch.
+	 *
+	 * <p>Each batch must be persisted in the local database before the next batch is indexed.
+	 *
+	 * @param files List of files to be deduplicated
+	 * @param removeDeletedFiles True if files that vanished from the local folder should be marked as deleted
+	 * @return New database version containing new/changed/deleted entities
+	 * @throws IOException If the chunking/deduplication cannot read/process any of the files
+	 */
+	public DatabaseVersion index(List<File> files, boolean removeDeletedFiles) throws IOException {
+		DatabaseVersion newDatabaseVersion = new DatabaseVersion();
 
 		// Find and index new files
-		deduper.deduplicate(files, new IndexerDeduperListener(newDatabaseVersion, fileChecksumCache, filePathCache));
+		deduper.deduplicate(files, new IndexerDeduperListener(newDatabaseVersion));
 
 		// Find and remove deleted files
-		removeDeletedFiles(newDatabaseVersion, fileHistoriesWithLastVersion);
-
-		return newDatabaseVersion;
-	}
-
-	private Map<String, PartialFileHistory> fillFilePathCache(List<PartialFileHistory> fileHistoriesWithLastVersion) {
-		Map<String, PartialFileHistory> filePathCache = new HashMap<String, PartialFileHistory>();
-
-		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
-			filePathCache.put(fileHistory.getLastVersion().getPath(), fileHistory);
+		if (removeDeletedFiles) {
+			removeDeletedFiles(newDatabaseVersion);
 		}
-
-		return filePathCache;
-	}
-
-	private Map<FileChecksum, List<PartialFileHistory>> fillFileChecksumCache(List<PartialFileHistory> fileHistoriesWithLastVersion) {
-		Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
-
-		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
-			FileChecksum fileChecksum = fileHistory.getLastVersion().getChecksum();
-
-			if (fileChecksum != null) {
-				List<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(fileChecksum);
-
-				if (fileHistoriesWithSameChecksum == null) {
-					fileHistoriesWithSameChecksum = new ArrayList<PartialFileHistory>();
-				}
-
-				fileHistoriesWithSameChecksum.add(fileHistory);
-				fileChecksumCache.put(fileChecksum, fileHistoriesWithSameChecksum);
-			}
+		else {
+			removeReplacedFiles(newDatabaseVersion);
 		}
 
-		return fileChecksumCache;
+		return newDatabaseVersion;
 	}
 
-	private void removeDeletedFiles(DatabaseVersion newDatabaseVersion, List<PartialFileHistory> fileHistoriesWithLastVersion) {
+	private void removeDeletedFiles(DatabaseVersion newDatabaseVersion) {
 		logger.log(Level.FINER, "- Looking for deleted files ...");
 
-		for (PartialFileHistory fileHistory : fileHistoriesWithLastVersion) {
+		Map<String, PartialFileHistory> newFilePathCache = fillNewFilePathCache(newDatabaseVersion);
+
+		for (PartialFileHistory fileHistory : localDatabase.getFileHistoriesWithLastVersion()) {
 			// Ignore this file history if it has been updated in this database version before (file probably renamed!)
 			if (newDatabaseVersion.getFileHistory(fileHistory.getFileHistoryId()) != null) {
 				continue;
@@ -178,39 +183,65 @@ public class Indexer {
 			}
 
 			// Add this file history if a new file with this name has been added (file type change)
-			PartialFileHistory newFileWithSameName = getFileHistoryByPathFromDatabaseVersion(newDatabaseVersion, fileHistory.getLastVersion()
-					.getPath());
+			PartialFileHistory newFileWithSameName = newFilePathCache.get(lastLocalVersion.getPath());
 
 			// If file has VANISHED, mark as DELETED
 			if (!FileUtil.exists(lastLocalVersionOnDisk) || newFileWithSameName != null) {
-				PartialFileHistory deletedFileHistory = new PartialFileHistory(fileHistory.getFileHistoryId());
-				FileVersion deletedVersion = lastLocalVersion.clone();
+				addDeletedFileVersion(newDatabaseVersion, fileHistory);
+			}
+		}
+	}
+
+	/**
+	 * Marks the file histories as deleted that have been replaced by a new file history with the
+	 * same path in the given database version (file type change). This is a subset of
+	 * {@link #removeDeletedFiles(DatabaseVersion)}, which only looks up the paths of the new file
+	 * histories instead of all file histories in the database.
+	 */
+	private void removeReplacedFiles(DatabaseVersion newDatabaseVersion) {
+		logger.log(Level.FINER, "- Looking for replaced files ...");
 
-				deletedVersion.setStatus(FileStatus.DELETED);
-				deletedVersion.setVersion(fileHistory.getLastVersion().getVersion() + 1);
-				deletedVersion.setUpdated(new Date());
+		for (PartialFileHistory newFileHistory : fillNewFilePathCache(newDatabaseVersion).values()) {
+			PartialFileHistory fileHistoryWithSamePath = fileHistoryCache.getFileHistoryByPath(newFileHistory.getLastVersion().getPath());
 
-				logger.log(Level.FINER, "  + Deleted: Adding DELETED version: {0}", deletedVersion);
-				logger.log(Level.FINER, "                           based on: {0}", lastLocalVersion);
+			boolean replaced = fileHistoryWithSamePath != null
+					&& newDatabaseVersion.getFileHistory(fileHistoryWithSamePath.getFileHistoryId()) == null;
 
-				deletedFileHistory.addFileVersion(deletedVersion);
-				newDatabaseVersion.addFileHistory(deletedFileHistory);
+			if (replaced) {
+				addDeletedFileVersion(newDatabaseVersion, fileHistoryWithSamePath);
 			}
 		}
 	}
 
-	private PartialFileHistory getFileHistoryByPathFromDatabaseVersion(DatabaseVersion databaseVersion, String path) {
-		// TODO [medium] Extremely performance intensive, because this is called inside a loop above. Implement better caching for database version!!!
+	private void addDeletedFileVersion(DatabaseVersion newDatabaseVersion, PartialFileHistory fileHistory) {
+		FileVersion lastLocalVersion = fileHistory.getLastVersion();
 
-		for (PartialFileHistory fileHistory : databaseVersion.getFileHistories()) {
+		PartialFileHistory deletedFileHistory = new PartialFileHistory(fileHistory.getFileHistoryId());
+		FileVersion deletedVersion = lastLocalVersion.clone();
+
+		deletedVersion.setStatus(FileStatus.DELETED);
+		deletedVersion.setVersion(lastLocalVersion.getVersion() + 1);
+		deletedVersion.setUpdated(new Date());
+
+		logger.log(Level.FINER, "  + Deleted: Adding DELETED version: {0}", deletedVersion);
+		logger.log(Level.FINER, "                           based on: {0}", lastLocalVersion);
+
+		deletedFileHistory.addFileVersion(deletedVersion);
+		newDatabaseVersion.addFileHistory(deletedFileHistory);
+	}
+
+	private Map<String, PartialFileHistory> fillNewFilePathCache(DatabaseVersion newDatabaseVersion) {
+		Map<String, PartialFileHistory> newFilePathCache = new HashMap<String, PartialFileHistory>();
+
+		for (PartialFileHistory fileHistory : newDatabaseVersion.getFileHistories()) {
 			FileVersion lastVersion = fileHistory.getLastVersion();
 
-			if (lastVersion.getStatus() != FileStatus.DELETED && lastVersion.getPath().equals(path)) {
-				return fileHistory;
+			if (lastVersion.getStatus() != FileStatus.DELETED) {
+				newFilePathCache.put(lastVersion.getPath(), fileHistory);
 			}
 		}
 
-		return null;
+		return newFilePathCache;
 	}
 
 	public static class IndexerException extends RuntimeException {
@@ -219,6 +250,10 @@ public class Indexer {
 		public IndexerException(String message) {
 			super(message);
 		}
+
+		public IndexerException(String message, Throwable cause) {
+			super(message, cause);
+		}
 	}
 
 	private class IndexerDeduperListener implements DeduperListener {
@@ -226,25 +261,19 @@ public class Indexer {
 		private SecureRandom secureRandom;
 		private DatabaseVersion newDatabaseVersion;
 
-		private Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache;
-		private Map<String, PartialFileHistory> filePathCache;
-
 		private ChunkEntry chunkEntry;
 		private MultiChunkEntry multiChunkEntry;
 		private FileContent fileContent;
 
 		private FileProperties startFileProperties;
 		private FileProperties endFileProperties;
+		private FileChecksum knownFileChecksum;
 
-		public IndexerDeduperListener(DatabaseVersion newDatabaseVersion, Map<FileChecksum, List<PartialFileHistory>> fileChecksumCache,
-				Map<String, PartialFileHistory> filePathCache) {
+		public IndexerDeduperListener(DatabaseVersion newDatabaseVersion) {
 
 			this.fileVersionComparator = new FileVersionComparator(config.getLocalDir(), config.getChunker().getChecksumAlgorithm());
 			this.secureRandom = new SecureRandom();
 			this.newDatabaseVersion = newDatabaseVersion;
-
-			this.fileChecksumCache = fileChecksumCache;
-			this.filePathCache = filePathCache;
 		}
 
 		@Override
@@ -276,12 +305,44 @@ public class Indexer {
 		public boolean onFileStart(File file, int fileIndex) {
 			boolean processFile = startFileProperties.getType() == FileType.FILE; // Ignore directories and symlinks!
 
+			// Don't read the file again if it has been checksummed before, and its content is known
+			if (processFile && fileFingerprintCache != null) {
+				knownFileChecksum = findKnownFileChecksum(file);
+
+				if (knownFileChecksum != null) {
+					logger.log(Level.FINER, "- File content known (checksum {0}), not chunking {1}", new Object[] { knownFileChecksum, file });
+
+					fileContent = null;
+					processFile = false;
+				}
+			}
+
 			// We could fire an event here, but firing for every file
 			// is very exhausting for the event bus.
 
 			return processFile;
 		}
 
+		private FileChecksum findKnownFileChecksum(File file) {
+			try {
+				FileChecksum fileChecksum = fileFingerprintCache.get(file);
+				fileFingerprintCache.remove(file); // Only looked up once
+
+				if (fileChecksum == null) {
+					return null;
+				}
+
+				boolean fileContentKnown = newDatabaseVersion.getFileContent(fileChecksum) != null
+						|| localDatabase.getFileContent(fileChecksum, false) != null;
+
+				return (fileContentKnown) ? fileChecksum : null;
+			}
+			catch (IOException e) {
+				logger.log(Level.FINE, "Cannot read file attributes of " + file + "; chunking file.", e);
+				return null;
+			}
+		}
+
 		@Override
 		public void onFileEnd(File file, byte[] rawFileChecksum) {
 			// Get file attributes (get them while file exists)
@@ -289,7 +350,7 @@ public class Indexer {
 			// Note: Do NOT move any File-methods (file.anything()) below the file.exists()-part,
 			// because the file could vanish!
 			
-			FileChecksum fileChecksum = (rawFileChecksum != null) ? new FileChecksum(rawFileChecksum) : null;
+			FileChecksum fileChecksum = (rawFileChecksum != null) ? new FileChecksum(rawFileChecksum) : knownFileChecksum;
 			endFileProperties = fileVersionComparator.captureFileProperties(file, fileChecksum, false);
 
 			// Check if file has vanished
@@ -447,6 +508,7 @@ public class Indexer {
 			fileContent = null;
 			startFileProperties = null;
 			endFileProperties = null;
+			knownFileChecksum = null;
 		}
 
 		private PartialFileHistory guessLastFileHistory(FileProperties fileProperties) {
@@ -473,7 +535,7 @@ public class Indexer {
 		}
 
 		private PartialFileHistory guessLastFileHistoryForFolderOrSymlink(FileProperties fileProperties) {
-			PartialFileHistory lastFileHistory = filePathCache.get(fileProperties.getRelativePath());
+			PartialFileHistory lastFileHistory = fileHistoryCache.getFileHistoryByPath(fileProperties.getRelativePath());
 
 			if (lastFileHistory == null) {
 				logger.log(Level.FINER, "   * No old file history found, starting new history (path: " + fileProperties.getRelativePath() + ", "
@@ -511,12 +573,13 @@ public class Indexer {
 			PartialFileHistory lastFileHistory = null;
 
 			// a) Try finding a file history for which the last version has the same path
-			lastFileHistory = filePathCache.get(fileProperties.getRelativePath());
+			lastFileHistory = fileHistoryCache.getFileHistoryByPath(fileProperties.getRelativePath());
 
 			// b) If that fails, try finding files with a matching checksum
 			if (lastFileHistory == null) {
 				if (fileProperties.getChecksum() != null) {
-					Collection<PartialFileHistory> fileHistoriesWithSameChecksum = fileChecksumCache.get(fileProperties.getChecksum());
+					Collection<PartialFileHistory> fileHistoriesWithSameChecksum = fileHistoryCache.getFileHistoriesByChecksum(fileProperties
+							.getChecksum());
 
 					if (fileHistoriesWithSameChecksum != null && fileHistoriesWithSameChecksum.size() > 0) {
 						lastFileHistory = guessLastFileHistoryForFileWithMatchingChecksum(fileProperties, fileHistoriesWithSameChecksum);
@@ -524,10 +587,6 @@ public class Indexer {
 						// Remove the lastFileHistory we are basing this one on from the
 						// cache, so no other history will be
 						fileHistoriesWithSameChecksum.remove(lastFileHistory);
-
-						if (fileHistoriesWithSameChecksum.isEmpty()) {
-							fileChecksumCache.remove(fileProperties.getChecksum());
-						}
 					}
 				}
 
@@ -625,6 +684,19 @@ public class Indexer {
 
 			newDatabaseVersion.addMultiChunk(multiChunkEntry);
 			multiChunkEntry = null;
+
+			if (multiChunkUploader != null) {
+				queueMultiChunkForUpload(multiChunk.getId());
+			}
+		}
+
+		private void queueMultiChunkForUpload(MultiChunkId multiChunkId) {
+			try {
+				multiChunkUploader.queue(multiChunkId);
+			}
+			catch (StorageException | InterruptedException e) {
+				throw new IndexerException("Cannot upload multichunk " + multiChunkId, e);
+			}
 		}
 
 		@Override
@@ -0,0 +1,191 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.up;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.transfer.RemoteTransaction;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * The multichunk uploader uploads new multichunks to their temporary remote location
+ * while the {@link Indexer} is still creating new multichunks. It is used by the
+ * {@link UpOperation} if pipelined uploads are enabled (see {@link UpOperationOptions#isPipelinedUploadEnabled()}).
+ *
+ * <p>Closed multichunks are handed to the uploader via {@link #queue(MultiChunkId)}. A background
+ * thread adds them to the {@link RemoteTransaction} and uploads them in batches using
+ * {@link RemoteTransaction#uploadToTempLocation(Map)}, which registers each batch in its own partial
+ * remote transaction file. Once a multichunk is uploaded, the local (encrypted) copy is deleted from the cache.
+ *
+ * <p>To bound the local disk usage, at most <tt>maxPendingMultiChunks</tt> multichunks can be
+ * waiting for their upload. If this limit is reached, {@link #queue(MultiChunkId)} blocks, which
+ * pauses the indexing process until the upload has caught up.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class MultiChunkUploader {
+	private static final Logger logger = Logger.getLogger(MultiChunkUploader.class.getSimpleName());
+	private static final MultiChunkId END_OF_QUEUE = new MultiChunkId(new byte[0]);
+
+	public static final int DEFAULT_MAX_PENDING_MULTICHUNKS = 4;
+
+	private Config config;
+	private RemoteTransaction remoteTransaction;
+	private int maxPendingMultiChunks;
+
+	private BlockingQueue<MultiChunkId> pendingMultiChunkIds;
+	private Semaphore freeSlots;
+	private Thread uploadThread;
+	private volatile Exception uploadException;
+
+	public MultiChunkUploader(Config config, RemoteTransaction remoteTransaction, int maxPendingMultiChunks) {
+		this.config = config;
+		this.remoteTransaction = remoteTransaction;
+		this.maxPendingMultiChunks = maxPendingMultiChunks;
+
+		this.pendingMultiChunkIds = new LinkedBlockingQueue<MultiChunkId>();
+		this.freeSlots = new Semaphore(maxPendingMultiChunks);
+		this.uploadThread = null;
+		this.uploadException = null;
+	}
+
+	public void start() {
+		uploadThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				uploadMultiChunks();
+			}
+		}, "UpUploader");
+
+		uploadThread.start();
+	}
+
+	/**
+	 * Queues the given (closed) multichunk for upload. If too many multichunks
+	 * are waiting to be uploaded, this method blocks until the upload thread has
+	 * finished uploading at least one of them.
+	 *
+	 * @throws StorageException If a previous upload has failed
+	 */
+	public void queue(MultiChunkId multiChunkId) throws StorageException, InterruptedException {
+		freeSlots.acquire();
+		throwIfUploadFailed();
+
+		logger.log(Level.FINE, "- Queuing multichunk {0} for upload ...", multiChunkId);
+		pendingMultiChunkIds.put(multiChunkId);
+	}
+
+	/**
+	 * Waits for all queued multichunks to be uploaded and stops the upload thread.
+	 *
+	 * @throws StorageException If any of the uploads has failed
+	 */
+	public void finish() throws StorageException, InterruptedException {
+		if (uploadThread != null) {
+			pendingMultiChunkIds.put(END_OF_QUEUE);
+			uploadThread.join();
+			uploadThread = null;
+		}
+
+		throwIfUploadFailed();
+	}
+
+	/**
+	 * Stops the upload thread without waiting for the queued multichunks
+	 * to be uploaded. This method is used if the indexing process fails.
+	 */
+	public void abort() throws InterruptedException {
+		if (uploadThread != null) {
+			uploadThread.interrupt();
+			uploadThread.join();
+			uploadThread = null;
+		}
+	}
+
+	private void throwIfUploadFailed() throws StorageException {
+		if (uploadException != null) {
+			throw new StorageException("Uploading multichunks failed", uploadException);
+		}
+	}
+
+	private void uploadMultiChunks() {
+		try {
+			boolean endOfQueue = false;
+
+			while (!endOfQueue) {
+				List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+
+				multiChunkIds.add(pendingMultiChunkIds.take());
+				pendingMultiChunkIds.drainTo(multiChunkIds);
+
+				endOfQueue = multiChunkIds.remove(END_OF_QUEUE);
+
+				if (multiChunkIds.size() > 0) {
+					uploadMultiChunks(multiChunkIds);
+					freeSlots.release(multiChunkIds.size());
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			logger.log(Level.INFO, "Multichunk upload thread interrupted; stopping.");
+			uploadException = e;
+		}
+		catch (Exception e) {
+			logger.log(Level.WARNING, "Uploading multichunks failed; stopping upload thread.", e);
+			uploadException = e;
+		}
+		finally {
+			// Wake up the indexer, if it is waiting for a free slot
+			freeSlots.release(maxPendingMultiChunks);
+		}
+	}
+
+	private void uploadMultiChunks(List<MultiChunkId> multiChunkIds) throws StorageException {
+		Map<File, RemoteFile> localToRemoteFiles = new LinkedHashMap<File, RemoteFile>();
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			File localMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+			MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+
+			logger.log(Level.INFO, "- Uploading multichunk {0} from {1} to {2} (pipelined) ...", new Object[] { multiChunkId, localMultiChunkFile,
+					remoteMultiChunkFile });
+
+			localToRemoteFiles.put(localMultiChunkFile, remoteMultiChunkFile);
+		}
+
+		remoteTransaction.uploadToTempLocation(localToRemoteFiles);
+
+		// The uploaded multichunks are not needed locally anymore (resuming skips started uploads)
+		for (File localMultiChunkFile : localToRemoteFiles.keySet()) {
+			localMultiChunkFile.delete();
+		}
+	}
+}
@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +36,7 @@ import org.syncany.database.ChunkEntry;
 import org.syncany.database.DatabaseVersion;
 import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.FileContent;
+import org.syncany.database.FileFingerprintCache;
 import org.syncany.database.FileVersion;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.MultiChunkEntry;
@@ -46,6 +48,8 @@ import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.ChangeSet;
+import org.syncany.operations.GenerationFileHandler;
+import org.syncany.operations.OperationMetrics.Phase;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.daemon.messages.UpEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpStartSyncExternalEvent;
@@ -66,6 +70,8 @@ import org.syncany.plugins.transfer.to.ActionTO.ActionStatus;
 import org.syncany.plugins.transfer.to.ActionTO.ActionType;
 import org.syncany.plugins.transfer.to.TransactionTO;
 
+import com.google.common.collect.Iterators;
+
 /**
  * The up operation implements a central part of Syncany's business logic. It analyzes the local
  * folder, deduplicates new or changed files and uploads newly packed multichunks to the remote
@@ -74,11 +80,13 @@ import org.syncany.plugins.transfer.to.TransactionTO;
  * <p>The general operation flow is as follows:
  * <ol>
  *   <li>Load local database (if not already loaded)</li>
- *   <li>Analyze local directory using the {@link StatusOperation} to determine any changed/new/deleted files</li>
+ *   <li>Analyze local directory using the {@link StatusOperation} to determine any changed/new/deleted files;
+ *       file checksums calculated here are kept in a {@link FileFingerprintCache} and reused by the {@link Indexer}</li>
  *   <li>Determine if there are unknown remote databases using the {@link LsRemoteOperation}, and skip the rest if there are</li>
  *   <li>If there are changes, use the {@link Deduper} and {@link Indexer} to create a new {@link DatabaseVersion}
  *       (including new chunks, multichunks, file contents and file versions).</li>
- *   <li>Upload new multichunks (if any) using a {@link TransferManager}</li>
+ *   <li>Upload new multichunks (if any) using a {@link TransferManager}; with pipelined uploads enabled,
+ *       multichunks are uploaded by the {@link MultiChunkUploader} while indexing continues</li>
  *   <li>Save new {@link DatabaseVersion} to a new (delta) {@link MemoryDatabase} and upload it</li>
  *   <li>Add delta database to local database and store it locally</li>
  * </ol>
@@ -95,6 +103,9 @@ public class UpOperation extends AbstractTransferOperation {
 
 	private SqlDatabase localDatabase;
 	private RemoteTransaction remoteTransaction;
+	private GenerationFileHandler generationFileHandler;
+	private String listedRemoteGeneration;
+	private FileFingerprintCache fileFingerprintCache;
 
 	public UpOperation(Config config) {
 		this(config, new UpOperationOptions());
@@ -105,8 +116,12 @@ public class UpOperation extends AbstractTransferOperation {
 
 		this.options = options;
 		this.result = new UpOperationResult();
+		this.result.setMetrics(metrics);
 		this.localDatabase = new SqlDatabase(config);
 		this.remoteTransaction = new RemoteTransaction(config, transferManager);
+		this.generationFileHandler = new GenerationFileHandler(config, transferManager.getUnderlyingTransferManager(), localDatabase);
+		this.listedRemoteGeneration = null;
+		this.fileFingerprintCache = new FileFingerprintCache();
 	}
 
 	@Override
@@ -117,7 +132,11 @@ public class UpOperation extends AbstractTransferOperation {
 
 		fireStartEvent();
 
-		if (!checkPreconditions()) {
+		metrics.startPhase(Phase.STATUS);
+		boolean preconditionsMet = checkPreconditions();
+		metrics.stopPhase(Phase.STATUS);
+
+		if (!preconditionsMet) {
 			fireEndEvent();
 			return result;
 		}
@@ -147,12 +166,13 @@ public class UpOperation extends AbstractTransferOperation {
 					return result;
 				}
 
-				if (transactions.size() != 1) {
+				if (!isSingleTransaction(transactions)) {
 					logger.log(Level.INFO, "Unable to find (unique) transactionRemoteFile. Not resuming.");
 					resuming = false;
 					transferManager.clearResumableTransactions();
 				}
 				else {
+					// Other files of the transaction (partial transaction files) are replaced when committing
 					transactionRemoteFile = transactions.get(0);
 				}
 			}
@@ -161,7 +181,12 @@ public class UpOperation extends AbstractTransferOperation {
 			}
 		}
 
-		if (!resuming) {
+		if (resuming) {
+			// Commit the resumed database version; remaining local changes are uploaded by the next 'up'
+			commitDatabaseVersion(newDatabaseVersion, true, transactionRemoteFile);
+			addNewDatabaseChangesToResultChanges(newDatabaseVersion, result.getChangeSet());
+		}
+		else {
 			// If we are not resuming, we need to clean transactions and index local files.
 			boolean blockingTransactionExist = !transferManager.cleanTransactions();
 
@@ -171,26 +196,106 @@ public class UpOperation extends AbstractTransferOperation {
 			}
 
 			ChangeSet localChanges = result.getStatusResult().getChangeSet();
-			List<File> locallyUpdatedFiles = extractLocallyUpdatedFiles(localChanges);
+			LocallyUpdatedFileBatches locallyUpdatedFileBatches = new LocallyUpdatedFileBatches(localChanges);
+
+			boolean changesUploaded = false;
+
+			for (int batchIndex = 0; locallyUpdatedFileBatches.hasNext(); batchIndex++) {
+				List<File> locallyUpdatedFileBatch = locallyUpdatedFileBatches.next();
+				boolean lastBatch = !locallyUpdatedFileBatches.hasNext();
+
+				if (batchIndex > 0 || !lastBatch) {
+					logger.log(Level.INFO, "Indexing and uploading batch {0} ({1} file(s)) ...", new Object[] { batchIndex + 1,
+							locallyUpdatedFileBatch.size() });
+				}
+
+				if (batchIndex > 0) {
+					remoteTransaction = new RemoteTransaction(config, transferManager);
+				}
+
+				// Index (deleted files are only detected in the last batch, so renames across batches are detected)
+				metrics.startPhase(Phase.INDEX);
+				newDatabaseVersion = index(locallyUpdatedFileBatch, lastBatch);
+				metrics.stopPhase(Phase.INDEX);
+
+				if (newDatabaseVersion.getFileHistories().size() == 0) {
+					logger.log(Level.INFO, "No changes in this batch. Nothing to upload.");
+					continue;
+				}
+
+				// Add multichunks to transaction (pipelined: already added and uploaded while indexing)
+				if (!options.isPipelinedUploadEnabled()) {
+					logger.log(Level.INFO, "Uploading new multichunks ...");
+					addMultiChunksToTransaction(newDatabaseVersion.getMultiChunks());
+				}
 
-			// Index
-			newDatabaseVersion = index(locallyUpdatedFiles);
+				commitDatabaseVersion(newDatabaseVersion, false, null);
+				addNewDatabaseChangesToResultChanges(newDatabaseVersion, result.getChangeSet());
 
-			if (newDatabaseVersion.getFileHistories().size() == 0) {
+				changesUploaded = true;
+			}
+
+			if (!changesUploaded) {
 				logger.log(Level.INFO, "Local database is up-to-date. NOTHING TO DO!");
 				result.setResultCode(UpResultCode.OK_NO_CHANGES);
 
+				rememberListedRemoteGeneration();
 				finishOperation();
 				fireEndEvent();
 
 				return result;
 			}
+		}
+
+		// Tell other clients that new databases are available (once, after all database
+		// versions are persisted, so that a failure here does not leave the local database
+		// behind the remote repository)
+		generationFileHandler.updateRemoteGeneration();
+
+		// Finish 'up' before 'cleanup' starts
+		finishOperation();
+
+		logger.log(Level.INFO, "Sync up done.");
+
+		// Result
+		result.setResultCode(UpResultCode.OK_CHANGES_UPLOADED);
 
-			// Add multichunks to transaction
-			logger.log(Level.INFO, "Uploading new multichunks ...");
-			addMultiChunksToTransaction(newDatabaseVersion.getMultiChunks());
+		fireEndEvent();
+
+		return result;
+	}
+
+	/**
+	 * Returns whether the given remote transaction files all belong to exactly one
+	 * transaction. A transaction has more than one file if it was interrupted during a
+	 * pipelined upload (see {@link RemoteTransaction#uploadToTempLocation(java.util.Map)}).
+	 */
+	private boolean isSingleTransaction(List<TransactionRemoteFile> transactionRemoteFiles) {
+		if (transactionRemoteFiles.isEmpty()) {
+			return false;
+		}
+
+		for (TransactionRemoteFile transactionRemoteFile : transactionRemoteFiles) {
+			if (!transactionRemoteFile.isSameTransaction(transactionRemoteFiles.get(0))) {
+				return false;
+			}
 		}
 
+		return true;
+	}
+
+	/**
+	 * Uploads the given database version: This method creates the delta database, commits the
+	 * {@link RemoteTransaction} (or resumes it) and persists the database version to the local
+	 * database. If committing fails, the transaction is serialized so that it can be resumed.
+	 *
+	 * @param newDatabaseVersion Database version to be uploaded and persisted
+	 * @param resuming True if the current remote transaction is resumed
+	 * @param transactionRemoteFile Remote transaction file of the resumed transaction (only if resuming)
+	 */
+	private void commitDatabaseVersion(DatabaseVersion newDatabaseVersion, boolean resuming, TransactionRemoteFile transactionRemoteFile)
+			throws Exception {
+
 		// Create delta database and commit transaction
 		writeAndAddDeltaDatabase(newDatabaseVersion, resuming);
 
@@ -201,6 +306,8 @@ public class UpOperation extends AbstractTransferOperation {
 		Thread writeResumeFilesShutDownHook = createAndAddShutdownHook(newDatabaseVersion);
 
 		try {
+			metrics.startPhase(Phase.UPLOAD);
+
 			if (!resuming) {
 				remoteTransaction.commit();
 			}
@@ -208,6 +315,9 @@ public class UpOperation extends AbstractTransferOperation {
 				remoteTransaction.commit(config.getTransactionFile(), transactionRemoteFile);
 			}
 
+			metrics.stopPhase(Phase.UPLOAD);
+			metrics.startPhase(Phase.COMMIT);
+
 			localDatabase.commit();
 			committingFailed = false;
 		}
@@ -226,27 +336,21 @@ public class UpOperation extends AbstractTransferOperation {
 			}
 		}
 
+		metrics.stopPhase(Phase.COMMIT);
+
 		// Save local database
+		metrics.startPhase(Phase.PERSIST);
+
 		logger.log(Level.INFO, "Persisting local SQL database (new database version {0}) ...", newDatabaseVersion.getHeader().toString());
 		long newDatabaseVersionId = localDatabase.writeDatabaseVersion(newDatabaseVersion);
 
 		logger.log(Level.INFO, "Removing DIRTY database versions from database ...");
 		localDatabase.removeDirtyDatabaseVersions(newDatabaseVersionId);
 
-		// Finish 'up' before 'cleanup' starts
-		finishOperation();
-
-		logger.log(Level.INFO, "Sync up done.");
-
-		// Result
-		addNewDatabaseChangesToResultChanges(newDatabaseVersion, result.getChangeSet());
-		result.setResultCode(UpResultCode.OK_CHANGES_UPLOADED);
-
-		fireEndEvent();
-
-		return result;
+		metrics.stopPhase(Phase.PERSIST);
 	}
 
+
 	/**
 	 * This method creates a Thread, which serializes the {@link remoteTransaction} in the state at the time the thread is run,
 	 * as well as the {@link DatabaseVersion} that contains the metadata about what is uploaded in this transaction.
@@ -279,19 +383,34 @@ public class UpOperation extends AbstractTransferOperation {
 
 	private void fireEndEvent() {
 		eventBus.post(new UpEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), result.getResultCode(), result.getChangeSet()));
+		fireMetricsEvent();
 	}
 
 	/**
 	 * This method sets the correct {@link UpResultCode} when another client has a transaction in progress with deletions.
 	 */
-	private void stopBecauseOfBlockingTransactions() throws StorageException {
+	private void stopBecauseOfBlockingTransactions() throws StorageException, SQLException {
 		logger.log(Level.INFO, "Another client is blocking the repo with unfinished cleanup.");
 		result.setResultCode(UpResultCode.NOK_REPO_BLOCKED);
 
+		rememberListedRemoteGeneration();
 		finishOperation();
 		fireEndEvent();
 	}
 
+	/**
+	 * Remembers and commits the remote generation that was read before the remote databases were
+	 * listed in {@link #checkPreconditions()} (if they were listed). This must only be called if
+	 * the operation ends without committing a new database version -- committing one replaces the
+	 * remote generation anyway.
+	 */
+	private void rememberListedRemoteGeneration() throws SQLException {
+		if (listedRemoteGeneration != null) {
+			generationFileHandler.rememberRemoteGeneration(listedRemoteGeneration);
+			localDatabase.commit();
+		}
+	}
+
 	/**
 	 * This method checks if:
 	 *
@@ -304,8 +423,10 @@ public class UpOperation extends AbstractTransferOperation {
 	 * @returns boolean true if Up can and should be done, false otherwise.
 	 */
 	private boolean checkPreconditions() throws Exception {
-		// Find local changes
-		StatusOperation statusOperation = new StatusOperation(config, options.getStatusOptions());
+		// Find local changes (unchanged files are not needed here)
+		options.getStatusOptions().setIncludeUnchanged(false);
+
+		StatusOperation statusOperation = new StatusOperation(config, options.getStatusOptions(), fileFingerprintCache);
 		StatusOperationResult statusOperationResult = statusOperation.execute();
 		ChangeSet localChanges = statusOperationResult.getChangeSet();
 
@@ -328,6 +449,13 @@ public class UpOperation extends AbstractTransferOperation {
 
 		// Find remote changes (unless --force is enabled)
 		if (!options.forceUploadEnabled()) {
+			String remoteGeneration = generationFileHandler.readRemoteGeneration();
+
+			if (generationFileHandler.isRemoteGenerationKnown(remoteGeneration)) {
+				logger.log(Level.INFO, "Remote generation unchanged, no remote changes, ready to upload.");
+				return true;
+			}
+
 			LsRemoteOperationResult lsRemoteOperationResult = new LsRemoteOperation(config, transferManager).execute();
 			List<DatabaseRemoteFile> unknownRemoteDatabases = lsRemoteOperationResult.getUnknownRemoteDatabases();
 
@@ -340,6 +468,7 @@ public class UpOperation extends AbstractTransferOperation {
 			}
 			else {
 				logger.log(Level.INFO, "No remote changes, ready to upload.");
+				listedRemoteGeneration = remoteGeneration;
 			}
 		}
 		else {
@@ -437,27 +566,6 @@ public class UpOperation extends AbstractTransferOperation {
 		}
 	}
 
-	/**
-	 * This method extracts the files that are new or changed from a {@link ChangeSet} of local changes.
-	 *
-	 * @param localChanges {@link ChangeSet} that was the result from a StatusOperation.
-	 *
-	 * @return a list of Files that are new or have been changed.
-	 */
-	private List<File> extractLocallyUpdatedFiles(ChangeSet localChanges) {
-		List<File> locallyUpdatedFiles = new ArrayList<File>();
-
-		for (String relativeFilePath : localChanges.getNewFiles()) {
-			locallyUpdatedFiles.add(new File(config.getLocalDir() + File.separator + relativeFilePath));
-		}
-
-		for (String relativeFilePath : localChanges.getChangedFiles()) {
-			locallyUpdatedFiles.add(new File(config.getLocalDir() + File.separator + relativeFilePath));
-		}
-
-		return locallyUpdatedFiles;
-	}
-
 	/**
 	 * This method fills a {@link ChangeSet} with the files and changes that are uploaded, to include in
 	 * the {@link UpOperationResult}.
@@ -520,16 +628,49 @@ public class UpOperation extends AbstractTransferOperation {
 	/**
 	 * This method starts the indexing process, using the configured Chunker, MultiChunker and Transformer.
 	 *
+	 * <p>If pipelined uploads are enabled, new multichunks are added to the {@link RemoteTransaction} and
+	 * uploaded to their temporary remote location by a {@link MultiChunkUploader} while indexing continues.
+	 *
 	 * @param localFiles List of Files that have been altered in some way.
+	 * @param removeDeletedFiles True if files that vanished from the local folder should be marked as deleted
 	 *
 	 * @return @{link DatabaseVersion} containing the indexed data.
 	 */
-	private DatabaseVersion index(List<File> localFiles) throws FileNotFoundException, IOException {
+	private DatabaseVersion index(List<File> localFiles, boolean removeDeletedFiles) throws FileNotFoundException, IOException, StorageException,
+			InterruptedException {
 		// Index
 		Deduper deduper = new Deduper(config.getChunker(), config.getMultiChunker(), config.getTransformer());
-		Indexer indexer = new Indexer(config, deduper);
+		DatabaseVersion newDatabaseVersion = null;
+
+		if (options.isPipelinedUploadEnabled()) {
+			logger.log(Level.INFO, "Indexing and uploading new multichunks (pipelined) ...");
 
-		DatabaseVersion newDatabaseVersion = indexer.index(localFiles);
+			MultiChunkUploader multiChunkUploader = new MultiChunkUploader(config, remoteTransaction,
+					options.getPipelinedUploadMaxPendingMultiChunks());
+			boolean indexingFailed = true;
+
+			try {
+				multiChunkUploader.start();
+				newDatabaseVersion = new Indexer(config, deduper, multiChunkUploader, fileFingerprintCache).index(localFiles, removeDeletedFiles);
+
+				multiChunkUploader.finish();
+				indexingFailed = false;
+			}
+			finally {
+				if (indexingFailed) {
+					multiChunkUploader.abort();
+				}
+			}
+		}
+		else {
+			newDatabaseVersion = new Indexer(config, deduper, null, fileFingerprintCache).index(localFiles, removeDeletedFiles);
+		}
+
+		for (File localFile : localFiles) {
+			metrics.addBytesProcessed(localFile.length());
+		}
+
+		metrics.addFilesProcessed(localFiles.size());
 
 		VectorClock newVectorClock = findNewVectorClock();
 		newDatabaseVersion.setVectorClock(newVectorClock);
@@ -659,4 +800,78 @@ public class UpOperation extends AbstractTransferOperation {
 			logger.log(Level.WARNING, "Failure when persisting status of Up: ", e);
 		}
 	}
+
+	/**
+	 * Splits the new and changed files of a {@link ChangeSet} into batches, limited by the number
+	 * of files ({@link UpOperationOptions#getTransactionFileLimit()}) and the total file size
+	 * ({@link UpOperationOptions#getTransactionSizeLimit()}). Each batch is indexed and
+	 * uploaded as a separate database version, so that the memory needed to index
+	 * a huge change set stays bounded. A limit of zero or less means no limit.
+	 *
+	 * <p>Batches are only created when they are requested. The order of the files is preserved,
+	 * i.e. parent folders are indexed in the same or an earlier batch than their children. There
+	 * is always at least one (possibly empty) batch, so that deleted files are detected.
+	 */
+	private class LocallyUpdatedFileBatches implements Iterator<List<File>> {
+		private Iterator<String> relativeFilePaths;
+		private File nextFile;
+		private boolean firstBatch;
+
+		public LocallyUpdatedFileBatches(ChangeSet localChanges) {
+			this.relativeFilePaths = Iterators.concat(localChanges.getNewFiles().iterator(), localChanges.getChangedFiles().iterator());
+			this.nextFile = nextLocallyUpdatedFile();
+			this.firstBatch = true;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return firstBatch || nextFile != null;
+		}
+
+		@Override
+		public List<File> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			int fileLimit = options.getTransactionFileLimit();
+			long sizeLimit = options.getTransactionSizeLimit();
+
+			List<File> batch = new ArrayList<File>();
+			long batchSize = 0;
+
+			while (nextFile != null) {
+				long fileSize = nextFile.isFile() ? nextFile.length() : 0;
+
+				boolean fileLimitReached = fileLimit > 0 && batch.size() >= fileLimit;
+				boolean sizeLimitReached = sizeLimit > 0 && batchSize + fileSize > sizeLimit;
+
+				if (batch.size() > 0 && (fileLimitReached || sizeLimitReached)) {
+					break;
+				}
+
+				batch.add(nextFile);
+				batchSize += fileSize;
+
+				nextFile = nextLocallyUpdatedFile();
+			}
+
+			firstBatch = false;
+			return batch;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private File nextLocallyUpdatedFile() {
+			if (relativeFilePaths.hasNext()) {
+				return new File(config.getLocalDir() + File.separator + relativeFilePaths.next());
+			}
+			else {
+				return null;
+			}
+		}
+	}
 }
@@ -33,6 +33,18 @@ public class UpOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean resume = true;
 
+	@Element(required = false)
+	private boolean pipelinedUploadEnabled = false;
+
+	@Element(required = false)
+	private int pipelinedUploadMaxPendingMultiChunks = MultiChunkUploader.DEFAULT_MAX_PENDING_MULTICHUNKS;
+
+	@Element(required = false)
+	private int transactionFileLimit = 0;
+
+	@Element(required = false)
+	private long transactionSizeLimit = 0;
+
 	public StatusOperationOptions getStatusOptions() {
 		return statusOptions;
 	}
@@ -56,4 +68,46 @@ public class UpOperationOptions implements OperationOptions {
 	public void setResume(boolean resume) {
 		this.resume = resume;
 	}
-}
\ No newline at end of file
+
+	public boolean isPipelinedUploadEnabled() {
+		return pipelinedUploadEnabled;
+	}
+
+	public void setPipelinedUploadEnabled(boolean pipelinedUploadEnabled) {
+		this.pipelinedUploadEnabled = pipelinedUploadEnabled;
+	}
+
+	public int getPipelinedUploadMaxPendingMultiChunks() {
+		return pipelinedUploadMaxPendingMultiChunks;
+	}
+
+	public void setPipelinedUploadMaxPendingMultiChunks(int pipelinedUploadMaxPendingMultiChunks) {
+		this.pipelinedUploadMaxPendingMultiChunks = pipelinedUploadMaxPendingMultiChunks;
+	}
+
+	/**
+	 * Returns the max. number of new/changed files indexed and uploaded in a single
+	 * database version. Larger change sets are split into several database versions.
+	 * A value of zero or less means no limit.
+	 */
+	public int getTransactionFileLimit() {
+		return transactionFileLimit;
+	}
+
+	public void setTransactionFileLimit(int transactionFileLimit) {
+		this.transactionFileLimit = transactionFileLimit;
+	}
+
+	/**
+	 * Returns the max. total size (in bytes) of the new/changed files indexed and uploaded
+	 * in a single database version. A single file larger than this limit is indexed in its own
+	 * database version. A value of zero or less means no limit.
+	 */
+	public long getTransactionSizeLimit() {
+		return transactionSizeLimit;
+	}
+
+	public void setTransactionSizeLimit(long transactionSizeLimit) {
+		this.transactionSizeLimit = transactionSizeLimit;
+	}
+}
@@ -18,6 +18,7 @@
 package org.syncany.operations.up;
 
 import org.syncany.operations.ChangeSet;
+import org.syncany.operations.OperationMetrics;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.status.StatusOperationResult;
 
@@ -29,6 +30,7 @@ public class UpOperationResult implements OperationResult {
 	private UpResultCode resultCode;
 	private StatusOperationResult statusResult = new StatusOperationResult();
 	private ChangeSet uploadChangeSet = new ChangeSet();
+	private OperationMetrics metrics;
 
 	public UpResultCode getResultCode() {
 		return resultCode;
@@ -53,4 +55,12 @@ public class UpOperationResult implements OperationResult {
 	public ChangeSet getChangeSet() {
 		return uploadChangeSet;
 	}
+
+	public OperationMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(OperationMetrics metrics) {
+		this.metrics = metrics;
+	}
 }
\ No newline at end of file
@@ -19,7 +19,9 @@ package org.syncany.operations.watch;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -39,6 +41,11 @@ import org.syncany.util.EnvironmentUtil;
  * in different lifecycle states: {@link #beforeStart()}, {@link #beforePollEventLoop()},
  * {@link #pollEvents()}, and {@link #afterStop()}.
  *
+ * <p>Subclasses may report the folders in which events occurred via {@link #addChangedPath(Path)},
+ * or signal that events were lost via {@link #requireFullRescan()}. Consumers can retrieve (and reset)
+ * these changed paths using {@link #pollChangedPaths()} to limit the subsequent file tree
+ * analysis to the affected folders.
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class RecursiveWatcher {
@@ -54,6 +61,9 @@ public abstract class RecursiveWatcher {
 	private Thread watchThread;
 	private Timer timer;
 
+	private Set<Path> changedPaths;
+	private boolean fullRescanRequired;
+
 	public RecursiveWatcher(Path root, List<Path> ignorePaths, int settleDelay, WatchListener listener) {
 		this.root = root;
 		this.ignorePaths = ignorePaths;
@@ -61,6 +71,9 @@ public abstract class RecursiveWatcher {
 		this.listener = listener;
 
 		this.running = new AtomicBoolean(false);
+
+		this.changedPaths = new HashSet<Path>();
+		this.fullRescanRequired = true;
 	}
 
 	/**
@@ -144,6 +157,51 @@ public abstract class RecursiveWatcher {
 		}
 	}
 
+	/**
+	 * Returns the folders in which file system events occurred since the last call
+	 * of this method, and resets the internal list of changed paths.
+	 *
+	 * <p>If the watcher cannot tell which folders have changed (e.g. because it has
+	 * just been started, or because events were lost due to an overflow), this method
+	 * returns <tt>null</tt>. In this case, the caller must fall back to analyzing the
+	 * entire file tree.
+	 */
+	public synchronized Set<Path> pollChangedPaths() {
+		if (fullRescanRequired) {
+			fullRescanRequired = false;
+			changedPaths.clear();
+
+			return null;
+		}
+		else {
+			Set<Path> polledChangedPaths = changedPaths;
+			changedPaths = new HashSet<Path>();
+
+			return polledChangedPaths;
+		}
+	}
+
+	/**
+	 * Marks the given (absolute) path as changed. Subclasses should call this method
+	 * for the folder in which an event occurred, and (for newly created folders) for
+	 * the new folder itself.
+	 */
+	protected synchronized void addChangedPath(Path changedPath) {
+		if (!fullRescanRequired) {
+			changedPaths.add(changedPath);
+		}
+	}
+
+	/**
+	 * Signals that the watcher lost track of the file system events, e.g. due to
+	 * an event overflow. The next call to {@link #pollChangedPaths()} will return
+	 * <tt>null</tt>.
+	 */
+	protected synchronized void requireFullRescan() {
+		fullRescanRequired = true;
+		changedPaths.clear();
+	}
+
 	private synchronized void restartWaitSettlementTimer() {
 		logger.log(Level.FINE, "File system events registered. Waiting " + settleDelay + "ms for settlement ....");
 
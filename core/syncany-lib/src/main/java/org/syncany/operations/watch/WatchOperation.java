@@ -20,8 +20,11 @@ package org.syncany.operations.watch;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -36,16 +39,20 @@ import org.syncany.operations.Operation;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.cleanup.CleanupOperationResult;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
+import org.syncany.operations.daemon.SyncScheduler;
 import org.syncany.operations.daemon.messages.WatchEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.WatchStartSyncExternalEvent;
 import org.syncany.operations.down.DownOperation;
 import org.syncany.operations.down.DownOperationResult;
 import org.syncany.operations.down.DownOperationResult.DownResultCode;
+import org.syncany.operations.status.StatusOperationOptions;
 import org.syncany.operations.up.UpOperation;
+import org.syncany.operations.up.UpOperationOptions;
 import org.syncany.operations.up.UpOperationResult;
 import org.syncany.operations.up.UpOperationResult.UpResultCode;
 import org.syncany.operations.watch.NotificationListener.NotificationListenerListener;
 import org.syncany.operations.watch.RecursiveWatcher.WatchListener;
+import org.syncany.util.FileUtil;
 import org.syncany.util.StringUtil;
 
 /**
@@ -66,6 +73,15 @@ import org.syncany.util.StringUtil;
  *      changes are synced eventually.</li>
  * </ul>
  *
+ * <p>If the file system watcher is running, the {@link UpOperation} only analyzes the
+ * folders in which the watcher registered changes (see {@link StatusOperationOptions#setScopePaths(Set)}).
+ * The entire local folder is analyzed only periodically (see {@link WatchOperationOptions#getFullScanInterval()}),
+ * or if the watcher lost track of the file system events.
+ *
+ * <p>If a {@link SyncScheduler} is set (e.g. when run by the daemon), each sync run waits for
+ * a free slot from the scheduler before it starts. Runs triggered by file system events or 
+ * push notifications are scheduled with priority.
+ *
  * As of now, this operation never returns, because it runs in a loop. The user
  * has to manually abort the operation on the command line.
  *
@@ -87,8 +103,14 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	private AtomicInteger upCount;
 
 	private RecursiveWatcher recursiveWatcher;
+	private boolean recursiveWatcherStarted;
+	private Set<String> pendingScopePaths;
+	private boolean pendingFullScan;
+	private long lastFullScanTime;
+
 	private NotificationListener notificationListener;
 	private LocalEventBus eventBus;
+	private SyncScheduler syncScheduler;
 
 	private String notificationChannel;
 	private String notificationInstanceId;
@@ -108,8 +130,14 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		this.upCount = new AtomicInteger(0);
 
 		this.recursiveWatcher = null;
+		this.recursiveWatcherStarted = false;
+		this.pendingScopePaths = new HashSet<String>();
+		this.pendingFullScan = true;
+		this.lastFullScanTime = 0;
+
 		this.notificationListener = null;
 		this.eventBus = LocalEventBus.getInstance();
+		this.syncScheduler = null;
 
 		this.notificationChannel = StringUtil.toHex(config.getRepoId());
 		this.notificationInstanceId = "" + Math.abs(new Random().nextLong());
@@ -137,7 +165,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 			}
 
 			try {
-				runSync();
+				runSync(syncRequested.get());
 
 				if (!syncRequested.get() && !pauseRequested.get() && !stopRequested.get()) {
 					logger.log(Level.INFO, "Sync done, waiting {0} seconds ...", options.getInterval() / 1000);
@@ -199,6 +227,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 
 		try {
 			recursiveWatcher.start();
+			recursiveWatcherStarted = true;
 		}
 		catch (Exception e) {
 			logger.log(Level.WARNING, "Cannot initiate file watcher. Relying on regular tree walks.", e);
@@ -232,12 +261,19 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	/**
 	 * Runs one iteration of the main synchronization loop, containing a {@link DownOperation},
 	 * an {@link UpOperation} and (if required), a {@link CleanupOperation}.
+	 * 
+	 * @param priority True if the sync was triggered by (file system or remote) events, false otherwise
 	 */
-	private void runSync() throws Exception {
+	private void runSync(boolean priority) throws Exception {
 		if (!syncRunning.get()) {
 			syncRunning.set(true);
 			syncRequested.set(false);
 
+			if (!acquireSyncSlot(priority)) {
+				syncRunning.set(false);
+				return;
+			}
+
 			logger.log(Level.INFO, "RUNNING SYNC ...");
 			fireStartEvent();
 			try {
@@ -250,14 +286,25 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 					// TODO [low] Do something?
 				}
 
-				// Run up
-				UpOperationResult upOperationResult = new UpOperation(config, options.getUpOptions()).execute();
+				// Run up (only analyze folders with changes, unless a full scan is due)
+				long upStartTime = System.currentTimeMillis();
+				Set<String> scopePaths = collectScopePaths(upStartTime);
+
+				// The options are shared by all runs, so they get their own (read-only) copy of this run's scope
+				UpOperationOptions upOptions = options.getUpOptions();
+				upOptions.getStatusOptions().setScopePaths((scopePaths != null) ? Collections.unmodifiableSet(new HashSet<String>(scopePaths)) : null);
+
+				UpOperationResult upOperationResult = new UpOperation(config, upOptions).execute();
 
 				if (upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED && upOperationResult.getChangeSet().hasChanges()) {
 					upCount.incrementAndGet();
 					notifyChanges = true;
 				}
 
+				if (upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED || upOperationResult.getResultCode() == UpResultCode.OK_NO_CHANGES) {
+					removeSyncedScopePaths(scopePaths, upStartTime);
+				}
+
 				CleanupOperationResult cleanupOperationResult = new CleanupOperation(config, options.getCleanupOptions()).execute();
 
 				if (cleanupOperationResult.getResultCode() == CleanupResultCode.OK) {
@@ -273,6 +320,8 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 				logger.log(Level.INFO, "SYNC DONE.");
 				syncRunning.set(false);
 				
+				releaseSyncSlot();
+				
 				fireEndEvent();
 			}
 		}
@@ -284,12 +333,99 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		}
 	}
 
+	/**
+	 * Waits for a free slot from the {@link SyncScheduler}, if one is set. Returns
+	 * true if the sync may run, false if it was cancelled while waiting or if a stop 
+	 * was requested in the mean time.
+	 */
+	private boolean acquireSyncSlot(boolean priority) throws InterruptedException {
+		if (syncScheduler == null) {
+			return true;
+		}
+
+		try {
+			if (!syncScheduler.acquire(config, priority)) {
+				return false;
+			}
+		}
+		catch (InterruptedException e) {
+			syncRunning.set(false);
+			throw e;
+		}
+
+		if (stopRequested.get()) {
+			syncScheduler.release(config.getLocalDir());
+			return false;
+		}
+
+		return true;
+	}
+
+	private void releaseSyncSlot() {
+		if (syncScheduler != null) {
+			syncScheduler.release(config.getLocalDir());
+		}
+	}
+
+	/**
+	 * Collects the folders reported by the file system watcher and returns the relative
+	 * paths the next status analysis can be limited to. If the watcher is not running, 
+	 * if it lost track of events, or if the last full scan is older than the 
+	 * {@link WatchOperationOptions#getFullScanInterval() full scan interval}, this method 
+	 * returns <tt>null</tt>, i.e. the entire local folder must be analyzed.
+	 */
+	private Set<String> collectScopePaths(long now) {
+		if (!recursiveWatcherStarted) {
+			return null;
+		}
+
+		Set<Path> changedPaths = recursiveWatcher.pollChangedPaths();
+
+		if (changedPaths == null) {
+			pendingFullScan = true;
+		}
+		else {
+			for (Path changedPath : changedPaths) {
+				if (changedPath.startsWith(config.getLocalDir().getAbsolutePath())) {
+					pendingScopePaths.add(FileUtil.getRelativeDatabasePath(config.getLocalDir(), changedPath.toFile()));
+				}
+			}
+		}
+
+		boolean fullScanDue = now - lastFullScanTime >= options.getFullScanInterval();
+
+		if (pendingFullScan || fullScanDue) {
+			logger.log(Level.INFO, "Full scan of local folder required (watcher events incomplete, or full scan interval passed).");
+			return null;
+		}
+		else {
+			logger.log(Level.INFO, "Limiting local folder analysis to {0} folder(s) reported by the watcher.", pendingScopePaths.size());
+			return new HashSet<String>(pendingScopePaths);
+		}
+	}
+
+	/**
+	 * Removes the given scope paths from the pending scope paths after they have been 
+	 * successfully analyzed and uploaded. If the scope paths are <tt>null</tt>, a full
+	 * scan has been performed and all pending paths are cleared.
+	 */
+	private void removeSyncedScopePaths(Set<String> scopePaths, long upStartTime) {
+		if (scopePaths == null) {
+			pendingScopePaths.clear();
+			pendingFullScan = false;
+			lastFullScanTime = upStartTime;
+		}
+		else {
+			pendingScopePaths.removeAll(scopePaths);
+		}
+	}
+
 	@Override
 	public void pushNotificationReceived(String channel, String message) {
 		if (channel.equals(notificationChannel) && !message.equals(notificationInstanceId)) {
 			try {
 				waitWhilePaused();
-				runSync();
+				runSync(true);
 			}
 			catch (Exception e) {
 				logger.log(Level.INFO, "Sync FAILED (event-triggered).", e);
@@ -301,7 +437,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	public void watchEventsOccurred() {
 		try {
 			waitWhilePaused();
-			runSync();
+			runSync(true);
 		}
 		catch (Exception e) {
 			logger.log(Level.INFO, "Sync FAILED (event-triggered).", e);
@@ -314,6 +450,10 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		}
 	}
 
+	public void setSyncScheduler(SyncScheduler syncScheduler) {
+		this.syncScheduler = syncScheduler;
+	}
+
 	public void pause() {
 		pauseRequested.set(true);
 	}
@@ -56,6 +56,9 @@ public class WatchOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean watcher = true;
 	
+	@Element(required = false)
+	private int fullScanInterval = 1*60*60*1000;
+	
 	@Element(name = "up", required = false) 
 	private UpOperationOptions upOptions = new UpOperationOptions();
 	
@@ -113,6 +116,20 @@ public class WatchOperationOptions implements OperationOptions {
 		this.watcher = watcher;
 	}
 
+	/**
+	 * Returns the interval (in ms) in which the entire local folder is analyzed, 
+	 * even if the file system watcher reported changes only in certain folders. 
+	 * In between these full scans, the {@link WatchOperation} only analyzes the 
+	 * folders reported by the watcher.
+	 */
+	public int getFullScanInterval() {
+		return fullScanInterval;
+	}
+
+	public void setFullScanInterval(int fullScanInterval) {
+		this.fullScanInterval = fullScanInterval;
+	}
+
 	public int getCleanupInterval() {
 		return cleanupInterval;
 	}
@@ -24,6 +24,8 @@ import static name.pachler.nio.file.StandardWatchEventKind.OVERFLOW;
 import static name.pachler.nio.file.ext.ExtendedWatchEventModifier.FILE_TREE;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -81,9 +83,13 @@ public class WindowsRecursiveWatcher extends RecursiveWatcher {
 		List<WatchEvent<?>> watchEvents = watchKey.pollEvents();
 		boolean hasRelevantEvents = false;
 
-		// Filter ignored events
+		// Filter ignored events, and remember the folders in which the events occurred
 		for (WatchEvent<?> watchEvent : watchEvents) {
-			if (watchEvent.kind() == ENTRY_CREATE || watchEvent.kind() == ENTRY_MODIFY || watchEvent.kind() == ENTRY_DELETE) {
+			if (watchEvent.kind() == OVERFLOW) {
+				requireFullRescan();
+				hasRelevantEvents = true;
+			}
+			else if (watchEvent.kind() == ENTRY_CREATE || watchEvent.kind() == ENTRY_MODIFY || watchEvent.kind() == ENTRY_DELETE) {
 				boolean ignoreEvent = false;
 
 				name.pachler.nio.file.Path extLibFilePath = (name.pachler.nio.file.Path) watchEvent.context();
@@ -98,7 +104,11 @@ public class WindowsRecursiveWatcher extends RecursiveWatcher {
 
 				if (!ignoreEvent) {
 					hasRelevantEvents = true;
-					break;
+					addChangedPath((filePath.getParent() != null) ? filePath.getParent() : root);
+
+					if (watchEvent.kind() == ENTRY_CREATE && Files.isDirectory(filePath, LinkOption.NOFOLLOW_LINKS)) {
+						addChangedPath(filePath);
+					}
 				}
 			}
 		}
@@ -0,0 +1,196 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.util.Map;
+
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * The instrumented transfer manager measures the calls to an underlying
+ * {@link TransferManager} and records them in {@link TransferMetrics}, per method
+ * and per remote file type. It proxies all methods and does not change their behavior.
+ *
+ * <p>For uploads and downloads, the size of the local file is recorded as
+ * transferred bytes. Moves are recorded with the type of the target file. If the
+ * underlying transfer manager is a {@link MeasurableTransferManager}, it is handed
+ * the metrics to record backend-specific calls.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class InstrumentedTransferManager implements TransferManager {
+	private TransferManager underlyingTransferManager;
+	private TransferMetrics metrics;
+
+	public InstrumentedTransferManager(TransferManager underlyingTransferManager, TransferMetrics metrics) {
+		this.underlyingTransferManager = underlyingTransferManager;
+		this.metrics = metrics;
+
+		if (underlyingTransferManager instanceof MeasurableTransferManager) {
+			((MeasurableTransferManager) underlyingTransferManager).setTransferMetrics(metrics);
+		}
+	}
+
+	@Override
+	public void connect() throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			underlyingTransferManager.connect();
+			failed = false;
+		}
+		finally {
+			metrics.record("connect", System.nanoTime() - startTime, 0, failed);
+		}
+	}
+
+	@Override
+	public void disconnect() throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			underlyingTransferManager.disconnect();
+			failed = false;
+		}
+		finally {
+			metrics.record("disconnect", System.nanoTime() - startTime, 0, failed);
+		}
+	}
+
+	@Override
+	public void init(boolean createIfRequired) throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			underlyingTransferManager.init(createIfRequired);
+			failed = false;
+		}
+		finally {
+			metrics.record("init", System.nanoTime() - startTime, 0, failed);
+		}
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			underlyingTransferManager.download(remoteFile, localFile);
+			failed = false;
+		}
+		finally {
+			long bytes = (!failed) ? localFile.length() : 0;
+			metrics.record(TransferMetrics.METHOD_DOWNLOAD, TransferMetrics.getFileType(remoteFile), System.nanoTime() - startTime, bytes, failed);
+		}
+	}
+
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			underlyingTransferManager.upload(localFile, remoteFile);
+			failed = false;
+		}
+		finally {
+			long bytes = (!failed) ? localFile.length() : 0;
+			metrics.record(TransferMetrics.METHOD_UPLOAD, TransferMetrics.getFileType(remoteFile), System.nanoTime() - startTime, bytes, failed);
+		}
+	}
+
+	@Override
+	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			underlyingTransferManager.move(sourceFile, targetFile);
+			failed = false;
+		}
+		finally {
+			metrics.record("move", TransferMetrics.getFileType(targetFile), System.nanoTime() - startTime, 0, failed);
+		}
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			boolean deleted = underlyingTransferManager.delete(remoteFile);
+			failed = false;
+
+			return deleted;
+		}
+		finally {
+			metrics.record("delete", TransferMetrics.getFileType(remoteFile), System.nanoTime() - startTime, 0, failed);
+		}
+	}
+
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+		long startTime = System.nanoTime();
+		boolean failed = true;
+
+		try {
+			Map<String, T> remoteFiles = underlyingTransferManager.list(remoteFileClass);
+			failed = false;
+
+			return remoteFiles;
+		}
+		finally {
+			metrics.record("list", TransferMetrics.getFileType(remoteFileClass), System.nanoTime() - startTime, 0, failed);
+		}
+	}
+
+	@Override
+	public StorageTestResult test(boolean testCreateTarget) {
+		return underlyingTransferManager.test(testCreateTarget);
+	}
+
+	@Override
+	public boolean testTargetExists() throws StorageException {
+		return underlyingTransferManager.testTargetExists();
+	}
+
+	@Override
+	public boolean testTargetCanWrite() throws StorageException {
+		return underlyingTransferManager.testTargetCanWrite();
+	}
+
+	@Override
+	public boolean testTargetCanCreate() throws StorageException {
+		return underlyingTransferManager.testTargetCanCreate();
+	}
+
+	@Override
+	public boolean testRepoFileExists() throws StorageException {
+		return underlyingTransferManager.testRepoFileExists();
+	}
+
+	public TransferMetrics getMetrics() {
+		return metrics;
+	}
+}
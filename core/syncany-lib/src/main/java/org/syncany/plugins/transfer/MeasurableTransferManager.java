@@ -0,0 +1,34 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+/**
+ * {@link TransferManager}s implementing this interface can record backend-specific
+ * calls in addition to the calls measured by the {@link InstrumentedTransferManager},
+ * e.g. to separate the time spent renaming or listing files from the actual data
+ * transfer time of an upload.
+ *
+ * <p>The instrumented transfer manager passes its {@link TransferMetrics} to the
+ * underlying transfer manager when it is created. If transfer metrics are disabled,
+ * no metrics are passed and the transfer manager must not record anything.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface MeasurableTransferManager {
+	public void setTransferMetrics(TransferMetrics transferMetrics);
+}
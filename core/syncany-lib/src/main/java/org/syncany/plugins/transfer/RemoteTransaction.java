@@ -18,6 +18,9 @@
 package org.syncany.plugins.transfer;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +49,8 @@ public class RemoteTransaction {
 	private TransferManager transferManager;
 	private Config config;
 	private TransactionTO transactionTO;
+	private List<TransactionRemoteFile> partialRemoteTransactionFiles;
+	private int remoteTransactionFileRevision;
 
 	private LocalEventBus eventBus;
 
@@ -57,6 +62,7 @@ public class RemoteTransaction {
 		this.config = config;
 		this.transferManager = transferManager;
 		this.transactionTO = transactionTO;
+		this.partialRemoteTransactionFiles = new ArrayList<TransactionRemoteFile>();
 		this.eventBus = LocalEventBus.getInstance();
 	}
 
@@ -71,6 +77,61 @@ public class RemoteTransaction {
 	 * Adds a file to this transaction. Generates a temporary file to store it.
 	 */
 	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		addUploadAction(localFile, remoteFile);
+	}
+
+	/**
+	 * Adds the given files to this transaction and uploads them to their temporary
+	 * remote location right away, i.e. before the transaction is committed. This allows
+	 * uploading files while the rest of the transaction is still being assembled.
+	 *
+	 * <p>Before the files are uploaded, a partial transaction file containing only the given files
+	 * is uploaded, so that the temporary files are always referenced by a remote transaction file and
+	 * not deleted by another client's cleanup. Since each call uploads its own partial file, the
+	 * transaction data uploaded in total grows linearly with the number of files. All partial files share the
+	 * transaction's name prefix (see {@link TransactionRemoteFile#getTransactionId()}), so they are found on the
+	 * remote storage even if this client crashes: If the transaction is not committed, the partial files are rolled
+	 * back like any other transaction file, and a resumed transaction replaces them (see {@link #commit(File, TransactionRemoteFile)}).
+	 * A subsequent {@link #commit()} replaces the partial files by the full transaction file, skips the
+	 * uploaded files and only moves them to their final location.
+	 *
+	 * @param localToRemoteFiles Local files and their final remote locations
+	 */
+	public void uploadToTempLocation(Map<File, RemoteFile> localToRemoteFiles) throws StorageException {
+		TransactionTO partialTransactionTO = new TransactionTO(transactionTO.getMachineName());
+		List<ActionTO> uploadActions = new ArrayList<ActionTO>();
+
+		for (Map.Entry<File, RemoteFile> localToRemoteFile : localToRemoteFiles.entrySet()) {
+			ActionTO uploadAction = addUploadAction(localToRemoteFile.getKey(), localToRemoteFile.getValue());
+
+			partialTransactionTO.addAction(uploadAction);
+			uploadActions.add(uploadAction);
+		}
+
+		File localPartialTransactionFile = writeLocalTransactionFile(partialTransactionTO);
+		TransactionRemoteFile partialRemoteTransactionFile = new TransactionRemoteFile(this, remoteTransactionFileRevision++);
+
+		eventBus.post(new UpUploadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), partialRemoteTransactionFile.getName()));
+
+		logger.log(Level.INFO, "- Uploading partial remote transaction file {0} ...", partialRemoteTransactionFile);
+		transferManager.upload(localPartialTransactionFile, partialRemoteTransactionFile);
+
+		partialRemoteTransactionFiles.add(partialRemoteTransactionFile);
+		localPartialTransactionFile.delete();
+
+		for (ActionTO action : uploadActions) {
+			File localFile = action.getLocalTempLocation();
+			RemoteFile tempRemoteFile = action.getTempRemoteFile();
+
+			eventBus.post(new UpUploadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), action.getRemoteFile().getName()));
+
+			logger.log(Level.INFO, "- Uploading {0} to temp. file {1} (before commit) ...", new Object[] { localFile, tempRemoteFile });
+			transferManager.upload(localFile, tempRemoteFile);
+			action.setStatus(ActionStatus.STARTED);
+		}
+	}
+
+	private ActionTO addUploadAction(File localFile, RemoteFile remoteFile) throws StorageException {
 		TempRemoteFile temporaryRemoteFile = new TempRemoteFile(remoteFile);
 
 		logger.log(Level.INFO, "- Adding file to TX for UPLOAD: " + localFile + " -> Temp. remote file: " + temporaryRemoteFile
@@ -83,6 +144,7 @@ public class RemoteTransaction {
 		action.setRemoteTempLocation(temporaryRemoteFile);
 
 		transactionTO.addAction(action);
+		return action;
 	}
 
 	/**
@@ -125,18 +187,28 @@ public class RemoteTransaction {
 			return;
 		}
 
-		File localTransactionFile = writeLocalTransactionFile();
+		File localTransactionFile = writeLocalTransactionFile(transactionTO);
 		TransactionRemoteFile remoteTransactionFile = uploadTransactionFile(localTransactionFile);
 
-		commit(localTransactionFile, remoteTransactionFile);
+		commitUploadedTransactionFile(localTransactionFile, remoteTransactionFile);
 	}
 
 	/**
 	 * Does exactly the same as the parameterless version, except it does not create and upload the transactionfile. Instead
 	 * it uses the files that are passed. Used for resuming existing transactions. Only call this function if resuming
 	 * cannot cause invalid states.
+	 *
+	 * <p>If other remote files of the same transaction exist (e.g. partial transaction files of a pipelined upload
+	 * that was interrupted), the full transaction is uploaded as a new revision and the other files are deleted
+	 * before the transaction is committed. Otherwise, they would be rolled back (and the committed files deleted) by
+	 * the next {@link TransactionAwareTransferManager#cleanTransactions() cleanTransactions()}.
 	 */
 	public void commit(File localTransactionFile, TransactionRemoteFile remoteTransactionFile) throws StorageException {
+		TransactionRemoteFile fullRemoteTransactionFile = replaceRemoteTransactionFiles(remoteTransactionFile);
+		commitUploadedTransactionFile(localTransactionFile, fullRemoteTransactionFile);
+	}
+
+	private void commitUploadedTransactionFile(File localTransactionFile, TransactionRemoteFile remoteTransactionFile) throws StorageException {
 		logger.log(Level.INFO, "- Starting to upload data in commit.");
 
 		uploadAndMoveToTempLocation();
@@ -162,33 +234,93 @@ public class RemoteTransaction {
 	}
 
 	/**
-	 * This method serializes the transaction to a local temporary file.
+	 * This method serializes the given (full or partial) transaction to a local temporary file.
 	 */
-	private File writeLocalTransactionFile() throws StorageException {
+	private File writeLocalTransactionFile(TransactionTO transactionToWrite) throws StorageException {
+		File localTransactionFile;
+
+		try {
+			localTransactionFile = config.getCache().createTempFile("transaction");
+		}
+		catch (Exception e) {
+			throw new StorageException("Could not create temporary file for transaction", e);
+		}
+
 		try {
-			File localTransactionFile = config.getCache().createTempFile("transaction");
-			writeToFile(config.getTransformer(), localTransactionFile);
+			transactionToWrite.save(config.getTransformer(), localTransactionFile);
+			logger.log(Level.INFO, "Wrote transaction manifest to temporary file: " + localTransactionFile);
 
 			return localTransactionFile;
 		}
 		catch (Exception e) {
-			throw new StorageException("Could not create temporary file for transaction", e);
+			throw new StorageException("Could not write transaction to file: " + localTransactionFile, e);
 		}
 	}
 
 	/**
 	 * This method uploads a local copy of the transaction to the repository. This is done at the begin of commit()
 	 * and is the starting point of the transaction itself.
+	 *
+	 * <p>If partial transaction files have been uploaded by {@link #uploadToTempLocation(Map) uploadToTempLocation()},
+	 * they are deleted after the full transaction file has been uploaded (under a new name). That way, the remote
+	 * storage always contains a transaction file referencing the temporary files (files are not overwritten).
 	 */
 	private TransactionRemoteFile uploadTransactionFile(File localTransactionFile) throws StorageException {
-		TransactionRemoteFile remoteTransactionFile = new TransactionRemoteFile(this);
+		TransactionRemoteFile newRemoteTransactionFile = new TransactionRemoteFile(this, remoteTransactionFileRevision++);
+
+		eventBus.post(new UpUploadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), newRemoteTransactionFile.getName()));
 
-		eventBus.post(new UpUploadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), remoteTransactionFile.getName()));
+		logger.log(Level.INFO, "- Uploading remote transaction file {0} ...", newRemoteTransactionFile);
+		transferManager.upload(localTransactionFile, newRemoteTransactionFile);
 
-		logger.log(Level.INFO, "- Uploading remote transaction file {0} ...", remoteTransactionFile);
-		transferManager.upload(localTransactionFile, remoteTransactionFile);
+		for (TransactionRemoteFile partialRemoteTransactionFile : partialRemoteTransactionFiles) {
+			logger.log(Level.INFO, "- Deleting partial remote transaction file {0} ...", partialRemoteTransactionFile);
+			transferManager.delete(partialRemoteTransactionFile);
+		}
+
+		partialRemoteTransactionFiles.clear();
+		return newRemoteTransactionFile;
+	}
+
+	/**
+	 * This method looks for remote files that belong to the same transaction as the given remote transaction
+	 * file. If there are any, the full transaction is uploaded as a new revision (after all existing ones),
+	 * and all other files of the transaction are deleted. The returned file is the only remaining
+	 * transaction file.
+	 */
+	private TransactionRemoteFile replaceRemoteTransactionFiles(TransactionRemoteFile remoteTransactionFile) throws StorageException {
+		List<TransactionRemoteFile> otherRemoteTransactionFiles = new ArrayList<TransactionRemoteFile>();
+		int maxRevision = remoteTransactionFile.getRevision();
+
+		for (TransactionRemoteFile otherRemoteTransactionFile : transferManager.list(TransactionRemoteFile.class).values()) {
+			if (otherRemoteTransactionFile.isSameTransaction(remoteTransactionFile) && !otherRemoteTransactionFile.equals(remoteTransactionFile)) {
+				otherRemoteTransactionFiles.add(otherRemoteTransactionFile);
+				maxRevision = Math.max(maxRevision, otherRemoteTransactionFile.getRevision());
+			}
+		}
+
+		if (otherRemoteTransactionFiles.isEmpty()) {
+			return remoteTransactionFile;
+		}
+
+		TransactionRemoteFile newRemoteTransactionFile = remoteTransactionFile.createRevision(maxRevision + 1);
+
+		logger.log(Level.INFO, "- Found {0} other remote transaction file(s) of transaction {1}; uploading full transaction file {2} ...",
+				new Object[] { otherRemoteTransactionFiles.size(), remoteTransactionFile, newRemoteTransactionFile });
+
+		File localTransactionFile = writeLocalTransactionFile(transactionTO);
+
+		transferManager.upload(localTransactionFile, newRemoteTransactionFile);
+		localTransactionFile.delete();
+
+		otherRemoteTransactionFiles.add(remoteTransactionFile);
+
+		for (TransactionRemoteFile otherRemoteTransactionFile : otherRemoteTransactionFiles) {
+			logger.log(Level.INFO, "- Deleting remote transaction file {0} ...", otherRemoteTransactionFile);
+			transferManager.delete(otherRemoteTransactionFile);
+		}
 
-		return remoteTransactionFile;
+		return newRemoteTransactionFile;
 	}
 
 	/**
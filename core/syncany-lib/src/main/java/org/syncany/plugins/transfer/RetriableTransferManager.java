@@ -29,7 +29,14 @@ import org.syncany.plugins.transfer.files.RemoteFile;
  * for regular {@link TransferManager}s. It encapsules a single transfer manager and
  * proxies all of its methods. If a method fails with a {@link StorageException}, the 
  * method is retried N times before the exception is actually thrown to the caller. 
- * Between retries, the method waits M seconds. 
+ * Between retries, the method waits with exponential backoff: M seconds before
+ * the first retry, 2*M before the second, and so on (at most {@link #RETRY_SLEEP_MAX_MILLIS}).
+ *
+ * <p>Since the same underlying transfer manager is used for all tries, transfer managers
+ * may keep the state of a failed transfer and resume it when the method is retried.
+ * 
+ * <p>If {@link TransferMetrics} are given, every retry is counted
+ * for the retried method and remote file type.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -40,22 +47,29 @@ public class RetriableTransferManager implements TransferManager {
 
 	private static int RETRY_MAX_COUNT = 3;
 	public static int RETRY_SLEEP_MILLIS = 3000;
+	public static int RETRY_SLEEP_MAX_MILLIS = 60000;
 
 	private interface RetriableMethod {
 		public Object execute() throws StorageException;
 	}
 
 	private TransferManager underlyingTransferManager;
+	private TransferMetrics metrics;
 	private int tryCount;
 
 	public RetriableTransferManager(TransferManager underlyingTransferManager) {
+		this(underlyingTransferManager, null);
+	}
+
+	public RetriableTransferManager(TransferManager underlyingTransferManager, TransferMetrics metrics) {
 		this.underlyingTransferManager = underlyingTransferManager;
+		this.metrics = metrics;
 		this.tryCount = 0;
 	}
 
 	@Override
 	public void connect() throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod("connect", null, new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.connect();
@@ -66,7 +80,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public void disconnect() throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod("disconnect", null, new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.disconnect();
@@ -77,7 +91,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public void init(final boolean createIfRequired) throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod("init", null, new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.init(createIfRequired);
@@ -88,7 +102,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public void download(final RemoteFile remoteFile, final File localFile) throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod(TransferMetrics.METHOD_DOWNLOAD, TransferMetrics.getFileType(remoteFile), new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.download(remoteFile, localFile);
@@ -99,7 +113,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public void move(final RemoteFile sourceFile, final RemoteFile targetFile) throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod("move", TransferMetrics.getFileType(targetFile), new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.move(sourceFile, targetFile);
@@ -110,7 +124,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public void upload(final File localFile, final RemoteFile remoteFile) throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod(TransferMetrics.METHOD_UPLOAD, TransferMetrics.getFileType(remoteFile), new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.upload(localFile, remoteFile);
@@ -121,7 +135,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public boolean delete(final RemoteFile remoteFile) throws StorageException {
-		return (Boolean) retryMethod(new RetriableMethod() {
+		return (Boolean) retryMethod("delete", TransferMetrics.getFileType(remoteFile), new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.delete(remoteFile);
@@ -132,7 +146,7 @@ public class RetriableTransferManager implements TransferManager {
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T extends RemoteFile> Map<String, T> list(final Class<T> remoteFileClass) throws StorageException {
-		return (Map<String, T>) retryMethod(new RetriableMethod() {
+		return (Map<String, T>) retryMethod("list", TransferMetrics.getFileType(remoteFileClass), new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.list(remoteFileClass);
@@ -147,7 +161,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public boolean testTargetExists() throws StorageException {
-		return (Boolean) retryMethod(new RetriableMethod() {
+		return (Boolean) retryMethod("testTargetExists", null, new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.testTargetExists();
@@ -157,7 +171,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public boolean testTargetCanWrite() throws StorageException {
-		return (Boolean) retryMethod(new RetriableMethod() {
+		return (Boolean) retryMethod("testTargetCanWrite", null, new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.testTargetCanWrite();
@@ -167,7 +181,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public boolean testTargetCanCreate() throws StorageException {
-		return (Boolean) retryMethod(new RetriableMethod() {
+		return (Boolean) retryMethod("testTargetCanCreate", null, new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.testTargetCanCreate();
@@ -177,7 +191,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public boolean testRepoFileExists() throws StorageException {
-		return (Boolean) retryMethod(new RetriableMethod() {
+		return (Boolean) retryMethod("testRepoFileExists", null, new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.testRepoFileExists();
@@ -185,7 +199,7 @@ public class RetriableTransferManager implements TransferManager {
 		});
 	}
 
-	private Object retryMethod(RetriableMethod retryableMethod) throws StorageException {
+	private Object retryMethod(String methodName, String fileType, RetriableMethod retryableMethod) throws StorageException {
 		tryCount = 0;
 
 		while (true) {
@@ -211,12 +225,18 @@ public class RetriableTransferManager implements TransferManager {
 					throw e;
 				}
 				else {
+					if (metrics != null) {
+						metrics.recordRetry(methodName, fileType);
+					}
+
+					long retrySleepMillis = getRetrySleepMillis(tryCount);
+
 					logger.log(Level.WARNING, "Transfer method failed. " + tryCount + "/" + RETRY_MAX_COUNT + " retries. Sleeping "
-							+ RETRY_SLEEP_MILLIS
+							+ retrySleepMillis
 							+ "ms ...", e);
 
 					try {
-						Thread.sleep(RETRY_SLEEP_MILLIS);
+						Thread.sleep(retrySleepMillis);
 					}
 					catch (Exception e1) {
 						throw new StorageException(e1);
@@ -226,4 +246,18 @@ public class RetriableTransferManager implements TransferManager {
 		}
 	}
 
+	/**
+	 * Returns the time to wait before the given retry (starting at 1), doubling
+	 * {@link #RETRY_SLEEP_MILLIS} for each retry up to {@link #RETRY_SLEEP_MAX_MILLIS}.
+	 * The method is public to enable testing.
+	 */
+	public static long getRetrySleepMillis(int retry) {
+		long retrySleepMillis = RETRY_SLEEP_MILLIS;
+
+		for (int i = 1; i < retry && retrySleepMillis < RETRY_SLEEP_MAX_MILLIS; i++) {
+			retrySleepMillis *= 2;
+		}
+
+		return Math.min(retrySleepMillis, RETRY_SLEEP_MAX_MILLIS);
+	}
 }
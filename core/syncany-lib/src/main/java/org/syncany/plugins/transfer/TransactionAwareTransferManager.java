@@ -43,17 +43,38 @@ import org.syncany.plugins.transfer.to.TransactionTO;
  * The TransactionAwareTransferManager adds all functionality regarding transactions
  * to existing transfer managers.
  *
+ * <p>Remote transaction files are downloaded and parsed only once; the parsed transactions
+ * are kept in the {@link TransactionCache} of the config (or of this transfer manager, if there
+ * is no config). If transfer metrics are set, hits and misses of this cache are recorded.
+ *
  * @author Pim Otte
  */
-public class TransactionAwareTransferManager implements TransferManager {
+public class TransactionAwareTransferManager implements TransferManager, MeasurableTransferManager {
 	private static final Logger logger = Logger.getLogger(TransactionAwareTransferManager.class.getSimpleName());
 
 	private TransferManager underlyingTransferManager;
 	private Config config;
+	private TransactionCache transactionCache;
+	private TransferMetrics transferMetrics;
 
 	public TransactionAwareTransferManager(TransferManager underlyingTransferManager, Config config) {
 		this.underlyingTransferManager = underlyingTransferManager;
 		this.config = config;
+		this.transactionCache = (config != null) ? config.getTransactionCache() : new TransactionCache();
+		this.transferMetrics = null;
+	}
+
+	@Override
+	public void setTransferMetrics(TransferMetrics transferMetrics) {
+		this.transferMetrics = transferMetrics;
+	}
+
+	/**
+	 * Returns the underlying transfer manager, e.g. to access files that are never
+	 * part of a transaction, without the transaction-specific fallbacks of this class.
+	 */
+	public TransferManager getUnderlyingTransferManager() {
+		return underlyingTransferManager;
 	}
 
 	@Override
@@ -121,19 +142,30 @@ public class TransactionAwareTransferManager implements TransferManager {
 
 	@Override
 	public void move(final RemoteFile sourceFile, final RemoteFile targetFile) throws StorageException {
+		removeFromTransactionCache(sourceFile);
+		removeFromTransactionCache(targetFile);
+
 		underlyingTransferManager.move(sourceFile, targetFile);
 	}
 
 	@Override
 	public void upload(final File localFile, final RemoteFile remoteFile) throws StorageException {
+		removeFromTransactionCache(remoteFile);
 		underlyingTransferManager.upload(localFile, remoteFile);
 	}
 
 	@Override
 	public boolean delete(final RemoteFile remoteFile) throws StorageException {
+		removeFromTransactionCache(remoteFile);
 		return underlyingTransferManager.delete(remoteFile);
 	}
 
+	private void removeFromTransactionCache(RemoteFile remoteFile) {
+		if (remoteFile instanceof TransactionRemoteFile) {
+			transactionCache.remove((TransactionRemoteFile) remoteFile);
+		}
+	}
+
 	@Override
 	public <T extends RemoteFile> Map<String, T> list(final Class<T> remoteFileClass) throws StorageException {
 		return addAndFilterFilesInTransaction(remoteFileClass, underlyingTransferManager.list(remoteFileClass));
@@ -406,32 +438,66 @@ public class TransactionAwareTransferManager implements TransferManager {
 		return dummyDeletedFiles;
 	}
 
+	/**
+	 * Lists all remote transaction files and returns the parsed transactions. Only transaction
+	 * files that are not in the {@link TransactionCache} are downloaded; the cache is updated
+	 * with the new transactions, and transactions that no longer exist are removed from it.
+	 */
 	private Map<TransactionTO, TransactionRemoteFile> retrieveRemoteTransactions() throws StorageException {
 		Map<String, TransactionRemoteFile> transactionFiles = list(TransactionRemoteFile.class);
 		Map<TransactionTO, TransactionRemoteFile> transactions = new HashMap<TransactionTO, TransactionRemoteFile>();
 
-		for (TransactionRemoteFile transaction : transactionFiles.values()) {
-			try {
-				File transactionFile = createTempFile("transaction");
-
-				// Download transaction file
-				download(transaction, transactionFile);
+		transactionCache.retainAll(transactionFiles.keySet());
 
-				Transformer transformer = config == null ? null : config.getTransformer();
-				TransactionTO transactionTO = TransactionTO.load(transformer, transactionFile);
+		for (TransactionRemoteFile transaction : transactionFiles.values()) {
+			TransactionTO transactionTO = transactionCache.get(transaction);
 
-				// Extract final locations
-				transactions.put(transactionTO, transaction);
-				transactionFile.delete();
+			if (transactionTO != null) {
+				recordTransactionCacheLookup(true);
 			}
-			catch (Exception e) {
-				throw new StorageException("Failed to read transactionFile", e);
+			else {
+				recordTransactionCacheLookup(false);
+
+				transactionTO = downloadTransaction(transaction);
+				transactionCache.put(transaction, transactionTO);
 			}
+
+			// Extract final locations
+			transactions.put(transactionTO, transaction);
 		}
 
 		return transactions;
 	}
 
+	private TransactionTO downloadTransaction(TransactionRemoteFile transaction) throws StorageException {
+		try {
+			File transactionFile = createTempFile("transaction");
+
+			// Download transaction file
+			download(transaction, transactionFile);
+
+			Transformer transformer = config == null ? null : config.getTransformer();
+			TransactionTO transactionTO = TransactionTO.load(transformer, transactionFile);
+
+			transactionFile.delete();
+			return transactionTO;
+		}
+		catch (Exception e) {
+			throw new StorageException("Failed to read transactionFile", e);
+		}
+	}
+
+	private void recordTransactionCacheLookup(boolean hit) {
+		if (transferMetrics != null) {
+			if (hit) {
+				transferMetrics.recordCacheHit(TransactionCache.METRICS_NAME);
+			}
+			else {
+				transferMetrics.recordCacheMiss(TransactionCache.METRICS_NAME);
+			}
+		}
+	}
+
 	/**
 	 * Creates a temporary file, either using the config (if initialized) or
 	 * using the global temporary directory.
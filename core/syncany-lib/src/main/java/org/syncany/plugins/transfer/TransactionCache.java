@@ -0,0 +1,187 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.transfer.to.TransactionTO;
+
+/**
+ * Caches the parsed contents of remote transaction files by their name, so
+ * that the {@link TransactionAwareTransferManager} only has to download and parse
+ * transaction files it has not seen before.
+ *
+ * <p>Transaction files are never changed once they are uploaded: A transaction file is
+ * uploaded at the beginning of a transaction and deleted when the transaction is committed
+ * or rolled back. Entries are therefore only removed if a transaction file is no longer
+ * listed remotely, or if it is uploaded, moved or deleted by this client.
+ *
+ * <p>The cache is held by the {@link org.syncany.config.Config Config}, so that it is shared
+ * by all operations of a folder, e.g. across the sync cycles of the daemon. If a cache directory
+ * is given, each entry is also persisted to a file in that directory (named like the transaction
+ * file), so that the cache survives restarts. The persisted entries are loaded lazily on first use;
+ * entries that cannot be read are deleted and simply downloaded again.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransactionCache {
+	private static final Logger logger = Logger.getLogger(TransactionCache.class.getSimpleName());
+
+	public static final String METRICS_NAME = "transactions";
+
+	private File cacheDir;
+	private boolean loaded;
+	private Map<String, TransactionTO> transactions;
+
+	/**
+	 * Creates a transaction cache that is only held in memory.
+	 */
+	public TransactionCache() {
+		this(null);
+	}
+
+	/**
+	 * Creates a transaction cache that is persisted to the given directory.
+	 *
+	 * @param cacheDir Directory to persist the cached transactions to, or <tt>null</tt> to not persist them
+	 */
+	public TransactionCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+		this.loaded = false;
+		this.transactions = new HashMap<String, TransactionTO>();
+	}
+
+	/**
+	 * Returns the parsed transaction for the given remote file,
+	 * or <tt>null</tt> if it is not cached.
+	 */
+	public synchronized TransactionTO get(TransactionRemoteFile remoteTransactionFile) {
+		ensureLoaded();
+		return transactions.get(remoteTransactionFile.getName());
+	}
+
+	public synchronized void put(TransactionRemoteFile remoteTransactionFile, TransactionTO transaction) {
+		ensureLoaded();
+
+		transactions.put(remoteTransactionFile.getName(), transaction);
+		saveEntry(remoteTransactionFile.getName(), transaction);
+	}
+
+	public synchronized void remove(TransactionRemoteFile remoteTransactionFile) {
+		ensureLoaded();
+
+		if (transactions.remove(remoteTransactionFile.getName()) != null) {
+			deleteEntry(remoteTransactionFile.getName());
+		}
+	}
+
+	/**
+	 * Removes all cached transactions whose transaction files are not
+	 * in the given set of (currently listed) file names.
+	 */
+	public synchronized void retainAll(Set<String> remoteTransactionFileNames) {
+		ensureLoaded();
+
+		Iterator<String> transactionNameIterator = transactions.keySet().iterator();
+
+		while (transactionNameIterator.hasNext()) {
+			String transactionName = transactionNameIterator.next();
+
+			if (!remoteTransactionFileNames.contains(transactionName)) {
+				transactionNameIterator.remove();
+				deleteEntry(transactionName);
+			}
+		}
+	}
+
+	public synchronized int size() {
+		ensureLoaded();
+		return transactions.size();
+	}
+
+	public synchronized void clear() {
+		ensureLoaded();
+
+		for (String transactionName : transactions.keySet()) {
+			deleteEntry(transactionName);
+		}
+
+		transactions.clear();
+	}
+
+	private void ensureLoaded() {
+		if (loaded) {
+			return;
+		}
+
+		loaded = true;
+		File[] entryFiles = (cacheDir != null) ? cacheDir.listFiles() : null;
+
+		if (entryFiles == null) {
+			return;
+		}
+
+		for (File entryFile : entryFiles) {
+			try {
+				// Validates the name; entries with invalid names are deleted below
+				TransactionRemoteFile remoteTransactionFile = new TransactionRemoteFile(entryFile.getName());
+				transactions.put(remoteTransactionFile.getName(), TransactionTO.load(null, entryFile));
+			}
+			catch (Exception e) {
+				logger.log(Level.WARNING, "Cannot load cached transaction " + entryFile + ", deleting it.", e);
+				entryFile.delete();
+			}
+		}
+
+		logger.log(Level.FINE, "Loaded " + transactions.size() + " cached transaction(s) from " + cacheDir);
+	}
+
+	private void saveEntry(String transactionName, TransactionTO transaction) {
+		if (cacheDir == null) {
+			return;
+		}
+
+		File entryFile = new File(cacheDir, transactionName);
+
+		try {
+			if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+				throw new IOException("Cannot create directory " + cacheDir);
+			}
+
+			transaction.save(null, entryFile);
+		}
+		catch (Exception e) {
+			logger.log(Level.WARNING, "Cannot persist cached transaction to " + entryFile + "; it will be downloaded again after a restart.", e);
+			entryFile.delete();
+		}
+	}
+
+	private void deleteEntry(String transactionName) {
+		if (cacheDir != null) {
+			new File(cacheDir, transactionName).delete();
+		}
+	}
+}
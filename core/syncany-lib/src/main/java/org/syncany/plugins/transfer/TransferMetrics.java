@@ -0,0 +1,439 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementArray;
+import org.simpleframework.xml.ElementList;
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * Collects call counts, latency histograms, error and retry counts, and transferred
+ * bytes per {@link TransferManager} method and per {@link RemoteFile} type (e.g.
+ * <tt>multichunk</tt>, <tt>database</tt>, <tt>transaction</tt> or <tt>action</tt>).
+ *
+ * <p>The numbers are recorded by the {@link InstrumentedTransferManager} and the
+ * {@link RetriableTransferManager}. Transfer managers implementing {@link MeasurableTransferManager}
+ * may additionally record backend-specific calls, e.g. the time spent renaming files.
+ * The metrics can be serialized to XML (for the daemon API) and JSON.
+ *
+ * <p>In addition, caches that avoid transfer calls (e.g. the {@link TransactionCache}) record
+ * their hits and misses, see {@link #recordCacheHit(String)}.
+ *
+ * <p>Each call is counted individually, i.e. if a call is retried by
+ * the {@link RetriableTransferManager}, every attempt is counted, and the
+ * retry is counted separately.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransferMetrics {
+	public static final String METHOD_UPLOAD = "upload";
+	public static final String METHOD_DOWNLOAD = "download";
+
+	/**
+	 * Upper bounds (inclusive, in milliseconds) of the latency histogram buckets. Calls
+	 * taking longer than the last bound are counted in an additional overflow bucket.
+	 */
+	public static final long[] LATENCY_BUCKET_BOUNDS_MILLIS = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000 };
+
+	@ElementList(name = "calls", entry = "call", required = false)
+	private ArrayList<TransferCallMetrics> calls;
+
+	@ElementList(name = "caches", entry = "cache", required = false)
+	private ArrayList<CacheMetrics> caches;
+
+	public TransferMetrics() {
+		this.calls = new ArrayList<TransferCallMetrics>();
+		this.caches = new ArrayList<CacheMetrics>();
+	}
+
+	/**
+	 * Records a single call of the given transfer manager method
+	 * that is not related to a specific remote file type.
+	 *
+	 * @see #record(String, String, long, long, boolean)
+	 */
+	public void record(String method, long timeNanos, long bytes, boolean failed) {
+		record(method, null, timeNanos, bytes, failed);
+	}
+
+	/**
+	 * Records a single call of the given transfer manager method.
+	 *
+	 * @param method Name of the method, e.g. <tt>upload</tt> or <tt>list</tt>
+	 * @param fileType Type of the remote file (see {@link #getFileType(Class)}), or <tt>null</tt>
+	 * @param timeNanos Duration of the call in nanoseconds
+	 * @param bytes Number of bytes transferred by the call, or 0
+	 * @param failed True if the call threw an exception
+	 */
+	public synchronized void record(String method, String fileType, long timeNanos, long bytes, boolean failed) {
+		TransferCallMetrics callMetrics = getOrCreateCallMetrics(method, fileType);
+
+		callMetrics.calls++;
+		callMetrics.totalTimeNanos += timeNanos;
+		callMetrics.maxTimeNanos = Math.max(callMetrics.maxTimeNanos, timeNanos);
+		callMetrics.latencyHistogram[getLatencyBucket(timeNanos)]++;
+		callMetrics.bytes += bytes;
+
+		if (failed) {
+			callMetrics.errors++;
+		}
+	}
+
+	/**
+	 * Records that a failed call of the given method is retried.
+	 */
+	public synchronized void recordRetry(String method, String fileType) {
+		getOrCreateCallMetrics(method, fileType).retries++;
+	}
+
+	/**
+	 * Records that the given cache returned an entry, i.e. that
+	 * one or more transfer calls were avoided.
+	 */
+	public synchronized void recordCacheHit(String cache) {
+		getOrCreateCacheMetrics(cache).hits++;
+	}
+
+	/**
+	 * Records that the given cache did not contain an entry, i.e. that
+	 * the entry had to be retrieved from the remote storage.
+	 */
+	public synchronized void recordCacheMiss(String cache) {
+		getOrCreateCacheMetrics(cache).misses++;
+	}
+
+	/**
+	 * Adds all numbers of the given metrics to this metrics object,
+	 * e.g. to sum up the metrics of multiple operations.
+	 */
+	public synchronized void add(TransferMetrics otherMetrics) {
+		for (TransferCallMetrics otherCallMetrics : otherMetrics.getCalls()) {
+			getOrCreateCallMetrics(otherCallMetrics.method, otherCallMetrics.fileType).add(otherCallMetrics);
+		}
+
+		for (CacheMetrics otherCacheMetrics : otherMetrics.getCaches()) {
+			CacheMetrics cacheMetrics = getOrCreateCacheMetrics(otherCacheMetrics.cache);
+
+			cacheMetrics.hits += otherCacheMetrics.hits;
+			cacheMetrics.misses += otherCacheMetrics.misses;
+		}
+	}
+
+	/**
+	 * Returns the numbers of the given method and remote file type, or <tt>null</tt> if
+	 * the method has not been called for this file type.
+	 */
+	public synchronized TransferCallMetrics getCallMetrics(String method, String fileType) {
+		for (TransferCallMetrics callMetrics : calls) {
+			if (callMetrics.method.equals(method) && (fileType == null ? callMetrics.fileType == null : fileType.equals(callMetrics.fileType))) {
+				return callMetrics;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the summed up numbers of the given method over all remote
+	 * file types, or <tt>null</tt> if the method has not been called.
+	 */
+	public synchronized TransferCallMetrics getCallMetrics(String method) {
+		TransferCallMetrics methodMetrics = null;
+
+		for (TransferCallMetrics callMetrics : calls) {
+			if (callMetrics.method.equals(method)) {
+				if (methodMetrics == null) {
+					methodMetrics = new TransferCallMetrics(method, null);
+				}
+
+				methodMetrics.add(callMetrics);
+			}
+		}
+
+		return methodMetrics;
+	}
+
+	public synchronized List<TransferCallMetrics> getCalls() {
+		return new ArrayList<TransferCallMetrics>(calls);
+	}
+
+	/**
+	 * Returns the hits and misses of the given cache, or <tt>null</tt>
+	 * if the cache has not been used.
+	 */
+	public synchronized CacheMetrics getCacheMetrics(String cache) {
+		if (caches != null) {
+			for (CacheMetrics cacheMetrics : caches) {
+				if (cacheMetrics.cache.equals(cache)) {
+					return cacheMetrics;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	public synchronized List<CacheMetrics> getCaches() {
+		return (caches != null) ? new ArrayList<CacheMetrics>(caches) : new ArrayList<CacheMetrics>();
+	}
+
+	public long getBytesUploaded() {
+		TransferCallMetrics uploadMetrics = getCallMetrics(METHOD_UPLOAD);
+		return (uploadMetrics != null) ? uploadMetrics.bytes : 0;
+	}
+
+	public long getBytesDownloaded() {
+		TransferCallMetrics downloadMetrics = getCallMetrics(METHOD_DOWNLOAD);
+		return (downloadMetrics != null) ? downloadMetrics.bytes : 0;
+	}
+
+	/**
+	 * Returns the type of a remote file class, as used in the metrics. The type is
+	 * the lower case class name without the <tt>RemoteFile</tt> suffix, e.g.
+	 * <tt>multichunk</tt> for the {@link org.syncany.plugins.transfer.files.MultichunkRemoteFile MultichunkRemoteFile}.
+	 */
+	public static String getFileType(Class<? extends RemoteFile> remoteFileClass) {
+		String fileType = remoteFileClass.getSimpleName();
+
+		if (fileType.endsWith(RemoteFile.class.getSimpleName())) {
+			fileType = fileType.substring(0, fileType.length() - RemoteFile.class.getSimpleName().length());
+		}
+
+		return fileType.toLowerCase();
+	}
+
+	public static String getFileType(RemoteFile remoteFile) {
+		return (remoteFile != null) ? getFileType(remoteFile.getClass()) : null;
+	}
+
+	private TransferCallMetrics getOrCreateCallMetrics(String method, String fileType) {
+		TransferCallMetrics callMetrics = getCallMetrics(method, fileType);
+
+		if (callMetrics == null) {
+			callMetrics = new TransferCallMetrics(method, fileType);
+			calls.add(callMetrics);
+		}
+
+		return callMetrics;
+	}
+
+	private CacheMetrics getOrCreateCacheMetrics(String cache) {
+		CacheMetrics cacheMetrics = getCacheMetrics(cache);
+
+		if (cacheMetrics == null) {
+			if (caches == null) {
+				caches = new ArrayList<CacheMetrics>();
+			}
+
+			cacheMetrics = new CacheMetrics(cache);
+			caches.add(cacheMetrics);
+		}
+
+		return cacheMetrics;
+	}
+
+	private static int getLatencyBucket(long timeNanos) {
+		for (int bucket = 0; bucket < LATENCY_BUCKET_BOUNDS_MILLIS.length; bucket++) {
+			if (timeNanos <= LATENCY_BUCKET_BOUNDS_MILLIS[bucket] * 1000000) {
+				return bucket;
+			}
+		}
+
+		return LATENCY_BUCKET_BOUNDS_MILLIS.length;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return (caches == null || caches.isEmpty()) ? calls.toString() : calls.toString() + ", caches " + caches;
+	}
+
+	/**
+	 * Hits and misses of a single cache.
+	 */
+	public static class CacheMetrics {
+		@Element(name = "name", required = true)
+		private String cache;
+
+		@Element(name = "hits", required = true)
+		private long hits;
+
+		@Element(name = "misses", required = true)
+		private long misses;
+
+		public CacheMetrics() {
+			// Required by Simple
+		}
+
+		public CacheMetrics(String cache) {
+			this.cache = cache;
+		}
+
+		public String getCache() {
+			return cache;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * Returns the share of lookups that were answered by the cache (between
+		 * 0 and 1), or 0 if the cache has not been used.
+		 */
+		public double getHitRate() {
+			return (hits + misses > 0) ? (double) hits / (hits + misses) : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d hit(s), %d miss(es)", cache, hits, misses);
+		}
+	}
+
+	/**
+	 * Numbers of a single transfer manager method and remote file type. The latency histogram
+	 * counts the calls per bucket, as defined by {@link TransferMetrics#LATENCY_BUCKET_BOUNDS_MILLIS}.
+	 */
+	public static class TransferCallMetrics {
+		@Element(name = "method", required = true)
+		private String method;
+
+		@Element(name = "fileType", required = false)
+		private String fileType;
+
+		@Element(name = "calls", required = true)
+		private long calls;
+
+		@Element(name = "errors", required = true)
+		private long errors;
+
+		@Element(name = "retries", required = false)
+		private long retries;
+
+		@Element(name = "totalTimeNanos", required = true)
+		private long totalTimeNanos;
+
+		@Element(name = "maxTimeNanos", required = true)
+		private long maxTimeNanos;
+
+		@Element(name = "bytes", required = true)
+		private long bytes;
+
+		@ElementArray(name = "latencyHistogram", entry = "count", required = false)
+		private long[] latencyHistogram;
+
+		public TransferCallMetrics() {
+			// Required by Simple
+		}
+
+		public TransferCallMetrics(String method, String fileType) {
+			this.method = method;
+			this.fileType = fileType;
+			this.latencyHistogram = new long[LATENCY_BUCKET_BOUNDS_MILLIS.length + 1];
+		}
+
+		private void add(TransferCallMetrics otherCallMetrics) {
+			calls += otherCallMetrics.calls;
+			errors += otherCallMetrics.errors;
+			retries += otherCallMetrics.retries;
+			totalTimeNanos += otherCallMetrics.totalTimeNanos;
+			maxTimeNanos = Math.max(maxTimeNanos, otherCallMetrics.maxTimeNanos);
+			bytes += otherCallMetrics.bytes;
+
+			if (otherCallMetrics.latencyHistogram != null) {
+				for (int bucket = 0; bucket < latencyHistogram.length && bucket < otherCallMetrics.latencyHistogram.length; bucket++) {
+					latencyHistogram[bucket] += otherCallMetrics.latencyHistogram[bucket];
+				}
+			}
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public String getFileType() {
+			return fileType;
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public long getRetries() {
+			return retries;
+		}
+
+		public long getTotalTimeNanos() {
+			return totalTimeNanos;
+		}
+
+		public long getMaxTimeNanos() {
+			return maxTimeNanos;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long[] getLatencyHistogram() {
+			return latencyHistogram;
+		}
+
+		/**
+		 * Estimates the given latency percentile (in milliseconds) from the histogram. The
+		 * estimate is the upper bound of the bucket the percentile falls into, but never more
+		 * than the maximum latency.
+		 *
+		 * @param percentile Percentile between 0 and 1, e.g. 0.99 for the 99th percentile
+		 */
+		public long getLatencyPercentileMillis(double percentile) {
+			long maxTimeMillis = (long) Math.ceil(maxTimeNanos / 1000000.0);
+			long percentileRank = (long) Math.ceil(percentile * calls);
+			long callsUpToBucket = 0;
+
+			for (int bucket = 0; bucket < LATENCY_BUCKET_BOUNDS_MILLIS.length; bucket++) {
+				callsUpToBucket += latencyHistogram[bucket];
+
+				if (callsUpToBucket >= percentileRank) {
+					return Math.min(LATENCY_BUCKET_BOUNDS_MILLIS[bucket], maxTimeMillis);
+				}
+			}
+
+			return maxTimeMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s%s: %d call(s), %d error(s), %d retries, %d ms total, %d ms max, %d ms p95, %d byte(s)", method,
+					(fileType != null) ? "/" + fileType : "", calls, errors, retries, totalTimeNanos / 1000000, maxTimeNanos / 1000000,
+					getLatencyPercentileMillis(0.95), bytes);
+		}
+	}
+}
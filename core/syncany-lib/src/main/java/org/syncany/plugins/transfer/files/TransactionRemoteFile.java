@@ -27,13 +27,18 @@ import org.syncany.plugins.transfer.StorageException;
  * The transaction file represents a manifest of a transaction on the remote storage. 
  * 
  * <p><b>Name pattern:</b> The name pattern of a transaction file is
- * <b>transaction-&lt;filehexhashcode&gt;</b>.
+ * <b>transaction-&lt;filehexhashcode&gt;</b>. Transaction files created by this client use
+ * the 8-digit hash code of the transaction, optionally followed by the hex revision of the file.
+ * All files of a transaction therefore share the prefix <b>transaction-&lt;8-digit hash code&gt;</b>
+ * (see {@link #getTransactionId()}), so that they can be found on the remote storage.
  * 
  * @author Pim Otte
  */
 public class TransactionRemoteFile extends RemoteFile {
 	private static final Pattern NAME_PATTERN = Pattern.compile("transaction-([a-f0-9]+)");
-	private static final String NAME_FORMAT = "transaction-%s";
+	private static final String NAME_FORMAT = "transaction-%08x";
+	private static final String NAME_FORMAT_REVISION = "transaction-%08x%x";
+	private static final int TRANSACTION_ID_LENGTH = 8;
 
 	/**
 	 * Initializes a new transaction file, given a name. 
@@ -52,7 +57,62 @@ public class TransactionRemoteFile extends RemoteFile {
 	 * @throws StorageException If the name is not match the name pattern
 	 */
 	public TransactionRemoteFile(RemoteTransaction remoteTransaction) throws StorageException {
-		super(String.format(NAME_FORMAT, Integer.toHexString(remoteTransaction.hashCode())));
+		this(remoteTransaction, 0);
+	}
+
+	/**
+	 * Initializes a new transaction file, given the transaction itself and the revision
+	 * of the transaction file. Revision 0 results in the same name as {@link #TransactionRemoteFile(RemoteTransaction)}.
+	 * Higher revisions are used if a transaction has more than one transaction file. Since the hash code
+	 * always has 8 digits, names of different transactions and revisions cannot collide.
+	 *
+	 * @param remoteTransaction the remoteTransaction for which a file is needed
+	 * @param revision the revision of the transaction file, starting at 0
+	 * @throws StorageException If the name is not match the name pattern
+	 */
+	public TransactionRemoteFile(RemoteTransaction remoteTransaction, int revision) throws StorageException {
+		super((revision > 0) ? String.format(NAME_FORMAT_REVISION, remoteTransaction.hashCode(), revision) : String.format(NAME_FORMAT,
+				remoteTransaction.hashCode()));
+	}
+
+	/**
+	 * Returns the hex hash code identifying the transaction this file belongs to. For
+	 * files with the fixed-width name format, this is the first 8 digits of the name's
+	 * hex part; for other (older) names, it is the whole hex part.
+	 */
+	public String getTransactionId() {
+		String hexPart = getHexPart();
+		return hexPart.substring(0, Math.min(TRANSACTION_ID_LENGTH, hexPart.length()));
+	}
+
+	/**
+	 * Returns the revision of this file within its transaction, or 0
+	 * if the name does not contain a revision.
+	 */
+	public int getRevision() {
+		String hexPart = getHexPart();
+		return (hexPart.length() > TRANSACTION_ID_LENGTH) ? Integer.parseInt(hexPart.substring(TRANSACTION_ID_LENGTH), 16) : 0;
+	}
+
+	/**
+	 * Returns whether the given file belongs to the same transaction as this file.
+	 */
+	public boolean isSameTransaction(TransactionRemoteFile otherRemoteTransactionFile) {
+		return getTransactionId().equals(otherRemoteTransactionFile.getTransactionId());
+	}
+
+	/**
+	 * Creates a new transaction file name for the same transaction, but with the given revision.
+	 *
+	 * @param revision the revision of the transaction file, must be greater than 0
+	 * @throws StorageException If the name is not match the name pattern
+	 */
+	public TransactionRemoteFile createRevision(int revision) throws StorageException {
+		return new TransactionRemoteFile(String.format(NAME_FORMAT_REVISION, (int) Long.parseLong(getTransactionId(), 16), revision));
+	}
+
+	private String getHexPart() {
+		return getName().substring(getName().indexOf('-') + 1);
 	}
 
 	@Override
@@ -0,0 +1,5 @@
+select *
+from fileversion_current
+where filecontent_checksum=?
+	and status<>'DELETED'
+order by filehistory_id asc, version asc
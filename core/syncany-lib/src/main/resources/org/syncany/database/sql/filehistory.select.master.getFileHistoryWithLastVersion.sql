@@ -1,3 +1,4 @@
 select *
-from fileversion_master_last
-where path=? 
+from fileversion_current
+where path=?
+	and status<>'DELETED'
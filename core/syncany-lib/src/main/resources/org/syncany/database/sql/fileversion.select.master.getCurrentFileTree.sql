@@ -1 +1,3 @@
-select * from fileversion_master_last
+select *
+from fileversion_current
+where status<>'DELETED'
@@ -0,0 +1,9 @@
+insert into fileversion_current
+	select fv.*, path_depth(fv.path), parent_path(fv.path)
+	from fileversion_master fv
+	where fv.filehistory_id=?
+		and fv.version=(
+			select max(version)
+			from fileversion_master
+			where filehistory_id=?
+		)
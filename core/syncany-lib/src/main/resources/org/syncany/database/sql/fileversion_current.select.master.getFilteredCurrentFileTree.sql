@@ -0,0 +1,10 @@
+select *
+from fileversion_current
+where 
+	status<>?
+	and path like ?
+	and filehistory_id like ?
+	and parent_path like ?
+	and depth>=?
+	and depth<=?
+	and type in (unnest(?))
@@ -0,0 +1,59 @@
+-- Adds the materialized current file tree (fileversion_current) to databases
+-- created before it existed, and fills it from the master file versions
+
+--!DELIMITER=end;
+
+create function path_depth(path varchar(1024))
+returns integer
+begin atomic
+	return length(path) - length(replace(path, '/', ''));
+end;
+
+create function parent_path(path varchar(1024))
+returns varchar(1024)
+begin atomic
+	declare lastIndex integer;
+	declare nextIndex integer;
+
+	set lastIndex = 0;
+	set nextIndex = locate('/', path);
+
+	while nextIndex <> 0 do
+		set lastIndex = nextIndex;
+		set nextIndex = locate('/', path, lastIndex + 1);
+	end while;
+
+	return substring(path, 1, greatest(lastIndex - 1, 0));
+end;
+
+--!DELIMITER=;
+
+CREATE CACHED TABLE fileversion_current (
+  filehistory_id varchar(40) NOT NULL,
+  version int NOT NULL,
+  databaseversion_id int NOT NULL,
+  path varchar(1024) NOT NULL,
+  type varchar(45) NOT NULL,
+  status varchar(45) NOT NULL,
+  size bigint NOT NULL,
+  lastmodified datetime NOT NULL,
+  linktarget varchar(1024),
+  filecontent_checksum varchar(40) DEFAULT NULL,
+  updated datetime NOT NULL,
+  posixperms varchar(45) DEFAULT NULL,
+  dosattrs varchar(45) DEFAULT NULL,
+  depth int NOT NULL,
+  parent_path varchar(1024) NOT NULL,
+  PRIMARY KEY (filehistory_id, version, databaseversion_id)
+);
+
+CREATE INDEX idx_fileversion_current_path ON fileversion_current (path);
+CREATE INDEX idx_fileversion_current_parent_path ON fileversion_current (parent_path);
+CREATE INDEX idx_fileversion_current_filecontent_checksum ON fileversion_current (filecontent_checksum);
+
+INSERT INTO fileversion_current
+  SELECT fv.*, path_depth(fv.path), parent_path(fv.path)
+  FROM fileversion_master_maxversion fvmax
+  JOIN fileversion_master fv 
+    ON fvmax.filehistory_id=fv.filehistory_id 
+       AND fvmax.version=fv.version;
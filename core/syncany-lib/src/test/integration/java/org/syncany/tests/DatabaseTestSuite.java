@@ -31,6 +31,7 @@ import org.syncany.tests.integration.database.dao.FileContentDaoTest;
 import org.syncany.tests.integration.database.dao.FileHistoryDaoTest;
 import org.syncany.tests.integration.database.dao.FileVersionDaoTest;
 import org.syncany.tests.integration.database.dao.MultiChunkDaoTest;
+import org.syncany.tests.integration.database.dao.SqlMetricsTest;
 import org.syncany.tests.integration.database.dao.XmlDatabaseDaoTest;
 import org.syncany.tests.unit.database.ObjectIdTest;
 import org.syncany.tests.unit.database.VectorClockTest;
@@ -49,6 +50,7 @@ import org.syncany.tests.unit.database.VectorClockTest;
 	MemoryDatabaseCacheTest.class,
 	ObjectIdTest.class,
 	PartialFileHistoryTest.class,
+	SqlMetricsTest.class,
 	VectorClockTest.class,
 	XmlDatabaseDaoTest.class
 })
@@ -20,6 +20,10 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.integration.benchmark.LongRunningCompressionBenchmarkTest;
+import org.syncany.tests.integration.benchmark.LongRunningIgnoredFilesBenchmarkTest;
+import org.syncany.tests.integration.benchmark.LongRunningMultiChunkerBenchmarkTest;
+import org.syncany.tests.integration.benchmark.LongRunningSyncBenchmarkTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningLargeFileScenarioTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningLotsOfSmallFilesScenarioTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningNewAndDeleteScenarioTest;
@@ -28,7 +32,11 @@ import org.syncany.tests.integration.scenarios.longrunning.LongRunningNewAndDele
 @SuiteClasses({
 	LongRunningLargeFileScenarioTest.class,
 	LongRunningLotsOfSmallFilesScenarioTest.class,
-	LongRunningNewAndDeleteScenarioTest.class
+	LongRunningNewAndDeleteScenarioTest.class,
+	LongRunningSyncBenchmarkTest.class,
+	LongRunningIgnoredFilesBenchmarkTest.class,
+	LongRunningMultiChunkerBenchmarkTest.class,
+	LongRunningCompressionBenchmarkTest.class
 })
 public class LongRunningTestSuite {
 	// This class executes all tests
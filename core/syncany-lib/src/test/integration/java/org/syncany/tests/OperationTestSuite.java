@@ -28,9 +28,11 @@ import org.syncany.tests.integration.operations.FileSystemActionReconciliatorTes
 import org.syncany.tests.integration.operations.IndexerTest;
 import org.syncany.tests.integration.operations.InitOperationTest;
 import org.syncany.tests.integration.operations.NotificationListenerTest;
+import org.syncany.tests.integration.operations.OperationMetricsTest;
 import org.syncany.tests.integration.operations.OperationPerformanceTest;
 import org.syncany.tests.integration.operations.PluginOperationTest;
 import org.syncany.tests.integration.operations.RecursiveWatcherTest;
+import org.syncany.tests.integration.operations.RepoGenerationTest;
 import org.syncany.tests.integration.operations.StatusOperationTest;
 import org.syncany.tests.integration.operations.SyncUpOperationTest;
 
@@ -44,9 +46,11 @@ import org.syncany.tests.integration.operations.SyncUpOperationTest;
 	IndexerTest.class,
 	InitOperationTest.class,
 	NotificationListenerTest.class,
+	OperationMetricsTest.class,
 	OperationPerformanceTest.class,
 	PluginOperationTest.class,
 	RecursiveWatcherTest.class,
+	RepoGenerationTest.class,
 	StatusOperationTest.class,
 	SyncUpOperationTest.class	
 })
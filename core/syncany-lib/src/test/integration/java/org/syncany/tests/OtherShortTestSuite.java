@@ -33,6 +33,8 @@ import org.syncany.tests.unit.chunk.TTTDChunkerTest;
 import org.syncany.tests.unit.config.CacheTest;
 import org.syncany.tests.unit.config.ConfigHelperTest;
 import org.syncany.tests.unit.config.ConfigTest;
+import org.syncany.tests.unit.config.IgnoredFilesTest;
+import org.syncany.tests.unit.config.InternalEventBusTest;
 import org.syncany.tests.unit.crypto.AesGcmWithBcInputStreamTest;
 import org.syncany.tests.unit.crypto.CipherSessionTest;
 import org.syncany.tests.unit.crypto.CipherSpecsTest;
@@ -69,7 +71,9 @@ import org.syncany.tests.util.SqlRunnerTest;
 		// Config
 		CacheTest.class,
 		ConfigHelperTest.class,
-		ConfigTest.class
+		ConfigTest.class,
+		IgnoredFilesTest.class,
+		InternalEventBusTest.class
 })
 public class OtherShortTestSuite {
 	// This class executes all tests
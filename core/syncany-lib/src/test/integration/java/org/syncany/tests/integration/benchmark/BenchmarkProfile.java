@@ -0,0 +1,201 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+/**
+ * Describes the synthetic repository and the backend of a benchmark run: How many
+ * clients take part, how many files are created initially, how large they are, how many
+ * of them are duplicates, and how many files are changed per round. The latency settings
+ * are passed to the {@link org.syncany.plugins.latency_local.LatencyLocalTransferPlugin LatencyLocalTransferPlugin}.
+ *
+ * <p>All values can be overridden with system properties of the form
+ * <tt>syncany.benchmark.&lt;property&gt;</tt>, e.g. <tt>-Dsyncany.benchmark.files=10000</tt>,
+ * see {@link #applySystemProperties()}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class BenchmarkProfile {
+	private static final String SYSTEM_PROPERTY_PREFIX = "syncany.benchmark.";
+
+	private String name;
+	private long seed;
+
+	// Repository
+	private int clients;
+	private int files;
+	private long minFileSize;
+	private long maxFileSize;
+	private double duplicationRatio;
+	private double churnRate;
+	private int rounds;
+
+	// Backend
+	private int requestLatencyMillis;
+	private int latencyJitterMillis;
+	private int listLatencyPerEntryMicros;
+	private int bandwidthKBps;
+
+	public BenchmarkProfile(String name) {
+		this.name = name;
+		this.seed = 42;
+
+		this.clients = 2;
+		this.files = 200;
+		this.minFileSize = 1024;
+		this.maxFileSize = 512 * 1024;
+		this.duplicationRatio = 0.1;
+		this.churnRate = 0.1;
+		this.rounds = 3;
+
+		this.requestLatencyMillis = 0;
+		this.latencyJitterMillis = 0;
+		this.listLatencyPerEntryMicros = 0;
+		this.bandwidthKBps = 0;
+	}
+
+	/**
+	 * Overrides the values of this profile with the values given as system
+	 * properties, if any. Property names are prefixed with <tt>syncany.benchmark.</tt>.
+	 */
+	public void applySystemProperties() {
+		seed = getLongProperty("seed", seed);
+
+		clients = (int) getLongProperty("clients", clients);
+		files = (int) getLongProperty("files", files);
+		minFileSize = getLongProperty("minFileSize", minFileSize);
+		maxFileSize = getLongProperty("maxFileSize", maxFileSize);
+		duplicationRatio = getDoubleProperty("duplicationRatio", duplicationRatio);
+		churnRate = getDoubleProperty("churnRate", churnRate);
+		rounds = (int) getLongProperty("rounds", rounds);
+
+		requestLatencyMillis = (int) getLongProperty("requestLatencyMillis", requestLatencyMillis);
+		latencyJitterMillis = (int) getLongProperty("latencyJitterMillis", latencyJitterMillis);
+		listLatencyPerEntryMicros = (int) getLongProperty("listLatencyPerEntryMicros", listLatencyPerEntryMicros);
+		bandwidthKBps = (int) getLongProperty("bandwidthKBps", bandwidthKBps);
+	}
+
+	private long getLongProperty(String property, long defaultValue) {
+		String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + property);
+		return (value != null) ? Long.parseLong(value) : defaultValue;
+	}
+
+	private double getDoubleProperty(String property, double defaultValue) {
+		String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + property);
+		return (value != null) ? Double.parseDouble(value) : defaultValue;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getClients() {
+		return clients;
+	}
+
+	public void setClients(int clients) {
+		this.clients = clients;
+	}
+
+	public int getFiles() {
+		return files;
+	}
+
+	public void setFiles(int files) {
+		this.files = files;
+	}
+
+	public long getMinFileSize() {
+		return minFileSize;
+	}
+
+	public void setMinFileSize(long minFileSize) {
+		this.minFileSize = minFileSize;
+	}
+
+	public long getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public double getDuplicationRatio() {
+		return duplicationRatio;
+	}
+
+	public void setDuplicationRatio(double duplicationRatio) {
+		this.duplicationRatio = duplicationRatio;
+	}
+
+	public double getChurnRate() {
+		return churnRate;
+	}
+
+	public void setChurnRate(double churnRate) {
+		this.churnRate = churnRate;
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	public void setRounds(int rounds) {
+		this.rounds = rounds;
+	}
+
+	public int getRequestLatencyMillis() {
+		return requestLatencyMillis;
+	}
+
+	public void setRequestLatencyMillis(int requestLatencyMillis) {
+		this.requestLatencyMillis = requestLatencyMillis;
+	}
+
+	public int getLatencyJitterMillis() {
+		return latencyJitterMillis;
+	}
+
+	public void setLatencyJitterMillis(int latencyJitterMillis) {
+		this.latencyJitterMillis = latencyJitterMillis;
+	}
+
+	public int getListLatencyPerEntryMicros() {
+		return listLatencyPerEntryMicros;
+	}
+
+	public void setListLatencyPerEntryMicros(int listLatencyPerEntryMicros) {
+		this.listLatencyPerEntryMicros = listLatencyPerEntryMicros;
+	}
+
+	public int getBandwidthKBps() {
+		return bandwidthKBps;
+	}
+
+	public void setBandwidthKBps(int bandwidthKBps) {
+		this.bandwidthKBps = bandwidthKBps;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.syncany.operations.OperationMetrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * The result of a benchmark run: The profile that was used, the wall-clock time
+ * of every single operation (and its {@link OperationMetrics}, if the operation has any),
+ * and a summary per operation type.
+ *
+ * <p>Reports are written as JSON, so that the numbers of different runs
+ * (e.g. before and after a change) can be compared by scripts. The target folder
+ * can be set with the system property <tt>syncany.benchmark.reportDir</tt>.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class BenchmarkReport {
+	public static final String REPORT_DIR_PROPERTY = "syncany.benchmark.reportDir";
+
+	private BenchmarkProfile profile;
+	private long startTime;
+	private long durationMillis;
+	private List<OperationTiming> timings;
+	private Map<String, OperationSummary> summary;
+
+	public BenchmarkReport(BenchmarkProfile profile) {
+		this.profile = profile;
+		this.startTime = System.currentTimeMillis();
+		this.timings = new ArrayList<OperationTiming>();
+		this.summary = new TreeMap<String, OperationSummary>();
+	}
+
+	public void addTiming(int round, String client, String operation, long durationMillis, OperationMetrics metrics) {
+		timings.add(new OperationTiming(round, client, operation, durationMillis, metrics));
+
+		OperationSummary operationSummary = summary.get(operation);
+
+		if (operationSummary == null) {
+			operationSummary = new OperationSummary();
+			summary.put(operation, operationSummary);
+		}
+
+		operationSummary.add(durationMillis, metrics);
+	}
+
+	public void finish() {
+		durationMillis = System.currentTimeMillis() - startTime;
+	}
+
+	public BenchmarkProfile getProfile() {
+		return profile;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public List<OperationTiming> getTimings() {
+		return timings;
+	}
+
+	public OperationSummary getSummary(String operation) {
+		return summary.get(operation);
+	}
+
+	public String toJson() {
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		return gson.toJson(this);
+	}
+
+	/**
+	 * Writes the report to the folder given by the <tt>syncany.benchmark.reportDir</tt>
+	 * property (or to <tt>syncany-benchmarks</tt> in the temp folder), and returns the
+	 * report file.
+	 */
+	public File writeJsonFile() throws IOException {
+		File reportDir = new File(System.getProperty(REPORT_DIR_PROPERTY, new File(System.getProperty("java.io.tmpdir"), "syncany-benchmarks").getPath()));
+		String reportFileName = String.format("%s-%s.json", profile.getName(), new SimpleDateFormat("yyMMddHHmmssSSS").format(new Date(startTime)));
+
+		File reportFile = new File(reportDir, reportFileName);
+		reportDir.mkdirs();
+
+		try (Writer jsonWriter = new FileWriter(reportFile)) {
+			jsonWriter.write(toJson());
+		}
+
+		return reportFile;
+	}
+
+	public static class OperationTiming {
+		private int round;
+		private String client;
+		private String operation;
+		private long durationMillis;
+		private OperationMetrics metrics;
+
+		public OperationTiming(int round, String client, String operation, long durationMillis, OperationMetrics metrics) {
+			this.round = round;
+			this.client = client;
+			this.operation = operation;
+			this.durationMillis = durationMillis;
+			this.metrics = metrics;
+		}
+
+		public int getRound() {
+			return round;
+		}
+
+		public String getClient() {
+			return client;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		public OperationMetrics getMetrics() {
+			return metrics;
+		}
+	}
+
+	public static class OperationSummary {
+		private int count;
+		private long totalMillis;
+		private long minMillis;
+		private long maxMillis;
+		private long meanMillis;
+		private long bytesUploaded;
+		private long bytesDownloaded;
+
+		private void add(long durationMillis, OperationMetrics metrics) {
+			minMillis = (count == 0) ? durationMillis : Math.min(minMillis, durationMillis);
+			maxMillis = Math.max(maxMillis, durationMillis);
+
+			count++;
+			totalMillis += durationMillis;
+			meanMillis = totalMillis / count;
+
+			if (metrics != null) {
+				bytesUploaded += metrics.getTransferMetrics().getBytesUploaded();
+				bytesDownloaded += metrics.getTransferMetrics().getBytesDownloaded();
+			}
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getTotalMillis() {
+			return totalMillis;
+		}
+
+		public long getMinMillis() {
+			return minMillis;
+		}
+
+		public long getMaxMillis() {
+			return maxMillis;
+		}
+
+		public long getMeanMillis() {
+			return meanMillis;
+		}
+
+		public long getBytesUploaded() {
+			return bytesUploaded;
+		}
+
+		public long getBytesDownloaded() {
+			return bytesDownloaded;
+		}
+	}
+}
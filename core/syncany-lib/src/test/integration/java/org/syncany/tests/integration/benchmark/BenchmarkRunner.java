@@ -0,0 +1,185 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.operations.OperationMetrics;
+import org.syncany.operations.cleanup.CleanupOperation;
+import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.cleanup.CleanupOperationResult;
+import org.syncany.operations.down.DownOperation;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.operations.ls.LsOperationOptions;
+import org.syncany.operations.up.UpOperation;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.plugins.latency_local.LatencyLocalTransferSettings;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+/**
+ * Runs a benchmark as described by a {@link BenchmarkProfile} against a repository
+ * that is backed by the <tt>latency_local</tt> plugin, and measures the operations
+ * end to end.
+ *
+ * <p>In every round, one client (in turn) changes its local folder -- the first round creates
+ * the initial files, all other rounds apply churn -- and runs 'status' and 'up'. All other
+ * clients then run 'down', and each client runs 'ls'. After the last round, the last writer
+ * runs 'cleanup', all other clients run a final 'down', and the local folders are compared.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class BenchmarkRunner {
+	private static final Logger logger = Logger.getLogger(BenchmarkRunner.class.getSimpleName());
+
+	public static final String OPERATION_STATUS = "status";
+	public static final String OPERATION_UP = UpOperation.ACTION_ID;
+	public static final String OPERATION_DOWN = DownOperation.ACTION_ID;
+	public static final String OPERATION_LS = "ls";
+	public static final String OPERATION_CLEANUP = CleanupOperation.ACTION_ID;
+
+	private BenchmarkProfile profile;
+
+	public BenchmarkRunner(BenchmarkProfile profile) {
+		this.profile = profile;
+	}
+
+	public BenchmarkReport run() throws Exception {
+		LatencyLocalTransferSettings testConnection = TestConfigUtil.createTestLatencyLocalConnection(profile.getRequestLatencyMillis(),
+				profile.getLatencyJitterMillis(), profile.getListLatencyPerEntryMicros(), profile.getBandwidthKBps());
+
+		List<TestClient> clients = createClients(testConnection);
+		SyntheticRepositoryGenerator generator = new SyntheticRepositoryGenerator(profile);
+		BenchmarkReport report = new BenchmarkReport(profile);
+
+		try {
+			TestClient writer = null;
+
+			for (int round = 0; round < profile.getRounds(); round++) {
+				writer = clients.get(round % clients.size());
+
+				if (round == 0) {
+					generator.createFiles(writer.getConfig().getLocalDir(), profile.getFiles());
+				}
+				else {
+					generator.applyChurn(writer.getConfig().getLocalDir());
+				}
+
+				logger.log(Level.INFO, "Benchmark " + profile.getName() + ", round " + round + ": Client " + writer.getConfig().getMachineName()
+						+ " is uploading changes ...");
+
+				runStatus(report, round, writer);
+				runUp(report, round, writer);
+
+				for (TestClient client : clients) {
+					if (client != writer) {
+						runDown(report, round, client);
+					}
+				}
+
+				for (TestClient client : clients) {
+					runLs(report, round, client);
+				}
+			}
+
+			if (writer != null) {
+				runCleanup(report, profile.getRounds(), writer);
+
+				for (TestClient client : clients) {
+					if (client != writer) {
+						runDown(report, profile.getRounds(), client);
+						TestAssertUtil.assertFileListEquals(writer.getLocalFiles(), client.getLocalFiles());
+					}
+				}
+			}
+
+			report.finish();
+			return report;
+		}
+		finally {
+			for (TestClient client : clients) {
+				client.deleteTestData();
+			}
+
+			TestFileUtil.deleteDirectory(testConnection.getPath());
+		}
+	}
+
+	private List<TestClient> createClients(TransferSettings testConnection) throws Exception {
+		List<TestClient> clients = new ArrayList<TestClient>();
+
+		for (int i = 0; i < profile.getClients(); i++) {
+			clients.add(new TestClient(String.valueOf((char) ('A' + i)), testConnection));
+		}
+
+		return clients;
+	}
+
+	private void runStatus(BenchmarkReport report, int round, TestClient client) throws Exception {
+		long startTime = System.nanoTime();
+		client.status();
+
+		addTiming(report, round, client, OPERATION_STATUS, startTime, null);
+	}
+
+	private void runUp(BenchmarkReport report, int round, TestClient client) throws Exception {
+		long startTime = System.nanoTime();
+		UpOperationResult upResult = client.up();
+
+		addTiming(report, round, client, OPERATION_UP, startTime, upResult.getMetrics());
+	}
+
+	private void runDown(BenchmarkReport report, int round, TestClient client) throws Exception {
+		long startTime = System.nanoTime();
+		DownOperationResult downResult = client.down();
+
+		addTiming(report, round, client, OPERATION_DOWN, startTime, downResult.getMetrics());
+	}
+
+	private void runLs(BenchmarkReport report, int round, TestClient client) throws Exception {
+		LsOperationOptions lsOptions = new LsOperationOptions();
+		lsOptions.setRecursive(true);
+
+		long startTime = System.nanoTime();
+		client.ls(lsOptions);
+
+		addTiming(report, round, client, OPERATION_LS, startTime, null);
+	}
+
+	private void runCleanup(BenchmarkReport report, int round, TestClient client) throws Exception {
+		CleanupOperationOptions cleanupOptions = new CleanupOperationOptions();
+		cleanupOptions.setMinSecondsBetweenCleanups(0);
+		cleanupOptions.setMinKeepSeconds(0);
+
+		long startTime = System.nanoTime();
+		CleanupOperationResult cleanupResult = client.cleanup(cleanupOptions);
+
+		addTiming(report, round, client, OPERATION_CLEANUP, startTime, cleanupResult.getMetrics());
+	}
+
+	private void addTiming(BenchmarkReport report, int round, TestClient client, String operation, long startTime, OperationMetrics metrics) {
+		long durationMillis = (System.nanoTime() - startTime) / 1000000;
+		report.addTiming(round, client.getConfig().getMachineName(), operation, durationMillis, metrics);
+	}
+}
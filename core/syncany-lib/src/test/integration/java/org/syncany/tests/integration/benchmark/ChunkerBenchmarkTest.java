@@ -0,0 +1,205 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.config.Logging;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+/**
+ * Micro benchmark for the chunker input path. It measures the throughput (bytes
+ * per second) of the {@link Chunker}s and the GC pressure, i.e. the number of bytes allocated
+ * by the chunking thread and the collections/collection time of all garbage collectors.
+ *
+ * <p>Each chunker is warmed up before it is measured. The file size can be changed with
+ * the system property <tt>chunkerbenchmark.size</tt> (in MB).
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ChunkerBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(ChunkerBenchmarkTest.class.getSimpleName());
+
+	private static final String FILE_SIZE_PROPERTY = "chunkerbenchmark.size";
+	private static final int DEFAULT_FILE_SIZE_MB = 32;
+	private static final int WARMUP_ITERATIONS = 2;
+	private static final int MEASURE_ITERATIONS = 3;
+
+	static {
+		Logging.init();
+	}
+
+	private File tempDir;
+	private File inputFile;
+
+	@Before
+	public void setUp() throws Exception {
+		int fileSizeMB = Integer.getInteger(FILE_SIZE_PROPERTY, DEFAULT_FILE_SIZE_MB);
+
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, fileSizeMB * 1024L * 1024L);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testBenchmarkFixedChunker() throws Exception {
+		ChunkerBenchmarkResult result = runBenchmark(new FixedChunker(512 * 1024));
+
+		// Chunk buffers are reused; only small per-chunk objects are allocated
+		assertLowAllocation(result);
+	}
+
+	@Test
+	public void testBenchmarkTttdChunker() throws Exception {
+		ChunkerBenchmarkResult result = runBenchmark(new TttdChunker(16 * 1024));
+
+		// Chunk buffers (Tmax bytes each) are reused; only small per-chunk objects are allocated
+		assertLowAllocation(result);
+	}
+
+	private ChunkerBenchmarkResult runBenchmark(Chunker chunker) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			chunkFile(chunker);
+		}
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		long gcCountBefore = getGcCount();
+		long gcTimeBefore = getGcTimeMillis();
+		long allocatedBytesBefore = getAllocatedBytes(threadBean);
+		long startNanos = System.nanoTime();
+
+		long bytesChunked = 0;
+		long chunkCount = 0;
+
+		for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+			ChunkerBenchmarkResult iterationResult = chunkFile(chunker);
+
+			bytesChunked += iterationResult.bytesChunked;
+			chunkCount += iterationResult.chunkCount;
+		}
+
+		ChunkerBenchmarkResult result = new ChunkerBenchmarkResult();
+
+		result.durationNanos = System.nanoTime() - startNanos;
+		result.bytesChunked = bytesChunked;
+		result.chunkCount = chunkCount;
+		result.allocatedBytes = (allocatedBytesBefore >= 0) ? getAllocatedBytes(threadBean) - allocatedBytesBefore : -1;
+		result.gcCount = getGcCount() - gcCountBefore;
+		result.gcTimeMillis = getGcTimeMillis() - gcTimeBefore;
+
+		assertEquals(MEASURE_ITERATIONS * inputFile.length(), result.bytesChunked);
+
+		logger.log(Level.INFO, "Chunker benchmark " + chunker + ": " + result);
+		return result;
+	}
+
+	private ChunkerBenchmarkResult chunkFile(Chunker chunker) throws Exception {
+		ChunkerBenchmarkResult result = new ChunkerBenchmarkResult();
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(inputFile);
+
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+
+			result.bytesChunked += chunk.getSize();
+			result.chunkCount++;
+
+			chunk.release();
+		}
+
+		chunkEnumeration.close();
+		return result;
+	}
+
+	private void assertLowAllocation(ChunkerBenchmarkResult result) {
+		Assume.assumeTrue("Thread allocation counters not supported by this JVM", result.allocatedBytes >= 0);
+		assertTrue("Too many bytes allocated: " + result, result.allocatedBytes < result.bytesChunked / 10);
+	}
+
+	private long getAllocatedBytes(ThreadMXBean threadBean) {
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspotThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+
+			if (hotspotThreadBean.isThreadAllocatedMemorySupported() && hotspotThreadBean.isThreadAllocatedMemoryEnabled()) {
+				return hotspotThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+
+		return -1;
+	}
+
+	private long getGcCount() {
+		long gcCount = 0;
+
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0, gcBean.getCollectionCount());
+		}
+
+		return gcCount;
+	}
+
+	private long getGcTimeMillis() {
+		long gcTimeMillis = 0;
+
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTimeMillis += Math.max(0, gcBean.getCollectionTime());
+		}
+
+		return gcTimeMillis;
+	}
+
+	private static class ChunkerBenchmarkResult {
+		private long durationNanos;
+		private long bytesChunked;
+		private long chunkCount;
+		private long allocatedBytes;
+		private long gcCount;
+		private long gcTimeMillis;
+
+		public double getBytesPerSecond() {
+			return (durationNanos > 0) ? bytesChunked * 1000000000.0 / durationNanos : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.1f MB/s, %d bytes in %d chunks, %d bytes allocated (%.1f per chunk), %d GCs (%d ms)",
+					getBytesPerSecond() / 1024 / 1024, bytesChunked, chunkCount, allocatedBytes,
+					(chunkCount > 0) ? (double) allocatedBytes / chunkCount : 0, gcCount, gcTimeMillis);
+		}
+	}
+}
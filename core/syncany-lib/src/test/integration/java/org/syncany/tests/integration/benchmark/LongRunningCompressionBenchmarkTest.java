@@ -0,0 +1,94 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Lz4Transformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.config.Logging;
+import org.syncany.tests.unit.chunk.Lz4TransformerTest;
+
+public class LongRunningCompressionBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(LongRunningCompressionBenchmarkTest.class.getSimpleName());
+
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testThroughputAndRatioLz4VsGzip() throws Exception {
+		Transformer[] transformers = new Transformer[] { new GzipTransformer(), new Lz4Transformer() };
+		Map<String, byte[]> corpora = Lz4TransformerTest.createCorpora(8 * 1024 * 1024);
+
+		for (Transformer transformer : transformers) {
+			transform(transformer, corpora.get("mixed")); // Warm up
+
+			for (Map.Entry<String, byte[]> corpus : corpora.entrySet()) {
+				byte[] data = corpus.getValue();
+
+				long startTime = System.nanoTime();
+				byte[] transformedData = transform(transformer, data);
+				long compressTime = System.nanoTime() - startTime;
+
+				startTime = System.nanoTime();
+				byte[] untransformedData = untransform(transformer, transformedData);
+				long uncompressTime = System.nanoTime() - startTime;
+
+				assertArrayEquals("Corpus " + corpus.getKey() + " differs after " + transformer, data, untransformedData);
+
+				logger.log(Level.INFO, String.format("%-5s %-7s ratio %5.1f%%, compress %6.1f MB/s, uncompress %6.1f MB/s", transformer, corpus.getKey(),
+						100.0 * transformedData.length / data.length, getThroughput(data.length, compressTime), getThroughput(data.length, uncompressTime)));
+			}
+		}
+	}
+
+	private double getThroughput(long bytes, long nanos) {
+		return (bytes / 1024.0 / 1024.0) / (nanos / 1000000000.0);
+	}
+
+	private byte[] transform(Transformer transformer, byte[] data) throws IOException {
+		ByteArrayOutputStream transformedOutputStream = new ByteArrayOutputStream();
+		OutputStream outputStream = transformer.createOutputStream(transformedOutputStream);
+
+		outputStream.write(data);
+		outputStream.close();
+
+		return transformedOutputStream.toByteArray();
+	}
+
+	private byte[] untransform(Transformer transformer, byte[] transformedData) throws IOException {
+		InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(transformedData));
+		byte[] data = IOUtils.toByteArray(inputStream);
+
+		inputStream.close();
+		return data;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.config.IgnorePatternMatcher;
+import org.syncany.config.Logging;
+
+public class LongRunningIgnoredFilesBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(LongRunningIgnoredFilesBenchmarkTest.class.getSimpleName());
+
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testMatcherVsNaiveRegex() {
+		Random random = new Random(4711);
+		
+		List<String> ignoreRules = new ArrayList<String>();
+		List<String> naiveRegexRules = new ArrayList<String>();
+		List<String> filePaths = new ArrayList<String>();
+
+		for (int i = 0; i < 100; i++) {
+			ignoreRules.add("folder" + i + "/file" + i + ".txt");
+			ignoreRules.add("*.ext" + i);
+			ignoreRules.add("folder" + i + "/sub*/file?.dat");
+		}
+		
+		ignoreRules.add("regex:.*/temp[0-9]+/.*");
+
+		for (String ignoreRule : ignoreRules) {
+			naiveRegexRules.add(toNaiveRegex(ignoreRule));
+		}
+
+		for (int i = 0; i < 20000; i++) {
+			int folder = random.nextInt(150);
+			int sub = random.nextInt(10);
+			int ext = random.nextInt(150);
+
+			filePaths.add("folder" + folder + "/sub" + sub + "/file" + (i % 12) + "." + ((i % 2 == 0) ? "dat" : "ext" + ext));
+		}
+
+		IgnorePatternMatcher matcher = new IgnorePatternMatcher(ignoreRules);
+
+		// Naive: recompile every pattern for every path (previous behavior)
+		long naiveStartTime = System.currentTimeMillis();
+		int naiveIgnoredCount = 0;
+
+		for (String filePath : filePaths) {
+			for (String naiveRegexRule : naiveRegexRules) {
+				if (filePath.matches(naiveRegexRule)) {
+					naiveIgnoredCount++;
+					break;
+				}
+			}
+		}
+
+		long naiveDuration = System.currentTimeMillis() - naiveStartTime;
+
+		// Compiled matcher
+		long compiledStartTime = System.currentTimeMillis();
+		int compiledIgnoredCount = 0;
+
+		for (String filePath : filePaths) {
+			if (matcher.matches(filePath)) {
+				compiledIgnoredCount++;
+			}
+		}
+
+		long compiledDuration = System.currentTimeMillis() - compiledStartTime;
+
+		logger.log(Level.INFO, "Matched " + filePaths.size() + " paths against " + ignoreRules.size() + " rules: naive " + naiveDuration
+				+ " ms, compiled " + compiledDuration + " ms (" + compiledIgnoredCount + " ignored)");
+
+		assertEquals(naiveIgnoredCount, compiledIgnoredCount);
+		assertTrue(compiledIgnoredCount > 0);
+		assertTrue("Compiled matcher should be faster than naive matching", compiledDuration < naiveDuration);
+	}
+
+	private String toNaiveRegex(String ignoreRule) {
+		if (ignoreRule.startsWith("regex:")) {
+			return ignoreRule.substring(6);
+		}
+		else {
+			return "^" + ignoreRule.replace(".", "\\.").replace("*", ".*").replace("?", ".") + "$";
+		}
+	}
+}
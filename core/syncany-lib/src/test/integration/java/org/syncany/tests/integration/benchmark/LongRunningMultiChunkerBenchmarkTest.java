@@ -0,0 +1,126 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.IndexedMultiChunker;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.chunk.MultiChunker;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.config.Logging;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.util.StringUtil;
+
+public class LongRunningMultiChunkerBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(LongRunningMultiChunkerBenchmarkTest.class.getSimpleName());
+
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testExtractionZipVsIndexed() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 4 * 1024 * 1024);
+
+		MultiChunker[] multiChunkers = new MultiChunker[] { new ZipMultiChunker(8192), new IndexedMultiChunker(8192) };
+
+		for (MultiChunker multiChunker : multiChunkers) {
+			File multiChunkFile = new File(tempDir, "multichunk-" + multiChunker);
+			List<String> chunkChecksums = writeMultiChunk(new FixedChunker(8 * 1024), multiChunker, inputFile, multiChunkFile);
+
+			List<String> shuffledChunkChecksums = new ArrayList<String>(chunkChecksums);
+			Collections.shuffle(shuffledChunkChecksums, new Random(1));
+
+			byte[] buffer = new byte[4096];
+			long startTime = System.currentTimeMillis();
+
+			for (int run = 0; run < 10; run++) {
+				MultiChunk multiChunk = multiChunker.createMultiChunk(multiChunkFile);
+
+				for (String chunkChecksum : shuffledChunkChecksums) {
+					InputStream chunkInputStream = multiChunk.getChunkInputStream(StringUtil.fromHex(chunkChecksum));
+					assertNotNull("Chunk " + chunkChecksum + " not found in " + multiChunker, chunkInputStream);
+
+					while (-1 != chunkInputStream.read(buffer));
+					chunkInputStream.close();
+				}
+
+				multiChunk.close();
+			}
+
+			long randomAccessTime = System.currentTimeMillis() - startTime;
+			startTime = System.currentTimeMillis();
+
+			for (int run = 0; run < 10; run++) {
+				MultiChunk multiChunk = multiChunker.createMultiChunk(new FileInputStream(multiChunkFile));
+				int readChunkCount = 0;
+
+				while (null != multiChunk.read()) {
+					readChunkCount++;
+				}
+
+				multiChunk.close();
+				assertEquals(chunkChecksums.size(), readChunkCount);
+			}
+
+			long sequentialTime = System.currentTimeMillis() - startTime;
+
+			logger.log(Level.INFO, multiChunker + ": " + chunkChecksums.size() + " chunks, 10 runs; random access extraction " + randomAccessTime
+					+ " ms, sequential extraction " + sequentialTime + " ms, multichunk size " + multiChunkFile.length() + " bytes");
+		}
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private List<String> writeMultiChunk(Chunker chunker, MultiChunker multiChunker, File inputFile, File multiChunkFile) throws IOException {
+		List<String> chunkChecksums = new ArrayList<String>();
+		MultiChunk multiChunk = multiChunker.createMultiChunk(MultiChunkId.secureRandomMultiChunkId(), new FileOutputStream(multiChunkFile));
+		Enumeration<Chunk> chunkEnumeration = chunker.createChunks(inputFile);
+
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+
+			multiChunk.write(chunk);
+			chunkChecksums.add(StringUtil.toHex(chunk.getChecksum()));
+		}
+
+		multiChunk.close();
+		return chunkChecksums;
+	}
+}
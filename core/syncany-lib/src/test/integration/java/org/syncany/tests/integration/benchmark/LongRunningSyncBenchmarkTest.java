@@ -0,0 +1,114 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.syncany.config.Logging;
+import org.syncany.plugins.transfer.TransferMetrics;
+import org.syncany.plugins.transfer.TransferMetrics.TransferCallMetrics;
+import org.syncany.tests.integration.benchmark.BenchmarkReport.OperationSummary;
+import org.syncany.tests.integration.benchmark.BenchmarkReport.OperationTiming;
+
+public class LongRunningSyncBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(LongRunningSyncBenchmarkTest.class.getSimpleName());
+
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testBenchmarkLocal() throws Exception {
+		BenchmarkProfile profile = new BenchmarkProfile("local");
+		profile.applySystemProperties();
+
+		runAndAssertBenchmark(profile);
+	}
+
+	@Test
+	public void testBenchmarkSmbLikeLatency() throws Exception {
+		BenchmarkProfile profile = new BenchmarkProfile("smb-latency");
+
+		profile.setFiles(100);
+		profile.setRequestLatencyMillis(5);
+		profile.setLatencyJitterMillis(2);
+		profile.setListLatencyPerEntryMicros(20);
+		profile.setBandwidthKBps(10 * 1024);
+		profile.applySystemProperties();
+
+		BenchmarkReport report = runAndAssertBenchmark(profile);
+
+		// Every upload must at least take the injected request latency
+		for (OperationTiming timing : report.getTimings()) {
+			if (timing.getMetrics() != null) {
+				TransferCallMetrics uploadMetrics = timing.getMetrics().getTransferMetrics().getCallMetrics(TransferMetrics.METHOD_UPLOAD);
+
+				if (uploadMetrics != null) {
+					assertTrue(uploadMetrics.getTotalTimeNanos() >= uploadMetrics.getCalls() * profile.getRequestLatencyMillis() * 1000000L);
+				}
+			}
+		}
+	}
+
+	private BenchmarkReport runAndAssertBenchmark(BenchmarkProfile profile) throws Exception {
+		BenchmarkReport report = new BenchmarkRunner(profile).run();
+		File reportFile = report.writeJsonFile();
+
+		logger.log(Level.INFO, "Benchmark " + profile.getName() + " took " + report.getDurationMillis() + " ms, report written to " + reportFile);
+
+		int otherClients = profile.getClients() - 1;
+
+		assertSummary(report, BenchmarkRunner.OPERATION_STATUS, profile.getRounds());
+		assertSummary(report, BenchmarkRunner.OPERATION_UP, profile.getRounds());
+		assertSummary(report, BenchmarkRunner.OPERATION_DOWN, (profile.getRounds() + 1) * otherClients);
+		assertSummary(report, BenchmarkRunner.OPERATION_LS, profile.getRounds() * profile.getClients());
+		assertSummary(report, BenchmarkRunner.OPERATION_CLEANUP, 1);
+
+		assertTrue(report.getSummary(BenchmarkRunner.OPERATION_UP).getBytesUploaded() > 0);
+		assertTrue(report.getSummary(BenchmarkRunner.OPERATION_DOWN).getBytesDownloaded() > 0);
+
+		String reportJson = FileUtils.readFileToString(reportFile);
+
+		assertTrue(reportJson.contains("\"operation\": \"up\""));
+		assertTrue(reportJson.contains("\"phase\": \"INDEX\""));
+
+		// Only keep reports if a report folder was given explicitly
+		if (System.getProperty(BenchmarkReport.REPORT_DIR_PROPERTY) == null) {
+			FileUtils.deleteQuietly(reportFile);
+		}
+
+		return report;
+	}
+
+	private void assertSummary(BenchmarkReport report, String operation, int expectedCount) {
+		OperationSummary summary = report.getSummary(operation);
+
+		assertNotNull("Missing summary for " + operation, summary);
+		assertEquals(expectedCount, summary.getCount());
+		assertTrue(summary.getMinMillis() <= summary.getMeanMillis());
+		assertTrue(summary.getMeanMillis() <= summary.getMaxMillis());
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+/**
+ * Creates and changes the files of a synthetic repository, as described by a
+ * {@link BenchmarkProfile}. All random decisions are derived from the profile's
+ * seed, so that runs with the same profile create the same files.
+ *
+ * <p>File sizes are distributed log-uniformly between the minimum and maximum size,
+ * i.e. there are as many files between 1 KB and 10 KB as between 10 KB and 100 KB. Duplicates
+ * are exact copies of previously created files. Files are spread over folders
+ * of at most 100 files each.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SyntheticRepositoryGenerator {
+	private static final int FILES_PER_FOLDER = 100;
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private BenchmarkProfile profile;
+	private Random random;
+	private int fileCounter;
+
+	public SyntheticRepositoryGenerator(BenchmarkProfile profile) {
+		this.profile = profile;
+		this.random = new Random(profile.getSeed());
+		this.fileCounter = 0;
+	}
+
+	/**
+	 * Creates the given number of new files in the given local folder. A share of the
+	 * files (see {@link BenchmarkProfile#getDuplicationRatio()}) are duplicates of existing files.
+	 */
+	public List<File> createFiles(File localDir, int count) throws IOException {
+		List<File> existingFiles = listFiles(localDir);
+		List<File> newFiles = new ArrayList<File>();
+
+		for (int i = 0; i < count; i++) {
+			File newFile = createFile(localDir, existingFiles);
+
+			existingFiles.add(newFile);
+			newFiles.add(newFile);
+		}
+
+		return newFiles;
+	}
+
+	/**
+	 * Changes a share of the files in the given local folder (see {@link BenchmarkProfile#getChurnRate()}):
+	 * Half of the affected files are modified, a quarter are deleted, and for the last
+	 * quarter new files are created.
+	 *
+	 * @return Number of changed, deleted or created files
+	 */
+	public int applyChurn(File localDir) throws IOException {
+		List<File> existingFiles = listFiles(localDir);
+		int churnCount = (int) Math.ceil(profile.getChurnRate() * existingFiles.size());
+
+		for (int i = 0; i < churnCount; i++) {
+			double churnType = random.nextDouble();
+
+			if (existingFiles.isEmpty() || churnType >= 0.75) {
+				existingFiles.add(createFile(localDir, existingFiles));
+			}
+			else if (churnType < 0.5) {
+				modifyFile(existingFiles.get(random.nextInt(existingFiles.size())));
+			}
+			else {
+				File deletedFile = existingFiles.remove(random.nextInt(existingFiles.size()));
+				deletedFile.delete();
+			}
+		}
+
+		return churnCount;
+	}
+
+	private File createFile(File localDir, List<File> existingFiles) throws IOException {
+		int fileNumber = fileCounter++;
+
+		File folder = new File(localDir, String.format("folder-%04d", fileNumber / FILES_PER_FOLDER));
+		File newFile = new File(folder, String.format("file-%06d.dat", fileNumber));
+
+		folder.mkdirs();
+
+		if (!existingFiles.isEmpty() && random.nextDouble() < profile.getDuplicationRatio()) {
+			FileUtils.copyFile(existingFiles.get(random.nextInt(existingFiles.size())), newFile);
+		}
+		else {
+			writeRandomFile(newFile, nextFileSize());
+		}
+
+		return newFile;
+	}
+
+	private void modifyFile(File file) throws IOException {
+		long lastModified = file.lastModified();
+		byte[] changedBytes = new byte[(int) Math.min(4096, Math.max(1, file.length() / 10))];
+		random.nextBytes(changedBytes);
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			long offset = (file.length() > changedBytes.length) ? (long) (random.nextDouble() * (file.length() - changedBytes.length)) : 0;
+
+			randomAccessFile.seek(offset);
+			randomAccessFile.write(changedBytes);
+		}
+
+		// Size does not change, so make sure the change is detected even with a coarse timestamp resolution
+		file.setLastModified(Math.max(System.currentTimeMillis(), lastModified + 2000));
+	}
+
+	private long nextFileSize() {
+		double minLog = Math.log(Math.max(1, profile.getMinFileSize()));
+		double maxLog = Math.log(Math.max(profile.getMinFileSize(), profile.getMaxFileSize()));
+
+		return Math.round(Math.exp(minLog + random.nextDouble() * (maxLog - minLog)));
+	}
+
+	private void writeRandomFile(File file, long size) throws IOException {
+		byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+
+		try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+			for (long written = 0; written < size; written += buffer.length) {
+				random.nextBytes(buffer);
+				fileOutputStream.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+			}
+		}
+	}
+
+	private List<File> listFiles(File localDir) throws IOException {
+		List<File> files = new ArrayList<File>();
+
+		for (File file : TestFileUtil.getLocalFiles(localDir).values()) {
+			if (file.isFile()) {
+				files.add(file);
+			}
+		}
+
+		Collections.sort(files);
+		return files;
+	}
+}
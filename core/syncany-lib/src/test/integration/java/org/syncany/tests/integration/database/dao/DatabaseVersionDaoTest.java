@@ -22,7 +22,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import java.sql.Connection;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -255,6 +257,73 @@ public class DatabaseVersionDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 	
+	@Test
+	public void testPersistDatabaseVersionWithLongPath() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set1.sql");
+		
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection);
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		FileHistorySqlDao fileHistoryDao = new FileHistorySqlDao(databaseConnection, fileVersionDao);
+		FileContentSqlDao fileContentDao = new FileContentSqlDao(databaseConnection);
+		DatabaseVersionSqlDao databaseVersionDao = new DatabaseVersionSqlDao(databaseConnection, chunkDao, fileContentDao, fileVersionDao, fileHistoryDao, multiChunkDao);
+		
+		// a. Create folder path longer than 255 characters (6 levels, 60 characters each)
+		StringBuilder parentPath = new StringBuilder();
+		
+		for (int i = 0; i < 5; i++) {
+			parentPath.append((parentPath.length() > 0) ? "/" : "").append(createPathSegment((char) ('a' + i)));
+		}
+		
+		String longPath = parentPath + "/" + createPathSegment('f');
+		
+		// b. Add new database version with one folder with that path
+		DatabaseVersion newDatabaseVersion = new DatabaseVersion();
+		DatabaseVersionHeader newDatabaseVersionHeader = new DatabaseVersionHeader();
+		
+		newDatabaseVersionHeader.setClient("C");
+		newDatabaseVersionHeader.setDate(new Date(1489977288000L));
+		newDatabaseVersionHeader.setVectorClock(TestDatabaseUtil.createVectorClock("A5,C1"));
+		
+		newDatabaseVersion.setHeader(newDatabaseVersionHeader);
+		
+		PartialFileHistory newFileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+		FileVersion newFileVersion = new FileVersion();
+		
+		newFileVersion.setVersion(1L);
+		newFileVersion.setPath(longPath);
+		newFileVersion.setStatus(FileStatus.NEW);
+		newFileVersion.setLastModified(new Date());
+		newFileVersion.setUpdated(new Date());
+		newFileVersion.setSize(4096L);
+		newFileVersion.setType(FileType.FOLDER);
+
+		newFileHistory.addFileVersion(newFileVersion);
+		newDatabaseVersion.addFileHistory(newFileHistory);
+		
+		// c. Persist database version
+		databaseVersionDao.writeDatabaseVersion(newDatabaseVersion);
+		
+		// Test
+		assertEquals(365, longPath.length());
+		assertEquals("5," + parentPath, TestSqlUtil.runSqlSelect("select depth, parent_path from fileversion_current where filehistory_id='"
+				+ newFileHistory.getFileHistoryId() + "'", databaseConnection));
+		
+		List<FileVersion> folderContents = fileVersionDao.getFileList(parentPath + "/%", null, false, false, false, EnumSet.allOf(FileType.class));
+		
+		assertEquals(1, folderContents.size());
+		assertEquals(longPath, folderContents.get(0).getPath());
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
 	@Test
 	public void testGetLocalDatabaseBranch1() throws Exception {
 		// Setup
@@ -461,4 +530,11 @@ public class DatabaseVersionDaoTest {
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}	
+	
+	private String createPathSegment(char character) {
+		char[] pathSegment = new char[60];
+		Arrays.fill(pathSegment, character);
+		
+		return new String(pathSegment);
+	}
 }
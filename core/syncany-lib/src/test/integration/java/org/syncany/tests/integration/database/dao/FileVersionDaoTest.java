@@ -21,11 +21,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.sql.Connection;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
 import org.syncany.config.Config;
 import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.dao.FileVersionSqlDao;
 import org.syncany.tests.util.TestConfigUtil;
@@ -61,4 +65,63 @@ public class FileVersionDaoTest {
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}	
+
+	@Test
+	public void testFileVersionGetFileListMatchesHistoricalQuery() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+				
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set2.sql");
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		Date farFuture = new Date(4133984461000L);
+		
+		List<FileVersion> currentRecursive = fileVersionDao.getFileList("", null, false, true, false, EnumSet.allOf(FileType.class));
+		List<FileVersion> historicalRecursive = fileVersionDao.getFileList("", farFuture, false, true, false, EnumSet.allOf(FileType.class));
+		
+		List<FileVersion> currentTopLevel = fileVersionDao.getFileList("", null, false, false, false, EnumSet.allOf(FileType.class));
+		List<FileVersion> historicalTopLevel = fileVersionDao.getFileList("", farFuture, false, false, false, EnumSet.allOf(FileType.class));
+		
+		// Test
+		assertEquals(50, currentRecursive.size());
+		assertEquals(historicalRecursive, currentRecursive);
+		assertEquals(historicalTopLevel, currentTopLevel);
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
+	@Test
+	public void testFileVersionCurrentFileTreeUpgrade() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+				
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set2.sql");
+		String expectedCurrentFileTree = TestSqlUtil.runSqlSelect("select * from fileversion_current order by filehistory_id", databaseConnection);
+
+		// Run: Simulate a database created before the table existed
+		databaseConnection.prepareStatement("drop table fileversion_current").execute();
+		databaseConnection.prepareStatement("drop function parent_path").execute();
+		databaseConnection.prepareStatement("drop function path_depth").execute();
+		databaseConnection.commit();
+		databaseConnection.close();
+		
+		databaseConnection = testConfig.createDatabaseConnection();
+		String actualCurrentFileTree = TestSqlUtil.runSqlSelect("select * from fileversion_current order by filehistory_id", databaseConnection);
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);				
+		Map<String, FileVersion> currentFileTree = fileVersionDao.getCurrentFileTree();
+
+		// Test
+		assertEquals(expectedCurrentFileTree, actualCurrentFileTree);
+		assertEquals(50, currentFileTree.size());
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
 }
@@ -0,0 +1,201 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.dao.AbstractSqlDao;
+import org.syncany.database.dao.ChunkSqlDao;
+import org.syncany.database.dao.SqlMetrics;
+import org.syncany.database.dao.SqlMetrics.ResourceMetrics;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestDatabaseUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class SqlMetricsTest {
+	@Test
+	public void testMetricsPerResource() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set1.sql");
+		SqlMetrics.reset();
+
+		// Run
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection);
+
+		Map<ChunkChecksum, ChunkEntry> chunksForA1 = chunkDao.getChunks(TestDatabaseUtil.createVectorClock("A1"));
+		Map<ChunkChecksum, ChunkEntry> chunksForA2 = chunkDao.getChunks(TestDatabaseUtil.createVectorClock("A2"));
+
+		// Test
+		ResourceMetrics chunkMetrics = getResourceMetrics("chunk.select.all.getChunksForDatabaseVersion.sql");
+
+		assertNotNull(chunkMetrics);
+		assertEquals(2, chunkMetrics.getExecutions());
+		assertEquals(chunksForA1.size() + chunksForA2.size(), chunkMetrics.getRowCount());
+		assertTrue(chunkMetrics.getExecutionTimeNanos() >= chunkMetrics.getMaxExecutionTimeNanos());
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testStatementReusedAfterClose() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set1.sql");
+		StatementExposingDao dao = new StatementExposingDao(databaseConnection);
+
+		// Run
+		PreparedStatement firstStatement = dao.getStatement("chunk.select.all.loadChunkCache.sql");
+		PreparedStatement firstUnderlyingStatement = firstStatement.unwrap(PreparedStatement.class);
+
+		int firstRowCount = countRows(firstStatement);
+		firstStatement.close();
+
+		PreparedStatement secondStatement = dao.getStatement("chunk.select.all.loadChunkCache.sql");
+		PreparedStatement nestedStatement = dao.getStatement("chunk.select.all.loadChunkCache.sql");
+
+		int secondRowCount = countRows(secondStatement);
+
+		// Test
+		assertTrue(firstStatement.isClosed());
+		assertFalse(secondStatement.isClosed());
+		assertSame(firstUnderlyingStatement, secondStatement.unwrap(PreparedStatement.class));
+		assertNotSame(firstUnderlyingStatement, nestedStatement.unwrap(PreparedStatement.class));
+		assertEquals(firstRowCount, secondRowCount);
+
+		// Tear down
+		secondStatement.close();
+		nestedStatement.close();
+
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testStatementCachePerConnection() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection1 = testConfig.createDatabaseConnection();
+		Connection databaseConnection2 = testConfig.createDatabaseConnection();
+
+		StatementExposingDao dao1 = new StatementExposingDao(databaseConnection1);
+		StatementExposingDao dao2 = new StatementExposingDao(databaseConnection2);
+
+		// Run
+		PreparedStatement statement1 = dao1.getStatement("chunk.select.all.loadChunkCache.sql");
+		PreparedStatement underlyingStatement1 = statement1.unwrap(PreparedStatement.class);
+		statement1.close();
+
+		PreparedStatement statement2 = dao2.getStatement("chunk.select.all.loadChunkCache.sql");
+		PreparedStatement underlyingStatement2 = statement2.unwrap(PreparedStatement.class);
+		statement2.close();
+
+		// Test
+		assertNotSame(underlyingStatement1, underlyingStatement2);
+		assertFalse(underlyingStatement1.isClosed());
+
+		databaseConnection1.close();
+
+		assertTrue(underlyingStatement1.isClosed());
+		assertFalse(underlyingStatement2.isClosed());
+
+		// Tear down
+		databaseConnection2.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testStatementsNotCachedForUnwrappedConnection() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		StatementExposingDao dao = new StatementExposingDao(databaseConnection.unwrap(Connection.class));
+
+		// Run
+		PreparedStatement firstStatement = dao.getStatement("chunk.select.all.loadChunkCache.sql");
+		PreparedStatement firstUnderlyingStatement = firstStatement.unwrap(PreparedStatement.class);
+		firstStatement.close();
+
+		PreparedStatement secondStatement = dao.getStatement("chunk.select.all.loadChunkCache.sql");
+
+		// Test
+		assertTrue(firstUnderlyingStatement.isClosed());
+		assertNotSame(firstUnderlyingStatement, secondStatement.unwrap(PreparedStatement.class));
+
+		// Tear down
+		secondStatement.close();
+
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	private ResourceMetrics getResourceMetrics(String resourceId) {
+		for (ResourceMetrics resourceMetrics : SqlMetrics.getSnapshot()) {
+			if (resourceId.equals(resourceMetrics.getResourceId())) {
+				return resourceMetrics;
+			}
+		}
+
+		return null;
+	}
+
+	private int countRows(PreparedStatement preparedStatement) throws SQLException {
+		int rowCount = 0;
+
+		try (ResultSet resultSet = preparedStatement.executeQuery()) {
+			while (resultSet.next()) {
+				rowCount++;
+			}
+		}
+
+		return rowCount;
+	}
+
+	private static class StatementExposingDao extends AbstractSqlDao {
+		public StatementExposingDao(Connection connection) {
+			super(connection);
+		}
+
+		@Override
+		public PreparedStatement getStatement(String resourceId) throws SQLException {
+			return super.getStatement(resourceId);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.config.LocalEventBus;
+import org.syncany.config.Logging;
+import org.syncany.operations.OperationMetrics;
+import org.syncany.operations.OperationMetrics.Phase;
+import org.syncany.operations.daemon.messages.GetOperationMetricsFolderResponse;
+import org.syncany.operations.daemon.messages.GetTransferMetricsFolderResponse;
+import org.syncany.operations.daemon.messages.OperationMetricsSyncExternalEvent;
+import org.syncany.operations.daemon.messages.api.XmlMessageFactory;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.operations.up.UpOperation;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.plugins.transfer.TransferMetrics;
+import org.syncany.plugins.transfer.TransferMetrics.TransferCallMetrics;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+import com.google.common.eventbus.Subscribe;
+
+public class OperationMetricsTest {
+	static {
+		Logging.init();
+	}
+
+	private List<OperationMetrics> postedMetrics = new ArrayList<OperationMetrics>();
+
+	@Test
+	public void testUpAndDownMetrics() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		LocalEventBus.getInstance().register(this);
+
+		// Run
+		clientA.createNewFile("file1", 100 * 1024);
+		clientA.createNewFile("file2", 200 * 1024);
+
+		UpOperationResult upResult = clientA.up();
+		DownOperationResult downResult = clientB.down();
+
+		LocalEventBus.getInstance().unregister(this);
+
+		// Test 'up' metrics
+		OperationMetrics upMetrics = upResult.getMetrics();
+
+		assertNotNull(upMetrics);
+		assertEquals(UpOperation.ACTION_ID, upMetrics.getOperationName());
+		assertEquals(2, upMetrics.getFilesProcessed());
+		assertEquals(300 * 1024, upMetrics.getBytesProcessed());
+		assertNotNull(upMetrics.getPhase(Phase.INDEX));
+		assertNotNull(upMetrics.getPhase(Phase.UPLOAD));
+		assertNull(upMetrics.getPhase(Phase.ASSEMBLE));
+
+		TransferMetrics upTransferMetrics = upMetrics.getTransferMetrics();
+
+		assertTrue(upTransferMetrics.getCallMetrics(TransferMetrics.METHOD_UPLOAD).getCalls() > 0);
+		assertTrue(upTransferMetrics.getBytesUploaded() > 0);
+		assertEquals(0, upTransferMetrics.getBytesDownloaded());
+
+		// Test 'down' metrics
+		OperationMetrics downMetrics = downResult.getMetrics();
+
+		assertNotNull(downMetrics);
+		assertEquals(2, downMetrics.getFilesProcessed());
+		assertEquals(300 * 1024, downMetrics.getBytesProcessed());
+		assertNotNull(downMetrics.getPhase(Phase.DOWNLOAD));
+		assertNotNull(downMetrics.getPhase(Phase.ASSEMBLE));
+		assertTrue(downMetrics.getTransferMetrics().getBytesDownloaded() > 0);
+
+		// Test events
+		assertTrue(postedMetrics.contains(upMetrics));
+		assertTrue(postedMetrics.contains(downMetrics));
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testMetricsSerialization() throws Exception {
+		OperationMetrics metrics = new OperationMetrics(UpOperation.ACTION_ID);
+
+		metrics.addPhaseTime(Phase.INDEX, 5000000);
+		metrics.addPhaseTime(Phase.INDEX, 7000000);
+		metrics.addFilesProcessed(3);
+		metrics.getTransferMetrics().record(TransferMetrics.METHOD_UPLOAD, 2000000, 1234, false);
+		metrics.getTransferMetrics().record(TransferMetrics.METHOD_UPLOAD, 1000000, 0, true);
+		metrics.finish();
+
+		// XML (daemon API)
+		String responseXml = XmlMessageFactory.toXml(new GetOperationMetricsFolderResponse(1, "/some/folder", Arrays.asList(metrics)));
+		GetOperationMetricsFolderResponse response = (GetOperationMetricsFolderResponse) XmlMessageFactory.toResponse(responseXml);
+
+		OperationMetrics deserializedMetrics = response.getOperationMetrics().get(0);
+
+		assertEquals(UpOperation.ACTION_ID, deserializedMetrics.getOperationName());
+		assertEquals(3, deserializedMetrics.getFilesProcessed());
+		assertEquals(2, deserializedMetrics.getPhase(Phase.INDEX).getCount());
+		assertEquals(12, deserializedMetrics.getPhase(Phase.INDEX).getDurationMillis());
+		assertEquals(2, deserializedMetrics.getTransferMetrics().getCallMetrics(TransferMetrics.METHOD_UPLOAD).getCalls());
+		assertEquals(1, deserializedMetrics.getTransferMetrics().getCallMetrics(TransferMetrics.METHOD_UPLOAD).getErrors());
+		assertEquals(1234, deserializedMetrics.getTransferMetrics().getBytesUploaded());
+
+		// JSON (CLI)
+		String metricsJson = OperationMetrics.toJson(Arrays.asList(metrics));
+
+		assertTrue(metricsJson.contains("\"operationName\": \"up\""));
+		assertTrue(metricsJson.contains("\"phase\": \"INDEX\""));
+		assertTrue(metricsJson.contains("\"method\": \"upload\""));
+
+		// XML (daemon API, summed up transfer metrics)
+		String transferResponseXml = XmlMessageFactory.toXml(new GetTransferMetricsFolderResponse(2, "/some/folder", metrics.getTransferMetrics()));
+		GetTransferMetricsFolderResponse transferResponse = (GetTransferMetricsFolderResponse) XmlMessageFactory.toResponse(transferResponseXml);
+
+		TransferCallMetrics deserializedCallMetrics = transferResponse.getTransferMetrics().getCallMetrics(TransferMetrics.METHOD_UPLOAD);
+
+		assertEquals(2, deserializedCallMetrics.getCalls());
+		assertEquals(2, deserializedCallMetrics.getLatencyHistogram()[0] + deserializedCallMetrics.getLatencyHistogram()[1]);
+	}
+
+	@Test
+	public void testPhaseWallClockAndOverlap() throws Exception {
+		OperationMetrics metrics = new OperationMetrics(UpOperation.ACTION_ID);
+
+		// Upload measured (e.g. by another thread) while indexing
+		metrics.startPhase(Phase.INDEX);
+		Thread.sleep(50);
+		metrics.addPhaseTime(Phase.UPLOAD, 20000000);
+		Thread.sleep(50);
+		metrics.stopPhase(Phase.INDEX);
+
+		// Sequential phase
+		Thread.sleep(20);
+		metrics.addPhaseTime(Phase.PERSIST, 10000000);
+		metrics.finish();
+
+		long indexMillis = metrics.getPhase(Phase.INDEX).getDurationMillis();
+
+		assertTrue(indexMillis >= 100);
+		assertEquals(20, metrics.getPhase(Phase.UPLOAD).getDurationMillis());
+		assertTrue(Math.abs(indexMillis + 10 - metrics.getPhaseWallClockMillis()) <= 1);
+		assertTrue(Math.abs(20 - metrics.getPhaseOverlapMillis()) <= 1);
+		assertTrue(metrics.getPhaseWallClockMillis() <= metrics.getDurationMillis());
+	}
+
+	@Test
+	public void testTransferMetricsDisabled() throws Exception {
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		testConfig.setTransferMetricsEnabled(false);
+
+		TestFileUtil.createRandomFilesInDirectory(testConfig.getLocalDir(), 50 * 1024, 2);
+
+		UpOperationResult upResult = new UpOperation(testConfig).execute();
+		OperationMetrics upMetrics = upResult.getMetrics();
+
+		assertEquals(2, upMetrics.getFilesProcessed());
+		assertNotNull(upMetrics.getPhase(Phase.UPLOAD));
+		assertTrue(upMetrics.getTransferMetrics().getCalls().isEmpty());
+
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Subscribe
+	public void onOperationMetrics(OperationMetricsSyncExternalEvent metricsEvent) {
+		postedMetrics.add(metricsEvent.getMetrics());
+	}
+}
@@ -42,7 +42,7 @@ import org.syncany.tests.util.TestConfigUtil;
 import org.syncany.util.EnvironmentUtil;
 
 public class PluginOperationTest {
-	private static final int EXPECTED_NUM_PLUGINS = 3;
+	private static final int EXPECTED_NUM_PLUGINS = 4;
 
 	@Test
 	public void testPluginListLocalOnly() throws Exception {
@@ -63,7 +63,7 @@ public class PluginOperationTest {
 		assertEquals(PluginResultCode.OK, pluginResult.getResultCode());
 		assertEquals(pluginList.size(), pluginResult.getPluginList().size());
 
-		assertEquals(EXPECTED_NUM_PLUGINS, pluginResult.getPluginList().size()); // local and unreliable_local
+		assertEquals(EXPECTED_NUM_PLUGINS, pluginResult.getPluginList().size()); // local, unreliable_local, latency_local and dummy
 
 		for (ExtendedPluginInfo pluginInfo : pluginResult.getPluginList()) {
 			assertNull(pluginInfo.getRemotePluginInfo());
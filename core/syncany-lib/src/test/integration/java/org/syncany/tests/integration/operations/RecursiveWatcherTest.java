@@ -20,12 +20,14 @@ package org.syncany.tests.integration.operations;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -274,4 +276,50 @@ public class RecursiveWatcherTest {
 		// Tear down	
 		TestFileUtil.deleteDirectory(tempDir);
 	}	
+	
+	@Test
+	public void testWatchChangedPaths() throws Exception {
+		// Setup
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File subDir1 = new File(tempDir+"/subdir1");
+		File subDir2 = new File(tempDir+"/subdir2");
+		
+		subDir1.mkdir();
+		subDir2.mkdir();
+		
+		// Test
+		final AtomicBoolean eventOccurred = new AtomicBoolean(false);
+		
+		DefaultRecursiveWatcher watcher = new DefaultRecursiveWatcher(Paths.get(tempDir.getAbsolutePath()), new ArrayList<Path>(), 300, new WatchListener() {
+			@Override
+			public void watchEventsOccurred() {
+				eventOccurred.set(true);
+			}			
+		});
+		
+		// Start watcher and wait for watch service to set watch on all folders
+		watcher.start();		
+		Thread.sleep(150);
+		
+		// Initially, the watcher does not know what changed
+		assertNull(watcher.pollChangedPaths());
+		
+		// Event in 'subdir1' only 
+		TestFileUtil.createRandomFileInDirectory(subDir1, 10);
+		Thread.sleep(550);
+		
+		assertTrue(eventOccurred.get());
+		
+		Set<Path> changedPaths = watcher.pollChangedPaths();
+		
+		assertEquals(1, changedPaths.size());
+		assertTrue(changedPaths.contains(Paths.get(subDir1.getAbsolutePath())));
+		assertEquals(0, watcher.pollChangedPaths().size());
+
+		// Stop watcher (close watches)
+		watcher.stop();
+		
+		// Tear down
+		TestFileUtil.deleteDirectory(tempDir);
+	}
 }
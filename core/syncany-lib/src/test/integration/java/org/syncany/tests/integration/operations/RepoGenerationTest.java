@@ -0,0 +1,263 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.config.Logging;
+import org.syncany.config.to.RepoTO;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.operations.down.DownOperationResult.DownResultCode;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class RepoGenerationTest {
+	static {
+		Logging.init();
+	}
+
+	@Before
+	public void enableGenerationFile() {
+		TestConfigUtil.setRepoFormatVersion(RepoTO.FORMAT_VERSION_2);
+	}
+
+	@After
+	public void resetRepoFormatVersion() {
+		TestConfigUtil.setRepoFormatVersion(null);
+	}
+
+	@Test
+	public void testGenerationFileSkipsListing() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		File generationFile = new File(testConnection.getPath(), "databases/generation");
+
+		// A: Upload, must write generation file
+		clientA.createNewFile("file1");
+		clientA.up();
+
+		assertTrue(generationFile.exists());
+		String generationAfterFirstUp = readGenerationFile(clientA.getConfig(), generationFile);
+
+		// B: First down lists and remembers generation
+		DownOperationResult downResult = clientB.down();
+		assertEquals(DownResultCode.OK_WITH_REMOTE_CHANGES, downResult.getResultCode());
+
+		java.sql.Connection databaseConnectionB = DatabaseConnectionFactory.createConnection(clientB.getDatabaseFile());
+		assertEquals(generationAfterFirstUp, TestSqlUtil.runSqlSelect("select value from general_settings where key='repoGeneration'", databaseConnectionB));
+
+		// B: Second down does not list anything
+		downResult = clientB.down();
+		assertEquals(DownResultCode.OK_NO_REMOTE_CHANGES, downResult.getResultCode());
+		assertEquals(0, downResult.getLsRemoteResult().getUnknownRemoteDatabases().size());
+
+		// A: Upload again, must change generation file
+		clientA.createNewFile("file2");
+		clientA.up();
+
+		assertFalse(generationAfterFirstUp.equals(readGenerationFile(clientA.getConfig(), generationFile)));
+
+		downResult = clientB.down();
+		assertEquals(DownResultCode.OK_WITH_REMOTE_CHANGES, downResult.getResultCode());
+		assertTrue(clientB.getLocalFile("file2").exists());
+
+		// Tear down
+		databaseConnectionB.close();
+
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testMissingGenerationFileFallsBackToListing() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		File generationFile = new File(testConnection.getPath(), "databases/generation");
+
+		clientA.createNewFile("file1");
+		clientA.up();
+		clientB.down();
+
+		// A: Upload like an older client, i.e. without generation file
+		clientA.createNewFile("file2");
+		clientA.up();
+
+		generationFile.delete();
+
+		// B: Must list remote databases and find changes
+		DownOperationResult downResult = clientB.down();
+
+		assertEquals(DownResultCode.OK_WITH_REMOTE_CHANGES, downResult.getResultCode());
+		assertTrue(clientB.getLocalFile("file2").exists());
+
+		// B: Without generation file, every down lists the remote databases
+		downResult = clientB.down();
+		assertEquals(DownResultCode.OK_NO_REMOTE_CHANGES, downResult.getResultCode());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testUnchangedGenerationNotTrustedForever() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		File generationFile = new File(testConnection.getPath(), "databases/generation");
+
+		clientA.createNewFile("file1");
+		clientA.up();
+		clientB.down();
+
+		// A: Upload like an older client, i.e. generation file remains unchanged
+		byte[] oldGenerationFileContents = FileUtils.readFileToByteArray(generationFile);
+
+		clientA.createNewFile("file2");
+		clientA.up();
+
+		generationFile.delete();
+		FileUtils.writeByteArrayToFile(generationFile, oldGenerationFileContents);
+
+		// B: Generation is trusted, changes are not detected yet
+		DownOperationResult downResult = clientB.down();
+		assertEquals(DownResultCode.OK_NO_REMOTE_CHANGES, downResult.getResultCode());
+
+		// B: After the trust time, the remote databases are listed again
+		java.sql.Connection databaseConnectionB = DatabaseConnectionFactory.createConnection(clientB.getDatabaseFile());
+		databaseConnectionB.prepareStatement("update general_settings set value='0' where key='repoGenerationTime'").execute();
+		databaseConnectionB.commit();
+		databaseConnectionB.close();
+
+		downResult = clientB.down();
+
+		assertEquals(DownResultCode.OK_WITH_REMOTE_CHANGES, downResult.getResultCode());
+		assertTrue(clientB.getLocalFile("file2").exists());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testFailedGenerationUpdateDeletesStaleGenerationFile() throws Exception {
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(Arrays.asList(new String[] {
+				// List of failing operations (regex)
+				// Format: abs=<count> rel=<count> op=<connect|init|upload|...> <operation description>
+
+				".+move\\(temp-[A-Za-z]+-generation,generation\\)"
+		}));
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		File generationFile = new File(testConnection.getPath(), "databases/generation");
+
+		// A: Upload, generation file cannot be moved in place
+		clientA.createNewFile("file1");
+		clientA.up();
+
+		assertFalse(generationFile.exists());
+
+		// B: Remember a generation written by another client
+		writeGenerationFile(clientB.getConfig(), generationFile, "stalegeneration");
+		clientB.down();
+
+		// A: Upload again; failing to replace the generation file must not leave the old one behind
+		clientA.createNewFile("file2");
+		clientA.up();
+
+		assertFalse(generationFile.exists());
+
+		DownOperationResult downResult = clientB.down();
+
+		assertEquals(DownResultCode.OK_WITH_REMOTE_CHANGES, downResult.getResultCode());
+		assertTrue(clientB.getLocalFile("file2").exists());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testNoGenerationFileInDefaultRepoFormat() throws Exception {
+		// Setup
+		TestConfigUtil.setRepoFormatVersion(null);
+
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// A: Upload, must not write generation file
+		clientA.createNewFile("file1");
+		clientA.up();
+
+		assertFalse(new File(testConnection.getPath(), "databases/generation").exists());
+		assertFalse(new File(testConnection.getPath(), "generation").exists());
+
+		// B: Lists remote databases as before
+		DownOperationResult downResult = clientB.down();
+
+		assertEquals(DownResultCode.OK_WITH_REMOTE_CHANGES, downResult.getResultCode());
+		assertTrue(clientB.getLocalFile("file1").exists());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private String readGenerationFile(Config config, File generationFile) throws Exception {
+		try (InputStream generationInputStream = config.getTransformer().createInputStream(new FileInputStream(generationFile))) {
+			return IOUtils.toString(generationInputStream).trim();
+		}
+	}
+
+	private void writeGenerationFile(Config config, File generationFile, String generation) throws Exception {
+		try (OutputStream generationOutputStream = config.getTransformer().createOutputStream(new FileOutputStream(generationFile))) {
+			IOUtils.write(generation, generationOutputStream);
+		}
+	}
+}
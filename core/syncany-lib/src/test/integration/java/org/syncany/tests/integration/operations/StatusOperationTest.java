@@ -18,9 +18,12 @@
 package org.syncany.tests.integration.operations;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 import org.syncany.config.Config;
@@ -161,4 +164,69 @@ public class StatusOperationTest {
 		// Cleanup 
 		TestConfigUtil.deleteTestLocalConfigAndData(config);
 	}
+	
+	@Test
+	public void testStatusWithScopePaths() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+		
+		File folder1 = new File(config.getLocalDir(), "folder1");
+		File folder2 = new File(config.getLocalDir(), "folder2");
+		File deletedFolder = new File(folder2, "deletedfolder");
+		
+		folder1.mkdir();
+		deletedFolder.mkdirs();
+		
+		File fileInFolder1 = TestFileUtil.createRandomFileInDirectory(folder1, 100);
+		TestFileUtil.createRandomFileInDirectory(folder2, 100);
+		TestFileUtil.createRandomFileInDirectory(deletedFolder, 100);
+		
+		new UpOperation(config).execute();				
+		
+		// Change file in 'folder1', add file/subfolder to 'folder2', delete 'folder2/deletedfolder'  
+		Thread.sleep(2000);
+		
+		TestFileUtil.changeRandomPartOfBinaryFile(fileInFolder1);
+		TestFileUtil.createRandomFileInDirectory(folder2, 100);
+		
+		File newSubFolder = new File(folder2, "newsubfolder");
+		newSubFolder.mkdir();
+		TestFileUtil.createRandomFileInDirectory(newSubFolder, 100);
+		
+		TestFileUtil.deleteDirectory(deletedFolder);
+		
+		// Run 'status' limited to 'folder2'; this should NOT detect the change in 'folder1'
+		Set<String> scopePaths = new HashSet<String>();
+		scopePaths.add("folder2");
+
+		StatusOperationOptions statusOptions = new StatusOperationOptions();
+		statusOptions.setScopePaths(scopePaths);
+
+		ChangeSet changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		
+		assertEquals(3, changeSet.getNewFiles().size());
+		assertEquals(0, changeSet.getChangedFiles().size());
+		assertEquals(2, changeSet.getDeletedFiles().size());
+		assertTrue(changeSet.getNewFiles().contains("folder2/newsubfolder"));
+		assertTrue(changeSet.getDeletedFiles().contains("folder2/deletedfolder"));
+		
+		// Run 'status' limited to 'folder1'
+		scopePaths.clear();
+		scopePaths.add("folder1");
+
+		changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+
+		assertEquals(0, changeSet.getNewFiles().size());
+		assertEquals(1, changeSet.getChangedFiles().size());
+		assertEquals(0, changeSet.getDeletedFiles().size());
+		
+		// Run 'status' with empty scope; nothing to analyze
+		scopePaths.clear();
+
+		changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		assertEquals(false, changeSet.hasChanges());
+		
+		// Cleanup 
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
 }
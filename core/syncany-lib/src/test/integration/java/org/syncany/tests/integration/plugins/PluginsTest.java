@@ -35,7 +35,7 @@ public class PluginsTest {
 	public void testPluginsList() {
 		Collection<Plugin> pluginList = Plugins.list();
 
-		List<String> expectedPluginIds = Arrays.asList(new String[] { "local", "unreliable_local", "dummy" });
+		List<String> expectedPluginIds = Arrays.asList(new String[] { "local", "unreliable_local", "latency_local", "dummy" });
 		List<String> actualPluginIds = new ArrayList<String>();
 
 		for (Plugin plugin : pluginList) {
@@ -0,0 +1,134 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.sql.Connection;
+
+import org.junit.Test;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.operations.up.UpOperationResult.UpResultCode;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class BatchedUpScenarioTest {
+	@Test
+	public void testUpWithTransactionFileLimit() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions batchedUpOperationOptions = new UpOperationOptions();
+		batchedUpOperationOptions.setTransactionFileLimit(3);
+
+		// Run
+		for (int i = 0; i < 10; i++) {
+			clientA.createNewFile("A-file" + i + ".jpg");
+		}
+
+		UpOperationResult upResult = clientA.up(batchedUpOperationOptions);
+
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+		assertEquals(10, upResult.getChangeSet().getNewFiles().size());
+
+		Connection databaseConnectionA = DatabaseConnectionFactory.createConnection(clientA.getDatabaseFile());
+		assertEquals("4", TestSqlUtil.runSqlSelect("select count(*) from databaseversion", databaseConnectionA));
+
+		clientB.down();
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Run (rename and delete; deleted files are detected in the last batch)
+		clientA.moveFile("A-file0.jpg", "A-file0-renamed.jpg");
+		clientA.deleteFile("A-file1.jpg");
+
+		for (int i = 10; i < 15; i++) {
+			clientA.createNewFile("A-file" + i + ".jpg");
+		}
+
+		upResult = clientA.up(batchedUpOperationOptions);
+
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+		assertEquals(1, upResult.getChangeSet().getDeletedFiles().size());
+		assertEquals("6", TestSqlUtil.runSqlSelect("select count(*) from databaseversion", databaseConnectionA));
+
+		clientB.down();
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testUpWithTransactionFileLimitAndTypeChangeInEarlierBatch() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions batchedUpOperationOptions = new UpOperationOptions();
+		batchedUpOperationOptions.setTransactionFileLimit(3);
+
+		// Run
+		clientA.createNewFolder("A-type");
+
+		for (int i = 0; i < 6; i++) {
+			clientA.createNewFile("B-file" + i + ".jpg");
+		}
+
+		clientA.up();
+		clientB.down();
+
+		// Run (folder becomes file in the first batch, deleted files are detected in the last batch)
+		clientA.deleteFile("A-type");
+		clientA.createNewFile("A-type");
+
+		for (int i = 0; i < 6; i++) {
+			clientA.changeFile("B-file" + i + ".jpg");
+		}
+
+		UpOperationResult upResult = clientA.up(batchedUpOperationOptions);
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+
+		// Test: Folder history has been marked as deleted, only the new file history is left
+		Connection databaseConnectionA = DatabaseConnectionFactory.createConnection(clientA.getDatabaseFile());
+
+		assertEquals("4", TestSqlUtil.runSqlSelect("select count(*) from databaseversion", databaseConnectionA));
+		assertEquals("FILE", TestSqlUtil.runSqlSelect("select type from fileversion_master_last where path='A-type'", databaseConnectionA));
+
+		clientB.down();
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.operations.up.UpOperationResult.UpResultCode;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class ForceChecksumKnownContentScenarioTest {
+	@Test
+	public void testSwapContentsSameSizeAndModifiedDate() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run
+		File file1 = clientA.createNewFile("file1.jpg", 100 * 1024);
+		File file2 = clientA.createNewFile("file2.jpg", 100 * 1024);
+
+		clientA.upWithForceChecksum();
+		clientB.down();
+
+		// Swap the contents, keep size and modified dates; only a checksum reveals the change
+		long file1LastModified = file1.lastModified();
+		long file2LastModified = file2.lastModified();
+
+		byte[] file1Contents = FileUtils.readFileToByteArray(file1);
+		byte[] file2Contents = FileUtils.readFileToByteArray(file2);
+
+		FileUtils.writeByteArrayToFile(file1, file2Contents);
+		FileUtils.writeByteArrayToFile(file2, file1Contents);
+
+		file1.setLastModified(file1LastModified);
+		file2.setLastModified(file2LastModified);
+
+		UpOperationResult upResult = clientA.upWithForceChecksum();
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+		assertEquals(2, upResult.getChangeSet().getChangedFiles().size());
+
+		clientB.down();
+
+		// Test
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.operations.up.UpOperationResult.UpResultCode;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class PipelinedUploadScenarioTest {
+	@Test
+	public void testPipelinedUpload() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions pipelinedUpOperationOptions = new UpOperationOptions();
+		pipelinedUpOperationOptions.setPipelinedUploadEnabled(true);
+		pipelinedUpOperationOptions.setPipelinedUploadMaxPendingMultiChunks(1);
+
+		// Run (several multichunks)
+		for (int i = 0; i < 5; i++) {
+			clientA.createNewFile("A-file" + i + ".jpg", 2 * 1024 * 1024);
+		}
+
+		UpOperationResult upResult = clientA.up(pipelinedUpOperationOptions);
+		assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+
+		// Test: All multichunks have been moved to their final location, nothing left behind
+		assertTrue(new File(testConnection.getPath(), "multichunks").listFiles().length > 1);
+		assertEquals(0, new File(testConnection.getPath(), "transactions").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath(), "temporary").listFiles().length);
+
+		// Test: Uploaded multichunks have been removed from the cache
+		String[] cachedMultiChunks = clientA.getConfig().getCacheDir().list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("multichunk-");
+			}
+		});
+
+		assertEquals(0, cachedMultiChunks.length);
+
+		// Test: Other client can reconstruct all files
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testPipelinedUploadInterruptedWhileIndexing() throws Exception {
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// List of failing operations (regex)
+						// Format: abs=<count> rel=<count> op=<connect|init|upload|...> <operation description>
+
+						// Uploads: 1=action, 2=transaction part, 3=multichunk, 4=transaction part, 5=multichunk
+						"rel=(5|6|7) .+upload.+multichunk" // << 3 retries!!
+				}));
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions pipelinedUpOperationOptions = new UpOperationOptions();
+		pipelinedUpOperationOptions.setPipelinedUploadEnabled(true);
+		pipelinedUpOperationOptions.setPipelinedUploadMaxPendingMultiChunks(1);
+
+		int originalRetrySleepMillis = RetriableTransferManager.RETRY_SLEEP_MILLIS;
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 50;
+
+		try {
+			// Run (second multichunk fails while the indexer is still running)
+			for (int i = 0; i < 8; i++) {
+				clientA.createNewFile("A-file" + i + ".jpg", 2 * 1024 * 1024);
+			}
+
+			boolean upFailed = false;
+
+			try {
+				clientA.up(pipelinedUpOperationOptions);
+			}
+			catch (StorageException e) {
+				upFailed = true;
+			}
+
+			// Test: One partial transaction file per uploaded batch, first multichunk in temporary location
+			assertTrue(upFailed);
+			assertEquals(0, new File(testConnection.getPath(), "databases").listFiles().length);
+			assertEquals(2, new File(testConnection.getPath(), "transactions").listFiles().length);
+			assertFalse(new File(testConnection.getPath(), "temporary").listFiles().length == 0);
+
+			// Run (no more failures)
+			UpOperationResult upResult = clientA.up(pipelinedUpOperationOptions);
+			assertEquals(UpResultCode.OK_CHANGES_UPLOADED, upResult.getResultCode());
+
+			// Test: Temporary and transaction files of the interrupted 'up' have been rolled back
+			assertEquals(0, new File(testConnection.getPath(), "transactions").listFiles().length);
+			assertEquals(0, new File(testConnection.getPath(), "temporary").listFiles().length);
+
+			clientB.down();
+
+			assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+			assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+		}
+		finally {
+			RetriableTransferManager.RETRY_SLEEP_MILLIS = originalRetrySleepMillis;
+
+			// Tear down
+			clientA.deleteTestData();
+			clientB.deleteTestData();
+		}
+	}
+}
@@ -23,12 +23,15 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.Date;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.operations.restore.RestoreOperationOptions;
+import org.syncany.operations.restore.RestoreOperationResult;
+import org.syncany.operations.restore.RestoreOperationResult.RestoreResultCode;
 import org.syncany.plugins.transfer.TransferSettings;
 import org.syncany.tests.unit.util.TestFileUtil;
 import org.syncany.tests.util.TestClient;
@@ -163,4 +166,70 @@ public class RestoreFileScenarioTest {
 		clientA.deleteTestData();
 		TestFileUtil.deleteDirectory(tempDir);
 	}
+	
+	@Test
+	public void testRestoreSubtreeAtDate() throws Exception {
+		// Setup 
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();		
+		TestClient clientA = new TestClient("A", testConnection);
+				
+		// A new/up
+		clientA.createNewFolder("folder/subfolder");
+		clientA.createNewFolder("folder/emptyfolder");
+		clientA.createNewFolder("other");
+		clientA.createNewFile("folder/file1");		
+		clientA.createNewFile("folder/subfolder/file2");		
+		clientA.createNewFile("other/file3");		
+		clientA.upWithForceChecksum();
+		
+		File originalFile1 = new File(tempDir, "file1");
+		File originalFile2 = new File(tempDir, "file2");
+		
+		FileUtils.copyFile(clientA.getLocalFile("folder/file1"), originalFile1);
+		FileUtils.copyFile(clientA.getLocalFile("folder/subfolder/file2"), originalFile2);
+		
+		Thread.sleep(1500);
+		Date restoreDate = new Date();
+		Thread.sleep(1500);
+		
+		// A change/delete/up
+		clientA.changeFile("folder/file1");
+		clientA.deleteFile("folder/subfolder/file2");
+		clientA.createNewFile("folder/file4");		
+		clientA.upWithForceChecksum();
+		
+		// A restore
+		RestoreOperationOptions operationOptions = new RestoreOperationOptions();
+		
+		operationOptions.setSubtreePath("folder/");
+		operationOptions.setDate(restoreDate);
+		operationOptions.setRelativeTargetPath("restored-folder");
+		
+		RestoreOperationResult restoreResult = clientA.restore(operationOptions);
+		
+		assertEquals(RestoreResultCode.ACK, restoreResult.getResultCode());
+		assertEquals(2, restoreResult.getRestoredFileCount());
+		
+		assertTrue(clientA.getLocalFile("restored-folder/folder/emptyfolder").isDirectory());
+		assertTrue(clientA.getLocalFile("restored-folder/folder/file1").exists());
+		assertTrue(clientA.getLocalFile("restored-folder/folder/subfolder/file2").exists());
+		assertFalse(clientA.getLocalFile("restored-folder/folder/file4").exists());
+		assertFalse(clientA.getLocalFile("restored-folder/other").exists());
+		
+		assertEquals(
+				StringUtil.toHex(TestFileUtil.createChecksum(originalFile1)),
+				StringUtil.toHex(TestFileUtil.createChecksum(clientA.getLocalFile("restored-folder/folder/file1"))));
+		assertEquals(
+				StringUtil.toHex(TestFileUtil.createChecksum(originalFile2)),
+				StringUtil.toHex(TestFileUtil.createChecksum(clientA.getLocalFile("restored-folder/folder/subfolder/file2"))));
+		
+		// Restoring a non-existing folder fails
+		operationOptions.setSubtreePath("does-not-exist");
+		assertEquals(RestoreResultCode.NACK_NO_FILE, clientA.restore(operationOptions).getResultCode());
+		
+		// Tear down
+		clientA.deleteTestData();
+		TestFileUtil.deleteDirectory(tempDir);
+	}
 }
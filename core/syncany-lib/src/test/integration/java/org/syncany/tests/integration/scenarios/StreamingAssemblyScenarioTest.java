@@ -0,0 +1,79 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import org.junit.Test;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class StreamingAssemblyScenarioTest {
+	@Test
+	public void testStreamingAssembly() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run (files spanning several multichunks, and small files sharing a multichunk)
+		for (int i = 0; i < 3; i++) {
+			clientA.createNewFile("A-large-file" + i + ".jpg", 5 * 1024 * 1024);
+			clientA.createNewFile("A-small-file" + i + ".jpg", 20 * 1024);
+		}
+
+		clientA.upWithForceChecksum();
+		clientB.down();
+
+		// Test: All files have been assembled without decrypting multichunks to the cache
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+		assertEquals(0, getDecryptedMultiChunkFiles(clientB).length);
+
+		// Run (same content twice, cannot be streamed)
+		clientA.createNewFile("A-dup-file.jpg", 20 * 1024);
+		clientA.copyFile("A-dup-file.jpg", "A-dup-file-copy.jpg");
+		clientA.changeFile("A-large-file0.jpg");
+		clientA.upWithForceChecksum();
+		clientB.down();
+
+		// Test: Files have been assembled, partially from decrypted multichunks
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private String[] getDecryptedMultiChunkFiles(TestClient client) {
+		return client.getConfig().getCacheDir().list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("multichunk-") && name.endsWith("-decrypted");
+			}
+		});
+	}
+}
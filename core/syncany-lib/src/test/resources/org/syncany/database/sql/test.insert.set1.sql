@@ -63,6 +63,5 @@ INSERT INTO FILEVERSION VALUES('abcdeffaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa',1,5,'f
 INSERT INTO MULTICHUNK VALUES('dddddddddddddddddddddddddddddddddddddddd',5,55);
 INSERT INTO MULTICHUNK_CHUNK VALUES('dddddddddddddddddddddddddddddddddddddddd','ffffffffffffffffffffffffffffffffffffffff');
 
-
-
-
+-- Materialized current file tree (maintained by the DAOs, must be filled for test data)
+INSERT INTO FILEVERSION_CURRENT SELECT FV.*, PATH_DEPTH(FV.PATH), PARENT_PATH(FV.PATH) FROM FILEVERSION_MASTER_MAXVERSION FVMAX JOIN FILEVERSION_MASTER FV ON FVMAX.FILEHISTORY_ID=FV.FILEHISTORY_ID AND FVMAX.VERSION=FV.VERSION;
@@ -276,5 +276,5 @@ INSERT INTO KNOWN_DATABASES VALUES(0,'B',1);
 INSERT INTO KNOWN_DATABASES VALUES(1,'B',2);
 INSERT INTO KNOWN_DATABASES VALUES(2,'B',3);
 
-
-
+-- Materialized current file tree (maintained by the DAOs, must be filled for test data)
+INSERT INTO FILEVERSION_CURRENT SELECT FV.*, PATH_DEPTH(FV.PATH), PARENT_PATH(FV.PATH) FROM FILEVERSION_MASTER_MAXVERSION FVMAX JOIN FILEVERSION_MASTER FV ON FVMAX.FILEHISTORY_ID=FV.FILEHISTORY_ID AND FVMAX.VERSION=FV.VERSION;
@@ -0,0 +1,112 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.latency_local;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+
+import org.syncany.config.Config;
+import org.syncany.plugins.local.LocalTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * Delays all operations of the {@link LocalTransferManager} as defined by
+ * the {@link LatencyLocalTransferSettings}: Every operation is delayed by the
+ * request latency (plus jitter), listings by a latency per entry, and uploads and
+ * downloads by the time it takes to transfer the file with the given bandwidth.
+ */
+public class LatencyLocalTransferManager extends LocalTransferManager {
+	private LatencyLocalTransferSettings connection;
+	private Random random;
+
+	public LatencyLocalTransferManager(LatencyLocalTransferSettings connection, Config config) {
+		super(connection, config);
+
+		this.connection = connection;
+		this.random = new Random();
+	}
+
+	@Override
+	public void connect() throws StorageException {
+		injectLatency(0, 0);
+		super.connect();
+	}
+
+	@Override
+	public void init(boolean createIfRequired) throws StorageException {
+		injectLatency(0, 0);
+		super.init(createIfRequired);
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		super.download(remoteFile, localFile);
+		injectLatency(localFile.length(), 0);
+	}
+
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		injectLatency(localFile.length(), 0);
+		super.upload(localFile, remoteFile);
+	}
+
+	@Override
+	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
+		injectLatency(0, 0);
+		super.move(sourceFile, targetFile);
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		injectLatency(0, 0);
+		return super.delete(remoteFile);
+	}
+
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+		Map<String, T> remoteFiles = super.list(remoteFileClass);
+		injectLatency(0, remoteFiles.size());
+
+		return remoteFiles;
+	}
+
+	private void injectLatency(long transferredBytes, int listedEntries) throws StorageException {
+		long latencyMicros = connection.getRequestLatencyMillis() * 1000L;
+
+		if (connection.getLatencyJitterMillis() > 0) {
+			latencyMicros += random.nextInt(connection.getLatencyJitterMillis() * 1000);
+		}
+
+		if (connection.getBandwidthKBps() > 0) {
+			latencyMicros += transferredBytes * 1000000L / (connection.getBandwidthKBps() * 1024L);
+		}
+
+		latencyMicros += (long) listedEntries * connection.getListLatencyPerEntryMicros();
+
+		if (latencyMicros > 0) {
+			try {
+				Thread.sleep(latencyMicros / 1000, (int) (latencyMicros % 1000) * 1000);
+			}
+			catch (InterruptedException e) {
+				throw new StorageException("Interrupted while injecting latency", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.latency_local;
+
+import org.syncany.plugins.transfer.TransferPlugin;
+
+/**
+ * The latency local plugin can be used for test purposes and benchmarks to
+ * simulate a slow backend storage (e.g. a Samba share over a WAN link) offline. Each
+ * operation of the plugin is delayed by a configurable round-trip latency, and uploads
+ * and downloads are additionally throttled to a configurable bandwidth.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class LatencyLocalTransferPlugin extends TransferPlugin {
+	public LatencyLocalTransferPlugin() {
+		super("latency_local");
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.latency_local;
+
+import org.simpleframework.xml.Element;
+import org.syncany.plugins.local.LocalTransferSettings;
+
+public class LatencyLocalTransferSettings extends LocalTransferSettings {
+	@Element(required = false)
+	private int requestLatencyMillis;
+
+	@Element(required = false)
+	private int latencyJitterMillis;
+
+	@Element(required = false)
+	private int listLatencyPerEntryMicros;
+
+	@Element(required = false)
+	private int bandwidthKBps;
+
+	public LatencyLocalTransferSettings() {
+		super();
+
+		this.requestLatencyMillis = 0;
+		this.latencyJitterMillis = 0;
+		this.listLatencyPerEntryMicros = 0;
+		this.bandwidthKBps = 0;
+	}
+
+	/**
+	 * Round-trip latency added to every operation, in milliseconds
+	 */
+	public int getRequestLatencyMillis() {
+		return requestLatencyMillis;
+	}
+
+	public void setRequestLatencyMillis(int requestLatencyMillis) {
+		this.requestLatencyMillis = requestLatencyMillis;
+	}
+
+	/**
+	 * Maximum random latency added on top of the request latency, in milliseconds
+	 */
+	public int getLatencyJitterMillis() {
+		return latencyJitterMillis;
+	}
+
+	public void setLatencyJitterMillis(int latencyJitterMillis) {
+		this.latencyJitterMillis = latencyJitterMillis;
+	}
+
+	/**
+	 * Latency added per listed file, in microseconds
+	 */
+	public int getListLatencyPerEntryMicros() {
+		return listLatencyPerEntryMicros;
+	}
+
+	public void setListLatencyPerEntryMicros(int listLatencyPerEntryMicros) {
+		this.listLatencyPerEntryMicros = listLatencyPerEntryMicros;
+	}
+
+	/**
+	 * Bandwidth of uploads and downloads in KB/s, or 0 if unlimited
+	 */
+	public int getBandwidthKBps() {
+		return bandwidthKBps;
+	}
+
+	public void setBandwidthKBps(int bandwidthKBps) {
+		this.bandwidthKBps = bandwidthKBps;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.ChunkBufferPool;
+import org.syncany.chunk.Chunker;
+import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.TttdChunker;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.util.FileUtil;
+
+public class ChunkBufferPoolTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testReleasedBufferIsReused() {
+		ChunkBufferPool bufferPool = new ChunkBufferPool(1024, 2);
+
+		byte[] buffer1 = bufferPool.acquire();
+		byte[] buffer2 = bufferPool.acquire();
+
+		assertEquals(1024, buffer1.length);
+		assertNotSame(buffer1, buffer2);
+
+		bufferPool.release(buffer1);
+		assertSame(buffer1, bufferPool.acquire());
+	}
+
+	@Test
+	public void testPoolIsBounded() {
+		ChunkBufferPool bufferPool = new ChunkBufferPool(1024, 2);
+
+		bufferPool.release(new byte[1024]);
+		bufferPool.release(new byte[1024]);
+		bufferPool.release(new byte[1024]);
+		bufferPool.release(new byte[512]); // Wrong size, ignored
+
+		assertEquals(2, bufferPool.getPooledBufferCount());
+	}
+
+	@Test
+	public void testReleasedChunksReassembleFile() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 3 * 1024 * 1024 + 13);
+		byte[] inputFileChecksum = FileUtil.createChecksum(inputFile, "SHA1");
+
+		for (Chunker chunker : new Chunker[] { new FixedChunker(64 * 1024), new TttdChunker(16 * 1024) }) {
+			ByteArrayOutputStream reassembledFile = new ByteArrayOutputStream();
+			Enumeration<Chunk> chunkEnumeration = chunker.createChunks(inputFile);
+			Chunk lastChunk = null;
+
+			while (chunkEnumeration.hasMoreElements()) {
+				lastChunk = chunkEnumeration.nextElement();
+				reassembledFile.write(lastChunk.getContent(), 0, lastChunk.getSize());
+
+				// Buffer is reused for the next chunk
+				lastChunk.release();
+			}
+
+			assertEquals(inputFile.length(), reassembledFile.size());
+			assertArrayEquals(inputFileChecksum, lastChunk.getFileChecksum());
+			assertArrayEquals(inputFileChecksum, MessageDigest.getInstance("SHA1").digest(reassembledFile.toByteArray()));
+		}
+	}
+}
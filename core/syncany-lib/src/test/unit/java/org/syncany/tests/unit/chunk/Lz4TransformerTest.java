@@ -0,0 +1,201 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.Lz4Transformer;
+import org.syncany.chunk.Transformer;
+
+public class Lz4TransformerTest {
+	@Test
+	public void testRoundTripCorpora() throws Exception {
+		for (Map.Entry<String, byte[]> corpus : createCorpora(1024 * 1024).entrySet()) {
+			byte[] transformedData = transform(new Lz4Transformer(), corpus.getValue());
+			assertArrayEquals("Corpus " + corpus.getKey() + " differs.", corpus.getValue(), untransform(new Lz4Transformer(), transformedData));
+		}
+	}
+
+	@Test
+	public void testRoundTripEdgeSizes() throws Exception {
+		Random random = new Random(1);
+		int[] sizes = new int[] { 0, 1, 4, 12, 13, 14, 255, 65535, 65536, 65537, 200000 };
+
+		for (int size : sizes) {
+			byte[] sameBytes = new byte[size];
+			Arrays.fill(sameBytes, (byte) 'a');
+
+			byte[] randomBytes = new byte[size];
+			random.nextBytes(randomBytes);
+
+			assertArrayEquals(sameBytes, untransform(new Lz4Transformer(), transform(new Lz4Transformer(), sameBytes)));
+			assertArrayEquals(randomBytes, untransform(new Lz4Transformer(), transform(new Lz4Transformer(), randomBytes)));
+		}
+	}
+
+	@Test
+	public void testRoundTripSingleByteWrites() throws Exception {
+		byte[] data = createCorpora(100000).get("text");
+
+		ByteArrayOutputStream transformedOutputStream = new ByteArrayOutputStream();
+		OutputStream outputStream = new Lz4Transformer().createOutputStream(transformedOutputStream);
+
+		for (byte b : data) {
+			outputStream.write(b);
+		}
+
+		outputStream.close();
+
+		InputStream inputStream = new Lz4Transformer().createInputStream(new ByteArrayInputStream(transformedOutputStream.toByteArray()));
+		ByteArrayOutputStream untransformedOutputStream = new ByteArrayOutputStream();
+		int read;
+
+		while (-1 != (read = inputStream.read())) {
+			untransformedOutputStream.write(read);
+		}
+
+		inputStream.close();
+		assertArrayEquals(data, untransformedOutputStream.toByteArray());
+	}
+
+	@Test
+	public void testIncompressibleDataStoredRaw() throws Exception {
+		byte[] randomData = createCorpora(1024 * 1024).get("random");
+		byte[] transformedData = transform(new Lz4Transformer(), randomData);
+
+		// Header (5 bytes), 16 blocks with 5 bytes block header, end marker (1 byte)
+		assertEquals(randomData.length + 5 + 16 * 5 + 1, transformedData.length);
+	}
+
+	@Test
+	public void testCompressibleDataCompressed() throws Exception {
+		byte[] textData = createCorpora(1024 * 1024).get("text");
+		byte[] transformedData = transform(new Lz4Transformer(), textData);
+
+		assertTrue("Expected text to compress to less than half, but was " + transformedData.length + " bytes",
+				transformedData.length < textData.length / 2);
+	}
+
+	@Test
+	public void testCorruptStreams() throws Exception {
+		byte[] transformedData = transform(new Lz4Transformer(), createCorpora(200000).get("text"));
+
+		assertInvalidStream(new byte[0]);
+		assertInvalidStream("NotLz4".getBytes());
+		assertInvalidStream(Arrays.copyOf(transformedData, transformedData.length - 1)); // No end marker
+		assertInvalidStream(Arrays.copyOf(transformedData, transformedData.length / 2));
+
+		byte[] corruptTransformedData = Arrays.copyOf(transformedData, transformedData.length);
+		corruptTransformedData[5] = 7; // Unknown block type
+
+		assertInvalidStream(corruptTransformedData);
+	}
+
+	private void assertInvalidStream(byte[] transformedData) {
+		try {
+			untransform(new Lz4Transformer(), transformedData);
+			fail("Expected IOException for invalid stream.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private byte[] transform(Transformer transformer, byte[] data) throws IOException {
+		ByteArrayOutputStream transformedOutputStream = new ByteArrayOutputStream();
+		OutputStream outputStream = transformer.createOutputStream(transformedOutputStream);
+
+		outputStream.write(data);
+		outputStream.close();
+
+		return transformedOutputStream.toByteArray();
+	}
+
+	private byte[] untransform(Transformer transformer, byte[] transformedData) throws IOException {
+		InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(transformedData));
+		byte[] data = IOUtils.toByteArray(inputStream);
+
+		inputStream.close();
+		return data;
+	}
+
+	/**
+	 * Creates corpora with different compressibility: Random data (like media files
+	 * or encrypted data), text, structured/tabular data, and a mix of all in 32 KB pieces.
+	 * Also used by the compression benchmark.
+	 */
+	public static Map<String, byte[]> createCorpora(int size) {
+		Random random = new Random(42);
+		Map<String, byte[]> corpora = new LinkedHashMap<String, byte[]>();
+
+		// Random
+		byte[] randomData = new byte[size];
+		random.nextBytes(randomData);
+
+		corpora.put("random", randomData);
+
+		// Text
+		String[] words = new String[] { "the", "file", "is", "synchronized", "with", "remote", "storage", "and", "chunks", "are",
+				"deduplicated", "before", "upload", "of", "a", "database", "version", "to", "repository", "Syncany" };
+
+		StringBuilder textBuilder = new StringBuilder();
+
+		while (textBuilder.length() < size) {
+			textBuilder.append(words[random.nextInt(words.length)]);
+			textBuilder.append(random.nextInt(12) == 0 ? ".\n" : " ");
+		}
+
+		corpora.put("text", textBuilder.substring(0, size).getBytes());
+
+		// Structured
+		StringBuilder structuredBuilder = new StringBuilder();
+
+		for (int row = 0; structuredBuilder.length() < size; row++) {
+			structuredBuilder.append(String.format("%08d;%s;%d;%05.2f\n", row, words[row % words.length], random.nextInt(1000), random.nextDouble() * 100));
+		}
+
+		corpora.put("struct", structuredBuilder.substring(0, size).getBytes());
+
+		// Mixed
+		byte[] mixedData = new byte[size];
+		String[] mixedCorpora = new String[] { "random", "text", "struct" };
+
+		for (int offset = 0; offset < size; offset += 32 * 1024) {
+			byte[] sourceData = corpora.get(mixedCorpora[random.nextInt(mixedCorpora.length)]);
+			System.arraycopy(sourceData, offset, mixedData, offset, Math.min(32 * 1024, size - offset));
+		}
+
+		corpora.put("mixed", mixedData);
+		return corpora;
+	}
+}
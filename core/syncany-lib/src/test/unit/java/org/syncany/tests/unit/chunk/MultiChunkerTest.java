@@ -17,16 +17,24 @@
  */
 package org.syncany.tests.unit.chunk;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.Level;
@@ -35,10 +43,12 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.FixedChunker;
+import org.syncany.chunk.IndexedMultiChunker;
 import org.syncany.chunk.MultiChunk;
 import org.syncany.chunk.MultiChunker;
 import org.syncany.chunk.NoTransformer;
@@ -46,6 +56,7 @@ import org.syncany.chunk.Transformer;
 import org.syncany.chunk.ZipMultiChunker;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.util.StringUtil;
 
 public class MultiChunkerTest {
 	private static Logger logger = Logger.getLogger(MultiChunkerTest.class.getSimpleName());
@@ -61,7 +72,8 @@ public class MultiChunkerTest {
 		
 		MultiChunker[] multiChunkers = new MultiChunker[] { 
 			//new CustomMultiChunker(minMultiChunkSize),
-			new ZipMultiChunker(minMultiChunkSize) 
+			new ZipMultiChunker(minMultiChunkSize),
+			new IndexedMultiChunker(minMultiChunkSize)
 		};
 		
 		for (Chunker chunker : chunkers) {
@@ -122,6 +134,68 @@ public class MultiChunkerTest {
 		TestFileUtil.deleteDirectory(tempDir);
 	}	
 	
+	@Test
+	public void testIndexedMultiChunkRandomAndSequentialAccess() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempDir, 500*1024);
+		File multiChunkFile = new File(tempDir, "multichunk");
+		
+		// Write
+		Map<String, byte[]> chunks = writeMultiChunk(new FixedChunker(16*1024), new IndexedMultiChunker(4096), inputFile, multiChunkFile);
+
+		// Random access (reverse order)
+		MultiChunker multiChunker = new IndexedMultiChunker(4096);
+		MultiChunk multiChunk = multiChunker.createMultiChunk(multiChunkFile);
+		
+		List<String> reversedChunkChecksums = new ArrayList<String>(chunks.keySet());
+		Collections.reverse(reversedChunkChecksums);
+		
+		for (String chunkChecksum : reversedChunkChecksums) {
+			byte[] actualContent = IOUtils.toByteArray(multiChunk.getChunkInputStream(StringUtil.fromHex(chunkChecksum)));
+			assertArrayEquals(chunks.get(chunkChecksum), actualContent);
+		}
+		
+		assertNull(multiChunk.getChunkInputStream(new byte[20]));
+		
+		// Sequential (from file)
+		assertSequentialChunks(chunks, multiChunk);
+		multiChunk.close();
+		
+		// Sequential (from stream)
+		MultiChunk streamMultiChunk = multiChunker.createMultiChunk(new FileInputStream(multiChunkFile));
+		assertSequentialChunks(chunks, streamMultiChunk);
+		streamMultiChunk.close();
+		
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+	
+	private Map<String, byte[]> writeMultiChunk(Chunker chunker, MultiChunker multiChunker, File inputFile, File multiChunkFile) throws IOException {
+		Map<String, byte[]> chunks = new LinkedHashMap<String, byte[]>();
+		MultiChunk multiChunk = multiChunker.createMultiChunk(MultiChunkId.secureRandomMultiChunkId(), new FileOutputStream(multiChunkFile));		
+		Enumeration<Chunk> chunkEnumeration = chunker.createChunks(inputFile);
+		
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			
+			multiChunk.write(chunk);
+			chunks.put(StringUtil.toHex(chunk.getChecksum()), Arrays.copyOf(chunk.getContent(), chunk.getSize()));
+		}
+		
+		multiChunk.close();		
+		return chunks;
+	}
+	
+	private void assertSequentialChunks(Map<String, byte[]> expectedChunks, MultiChunk multiChunk) throws IOException {
+		for (Map.Entry<String, byte[]> expectedChunk : expectedChunks.entrySet()) {
+			Chunk actualChunk = multiChunk.read();
+			
+			assertEquals(expectedChunk.getKey(), StringUtil.toHex(actualChunk.getChecksum()));
+			assertArrayEquals(expectedChunk.getValue(), Arrays.copyOf(actualChunk.getContent(), actualChunk.getSize()));
+		}
+		
+		assertNull(multiChunk.read());
+	}
+	
 	public void chunkFileIntoMultiChunks(Chunker chunker, MultiChunker multiChunker, int minMultiChunkSize) throws Exception {
 		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
 		
@@ -113,4 +113,81 @@ public class CacheTest {
 		
 		TestFileUtil.deleteDirectory(testCacheFolder);
 	}
+
+	@Test
+	public void testCacheAccessUpdatesOrderWithoutTouchingFiles() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		
+		Cache cache = new Cache(testCacheFolder);
+		cache.setKeepBytes(50*1024);
+		
+		File file1 = new File(testCacheFolder, "database-1");
+		File file2 = new File(testCacheFolder, "database-2");
+		
+		TestFileUtil.createRandomFile(file1, 30*1024);
+		TestFileUtil.createRandomFile(file2, 30*1024);
+		
+		file1.setLastModified(System.currentTimeMillis() - 20000);
+		file2.setLastModified(System.currentTimeMillis() - 10000);
+		long file1LastModified = file1.lastModified();
+		
+		// Access eldest file
+		assertEquals(file1.getAbsoluteFile(), cache.getDatabaseFile("database-1"));		
+		assertEquals(file1LastModified, file1.lastModified());
+		
+		cache.clear();
+		
+		assertTrue(file1.exists());
+		assertFalse(file2.exists());
+		assertEquals(30*1024, cache.getSize());
+		
+		TestFileUtil.deleteDirectory(testCacheFolder);
+	}
+	
+	@Test
+	public void testCachePinnedFileNotDeleted() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		
+		Cache cache = new Cache(testCacheFolder);
+		
+		File pinnedFile = cache.getDatabaseFile("database-1");
+		TestFileUtil.createRandomFile(pinnedFile, 10*1024);
+		
+		cache.pin(pinnedFile);
+		cache.clear(0);		
+		assertTrue(pinnedFile.exists());
+		
+		cache.unpin(pinnedFile);
+		cache.clear(0);		
+		assertFalse(pinnedFile.exists());
+		
+		TestFileUtil.deleteDirectory(testCacheFolder);
+	}
+	
+	@Test
+	public void testCacheIndexPersisted() throws Exception {
+		File testCacheFolder = TestFileUtil.createTempDirectoryInSystemTemp();
+		File testCacheIndexFile = new File(TestFileUtil.createTempDirectoryInSystemTemp(), "cache-index.txt");
+		
+		Cache cache = new Cache(testCacheFolder, testCacheIndexFile);
+		
+		// Written in order 1, 2, 3; but accessed in order 2, 3, 1
+		TestFileUtil.createRandomFile(cache.getDatabaseFile("database-2"), 20*1024);
+		TestFileUtil.createRandomFile(cache.getDatabaseFile("database-3"), 20*1024);
+		TestFileUtil.createRandomFile(cache.getDatabaseFile("database-1"), 20*1024);
+		
+		cache.clear(100*1024);		
+		assertTrue(testCacheIndexFile.exists());
+		
+		// New cache instance, e.g. after a restart
+		Cache newCache = new Cache(testCacheFolder, testCacheIndexFile);		
+		newCache.clear(40*1024);
+		
+		assertFalse(new File(testCacheFolder, "database-2").exists());
+		assertTrue(new File(testCacheFolder, "database-3").exists());
+		assertTrue(new File(testCacheFolder, "database-1").exists());
+		
+		TestFileUtil.deleteDirectory(testCacheFolder);
+		TestFileUtil.deleteDirectory(testCacheIndexFile.getParentFile());
+	}
 }
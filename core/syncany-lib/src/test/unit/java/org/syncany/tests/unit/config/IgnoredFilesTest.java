@@ -0,0 +1,136 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.syncany.config.IgnorePatternMatcher;
+import org.syncany.config.IgnoredFiles;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class IgnoredFilesTest {
+	@Test
+	public void testMatcherRuleTypes() {
+		IgnorePatternMatcher matcher = new IgnorePatternMatcher(Arrays.asList(new String[] { 
+			"exact/path.txt", "*.tmp", "build/*", "doc/?.md", "src/*/gen/*.java", "*cache*", "regex:.*\\.bak[0-9]", "" 
+		}));
+
+		// Exact
+		assertTrue(matcher.matches("exact/path.txt"));
+		assertFalse(matcher.matches("exact/path.txt2"));
+		assertFalse(matcher.matches("other/exact/path.txt"));
+
+		// Suffix
+		assertTrue(matcher.matches("a.tmp"));
+		assertTrue(matcher.matches("some/folder/b.tmp"));
+		assertTrue(matcher.matches(".tmp"));
+		assertFalse(matcher.matches("a.tmpx"));
+
+		// Wildcard with prefix
+		assertTrue(matcher.matches("build/"));
+		assertTrue(matcher.matches("build/a/b/c"));
+		assertFalse(matcher.matches("build"));
+		assertFalse(matcher.matches("xbuild/a"));
+		assertTrue(matcher.matches("doc/a.md"));
+		assertFalse(matcher.matches("doc/ab.md"));
+		assertTrue(matcher.matches("src/x/y/gen/A.java"));
+		assertFalse(matcher.matches("src/x/gen/A.jav"));
+
+		// Wildcard without prefix
+		assertTrue(matcher.matches("mycache"));
+		assertTrue(matcher.matches("folder/cache/file"));
+		assertFalse(matcher.matches("folder/cach/file"));
+
+		// Regex
+		assertTrue(matcher.matches("folder/file.bak1"));
+		assertFalse(matcher.matches("folder/file.bak"));
+		
+		// Empty
+		assertFalse(matcher.matches(""));
+	}
+
+	@Test
+	public void testMatcherSpecialCharacters() {
+		IgnorePatternMatcher matcher = new IgnorePatternMatcher(Arrays.asList(new String[] { "a.(b)+[c]*", "$x^?" }));
+
+		assertTrue(matcher.matches("a.(b)+[c]"));
+		assertTrue(matcher.matches("a.(b)+[c]d"));
+		assertFalse(matcher.matches("aX(b)+[c]"));
+		assertTrue(matcher.matches("$x^y"));
+		assertFalse(matcher.matches("$x^"));
+	}
+
+	@Test
+	public void testLoadPatternsReplacesOldRules() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File ignoreFile = new File(tempDir, ".syignore");
+
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);
+		assertFalse(ignoredFiles.isFileIgnored("file1"));
+
+		TestFileUtil.writeToFile("file1\n*.tmp".getBytes(), ignoreFile);
+		ignoredFiles.loadPatterns();
+
+		assertTrue(ignoredFiles.isFileIgnored("file1"));
+		assertTrue(ignoredFiles.isFileIgnored("file2.tmp"));
+
+		TestFileUtil.writeToFile("file2".getBytes(), ignoreFile);
+		ignoredFiles.loadPatterns();
+
+		assertFalse(ignoredFiles.isFileIgnored("file1"));
+		assertFalse(ignoredFiles.isFileIgnored("file2.tmp"));
+		assertTrue(ignoredFiles.isFileIgnored("file2"));
+
+		ignoreFile.delete();
+		ignoredFiles.loadPatterns();
+
+		assertFalse(ignoredFiles.isFileIgnored("file2"));
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testLoadPatternsIfChanged() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File ignoreFile = new File(tempDir, ".syignore");
+
+		TestFileUtil.writeToFile("file1".getBytes(), ignoreFile);
+
+		IgnoredFiles ignoredFiles = new IgnoredFiles(ignoreFile);
+		assertFalse(ignoredFiles.loadPatternsIfChanged());
+		assertTrue(ignoredFiles.isFileIgnored("file1"));
+
+		TestFileUtil.writeToFile("file1\nfile2".getBytes(), ignoreFile);
+
+		assertTrue(ignoredFiles.loadPatternsIfChanged());
+		assertTrue(ignoredFiles.isFileIgnored("file2"));
+		assertFalse(ignoredFiles.loadPatternsIfChanged());
+
+		ignoreFile.delete();
+
+		assertTrue(ignoredFiles.loadPatternsIfChanged());
+		assertFalse(ignoredFiles.isFileIgnored("file1"));
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+}
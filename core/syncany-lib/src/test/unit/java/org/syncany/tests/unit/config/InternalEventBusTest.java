@@ -0,0 +1,192 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.syncany.config.InternalEventBus;
+import org.syncany.config.InternalEventBus.OverflowPolicy;
+
+import com.google.common.eventbus.Subscribe;
+
+public class InternalEventBusTest {
+	@Test
+	public void testSyncDispatchByDefault() {
+		TestEventBus eventBus = new TestEventBus();
+		RecordingSubscriber subscriber = new RecordingSubscriber(null);
+		
+		eventBus.register(subscriber);
+		eventBus.post(new BarrierEvent("a"));
+		
+		assertFalse(eventBus.isAsyncDispatchRunning());
+		assertEquals(1, subscriber.events.size());
+		assertEquals(Thread.currentThread(), subscriber.lastThread);
+	}
+	
+	@Test
+	public void testAsyncDispatchCoalescesProgressEvents() throws Exception {
+		CountDownLatch blockLatch = new CountDownLatch(1);
+		
+		TestEventBus eventBus = new TestEventBus();
+		RecordingSubscriber subscriber = new RecordingSubscriber(blockLatch);
+
+		eventBus.register(subscriber);
+		eventBus.startAsyncDispatch(100, OverflowPolicy.BLOCK);
+		
+		// Block dispatcher thread in subscriber
+		eventBus.post(new BarrierEvent("block"));
+		assertTrue(subscriber.blockedLatch.await(5, TimeUnit.SECONDS));
+		
+		// Post while dispatcher is blocked
+		for (int i = 1; i <= 100; i++) {
+			eventBus.post(new ProgressEvent("folder1", i));
+		}
+		
+		eventBus.post(new BarrierEvent("end"));
+		eventBus.post(new ProgressEvent("folder1", 101));
+		eventBus.post(new ProgressEvent("folder2", 1));
+		eventBus.post(new ProgressEvent("folder1", 102));
+		
+		// Release and wait for all events to be delivered
+		blockLatch.countDown();
+		eventBus.stopAsyncDispatch();
+		
+		List<Object> events = subscriber.events;		
+		
+		assertEquals(5, events.size());
+		assertEquals("block", events.get(0).toString());
+		assertEquals("folder1/100", events.get(1).toString());
+		assertEquals("end", events.get(2).toString());
+		assertEquals("folder1/102", events.get(3).toString());
+		assertEquals("folder2/1", events.get(4).toString());
+		
+		assertEquals(100, eventBus.getCoalescedEventCount());
+		assertNotSame(Thread.currentThread(), subscriber.lastThread);
+	}
+
+	@Test
+	public void testAsyncDispatchDropsProgressEventsIfQueueFull() throws Exception {
+		CountDownLatch blockLatch = new CountDownLatch(1);
+		
+		TestEventBus eventBus = new TestEventBus();
+		RecordingSubscriber subscriber = new RecordingSubscriber(blockLatch);
+
+		eventBus.register(subscriber);
+		eventBus.startAsyncDispatch(2, OverflowPolicy.DROP);
+		
+		eventBus.post(new BarrierEvent("block"));
+		assertTrue(subscriber.blockedLatch.await(5, TimeUnit.SECONDS));
+		
+		// Queue holds two events, the rest is dropped
+		for (int i = 1; i <= 10; i++) {
+			eventBus.post(new ProgressEvent("folder" + i, 1));
+		}
+		
+		blockLatch.countDown();
+		eventBus.stopAsyncDispatch();
+		
+		assertEquals(3, subscriber.events.size());
+		assertEquals(8, eventBus.getDroppedEventCount());
+	}
+
+	@Test
+	public void testAsyncDispatchBlocksIfQueueFull() throws Exception {
+		TestEventBus eventBus = new TestEventBus();
+		RecordingSubscriber subscriber = new RecordingSubscriber(null);
+
+		eventBus.register(subscriber);
+		eventBus.startAsyncDispatch(1, OverflowPolicy.BLOCK);
+		
+		for (int i = 1; i <= 500; i++) {
+			eventBus.post(new BarrierEvent("" + i));
+		}
+		
+		eventBus.stopAsyncDispatch();
+		
+		assertEquals(500, subscriber.events.size());
+		assertEquals("500", subscriber.events.get(499).toString());
+		assertEquals(0, eventBus.getDroppedEventCount());
+	}
+
+	public static class TestEventBus extends InternalEventBus {
+		@Override
+		protected Object getCoalescingKey(Object event) {
+			return (event instanceof ProgressEvent) ? ((ProgressEvent) event).folder : null;
+		}
+	}
+	
+	public static class RecordingSubscriber {
+		private List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+		private CountDownLatch blockLatch;
+		private CountDownLatch blockedLatch = new CountDownLatch(1);
+		private Thread lastThread;
+		
+		public RecordingSubscriber(CountDownLatch blockLatch) {
+			this.blockLatch = blockLatch;
+		}
+		
+		@Subscribe
+		public void onEvent(Object event) throws InterruptedException {
+			events.add(event);
+			lastThread = Thread.currentThread();
+			
+			if (blockLatch != null && "block".equals(event.toString())) {
+				blockedLatch.countDown();
+				blockLatch.await();
+			}
+		}
+	}
+	
+	public static class BarrierEvent {
+		private String name;
+		
+		public BarrierEvent(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	
+	public static class ProgressEvent {
+		private String folder;
+		private int index;
+		
+		public ProgressEvent(String folder, int index) {
+			this.folder = folder;
+			this.index = index;
+		}
+		
+		@Override
+		public String toString() {
+			return folder + "/" + index;
+		}
+	}
+}
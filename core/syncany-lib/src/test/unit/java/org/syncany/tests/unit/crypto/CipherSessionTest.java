@@ -17,21 +17,49 @@
  */
 package org.syncany.tests.unit.crypto;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.crypto.spec.SecretKeySpec;
 
+import org.apache.commons.io.IOUtils;
+
 import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.Transformer;
 import org.syncany.config.Logging;
 import org.syncany.crypto.CipherSession;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
 import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.MultiCipherOutputStream;
 import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.tests.unit.util.TestFileUtil;
 import org.syncany.util.StringUtil;
 
 public class CipherSessionTest {
+	private static final Logger logger = Logger.getLogger(CipherSessionTest.class.getSimpleName());
+	
 	static {
 		Logging.init();
 	}
@@ -83,6 +111,171 @@ public class CipherSessionTest {
 		// TODO [medium] This does NOT TEST the actual read cache. How to test this. The cache is completely hidden/private?!
 	}	
 	
+	@Test
+	public void testCipherSessionReadKeyCacheReturnsCachedKey() throws Exception {
+		SaltedSecretKey masterKey = createDummyMasterKey();		
+		CipherSession cipherSession = new CipherSession(masterKey, 2, 999);
+		
+		CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		
+		byte[] readKeySalt1 = CipherUtil.createRandomArray(MultiCipherOutputStream.SALT_SIZE);
+		byte[] readKeySalt2 = CipherUtil.createRandomArray(MultiCipherOutputStream.SALT_SIZE);
+		byte[] readKeySalt3 = CipherUtil.createRandomArray(MultiCipherOutputStream.SALT_SIZE);
+		
+		SaltedSecretKey readSecretKey1Aes128 = cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1);
+		SaltedSecretKey readSecretKey2Aes128 = cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt2);
+		
+		assertSame(readSecretKey1Aes128, cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1.clone())); // Salt 1 is now most recently used
+		
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt3); // Evicts salt 2
+		
+		assertSame(readSecretKey1Aes128, cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1));
+		assertNotSame(readSecretKey2Aes128, cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt2));
+	}
+	
+	@Test
+	public void testCipherSessionConcurrentWriteKeyReuse() throws Exception {
+		final CipherSession cipherSession = new CipherSession(createDummyMasterKey(), 20, 10);
+		final CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		final ConcurrentHashMap<SaltedSecretKey, AtomicInteger> keyUseCounts = new ConcurrentHashMap<SaltedSecretKey, AtomicInteger>();
+		
+		runConcurrently(8, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				for (int i = 0; i < 1000; i++) {
+					SaltedSecretKey writeSecretKey = cipherSession.getWriteSecretKey(cipherSpecAes128);
+					AtomicInteger newUseCount = new AtomicInteger(0);
+					AtomicInteger useCount = keyUseCounts.putIfAbsent(writeSecretKey, newUseCount);
+					
+					((useCount != null) ? useCount : newUseCount).incrementAndGet();
+				}
+				
+				return null;
+			}
+		});
+		
+		int totalUseCount = 0;
+		
+		for (AtomicInteger useCount : keyUseCounts.values()) {
+			assertTrue("Write key used more often than allowed: " + useCount.get(), useCount.get() <= 10);
+			totalUseCount += useCount.get();
+		}
+		
+		assertEquals(8 * 1000, totalUseCount);
+		assertEquals(8 * 1000 / 10, keyUseCounts.size());
+	}
+	
+	@Test
+	public void testCipherSessionConcurrentReadKeys() throws Exception {
+		final SaltedSecretKey masterKey = createDummyMasterKey();
+		final CipherSession cipherSession = new CipherSession(masterKey, 5, 999);
+		final CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		
+		final List<byte[]> readKeySalts = new ArrayList<byte[]>();
+		final List<SaltedSecretKey> expectedReadKeys = new ArrayList<SaltedSecretKey>();
+		
+		for (int i = 0; i < 20; i++) {
+			byte[] readKeySalt = CipherUtil.createRandomArray(MultiCipherOutputStream.SALT_SIZE);
+			
+			readKeySalts.add(readKeySalt);
+			expectedReadKeys.add(CipherUtil.createDerivedKey(masterKey, readKeySalt, cipherSpecAes128));
+		}
+		
+		runConcurrently(8, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Random random = new Random();
+				
+				for (int i = 0; i < 2000; i++) {
+					int saltIndex = random.nextInt(readKeySalts.size());
+					SaltedSecretKey readSecretKey = cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalts.get(saltIndex));
+					
+					assertArrayEquals(expectedReadKeys.get(saltIndex).getEncoded(), readSecretKey.getEncoded());
+				}
+				
+				return null;
+			}
+		});
+	}
+	
+	@Test
+	public void testCipherSessionConcurrentEncryptAndDecrypt() throws Exception {
+		List<CipherSpec> cipherSpecs = Arrays.asList(new CipherSpec[] {
+			CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM),
+			CipherSpecs.getCipherSpec(CipherSpecs.TWOFISH_128_GCM)
+		});
+		
+		final Transformer cipherTransformer = new CipherTransformer(cipherSpecs, createDummyMasterKey());
+		
+		runConcurrently(8, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				for (int i = 0; i < 20; i++) {
+					byte[] plaintext = TestFileUtil.createRandomArray(100 * 1024);
+					
+					ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+					OutputStream encryptingOutputStream = cipherTransformer.createOutputStream(ciphertextOutputStream);
+					
+					encryptingOutputStream.write(plaintext);
+					encryptingOutputStream.close();
+					
+					InputStream decryptingInputStream = cipherTransformer.createInputStream(new ByteArrayInputStream(ciphertextOutputStream.toByteArray()));
+					byte[] decryptedPlaintext = IOUtils.toByteArray(decryptingInputStream);
+					decryptingInputStream.close();
+					
+					assertArrayEquals(plaintext, decryptedPlaintext);
+				}
+				
+				return null;
+			}
+		});
+	}
+	
+	@Test
+	public void testCipherSessionKeyDerivationBenchmark() throws Exception {
+		final CipherSession cipherSession = new CipherSession(createDummyMasterKey(), 20, 1);
+		final CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		final int keysPerThread = 5000;
+		
+		Callable<Void> deriveKeys = new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				for (int i = 0; i < keysPerThread; i++) {
+					cipherSession.getWriteSecretKey(cipherSpecAes128); // Reuse count 1, i.e. always derives a new key
+				}
+				
+				return null;
+			}
+		};
+		
+		for (int threadCount : new int[] { 1, 4 }) {
+			long startTime = System.nanoTime();
+			runConcurrently(threadCount, deriveKeys);
+			long durationMillis = Math.max(1, (System.nanoTime() - startTime) / 1000000);
+			
+			logger.log(Level.INFO, "Key derivation benchmark: " + threadCount + " thread(s) derived " + (threadCount * keysPerThread) + " keys in " 
+					+ durationMillis + " ms (" + (threadCount * keysPerThread * 1000L / durationMillis) + " keys/s)");
+		}
+	}
+	
+	private void runConcurrently(int threadCount, Callable<Void> task) throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		
+		for (int i = 0; i < threadCount; i++) {
+			futures.add(executorService.submit(task));
+		}
+		
+		try {
+			for (Future<Void> future : futures) {
+				future.get(); // Rethrows assertion errors from the threads
+			}
+		}
+		finally {
+			executorService.shutdownNow();
+		}
+	}
+	
 	private SaltedSecretKey createDummyMasterKey() {
 		return new SaltedSecretKey(
 			new SecretKeySpec(
@@ -17,15 +17,21 @@
  */
 package org.syncany.tests.unit.crypto;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import org.junit.Test;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SegmentCipher;
+import org.syncany.crypto.specs.JceGcmSegmentCipher;
 
 public class CipherSpecsTest {
 	@Test
@@ -57,4 +63,29 @@ public class CipherSpecsTest {
 		assertNotSame(cipherSpec1, cipherSpec2);
 		assertEquals(0x01, cipherSpec1.getId());
 	}
+	
+	@Test
+	public void testAesGcmSegmentCipherForTwoStreamsWithSameKey() throws Exception {
+		CipherSpec aes128CipherSpec = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		byte[] secretKey = CipherUtil.createRandomArray(aes128CipherSpec.getKeySize() / 8);
+		byte[] plaintext = "Syncany segment".getBytes("UTF-8");
+		
+		// Two streams with the same key on the same thread must both use the JCE cipher
+		SegmentCipher segmentCipher1 = aes128CipherSpec.newSegmentCipher(secretKey);
+		SegmentCipher segmentCipher2 = aes128CipherSpec.newSegmentCipher(secretKey);
+		
+		assertTrue(segmentCipher1 instanceof JceGcmSegmentCipher);
+		assertTrue(segmentCipher2 instanceof JceGcmSegmentCipher);
+		
+		for (SegmentCipher segmentCipher : Arrays.asList(segmentCipher1, segmentCipher2)) {
+			byte[] nonce = CipherUtil.createRandomArray(12);
+			byte[] ciphertext = new byte[plaintext.length + segmentCipher.getOverhead()];
+			byte[] decryptedPlaintext = new byte[plaintext.length];
+			
+			segmentCipher.seal(nonce, plaintext, 0, plaintext.length, ciphertext, 0);
+			segmentCipher.open(nonce, ciphertext, 0, ciphertext.length, decryptedPlaintext, 0);
+			
+			assertArrayEquals(plaintext, decryptedPlaintext);
+		}
+	}
 }
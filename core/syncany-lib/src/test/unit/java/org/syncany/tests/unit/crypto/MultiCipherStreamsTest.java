@@ -17,6 +17,7 @@
  */
 package org.syncany.tests.unit.crypto;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 
@@ -47,8 +48,10 @@ import org.syncany.config.Logging;
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
 import org.syncany.crypto.MultiCipherOutputStream;
 import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.tests.unit.util.TestFileUtil;
 import org.syncany.util.StringUtil;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -87,6 +90,66 @@ public class MultiCipherStreamsTest {
 		);
 	}	
 	
+	@Test
+	public void testSegmentBoundaries() throws Exception {
+		List<CipherSpec> cipherSpecs = Arrays.asList(new CipherSpec[] {
+			CipherSpecs.getCipherSpec(1),
+			CipherSpecs.getCipherSpec(2)
+		});
+		
+		int segmentSize = MultiCipherOutputStream.SEGMENT_SIZE;
+		int[] plaintextSizes = new int[] { 0, 1, segmentSize - 1, segmentSize, segmentSize + 1, 3 * segmentSize };
+		
+		for (int plaintextSize : plaintextSizes) {
+			byte[] plaintext = TestFileUtil.createRandomArray(plaintextSize);
+			byte[] ciphertext = encryptSegmented(plaintext, cipherSpecs);
+			
+			assertEquals(MultiCipherOutputStream.STREAM_VERSION_SEGMENTED, ciphertext[4]);
+			assertArrayEquals("Decrypted data differs for size " + plaintextSize, plaintext, CipherUtil.decrypt(new ByteArrayInputStream(ciphertext), masterKey));
+		}
+	}
+	
+	@Test(expected = CipherException.class)
+	public void testTruncatedAtSegmentBoundary() throws Exception {
+		byte[] plaintext = TestFileUtil.createRandomArray(2 * MultiCipherOutputStream.SEGMENT_SIZE + 10);
+		byte[] ciphertext = encryptSegmented(plaintext, Arrays.asList(CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM)));
+		
+		// Cut off everything after the first segment (header + segment + tag); the 
+		// first segment was not sealed as last segment, so this must be detected
+		int headerLength = ciphertext.length - plaintext.length - 3 * 16;
+		byte[] truncatedCiphertext = Arrays.copyOf(ciphertext, headerLength + MultiCipherOutputStream.SEGMENT_SIZE + 16);
+		
+		CipherUtil.decrypt(new ByteArrayInputStream(truncatedCiphertext), masterKey);
+	}
+	
+	@Test
+	public void testDecryptUnsegmentedStreamVersion1() throws Exception {
+		byte[] ciphertext = StringUtil.fromHex("53790205015d6f1995fede1e5baf45a51b02012347a9fe6a9d921d826721755631cd21d2765cc095f453802f46027e02ff1c74418e69db815cf0c84e77e9526591ebf5f8a8245f706a5808fe538ba3c81c4c458e99b695195463fec937a241fb9748516018637df095ca9bbf9bd347fb2b1590c67ae550235834a04a291f74b45c025b3d7e6f795945e721e8107d085e24a9fb04dbe7cfdc2414120e3eee4de4a633cc0d5f79c10d6e8177");
+		byte[] plaintext = CipherUtil.decrypt(new ByteArrayInputStream(ciphertext), masterKey);
+		
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION_UNSEGMENTED, ciphertext[4]);
+		assertEquals("Syncany stream format version 1", new String(plaintext, "UTF-8"));
+	}
+	
+	@Test
+	public void testUnsegmentedStreamVersionByDefault() throws Exception {
+		List<CipherSpec> cipherSpecs = Arrays.asList(new CipherSpec[] {
+			CipherSpecs.getCipherSpec(1),
+			CipherSpecs.getCipherSpec(2)
+		});
+		
+		byte[] plaintext = TestFileUtil.createRandomArray(3 * MultiCipherOutputStream.SEGMENT_SIZE + 1);
+		
+		byte[] ciphertextCipherUtil = CipherUtil.encrypt(new ByteArrayInputStream(plaintext), cipherSpecs, masterKey);
+		byte[] ciphertextTransformer = doEncrypt(plaintext, new CipherTransformer(cipherSpecs, masterKey));
+		
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION_UNSEGMENTED, ciphertextCipherUtil[4]);
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION_UNSEGMENTED, ciphertextTransformer[4]);
+		
+		assertArrayEquals(plaintext, CipherUtil.decrypt(new ByteArrayInputStream(ciphertextCipherUtil), masterKey));
+		assertArrayEquals(plaintext, CipherUtil.decrypt(new ByteArrayInputStream(ciphertextTransformer), masterKey));
+	}
+	
 	@Test
 	public void testHmacAvailability() throws Exception {
 		Mac.getInstance(MultiCipherOutputStream.HMAC_SPEC.getAlgorithm());
@@ -169,6 +232,13 @@ public class MultiCipherStreamsTest {
 		logger.log(Level.INFO, "Passed.");
 	}
 	
+	private byte[] encryptSegmented(byte[] plaintext, List<CipherSpec> cipherSpecs) throws Exception {
+		CipherTransformer cipherTransformer = new CipherTransformer(cipherSpecs, masterKey);
+		cipherTransformer.setStreamVersion(MultiCipherOutputStream.STREAM_VERSION_SEGMENTED);
+		
+		return doEncrypt(plaintext, cipherTransformer);
+	}
+	
 	private byte[] doEncrypt(byte[] srcData, Transformer cipherTransformer) throws IOException, InvalidKeySpecException, InvalidKeyException, NoSuchAlgorithmException, CipherException {
 		// Write 
 		ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -0,0 +1,127 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.syncany.database.CompactVectorClock;
+import org.syncany.database.VectorClock;
+import org.syncany.database.VectorClock.VectorClockComparison;
+
+public class CompactVectorClockTest {
+	@Test
+	public void testParseClock() {
+		CompactVectorClock vc = CompactVectorClock.parseVectorClock("(UnitBBB5,UnitAAA4)");
+
+		assertEquals(2, vc.size());
+		assertEquals(4L, vc.getClock("UnitAAA"));
+		assertEquals(5L, vc.getClock("UnitBBB"));
+		assertEquals(0L, vc.getClock("UnitCCC"));
+		assertEquals("(UnitAAA4,UnitBBB5)", vc.toString());
+	}
+
+	@Test
+	public void testParseClockDuplicateEntryLastWins() {
+		CompactVectorClock vc = CompactVectorClock.parseVectorClock("(B2,A1,B3)");
+
+		assertEquals(2, vc.size());
+		assertEquals("(A1,B3)", vc.toString());
+	}
+
+	@Test
+	public void testParseEmptyClock() {
+		assertEquals(0, CompactVectorClock.parseVectorClock("()").size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseClockMissingTime() {
+		CompactVectorClock.parseVectorClock("(A1,B)");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseClockTrailingComma() {
+		CompactVectorClock.parseVectorClock("(A1,)");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseClockMissingBrackets() {
+		CompactVectorClock.parseVectorClock("A1,B2");
+	}
+
+	@Test
+	public void testCompareMatchesVectorClock() {
+		String[] clocks = new String[] { "()", "(A0)", "(A1)", "(A2)", "(A1,B1)", "(B1)", "(A2,B1)", "(A1,C3)", "(B2,C1)" };
+
+		for (String clock1 : clocks) {
+			for (String clock2 : clocks) {
+				VectorClock vc1 = VectorClock.parseVectorClock(clock1);
+				VectorClock vc2 = VectorClock.parseVectorClock(clock2);
+
+				VectorClockComparison expected = compareByMap(vc1, vc2);
+				VectorClockComparison actual = CompactVectorClock.compare(CompactVectorClock.parseVectorClock(clock1), CompactVectorClock.parseVectorClock(clock2));
+
+				assertEquals("Comparing " + clock1 + " and " + clock2, expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testCompactClockIsCachedUntilModified() {
+		VectorClock vc = new VectorClock();
+		vc.setClock("UnitA", 1L);
+
+		CompactVectorClock compactVc1 = vc.toCompactVectorClock();
+		assertSame(compactVc1, vc.toCompactVectorClock());
+
+		vc.incrementClock("UnitA");
+		CompactVectorClock compactVc2 = vc.toCompactVectorClock();
+
+		assertEquals(2L, compactVc2.getClock("UnitA"));
+		assertEquals(VectorClockComparison.GREATER, CompactVectorClock.compare(compactVc2, compactVc1));
+	}
+
+	/**
+	 * Reference implementation comparing the clocks entry by entry via map lookups.
+	 */
+	private VectorClockComparison compareByMap(VectorClock clock1, VectorClock clock2) {
+		boolean isGreater = false;
+		boolean isSmaller = false;
+
+		for (String unit : clock1.keySet()) {
+			isGreater |= clock1.get(unit) > clock2.get(unit);
+			isSmaller |= clock1.get(unit) < clock2.get(unit);
+		}
+
+		for (String unit : clock2.keySet()) {
+			isGreater |= clock1.get(unit) > clock2.get(unit);
+			isSmaller |= clock1.get(unit) < clock2.get(unit);
+		}
+
+		if (!isGreater && !isSmaller) {
+			return VectorClockComparison.EQUAL;
+		}
+		else if (isGreater && isSmaller) {
+			return VectorClockComparison.SIMULTANEOUS;
+		}
+		else {
+			return isGreater ? VectorClockComparison.GREATER : VectorClockComparison.SMALLER;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileFingerprintCache;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.FileVersionComparator;
+import org.syncany.database.FileVersionComparator.FileChange;
+import org.syncany.database.FileVersionComparator.FileVersionComparison;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class FileFingerprintCacheTest {
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testChecksumCachedIfSizeUnchanged() throws Exception {
+		File file = createOldRandomFile("file", 1024);
+
+		FileFingerprintCache fileFingerprintCache = new FileFingerprintCache();
+		FileVersionComparator fileVersionComparator = new FileVersionComparator(tempDir, "SHA1", fileFingerprintCache);
+
+		FileVersionComparison fileVersionComparison = fileVersionComparator.compare(createFileVersion(file, 1024), file, true);
+
+		assertTrue(fileVersionComparison.getFileChanges().contains(FileChange.CHANGED_CHECKSUM));
+		assertEquals(1, fileFingerprintCache.size());
+		assertEquals(fileVersionComparison.getActualFileProperties().getChecksum(), fileFingerprintCache.get(file));
+	}
+
+	@Test
+	public void testRemoveChecksum() throws Exception {
+		File file = createOldRandomFile("file", 1024);
+
+		FileFingerprintCache fileFingerprintCache = new FileFingerprintCache();
+		FileVersionComparator fileVersionComparator = new FileVersionComparator(tempDir, "SHA1", fileFingerprintCache);
+
+		fileVersionComparator.compare(createFileVersion(file, 1024), file, true);
+		assertEquals(1, fileFingerprintCache.size());
+
+		fileFingerprintCache.remove(file);
+
+		assertEquals(0, fileFingerprintCache.size());
+		assertNull(fileFingerprintCache.get(file));
+	}
+
+	@Test
+	public void testChecksumNotCalculatedIfSizeChanged() throws Exception {
+		File file = createOldRandomFile("file", 1024);
+
+		FileFingerprintCache fileFingerprintCache = new FileFingerprintCache();
+		FileVersionComparator fileVersionComparator = new FileVersionComparator(tempDir, "SHA1", fileFingerprintCache);
+		fileVersionComparator.setChecksumOnlyIfRequired(true);
+
+		FileVersionComparison fileVersionComparison = fileVersionComparator.compare(createFileVersion(file, 1000), file, true);
+
+		assertTrue(fileVersionComparison.getFileChanges().contains(FileChange.CHANGED_SIZE));
+		assertTrue(fileVersionComparison.getFileChanges().contains(FileChange.CHANGED_CHECKSUM));
+		assertNull(fileVersionComparison.getActualFileProperties().getChecksum());
+		assertEquals(0, fileFingerprintCache.size());
+	}
+
+	@Test
+	public void testChecksumCalculatedIfSizeChangedByDefault() throws Exception {
+		File file = createOldRandomFile("file", 1024);
+
+		FileFingerprintCache fileFingerprintCache = new FileFingerprintCache();
+		FileVersionComparator fileVersionComparator = new FileVersionComparator(tempDir, "SHA1", fileFingerprintCache);
+
+		FileVersionComparison fileVersionComparison = fileVersionComparator.compare(createFileVersion(file, 1000), file, true);
+
+		assertTrue(fileVersionComparison.getFileChanges().contains(FileChange.CHANGED_SIZE));
+		assertNotNull(fileVersionComparison.getActualFileProperties().getChecksum());
+		assertEquals(1, fileFingerprintCache.size());
+	}
+
+	@Test
+	public void testChecksumInvalidIfFileChanged() throws Exception {
+		File file = createOldRandomFile("file", 1024);
+
+		FileFingerprintCache fileFingerprintCache = new FileFingerprintCache();
+		FileVersionComparator fileVersionComparator = new FileVersionComparator(tempDir, "SHA1", fileFingerprintCache);
+
+		fileVersionComparator.compare(createFileVersion(file, 1024), file, true);
+		assertNotNull(fileFingerprintCache.get(file));
+
+		// Same size, different (but not recent) modified date
+		long lastModified = file.lastModified();
+
+		TestFileUtil.createRandomFile(file, 1024);
+		file.setLastModified(lastModified + 5000);
+
+		assertNull(fileFingerprintCache.get(file));
+		assertFalse(fileVersionComparator.compare(createFileVersion(file, 1024), file, true).areEqual());
+	}
+
+	@Test
+	public void testChecksumNotTrustedIfRecentlyModified() throws Exception {
+		File file = new File(tempDir, "file");
+		TestFileUtil.createRandomFile(file, 1024);
+
+		FileFingerprintCache fileFingerprintCache = new FileFingerprintCache();
+		FileVersionComparator fileVersionComparator = new FileVersionComparator(tempDir, "SHA1", fileFingerprintCache);
+
+		// File was modified right before the checksum was recorded, i.e. it may
+		// change again without a visible change of its modified date
+		fileVersionComparator.compare(createFileVersion(file, 1024), file, true);
+
+		assertEquals(1, fileFingerprintCache.size());
+		assertNull(fileFingerprintCache.get(file));
+	}
+
+	@Test
+	public void testUnknownFile() throws Exception {
+		File file = new File(tempDir, "file");
+		TestFileUtil.createRandomFile(file, 1024);
+
+		assertNull(new FileFingerprintCache().get(file));
+	}
+
+	private File createOldRandomFile(String name, int size) throws Exception {
+		File file = new File(tempDir, name);
+
+		TestFileUtil.createRandomFile(file, size);
+		file.setLastModified(System.currentTimeMillis() - 60 * 1000);
+
+		return file;
+	}
+
+	private FileVersion createFileVersion(File file, long size) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setPath(file.getName());
+		fileVersion.setType(FileType.FILE);
+		fileVersion.setStatus(FileStatus.NEW);
+		fileVersion.setVersion(1L);
+		fileVersion.setSize(size);
+		fileVersion.setLastModified(new Date(file.lastModified()));
+		fileVersion.setChecksum(new FileChecksum(new byte[20]));
+
+		return fileVersion;
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.operations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.StreamingAssembler;
+import org.syncany.operations.StreamingAssembler.AssembledFile;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class StreamingAssemblerTest {
+	private Config config;
+	private File tempDir;
+
+	@Before
+	public void setUp() throws Exception {
+		config = TestConfigUtil.createTestLocalConfig();
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() {
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testOutOfOrderChunksInMultiChunk() throws Exception {
+		File file = createFile("file", 200 * 1024);
+		List<Chunk> chunks = createChunks(file);
+		assertTrue(chunks.size() >= 3);
+
+		MultiChunkId multiChunkId = MultiChunkId.secureRandomMultiChunkId();
+		FileContent fileContent = createFileContent(file, chunks);
+
+		StreamingAssembler streamingAssembler = new StreamingAssembler(config);
+		streamingAssembler.addFileContent(fileContent, createMultiChunkIds(multiChunkId, chunks.size()));
+		streamingAssembler.prepare(new HashSet<MultiChunkId>(Arrays.asList(multiChunkId)));
+
+		assertTrue(streamingAssembler.isStreamed(multiChunkId));
+
+		// Last chunk first, then all others in order
+		List<Chunk> outOfOrderChunks = new ArrayList<Chunk>(chunks.subList(0, chunks.size() - 1));
+		outOfOrderChunks.add(0, chunks.get(chunks.size() - 1));
+
+		streamingAssembler.assemble(multiChunkId, new ByteArrayInputStream(createMultiChunk(multiChunkId, outOfOrderChunks)));
+
+		AssembledFile assembledFile = streamingAssembler.takeAssembledFile(fileContent.getChecksum());
+		streamingAssembler.close();
+
+		assertNotNull(assembledFile);
+		assertArrayEquals(fileContent.getChecksum().getBytes(), assembledFile.getChecksum());
+		assertArrayEquals(FileUtils.readFileToByteArray(file), FileUtils.readFileToByteArray(assembledFile.getFile()));
+	}
+
+	@Test
+	public void testMissingChunkInMultiChunk() throws Exception {
+		File file = createFile("file", 200 * 1024);
+		List<Chunk> chunks = createChunks(file);
+		assertTrue(chunks.size() >= 3);
+
+		MultiChunkId multiChunkId = MultiChunkId.secureRandomMultiChunkId();
+		FileContent fileContent = createFileContent(file, chunks);
+
+		StreamingAssembler streamingAssembler = new StreamingAssembler(config);
+		streamingAssembler.addFileContent(fileContent, createMultiChunkIds(multiChunkId, chunks.size()));
+		streamingAssembler.prepare(new HashSet<MultiChunkId>(Arrays.asList(multiChunkId)));
+
+		// Second chunk is missing, i.e. the first chunk has already been written to disk
+		List<Chunk> incompleteChunks = new ArrayList<Chunk>(chunks);
+		incompleteChunks.remove(1);
+
+		try {
+			streamingAssembler.assemble(multiChunkId, new ByteArrayInputStream(createMultiChunk(multiChunkId, incompleteChunks)));
+			fail("Assembling an incomplete multichunk should have failed.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+
+		assertNull(streamingAssembler.takeAssembledFile(fileContent.getChecksum()));
+		assertEquals(0, getReconstructedFiles().length);
+
+		streamingAssembler.close();
+	}
+
+	@Test
+	public void testCloseDeletesFilesNotTaken() throws Exception {
+		File file1 = createFile("file1", 100 * 1024);
+		File file2 = createFile("file2", 100 * 1024);
+
+		List<Chunk> chunks1 = createChunks(file1);
+		List<Chunk> chunks2 = createChunks(file2);
+
+		MultiChunkId multiChunkId = MultiChunkId.secureRandomMultiChunkId();
+		FileContent fileContent1 = createFileContent(file1, chunks1);
+		FileContent fileContent2 = createFileContent(file2, chunks2);
+
+		StreamingAssembler streamingAssembler = new StreamingAssembler(config);
+		streamingAssembler.addFileContent(fileContent1, createMultiChunkIds(multiChunkId, chunks1.size()));
+		streamingAssembler.addFileContent(fileContent2, createMultiChunkIds(multiChunkId, chunks2.size()));
+		streamingAssembler.prepare(new HashSet<MultiChunkId>(Arrays.asList(multiChunkId)));
+
+		List<Chunk> allChunks = new ArrayList<Chunk>(chunks1);
+		allChunks.addAll(chunks2);
+
+		streamingAssembler.assemble(multiChunkId, new ByteArrayInputStream(createMultiChunk(multiChunkId, allChunks)));
+		assertEquals(2, getReconstructedFiles().length);
+
+		// Only take the first file
+		AssembledFile assembledFile1 = streamingAssembler.takeAssembledFile(fileContent1.getChecksum());
+		streamingAssembler.close();
+
+		assertNotNull(assembledFile1);
+		assertTrue(assembledFile1.getFile().exists());
+		assertEquals(1, getReconstructedFiles().length);
+		assertEquals(assembledFile1.getFile().getName(), getReconstructedFiles()[0]);
+		assertNull(streamingAssembler.takeAssembledFile(fileContent2.getChecksum()));
+	}
+
+	@Test
+	public void testNotStreamedIfMultiChunkInCache() throws Exception {
+		File file = createFile("file", 100 * 1024);
+		List<Chunk> chunks = createChunks(file);
+
+		MultiChunkId multiChunkId = MultiChunkId.secureRandomMultiChunkId();
+		FileUtils.writeByteArrayToFile(config.getCache().getDecryptedMultiChunkFile(multiChunkId), new byte[0]);
+
+		StreamingAssembler streamingAssembler = new StreamingAssembler(config);
+		streamingAssembler.addFileContent(createFileContent(file, chunks), createMultiChunkIds(multiChunkId, chunks.size()));
+		streamingAssembler.prepare(new HashSet<MultiChunkId>(Arrays.asList(multiChunkId)));
+
+		assertFalse(streamingAssembler.isStreamed(multiChunkId));
+		streamingAssembler.close();
+	}
+
+	private File createFile(String name, int size) throws IOException {
+		File file = new File(tempDir, name);
+		TestFileUtil.createRandomFile(file, size);
+
+		return file;
+	}
+
+	private List<Chunk> createChunks(File file) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		ChunkEnumeration chunkEnumeration = config.getChunker().createChunks(file);
+
+		while (chunkEnumeration.hasMoreElements()) {
+			chunks.add(chunkEnumeration.nextElement());
+		}
+
+		chunkEnumeration.close();
+		return chunks;
+	}
+
+	private FileContent createFileContent(File file, List<Chunk> chunks) throws Exception {
+		MessageDigest fileDigest = MessageDigest.getInstance(config.getChunker().getChecksumAlgorithm());
+		FileContent fileContent = new FileContent();
+
+		for (Chunk chunk : chunks) {
+			fileContent.addChunk(new ChunkChecksum(chunk.getChecksum()));
+		}
+
+		fileContent.setChecksum(new FileChecksum(fileDigest.digest(FileUtils.readFileToByteArray(file))));
+		fileContent.setSize(file.length());
+
+		return fileContent;
+	}
+
+	private List<MultiChunkId> createMultiChunkIds(MultiChunkId multiChunkId, int count) {
+		List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+
+		for (int i = 0; i < count; i++) {
+			multiChunkIds.add(multiChunkId);
+		}
+
+		return multiChunkIds;
+	}
+
+	private byte[] createMultiChunk(MultiChunkId multiChunkId, List<Chunk> chunks) throws IOException {
+		ByteArrayOutputStream multiChunkOutputStream = new ByteArrayOutputStream();
+		MultiChunk multiChunk = config.getMultiChunker().createMultiChunk(multiChunkId, multiChunkOutputStream);
+
+		for (Chunk chunk : chunks) {
+			multiChunk.write(chunk);
+		}
+
+		multiChunk.close();
+		return multiChunkOutputStream.toByteArray();
+	}
+
+	private String[] getReconstructedFiles() {
+		return config.getCacheDir().list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("temp-reconstructedFileVersion-");
+			}
+		});
+	}
+}
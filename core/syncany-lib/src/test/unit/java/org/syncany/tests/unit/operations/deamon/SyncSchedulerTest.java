@@ -0,0 +1,190 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.operations.deamon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.syncany.config.to.SchedulerTO;
+import org.syncany.operations.daemon.ScheduledSync;
+import org.syncany.operations.daemon.ScheduledSync.SyncState;
+import org.syncany.operations.daemon.SyncScheduler;
+
+/**
+ * Unit tests for the {@link SyncScheduler} class.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SyncSchedulerTest {
+	@Test
+	public void testGlobalLimit() throws Exception {
+		SyncScheduler scheduler = new SyncScheduler(createSettings(2, 10));
+
+		assertTrue(scheduler.acquire(new File("/a"), "host1", false));
+		assertTrue(scheduler.acquire(new File("/b"), "host2", false));
+
+		WaitingSync waitingSync = new WaitingSync(scheduler, new File("/c"), "host3", false);
+		waitForWaitingCount(scheduler, 1);
+		assertFalse(waitingSync.acquired.get());
+
+		scheduler.release(new File("/a"));
+		waitingSync.join();
+
+		assertTrue(waitingSync.acquired.get());
+		assertEquals(2, countSyncs(scheduler.getQueueState(), SyncState.RUNNING));
+	}
+
+	@Test
+	public void testHostLimit() throws Exception {
+		SyncScheduler scheduler = new SyncScheduler(createSettings(10, 1));
+
+		assertTrue(scheduler.acquire(new File("/a"), "host1", false));
+
+		WaitingSync sameHostSync = new WaitingSync(scheduler, new File("/b"), "host1", false);
+		waitForWaitingCount(scheduler, 1);
+
+		// Other host must not be blocked by the waiting sync of host1
+		assertTrue(scheduler.acquire(new File("/c"), "host2", false));
+		assertFalse(sameHostSync.acquired.get());
+
+		scheduler.release(new File("/a"));
+		sameHostSync.join();
+
+		assertTrue(sameHostSync.acquired.get());
+	}
+
+	@Test
+	public void testHostLimitOverride() throws Exception {
+		SchedulerTO settings = createSettings(10, 1);
+		settings.setHostLimits(Collections.singletonMap("host1", 2));
+
+		SyncScheduler scheduler = new SyncScheduler(settings);
+
+		assertTrue(scheduler.acquire(new File("/a"), "host1", false));
+		assertTrue(scheduler.acquire(new File("/b"), "host1", false));
+		assertEquals(2, countSyncs(scheduler.getQueueState(), SyncState.RUNNING));
+	}
+
+	@Test
+	public void testPriorityServedFirst() throws Exception {
+		SyncScheduler scheduler = new SyncScheduler(createSettings(1, 1));
+
+		assertTrue(scheduler.acquire(new File("/a"), "host1", false));
+
+		WaitingSync normalSync = new WaitingSync(scheduler, new File("/b"), "host1", false);
+		waitForWaitingCount(scheduler, 1);
+
+		WaitingSync prioritySync = new WaitingSync(scheduler, new File("/c"), "host1", true);
+		waitForWaitingCount(scheduler, 2);
+
+		List<ScheduledSync> queueState = scheduler.getQueueState();
+		assertEquals(new File("/c"), queueState.get(1).getFolder());
+		assertEquals(new File("/b"), queueState.get(2).getFolder());
+
+		scheduler.release(new File("/a"));
+		prioritySync.join();
+
+		assertTrue(prioritySync.acquired.get());
+		assertFalse(normalSync.acquired.get());
+
+		scheduler.release(new File("/c"));
+		normalSync.join();
+
+		assertTrue(normalSync.acquired.get());
+	}
+
+	@Test
+	public void testCancelWaitingSync() throws Exception {
+		SyncScheduler scheduler = new SyncScheduler(createSettings(1, 1));
+
+		assertTrue(scheduler.acquire(new File("/a"), "host1", false));
+
+		WaitingSync waitingSync = new WaitingSync(scheduler, new File("/b"), "host1", false);
+		waitForWaitingCount(scheduler, 1);
+
+		scheduler.cancel(new File("/b"));
+		waitingSync.join();
+
+		assertFalse(waitingSync.acquired.get());
+		assertEquals(0, countSyncs(scheduler.getQueueState(), SyncState.WAITING));
+	}
+
+	private SchedulerTO createSettings(int maxConcurrentSyncs, int maxSyncsPerHost) {
+		SchedulerTO settings = new SchedulerTO();
+
+		settings.setMaxConcurrentSyncs(maxConcurrentSyncs);
+		settings.setMaxSyncsPerHost(maxSyncsPerHost);
+
+		return settings;
+	}
+
+	private int countSyncs(List<ScheduledSync> queueState, SyncState state) {
+		int count = 0;
+
+		for (ScheduledSync scheduledSync : queueState) {
+			if (scheduledSync.getState() == state) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private void waitForWaitingCount(SyncScheduler scheduler, int expectedWaitingCount) throws InterruptedException {
+		for (int i = 0; i < 100 && countSyncs(scheduler.getQueueState(), SyncState.WAITING) != expectedWaitingCount; i++) {
+			Thread.sleep(20);
+		}
+
+		assertEquals(expectedWaitingCount, countSyncs(scheduler.getQueueState(), SyncState.WAITING));
+	}
+
+	private static class WaitingSync extends Thread {
+		private SyncScheduler scheduler;
+		private File folder;
+		private String host;
+		private boolean priority;
+		private AtomicBoolean acquired;
+
+		public WaitingSync(SyncScheduler scheduler, File folder, String host, boolean priority) {
+			this.scheduler = scheduler;
+			this.folder = folder;
+			this.host = host;
+			this.priority = priority;
+			this.acquired = new AtomicBoolean(false);
+
+			start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				acquired.set(scheduler.acquire(folder, host, priority));
+			}
+			catch (InterruptedException e) {
+				// Not acquired
+			}
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins.transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.transfer.InstrumentedTransferManager;
+import org.syncany.plugins.transfer.MeasurableTransferManager;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferMetrics;
+import org.syncany.plugins.transfer.TransferMetrics.TransferCallMetrics;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class InstrumentedTransferManagerTest {
+	@Test
+	public void testMetricsPerMethodAndFileType() throws Exception {
+		TransferMetrics metrics = new TransferMetrics();
+		TransferManager transferManager = new InstrumentedTransferManager(mock(TransferManager.class), metrics);
+
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localFile = TestFileUtil.createRandomFileInDirectory(tempDir, 1234);
+
+		transferManager.upload(localFile, new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId()));
+		transferManager.upload(localFile, new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId()));
+		transferManager.upload(localFile, new DatabaseRemoteFile("A", 1));
+		transferManager.list(TransactionRemoteFile.class);
+		transferManager.connect();
+
+		assertEquals(2, metrics.getCallMetrics(TransferMetrics.METHOD_UPLOAD, "multichunk").getCalls());
+		assertEquals(2 * 1234, metrics.getCallMetrics(TransferMetrics.METHOD_UPLOAD, "multichunk").getBytes());
+		assertEquals(1, metrics.getCallMetrics(TransferMetrics.METHOD_UPLOAD, "database").getCalls());
+		assertEquals(3, metrics.getCallMetrics(TransferMetrics.METHOD_UPLOAD).getCalls());
+		assertEquals(3 * 1234, metrics.getBytesUploaded());
+		assertEquals(1, metrics.getCallMetrics("list", "transaction").getCalls());
+		assertEquals(1, metrics.getCallMetrics("connect", null).getCalls());
+		assertNull(metrics.getCallMetrics(TransferMetrics.METHOD_DOWNLOAD));
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testErrorsAndRetries() throws Exception {
+		int originalRetrySleepMillis = RetriableTransferManager.RETRY_SLEEP_MILLIS;
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 1;
+
+		TransferManager failingTransferManager = mock(TransferManager.class);
+		RemoteFile remoteFile = new DatabaseRemoteFile("A", 1);
+		File localFile = new File("/does/not/exist");
+
+		// Fails twice, then succeeds
+		doThrow(new StorageException("Failure 1")).doThrow(new StorageException("Failure 2")).doNothing()
+				.when(failingTransferManager).download(any(RemoteFile.class), any(File.class));
+
+		TransferMetrics metrics = new TransferMetrics();
+		TransferManager transferManager = new RetriableTransferManager(new InstrumentedTransferManager(failingTransferManager, metrics), metrics);
+
+		try {
+			transferManager.download(remoteFile, localFile);
+
+			TransferCallMetrics downloadMetrics = metrics.getCallMetrics(TransferMetrics.METHOD_DOWNLOAD, "database");
+
+			assertEquals(3, downloadMetrics.getCalls());
+			assertEquals(2, downloadMetrics.getErrors());
+			assertEquals(2, downloadMetrics.getRetries());
+
+			// Fails until retries are used up
+			doThrow(new StorageException("Failure")).when(failingTransferManager).delete(any(RemoteFile.class));
+
+			try {
+				transferManager.delete(remoteFile);
+				fail("Expected StorageException");
+			}
+			catch (StorageException e) {
+				// Expected
+			}
+
+			TransferCallMetrics deleteMetrics = metrics.getCallMetrics("delete", "database");
+
+			assertEquals(3, deleteMetrics.getCalls());
+			assertEquals(3, deleteMetrics.getErrors());
+			assertEquals(2, deleteMetrics.getRetries());
+		}
+		finally {
+			RetriableTransferManager.RETRY_SLEEP_MILLIS = originalRetrySleepMillis;
+		}
+	}
+
+	@Test
+	public void testLatencyHistogramAndPercentiles() {
+		TransferMetrics metrics = new TransferMetrics();
+
+		for (int i = 0; i < 90; i++) {
+			metrics.record("move", "multichunk", 3 * 1000000L, 0, false);
+		}
+
+		for (int i = 0; i < 10; i++) {
+			metrics.record("move", "multichunk", 700 * 1000000L, 0, false);
+		}
+
+		TransferCallMetrics moveMetrics = metrics.getCallMetrics("move", "multichunk");
+		long[] latencyHistogram = moveMetrics.getLatencyHistogram();
+
+		assertEquals(TransferMetrics.LATENCY_BUCKET_BOUNDS_MILLIS.length + 1, latencyHistogram.length);
+		assertEquals(90, latencyHistogram[2]); // <= 5 ms
+		assertEquals(10, latencyHistogram[9]); // <= 1000 ms
+		assertEquals(5, moveMetrics.getLatencyPercentileMillis(0.5));
+		assertEquals(5, moveMetrics.getLatencyPercentileMillis(0.9));
+		assertEquals(700, moveMetrics.getLatencyPercentileMillis(0.95)); // Capped at maximum
+		assertEquals(700, moveMetrics.getMaxTimeNanos() / 1000000);
+	}
+
+	@Test
+	public void testAddMetrics() {
+		TransferMetrics metrics1 = new TransferMetrics();
+		metrics1.record(TransferMetrics.METHOD_UPLOAD, "multichunk", 1000000L, 100, false);
+		metrics1.record("list", "database", 1000000L, 0, true);
+
+		TransferMetrics metrics2 = new TransferMetrics();
+		metrics2.record(TransferMetrics.METHOD_UPLOAD, "multichunk", 2000000L, 200, false);
+		metrics2.recordRetry("list", "database");
+
+		TransferMetrics totalMetrics = new TransferMetrics();
+		totalMetrics.add(metrics1);
+		totalMetrics.add(metrics2);
+
+		assertEquals(2, totalMetrics.getCallMetrics(TransferMetrics.METHOD_UPLOAD, "multichunk").getCalls());
+		assertEquals(300, totalMetrics.getBytesUploaded());
+		assertEquals(3000000L, totalMetrics.getCallMetrics(TransferMetrics.METHOD_UPLOAD, "multichunk").getTotalTimeNanos());
+		assertEquals(1, totalMetrics.getCallMetrics("list", "database").getErrors());
+		assertEquals(1, totalMetrics.getCallMetrics("list", "database").getRetries());
+		assertEquals(2, totalMetrics.getCalls().size());
+	}
+
+	@Test
+	public void testMeasurableTransferManagerReceivesMetrics() throws Exception {
+		TransferManager measurableTransferManager = mock(TransferManager.class, withSettings().extraInterfaces(MeasurableTransferManager.class));
+		doNothing().when((MeasurableTransferManager) measurableTransferManager).setTransferMetrics(any(TransferMetrics.class));
+
+		TransferMetrics metrics = new TransferMetrics();
+		new InstrumentedTransferManager(measurableTransferManager, metrics);
+
+		verify((MeasurableTransferManager) measurableTransferManager).setTransferMetrics(metrics);
+	}
+
+	@Test
+	public void testFileType() {
+		assertEquals("multichunk", TransferMetrics.getFileType(MultichunkRemoteFile.class));
+		assertEquals("transaction", TransferMetrics.getFileType(TransactionRemoteFile.class));
+		assertNull(TransferMetrics.getFileType((RemoteFile) null));
+	}
+}
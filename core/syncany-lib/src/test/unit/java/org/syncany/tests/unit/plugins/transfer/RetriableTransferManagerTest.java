@@ -0,0 +1,97 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins.transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+public class RetriableTransferManagerTest {
+	private int originalRetrySleepMillis;
+	private int originalRetrySleepMaxMillis;
+
+	@Before
+	public void setUp() {
+		originalRetrySleepMillis = RetriableTransferManager.RETRY_SLEEP_MILLIS;
+		originalRetrySleepMaxMillis = RetriableTransferManager.RETRY_SLEEP_MAX_MILLIS;
+	}
+
+	@After
+	public void tearDown() {
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = originalRetrySleepMillis;
+		RetriableTransferManager.RETRY_SLEEP_MAX_MILLIS = originalRetrySleepMaxMillis;
+	}
+
+	@Test
+	public void testRetrySleepDoublesUpToMaximum() {
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 100;
+		RetriableTransferManager.RETRY_SLEEP_MAX_MILLIS = 1000;
+
+		assertEquals(100, RetriableTransferManager.getRetrySleepMillis(1));
+		assertEquals(200, RetriableTransferManager.getRetrySleepMillis(2));
+		assertEquals(400, RetriableTransferManager.getRetrySleepMillis(3));
+		assertEquals(800, RetriableTransferManager.getRetrySleepMillis(4));
+		assertEquals(1000, RetriableTransferManager.getRetrySleepMillis(5));
+		assertEquals(1000, RetriableTransferManager.getRetrySleepMillis(100));
+	}
+
+	@Test
+	public void testRetrySleepMaximumBelowInitialSleep() {
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 100;
+		RetriableTransferManager.RETRY_SLEEP_MAX_MILLIS = 50;
+
+		assertEquals(50, RetriableTransferManager.getRetrySleepMillis(1));
+		assertEquals(50, RetriableTransferManager.getRetrySleepMillis(2));
+	}
+
+	@Test
+	public void testRetriesSleepWithBackoff() throws Exception {
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 50;
+		RetriableTransferManager.RETRY_SLEEP_MAX_MILLIS = 1000;
+
+		TransferManager failingTransferManager = mock(TransferManager.class);
+		RemoteFile remoteFile = new DatabaseRemoteFile("A", 1);
+		File localFile = new File("/does/not/exist");
+
+		// Fails twice, then succeeds
+		doThrow(new StorageException("Failure 1")).doThrow(new StorageException("Failure 2")).doNothing()
+				.when(failingTransferManager).download(any(RemoteFile.class), any(File.class));
+
+		long startTime = System.currentTimeMillis();
+		new RetriableTransferManager(failingTransferManager).download(remoteFile, localFile);
+		long duration = System.currentTimeMillis() - startTime;
+
+		verify(failingTransferManager, times(3)).download(remoteFile, localFile);
+		assertTrue("Expected at least 50+100 ms of sleep, but was " + duration + " ms", duration >= 150);
+	}
+}
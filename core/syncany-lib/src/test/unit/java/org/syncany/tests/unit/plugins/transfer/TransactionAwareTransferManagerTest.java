@@ -0,0 +1,242 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins.transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.transfer.InstrumentedTransferManager;
+import org.syncany.plugins.transfer.RemoteTransaction;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
+import org.syncany.plugins.transfer.TransactionCache;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferMetrics;
+import org.syncany.plugins.transfer.TransferMetrics.CacheMetrics;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.transfer.to.ActionTO;
+import org.syncany.plugins.transfer.to.ActionTO.ActionType;
+import org.syncany.plugins.transfer.to.TransactionTO;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class TransactionAwareTransferManagerTest {
+	private Config config;
+	private TransferMetrics metrics;
+	private TransferManager underlyingTransferManager;
+	private TransactionAwareTransferManager transferManager;
+
+	@Before
+	public void setUp() throws Exception {
+		config = TestConfigUtil.createTestLocalConfig("A");
+		metrics = new TransferMetrics();
+
+		TransferManager localTransferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
+
+		underlyingTransferManager = new InstrumentedTransferManager(localTransferManager, metrics);
+		transferManager = new TransactionAwareTransferManager(underlyingTransferManager, config);
+		transferManager.setTransferMetrics(metrics);
+	}
+
+	@After
+	public void tearDown() {
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	@Test
+	public void testTransactionsAreOnlyDownloadedOnce() throws Exception {
+		// Another client's transaction, uploaded without the transaction aware transfer manager
+		MultichunkRemoteFile multiChunkInTransaction = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		TransactionRemoteFile remoteTransactionFile = uploadTransaction("transaction-aaaa", "B", multiChunkInTransaction);
+
+		// Run
+		List<TransactionRemoteFile> ownTransactions1 = transferManager.getTransactionsByClient(config.getMachineName());
+		List<TransactionRemoteFile> ownTransactions2 = transferManager.getTransactionsByClient(config.getMachineName());
+		transferManager.list(MultichunkRemoteFile.class);
+
+		// Test
+		assertNotNull(ownTransactions1);
+		assertNotNull(ownTransactions2);
+		assertEquals(1, config.getTransactionCache().size());
+		assertEquals(1, metrics.getCallMetrics(TransferMetrics.METHOD_DOWNLOAD, "transaction").getCalls());
+
+		CacheMetrics cacheMetrics = metrics.getCacheMetrics(TransactionCache.METRICS_NAME);
+
+		assertEquals(2, cacheMetrics.getHits());
+		assertEquals(1, cacheMetrics.getMisses());
+		assertEquals(2.0 / 3, cacheMetrics.getHitRate(), 0.001);
+
+		// Transaction is finished by the other client
+		underlyingTransferManager.delete(remoteTransactionFile);
+		transferManager.getTransactionsByClient(config.getMachineName());
+
+		assertEquals(1, metrics.getCallMetrics(TransferMetrics.METHOD_DOWNLOAD, "transaction").getCalls());
+		assertEquals(1, cacheMetrics.getMisses());
+		assertEquals(0, config.getTransactionCache().size());
+	}
+
+	@Test
+	public void testChangedTransactionIsDownloadedAgain() throws Exception {
+		MultichunkRemoteFile multiChunk1 = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		MultichunkRemoteFile multiChunk2 = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		TransactionRemoteFile remoteTransactionFile = uploadTransaction("transaction-bbbb", "B", multiChunk1);
+		assertEquals(0, transferManager.getTransactionsByClient(config.getMachineName()).size());
+
+		// Same name, but replaced through the transaction aware transfer manager (without listing in between)
+		underlyingTransferManager.delete(remoteTransactionFile);
+
+		File transactionFile = createTransactionFile(config.getMachineName(), multiChunk2);
+		transferManager.upload(transactionFile, new TransactionRemoteFile("transaction-bbbb"));
+
+		List<TransactionRemoteFile> ownTransactions = transferManager.getTransactionsByClient(config.getMachineName());
+
+		assertEquals(1, ownTransactions.size());
+		assertEquals("transaction-bbbb", ownTransactions.get(0).getName());
+		assertEquals(2, metrics.getCallMetrics(TransferMetrics.METHOD_DOWNLOAD, "transaction").getCalls());
+	}
+
+	@Test
+	public void testCacheIsSharedViaConfig() throws Exception {
+		TransactionAwareTransferManager otherTransferManager = new TransactionAwareTransferManager(underlyingTransferManager, config);
+
+		uploadTransaction("transaction-cccc", "B", new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId()));
+
+		assertTrue(transferManager.getTransactionsByClient(config.getMachineName()).isEmpty());
+		assertTrue(otherTransferManager.getTransactionsByClient(config.getMachineName()).isEmpty());
+
+		// Only the first transfer manager records metrics
+		assertEquals(1, metrics.getCallMetrics(TransferMetrics.METHOD_DOWNLOAD, "transaction").getCalls());
+		assertEquals(0, metrics.getCacheMetrics(TransactionCache.METRICS_NAME).getHits());
+		assertEquals(1, metrics.getCacheMetrics(TransactionCache.METRICS_NAME).getMisses());
+	}
+
+	@Test
+	public void testCacheIsPersistedInStateDir() throws Exception {
+		TransactionRemoteFile remoteTransactionFile = uploadTransaction("transaction-dddd", "B",
+				new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId()));
+
+		transferManager.getTransactionsByClient(config.getMachineName());
+
+		// A new cache (e.g. after a restart) loads the persisted transaction
+		File transactionCacheDir = new File(config.getStateDir(), Config.DIR_TRANSACTION_CACHE);
+		TransactionCache restartedTransactionCache = new TransactionCache(transactionCacheDir);
+
+		assertEquals(1, restartedTransactionCache.size());
+		assertEquals("B", restartedTransactionCache.get(remoteTransactionFile).getMachineName());
+
+		// Unreadable entries are deleted
+		FileUtils.writeStringToFile(new File(transactionCacheDir, "transaction-eeee"), "invalid");
+
+		assertEquals(1, new TransactionCache(transactionCacheDir).size());
+		assertFalse(new File(transactionCacheDir, "transaction-eeee").exists());
+
+		// Finished transactions are removed from disk
+		underlyingTransferManager.delete(remoteTransactionFile);
+		transferManager.getTransactionsByClient(config.getMachineName());
+
+		assertEquals(0, new TransactionCache(transactionCacheDir).size());
+		assertEquals(0, transactionCacheDir.list().length);
+	}
+
+	@Test
+	public void testTransactionRemoteFileNames() throws Exception {
+		TransactionRemoteFile remoteTransactionFile = new TransactionRemoteFile("transaction-0000abcd");
+		TransactionRemoteFile remoteTransactionFileRevision = remoteTransactionFile.createRevision(17);
+
+		assertEquals("transaction-0000abcd11", remoteTransactionFileRevision.getName());
+		assertEquals("0000abcd", remoteTransactionFileRevision.getTransactionId());
+		assertEquals(0, remoteTransactionFile.getRevision());
+		assertEquals(17, remoteTransactionFileRevision.getRevision());
+		assertTrue(remoteTransactionFile.isSameTransaction(remoteTransactionFileRevision));
+		assertFalse(remoteTransactionFile.isSameTransaction(new TransactionRemoteFile("transaction-0000abce")));
+	}
+
+	@Test
+	public void testResumedCommitReplacesPartialTransactionFiles() throws Exception {
+		MultichunkRemoteFile multiChunk1 = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		MultichunkRemoteFile multiChunk2 = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		// Pipelined upload of two batches, each registered in a partial transaction file
+		RemoteTransaction remoteTransaction = new RemoteTransaction(config, transferManager);
+
+		remoteTransaction.uploadToTempLocation(Collections.<File, RemoteFile> singletonMap(createLocalFile("multichunk1"), multiChunk1));
+		remoteTransaction.uploadToTempLocation(Collections.<File, RemoteFile> singletonMap(createLocalFile("multichunk2"), multiChunk2));
+
+		// Crash before the full transaction file is uploaded, transaction is written for resuming
+		remoteTransaction.writeToFile(null, config.getTransactionFile());
+
+		List<TransactionRemoteFile> ownTransactions = transferManager.getTransactionsByClient(config.getMachineName());
+		assertEquals(2, ownTransactions.size());
+		assertTrue(ownTransactions.get(0).isSameTransaction(ownTransactions.get(1)));
+
+		// Resume
+		TransactionTO resumedTransactionTO = TransactionTO.load(null, config.getTransactionFile());
+		RemoteTransaction resumedRemoteTransaction = new RemoteTransaction(config, transferManager, resumedTransactionTO);
+
+		resumedRemoteTransaction.commit(config.getTransactionFile(), ownTransactions.get(0));
+
+		// Test: No transaction file is left behind, and rolling back does not delete the committed files
+		assertTrue(underlyingTransferManager.list(TransactionRemoteFile.class).isEmpty());
+		assertTrue(transferManager.cleanTransactions());
+		assertEquals(2, transferManager.list(MultichunkRemoteFile.class).size());
+		assertTrue(transferManager.list(TempRemoteFile.class).isEmpty());
+	}
+
+	private File createLocalFile(String name) throws Exception {
+		File localFile = new File(config.getCacheDir(), name);
+		FileUtils.writeStringToFile(localFile, name);
+
+		return localFile;
+	}
+
+	private TransactionRemoteFile uploadTransaction(String name, String machineName, MultichunkRemoteFile remoteFile) throws Exception {
+		TransactionRemoteFile remoteTransactionFile = new TransactionRemoteFile(name);
+		underlyingTransferManager.upload(createTransactionFile(machineName, remoteFile), remoteTransactionFile);
+
+		return remoteTransactionFile;
+	}
+
+	private File createTransactionFile(String machineName, MultichunkRemoteFile remoteFile) throws Exception {
+		ActionTO action = new ActionTO();
+		action.setType(ActionType.UPLOAD);
+		action.setRemoteLocation(remoteFile);
+		action.setRemoteTempLocation(new TempRemoteFile(remoteFile));
+
+		TransactionTO transaction = new TransactionTO(machineName);
+		transaction.addAction(action);
+
+		File transactionFile = config.getCache().createTempFile("transaction");
+		transaction.save(config.getTransformer(), transactionFile);
+
+		return transactionFile;
+	}
+}
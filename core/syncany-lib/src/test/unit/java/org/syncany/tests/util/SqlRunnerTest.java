@@ -53,11 +53,14 @@ public class SqlRunnerTest {
 		// Test a few selects
 		assertEquals("1337", TestSqlUtil.runSqlSelect("select id from databaseversion", connection));
 		assertEquals(
-				"DATABASEVERSION\nCHUNK\nDATABASEVERSION_VECTORCLOCK\nFILECONTENT\nFILECONTENT_CHUNK\nFILEHISTORY\nFILEVERSION\nFILEVERSION_PURGE\nMULTICHUNK\nMULTICHUNK_CHUNK\nMULTICHUNK_MUDDY\nKNOWN_DATABASES\nGENERAL_SETTINGS\nDATABASEVERSION_MASTER\nFILEVERSION_MASTER\nFILEVERSION_MASTER_MAXVERSION\nFILEVERSION_MASTER_LAST\nFILEHISTORY_FULL\nFILEVERSION_FULL",
+				"DATABASEVERSION\nCHUNK\nDATABASEVERSION_VECTORCLOCK\nFILECONTENT\nFILECONTENT_CHUNK\nFILEHISTORY\nFILEVERSION\nFILEVERSION_CURRENT\nFILEVERSION_PURGE\nMULTICHUNK\nMULTICHUNK_CHUNK\nMULTICHUNK_MUDDY\nKNOWN_DATABASES\nGENERAL_SETTINGS\nDATABASEVERSION_MASTER\nFILEVERSION_MASTER\nFILEVERSION_MASTER_MAXVERSION\nFILEVERSION_MASTER_LAST\nFILEHISTORY_FULL\nFILEVERSION_FULL",
 				TestSqlUtil.runSqlSelect("select table_name from information_schema.tables where table_schema='PUBLIC'", connection));
 
 		// Test the function (--> different delimiter!)
 		assertEquals("3", TestSqlUtil.runSqlSelect("select distinct substr_count('/a/b/c', '/') from information_schema.system_tables", connection));
+		assertEquals("/a/b", TestSqlUtil.runSqlSelect("select distinct parent_path('/a/b/c') from information_schema.system_tables", connection));
+		assertEquals("", TestSqlUtil.runSqlSelect("select distinct parent_path('a') from information_schema.system_tables", connection));
+		assertEquals("3", TestSqlUtil.runSqlSelect("select distinct path_depth('/a/b/c') from information_schema.system_tables", connection));
 
 		connection.createStatement().execute("shutdown");
 
@@ -42,6 +42,8 @@ import org.syncany.crypto.CipherUtil;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.operations.init.InitOperationOptions;
 import org.syncany.plugins.Plugins;
+import org.syncany.plugins.latency_local.LatencyLocalTransferPlugin;
+import org.syncany.plugins.latency_local.LatencyLocalTransferSettings;
 import org.syncany.plugins.local.LocalTransferSettings;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferSettings;
@@ -54,6 +56,7 @@ import com.google.common.collect.Lists;
 public class TestConfigUtil {
 	private static final String RUNDATE = new SimpleDateFormat("yyMMddHHmmssSSS").format(new Date());
 	private static boolean cryptoEnabled = false;
+	private static Integer repoFormatVersion = null;
 	private static SaltedSecretKey masterKey = null;
 
 	static {
@@ -109,6 +112,7 @@ public class TestConfigUtil {
 		// Create Repo TO
 		RepoTO repoTO = new RepoTO();
 		repoTO.setRepoId(new byte[] { 0x01, 0x02, 0x03 });
+		repoTO.setFormatVersion(repoFormatVersion);
 
 		// Create ChunkerTO and MultiChunkerTO
 		MultiChunkerTO multiChunkerTO = createZipMultiChunkerTO();
@@ -287,6 +291,24 @@ public class TestConfigUtil {
 		return unreliableLocalConnection;
 	}
 
+	public static LatencyLocalTransferSettings createTestLatencyLocalConnection(int requestLatencyMillis, int latencyJitterMillis,
+			int listLatencyPerEntryMicros, int bandwidthKBps) throws Exception {
+		LatencyLocalTransferPlugin latencyLocalPlugin = new LatencyLocalTransferPlugin();
+		LatencyLocalTransferSettings latencyLocalConnection = latencyLocalPlugin.createEmptySettings();
+
+		File tempRepoDir = TestFileUtil.createTempDirectoryInSystemTemp(createUniqueName("repo", new Random().nextFloat()));
+
+		latencyLocalConnection.setPath(tempRepoDir);
+		latencyLocalConnection.setRequestLatencyMillis(requestLatencyMillis);
+		latencyLocalConnection.setLatencyJitterMillis(latencyJitterMillis);
+		latencyLocalConnection.setListLatencyPerEntryMicros(listLatencyPerEntryMicros);
+		latencyLocalConnection.setBandwidthKBps(bandwidthKBps);
+
+		latencyLocalPlugin.createTransferManager(latencyLocalConnection, null).init(true);
+
+		return latencyLocalConnection;
+	}
+
 	public static void deleteTestLocalConfigAndData(Config config) {
 		TestFileUtil.deleteDirectory(config.getLocalDir());
 		TestFileUtil.deleteDirectory(config.getCacheDir());
@@ -318,4 +340,8 @@ public class TestConfigUtil {
 	public static boolean getCrypto() {
 		return cryptoEnabled;
 	}
+
+	public static void setRepoFormatVersion(Integer repoFormatVersion) {
+		TestConfigUtil.repoFormatVersion = repoFormatVersion;
+	}
 }
@@ -0,0 +1,173 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import jcifs.smb.NtlmPasswordAuthentication;
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbFileInputStream;
+import jcifs.smb.SmbFileOutputStream;
+import jcifs.smb.SmbRandomAccessFile;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Implements a {@link SambaClient} using the jcifs library. jcifs only supports
+ * SMB1/CIFS and does not keep a connection open between calls, so {@link #connect()}
+ * only checks that the share is accessible.
+ *
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public class JcifsSambaClient implements SambaClient {
+	private static final int DEFAULT_PORT = 445;
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private String shareUrl;
+	private NtlmPasswordAuthentication authentication;
+
+	public JcifsSambaClient(String hostname, String share, String username, String password) {
+		this(hostname, DEFAULT_PORT, share, username, password);
+	}
+
+	/**
+	 * Creates a client that connects to a non-standard port (e.g. a Samba server started by a test).
+	 */
+	JcifsSambaClient(String hostname, int port, String share, String username, String password) {
+		this.shareUrl = "smb://" + hostname + ((port != DEFAULT_PORT) ? ":" + port : "") + "/" + share;
+		this.authentication = new NtlmPasswordAuthentication("", username, password);
+	}
+
+	@Override
+	public void connect() throws IOException {
+		new SmbFile(shareUrl, authentication).exists();
+	}
+
+	@Override
+	public void disconnect() {
+		// Nothing
+	}
+
+	@Override
+	public boolean isDirectory(String path) throws IOException {
+		return createSmbFile(path).isDirectory();
+	}
+
+	@Override
+	public boolean isFile(String path) throws IOException {
+		return createSmbFile(path).isFile();
+	}
+
+	@Override
+	public void mkdir(String path) throws IOException {
+		createSmbFile(path).mkdir();
+	}
+
+	@Override
+	public void mkdirs(String path) throws IOException {
+		createSmbFile(path).mkdirs();
+	}
+
+	@Override
+	public void delete(String path) throws IOException {
+		createSmbFile(path).delete();
+	}
+
+	@Override
+	public void rename(String sourcePath, String targetPath) throws IOException {
+		createSmbFile(sourcePath).renameTo(createSmbFile(targetPath));
+	}
+
+	@Override
+	public List<String> list(String path) throws IOException {
+		List<String> fileNames = new ArrayList<String>();
+
+		for (SmbFile entry : createSmbFile(path).listFiles()) {
+			fileNames.add(entry.getName());
+		}
+
+		return fileNames;
+	}
+
+	@Override
+	public long length(String path) throws IOException {
+		SmbFile smbFile = createSmbFile(path);
+		return smbFile.exists() ? smbFile.length() : -1;
+	}
+
+	@Override
+	public long read(String path, long offset, OutputStream outputStream) throws IOException {
+		SmbFileInputStream smbfis = new SmbFileInputStream(createSmbFile(path));
+
+		try {
+			// Skipping only moves the file pointer, no data is read
+			if (offset > 0 && smbfis.skip(offset) != offset) {
+				throw new IOException("Cannot skip to offset " + offset + " in " + path);
+			}
+
+			return IOUtils.copyLarge(smbfis, outputStream);
+		}
+		finally {
+			smbfis.close();
+		}
+	}
+
+	@Override
+	public long write(InputStream inputStream, String path, long offset) throws IOException {
+		if (offset == 0) {
+			SmbFileOutputStream smbfos = new SmbFileOutputStream(createSmbFile(path));
+
+			try {
+				return IOUtils.copyLarge(inputStream, smbfos);
+			}
+			finally {
+				smbfos.close();
+			}
+		}
+		else {
+			SmbRandomAccessFile smbraf = new SmbRandomAccessFile(createSmbFile(path), "rw");
+
+			try {
+				byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+				long writtenBytes = 0;
+				int readBytes;
+
+				smbraf.seek(offset);
+
+				while ((readBytes = inputStream.read(buffer)) != -1) {
+					smbraf.write(buffer, 0, readBytes);
+					writtenBytes += readBytes;
+				}
+
+				return writtenBytes;
+			}
+			finally {
+				smbraf.close();
+			}
+		}
+	}
+
+	private SmbFile createSmbFile(String path) throws IOException {
+		return new SmbFile(URI.create(shareUrl + "/" + path).normalize().toString(), authentication);
+	}
+}
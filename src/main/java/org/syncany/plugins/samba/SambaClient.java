@@ -0,0 +1,99 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A Samba client encapsulates the SMB library used by the {@link SambaTransferManager}
+ * to access the share. All paths are relative to the share, use forward slashes
+ * and may contain <tt>..</tt> and duplicate slashes; the client normalizes them.
+ *
+ * <p>Implementations connect automatically on first use. A client is not
+ * thread-safe; the transfer manager uses one client per instance.
+ *
+ * @see JcifsSambaClient
+ * @see SmbjSambaClient
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public interface SambaClient {
+	/**
+	 * Connects to the server (if not already connected) and checks
+	 * that the share is accessible.
+	 */
+	public void connect() throws IOException;
+
+	/**
+	 * Closes the connection to the server, if the underlying library keeps one
+	 * open. Further calls automatically re-connect.
+	 */
+	public void disconnect();
+
+	public boolean isDirectory(String path) throws IOException;
+
+	public boolean isFile(String path) throws IOException;
+
+	/**
+	 * Creates the given directory. Fails if the directory already exists.
+	 */
+	public void mkdir(String path) throws IOException;
+
+	/**
+	 * Creates the given directory and all non-existing parent directories.
+	 */
+	public void mkdirs(String path) throws IOException;
+
+	/**
+	 * Deletes the given file or (empty) directory.
+	 */
+	public void delete(String path) throws IOException;
+
+	/**
+	 * Renames the given file. Fails if the target file exists.
+	 */
+	public void rename(String sourcePath, String targetPath) throws IOException;
+
+	/**
+	 * Returns the names of the files in the given directory,
+	 * excluding <tt>.</tt> and <tt>..</tt>.
+	 */
+	public List<String> list(String path) throws IOException;
+
+	/**
+	 * Returns the size of the given file in bytes, or -1 if
+	 * the file does not exist.
+	 */
+	public long length(String path) throws IOException;
+
+	/**
+	 * Copies the contents of the given remote file, starting at the given offset, to
+	 * the output stream and returns the number of bytes read. The stream is not closed.
+	 */
+	public long read(String path, long offset, OutputStream outputStream) throws IOException;
+
+	/**
+	 * Writes the contents of the input stream to the given remote file, starting at the
+	 * given offset, and returns the number of bytes written. If the offset is 0, the file is
+	 * created or overwritten; otherwise, the existing file is written from the offset on,
+	 * keeping the bytes before it. The stream is not closed.
+	 */
+	public long write(InputStream inputStream, String path, long offset) throws IOException;
+}
@@ -17,36 +17,38 @@
  */
 package org.syncany.plugins.samba;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.MalformedURLException;
-import java.net.URI;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import jcifs.smb.NtlmPasswordAuthentication;
-import jcifs.smb.SmbException;
-import jcifs.smb.SmbFile;
-import jcifs.smb.SmbFileInputStream;
-import jcifs.smb.SmbFileOutputStream;
-
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.syncany.config.Config;
 import org.syncany.plugins.transfer.AbstractTransferManager;
+import org.syncany.plugins.transfer.MeasurableTransferManager;
+import org.syncany.plugins.transfer.RetriableTransferManager;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.StorageFileNotFoundException;
 import org.syncany.plugins.transfer.StorageMoveException;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferMetrics;
 import org.syncany.plugins.transfer.files.ActionRemoteFile;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.GenerationRemoteFile;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.SyncanyRemoteFile;
@@ -69,35 +71,84 @@ import org.syncany.util.FileUtil;
  * </ul>
  * 
  * <p>All operations are auto-connected, i.e. a connection is automatically
- * established.
+ * established. Depending on the protocol in the settings, the transfer manager uses
+ * a {@link JcifsSambaClient} (SMB1) or a {@link SmbjSambaClient} (SMB 2/3).
+ * 
+ * <p>If transfer metrics are enabled, the time spent reading/writing file contents
+ * (<tt>smb.read</tt>, <tt>smb.write</tt>) is recorded separately from the time spent
+ * renaming (<tt>smb.rename</tt>) and listing files (<tt>smb.list</tt>). Uploads write to a
+ * temporary file and rename it, so their latency is split into both parts.
+ *
+ * <p>Interrupted multichunk transfers are resumed when the {@link RetriableTransferManager}
+ * retries them: Failed downloads keep their partial local temp file and continue at its size.
+ * Failed uploads keep the remote temp file; on retry, its size is read and its last bytes are
+ * compared to the local file before continuing at that offset. The number of bytes not
+ * transferred again is recorded as <tt>smb.resume</tt>. Partial downloads are deleted on
+ * {@link #disconnect()}.
+ *
+ * <p>If renaming the uploaded temp file fails, the upload is considered successful if the temp
+ * file is gone and the target file has the expected size (i.e. only the response was lost);
+ * otherwise, a retry of any file type only renames the complete temp file.
  *
  * @author Christian Roth <christian.roth@port17.de>
  */
-public class SambaTransferManager extends AbstractTransferManager {
+public class SambaTransferManager extends AbstractTransferManager implements MeasurableTransferManager {
 	private static final Logger logger = Logger.getLogger(SambaTransferManager.class.getSimpleName());
 
-	private NtlmPasswordAuthentication authentication;
+	private static final String METRICS_METHOD_READ = "smb.read";
+	private static final String METRICS_METHOD_WRITE = "smb.write";
+	private static final String METRICS_METHOD_RENAME = "smb.rename";
+	private static final String METRICS_METHOD_LIST = "smb.list";
+	private static final String METRICS_METHOD_RESUME = "smb.resume";
+
+	private static final int RESUME_VERIFY_BYTES = 64 * 1024;
+
+	private SambaClient client;
 	private String repoPath;
 	private String multichunksPath;
 	private String databasesPath;
 	private String actionsPath;
 	private String transactionsPath;
 	private String tempPath;
+	private TransferMetrics transferMetrics;
+
+	private Map<String, File> partialDownloads;
+	private Set<String> failedUploads;
 
 	public SambaTransferManager(SambaTransferSettings connection, Config config) {
+		this(connection, config, createClient(connection));
+	}
+
+	/**
+	 * Creates a transfer manager that uses the given client to access the share
+	 * (e.g. a fake client in tests).
+	 */
+	SambaTransferManager(SambaTransferSettings connection, Config config, SambaClient client) {
 		super(connection, config);
 
+		this.client = client;
+
 		this.repoPath = "smb://" + connection.getHostname() + "/" + connection.getShare();
 		this.multichunksPath = "/multichunks/";
 		this.databasesPath = "/databases/";
 		this.actionsPath = "/actions/";
 		this.transactionsPath = "/transactions/";
 		this.tempPath = "/temporary/";
-		
-		this.authentication = new NtlmPasswordAuthentication("", connection.getUsername(), connection.getPassword());
+
+		this.partialDownloads = new HashMap<String, File>();
+		this.failedUploads = new HashSet<String>();
 
 		if (logger.isLoggable(Level.INFO)) {
-			logger.log(Level.INFO, "Samba: RepoPath is " + repoPath);
+			logger.log(Level.INFO, "Samba: RepoPath is " + repoPath + ", protocol is " + connection.getProtocol());
+		}
+	}
+
+	private static SambaClient createClient(SambaTransferSettings connection) {
+		if (SambaTransferSettings.PROTOCOL_SMB2.equals(connection.getProtocol())) {
+			return new SmbjSambaClient(connection.getHostname(), connection.getShare(), connection.getUsername(), connection.getPassword());
+		}
+		else {
+			return new JcifsSambaClient(connection.getHostname(), connection.getShare(), connection.getUsername(), connection.getPassword());
 		}
 	}
 
@@ -105,38 +156,52 @@ public class SambaTransferManager extends AbstractTransferManager {
 		return (SambaTransferSettings) settings;
 	}
 
+	@Override
+	public void setTransferMetrics(TransferMetrics transferMetrics) {
+		this.transferMetrics = transferMetrics;
+	}
+
 	@Override
 	public void connect() throws StorageException {
-		// make a connect
 		try {
-			new SmbFile(repoPath, authentication).exists();
+			client.connect();
 		}
 		catch (Exception e) {
 			throw new StorageException("Unable to connect to target at " + repoPath + "/" + getSettings().getPath(), e);
 		}
 	}
 
+	/**
+	 * Disconnects the client and deletes the local temp files of failed downloads,
+	 * i.e. downloads can only be resumed while connected.
+	 */
 	@Override
 	public void disconnect() {
-		// Nothing
+		client.disconnect();
+
+		for (File partialTempFile : partialDownloads.values()) {
+			partialTempFile.delete();
+		}
+
+		partialDownloads.clear();
 	}
 
 	@Override
 	public void init(boolean createIfRequired) throws StorageException {
 		connect();
-		
+
 		try {
 			if (!testTargetExists() && createIfRequired) {
-				new SmbFile(repoPath + "/" + getSettings().getPath(), authentication).mkdirs();
+				client.mkdirs(getRemotePath(null));
 			}
 
-			createSmbFile(RemoteFile.createRemoteFile(multichunksPath, SambaRemoteFile.class)).mkdir();
-			createSmbFile(RemoteFile.createRemoteFile(databasesPath, SambaRemoteFile.class)).mkdir();
-			createSmbFile(RemoteFile.createRemoteFile(actionsPath, SambaRemoteFile.class)).mkdir();
-			createSmbFile(RemoteFile.createRemoteFile(transactionsPath, SambaRemoteFile.class)).mkdir();
-			createSmbFile(RemoteFile.createRemoteFile(tempPath, SambaRemoteFile.class)).mkdir();
+			client.mkdir(getRemoteFolderPath(multichunksPath));
+			client.mkdir(getRemoteFolderPath(databasesPath));
+			client.mkdir(getRemoteFolderPath(actionsPath));
+			client.mkdir(getRemoteFolderPath(transactionsPath));
+			client.mkdir(getRemoteFolderPath(tempPath));
 		}
-		catch (MalformedURLException | SmbException e) {
+		catch (IOException e) {
 			throw new StorageException("init: Cannot create required directories", e);
 		}
 		finally {
@@ -151,25 +216,54 @@ public class SambaTransferManager extends AbstractTransferManager {
 		}
 
 		try {
-			// Download file
-			File tempFile = createTempFile(localFile.getName());
-			OutputStream tempFOS = new FileOutputStream(tempFile);
-			SmbFile requestedSmbFile = createSmbFile(remoteFile);
+			// Download file (or resume a previously failed download)
+			String remotePath = getRemotePath(remoteFile);
+			File tempFile = partialDownloads.remove(remoteFile.getName());
+			long resumeOffset = getDownloadResumeOffset(remoteFile, remotePath, tempFile);
+
+			if (resumeOffset == 0) {
+				if (tempFile != null) {
+					tempFile.delete();
+				}
+
+				tempFile = createTempFile(localFile.getName());
+			}
+
+			OutputStream tempFOS = new FileOutputStream(tempFile, resumeOffset > 0);
 
 			if (logger.isLoggable(Level.INFO)) {
-				logger.log(Level.INFO, "Samba: Downloading {0} to temp file {1}", new Object[]{requestedSmbFile.getPath(), tempFile});
+				logger.log(Level.INFO, "Samba: Downloading {0} to temp file {1}, starting at offset {2}", new Object[] { remotePath, tempFile, resumeOffset });
 			}
 
 			try {
-				SmbFileInputStream smbfis = new SmbFileInputStream(requestedSmbFile);
-				IOUtils.copy(smbfis, tempFOS);
+				long readStartTime = System.nanoTime();
+				long readBytes = client.read(remotePath, resumeOffset, tempFOS);
 
 				tempFOS.close();
-				smbfis.close();
+
+				recordMetrics(METRICS_METHOD_READ, remoteFile.getClass(), readStartTime, readBytes);
 			}
 			catch (IOException e) {
-				logger.log(Level.WARNING, "Samba: Downloading FAILED. {0} to temp file {1}", new Object[] { requestedSmbFile.getPath(), tempFile });
-				throw new StorageFileNotFoundException("Samba: Downloading FAILED: " + requestedSmbFile.getPath(), e);
+				tempFOS.close();
+
+				if (isRemoteFileMissing(remotePath)) {
+					tempFile.delete();
+
+					logger.log(Level.WARNING, "Samba: Downloading FAILED. {0} to temp file {1}", new Object[] { remotePath, tempFile });
+					throw new StorageFileNotFoundException("Samba: Downloading FAILED: " + remotePath, e);
+				}
+				else {
+					if (isResumable(remoteFile)) {
+						partialDownloads.put(remoteFile.getName(), tempFile);
+					}
+					else {
+						tempFile.delete();
+					}
+
+					logger.log(Level.WARNING, "Samba: Downloading FAILED. {0} to temp file {1}, {2} bytes downloaded.", new Object[] { remotePath,
+							tempFile, tempFile.length() });
+					throw new StorageException("Samba: Downloading FAILED: " + remotePath, e);
+				}
 			}
 
 			// Move file
@@ -190,27 +284,73 @@ public class SambaTransferManager extends AbstractTransferManager {
 	@Override
 	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
 		try {
-			// Upload to temp file
-			InputStream fileFIS = new FileInputStream(localFile);
-			SmbFile tempSmbFile = createSmbFile(RemoteFile.createRemoteFile("/temp-" + remoteFile.getName(), SambaRemoteFile.class));
-
-			if (logger.isLoggable(Level.INFO)) {
-				logger.log(Level.INFO, "Samba: Uploading {0} to temp file {1}", new Object[]{localFile, tempSmbFile.getPath()});
+			String tempRemotePath = getRemotePath(null) + "/temp-" + remoteFile.getName();
+			String remotePath = getRemotePath(remoteFile);
+			boolean retry = failedUploads.remove(remoteFile.getName());
+
+			if (retry && isUploadRenamed(localFile, tempRemotePath, remotePath)) {
+				logger.log(Level.INFO, "Samba: Temp file {0} was already renamed to {1} by the failed upload, nothing to do.", new Object[] {
+						tempRemotePath, remotePath });
+				return;
 			}
 
-			SmbFileOutputStream smbfos = new SmbFileOutputStream(tempSmbFile);
-			IOUtils.copy(fileFIS, smbfos);
+			// Upload to temp file (or resume a previously failed upload)
+			long resumeOffset = retry ? getUploadResumeOffset(remoteFile, localFile, tempRemotePath) : 0;
+
+			if (resumeOffset == 0 || resumeOffset < localFile.length()) {
+				if (logger.isLoggable(Level.INFO)) {
+					logger.log(Level.INFO, "Samba: Uploading {0} to temp file {1}, starting at offset {2}", new Object[] { localFile, tempRemotePath,
+							resumeOffset });
+				}
 
-			fileFIS.close();
-			smbfos.close();
+				InputStream fileFIS = new FileInputStream(localFile);
+				long writeStartTime = System.nanoTime();
+				long writtenBytes;
+
+				try {
+					if (resumeOffset > 0 && fileFIS.skip(resumeOffset) != resumeOffset) {
+						throw new IOException("Cannot skip to offset " + resumeOffset + " in local file " + localFile);
+					}
+
+					writtenBytes = client.write(fileFIS, tempRemotePath, resumeOffset);
+				}
+				catch (IOException e) {
+					if (isResumable(remoteFile)) {
+						failedUploads.add(remoteFile.getName());
+					}
+
+					throw e;
+				}
+				finally {
+					fileFIS.close();
+				}
+
+				recordMetrics(METRICS_METHOD_WRITE, remoteFile.getClass(), writeStartTime, writtenBytes);
+			}
 
 			// Move
-			SmbFile smbFile = createSmbFile(remoteFile);
 			if (logger.isLoggable(Level.INFO)) {
-				logger.log(Level.INFO, "Samba: Renaming temp file {0} to {1}", new Object[]{tempSmbFile.getPath(), smbFile.getPath()});
+				logger.log(Level.INFO, "Samba: Renaming temp file {0} to {1}", new Object[]{tempRemotePath, remotePath});
+			}
+
+			long renameStartTime = System.nanoTime();
+
+			try {
+				client.rename(tempRemotePath, remotePath);
+			}
+			catch (IOException e) {
+				if (isUploadRenamed(localFile, tempRemotePath, remotePath)) {
+					logger.log(Level.INFO, "Samba: Renaming temp file " + tempRemotePath + " failed, but the target exists with the expected size. "
+							+ "Assuming that only the response was lost.", e);
+				}
+				else {
+					failedUploads.add(remoteFile.getName()); // Temp file is complete, retry only renames it
+
+					throw e;
+				}
 			}
 
-			tempSmbFile.renameTo(smbFile);
+			recordMetrics(METRICS_METHOD_RENAME, remoteFile.getClass(), renameStartTime, 0);
 		}
 		catch (IOException ex) {
 			logger.log(Level.SEVERE, "Could not upload file " + localFile + " to " + remoteFile.getName(), ex);
@@ -218,10 +358,121 @@ public class SambaTransferManager extends AbstractTransferManager {
 		}
 	}
 
+	/**
+	 * Returns the offset at which a failed download can be continued, i.e. the size of the
+	 * partially downloaded local file, or 0 if the download has to start from the beginning.
+	 */
+	private long getDownloadResumeOffset(RemoteFile remoteFile, String remotePath, File partialTempFile) {
+		if (partialTempFile == null || !partialTempFile.exists() || partialTempFile.length() == 0) {
+			return 0;
+		}
+
+		try {
+			long resumeOffset = partialTempFile.length();
+			long remoteFileSize = client.length(remotePath);
+
+			if (remoteFileSize >= resumeOffset) {
+				recordMetrics(METRICS_METHOD_RESUME, remoteFile.getClass(), System.nanoTime(), resumeOffset);
+				return resumeOffset;
+			}
+			else {
+				logger.log(Level.INFO, "Samba: Cannot resume download of " + remotePath + ", remote file smaller than partial file.");
+				return 0;
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.INFO, "Samba: Cannot resume download of " + remotePath + ", cannot get remote file size.", e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the offset at which a failed upload can be continued, or 0 if the upload has to
+	 * start from the beginning. The upload can be continued if the remote temp file is not larger
+	 * than the local file, and if its last {@link #RESUME_VERIFY_BYTES} bytes match the local file.
+	 */
+	private long getUploadResumeOffset(RemoteFile remoteFile, File localFile, String tempRemotePath) {
+		try {
+			long remoteFileSize = client.length(tempRemotePath);
+
+			if (remoteFileSize <= 0 || remoteFileSize > localFile.length()) {
+				return 0;
+			}
+
+			long verifyOffset = Math.max(0, remoteFileSize - RESUME_VERIFY_BYTES);
+			int verifyLength = (int) (remoteFileSize - verifyOffset);
+
+			ByteArrayOutputStream remoteBytes = new ByteArrayOutputStream(verifyLength);
+			client.read(tempRemotePath, verifyOffset, remoteBytes);
+
+			byte[] localBytes = new byte[verifyLength];
+			RandomAccessFile localRandomAccessFile = new RandomAccessFile(localFile, "r");
+
+			try {
+				localRandomAccessFile.seek(verifyOffset);
+				localRandomAccessFile.readFully(localBytes);
+			}
+			finally {
+				localRandomAccessFile.close();
+			}
+
+			if (Arrays.equals(localBytes, remoteBytes.toByteArray())) {
+				recordMetrics(METRICS_METHOD_RESUME, remoteFile.getClass(), System.nanoTime(), remoteFileSize);
+				return remoteFileSize;
+			}
+			else {
+				logger.log(Level.INFO, "Samba: Cannot resume upload to " + tempRemotePath + ", remote temp file does not match local file.");
+				return 0;
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.INFO, "Samba: Cannot resume upload to " + tempRemotePath + ", cannot verify remote temp file.", e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns whether the temp file of an upload has already been renamed to the target file,
+	 * i.e. the temp file does not exist anymore and the target file has the size of the local file.
+	 * This is the case if the rename succeeded on the server, but its response was lost.
+	 */
+	private boolean isUploadRenamed(File localFile, String tempRemotePath, String remotePath) {
+		try {
+			return client.length(tempRemotePath) < 0 && client.length(remotePath) == localFile.length();
+		}
+		catch (IOException e) {
+			return false; // Connection problem, cannot tell
+		}
+	}
+
+	/**
+	 * Only multichunks are resumed: They are large, and their names are unique,
+	 * i.e. a remote file with the same name always has the same content. This includes
+	 * temp files of multichunks, because a {@link org.syncany.plugins.transfer.RemoteTransaction RemoteTransaction}
+	 * uploads multichunks to a (randomly named) temp file first.
+	 */
+	private boolean isResumable(RemoteFile remoteFile) {
+		if (remoteFile instanceof TempRemoteFile) {
+			return ((TempRemoteFile) remoteFile).getTargetRemoteFile() instanceof MultichunkRemoteFile;
+		}
+		else {
+			return remoteFile instanceof MultichunkRemoteFile;
+		}
+	}
+
+	private boolean isRemoteFileMissing(String remotePath) {
+		try {
+			return client.length(remotePath) < 0;
+		}
+		catch (IOException e) {
+			return false; // Connection problem, not a missing file
+		}
+	}
+
 	@Override
 	public boolean delete(RemoteFile remoteFile) throws StorageException {
 		try {
-			createSmbFile(remoteFile).delete();
+			client.delete(getRemotePath(remoteFile));
 			return true;
 		}
 		catch (IOException ex) {
@@ -229,16 +480,16 @@ public class SambaTransferManager extends AbstractTransferManager {
 			throw new StorageException(ex);
 		}
 	}
-	
+
 	@Override
 	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
 		try {
-			SmbFile sourceRemoteFile = createSmbFile(sourceFile);
-			SmbFile targetRemoteFile = createSmbFile(targetFile);
-			
-			sourceRemoteFile.renameTo(targetRemoteFile);
+			long renameStartTime = System.nanoTime();
+
+			client.rename(getRemotePath(sourceFile), getRemotePath(targetFile));
+			recordMetrics(METRICS_METHOD_RENAME, targetFile.getClass(), renameStartTime, 0);
 		}
-		catch (SmbException e) {
+		catch (IOException e) {
 			logger.log(Level.SEVERE, "Could not rename/move file " + sourceFile + " to " + targetFile, e);
 			throw new StorageMoveException("Could not rename/move file " + sourceFile + " to " + targetFile, e);
 		}
@@ -252,18 +503,21 @@ public class SambaTransferManager extends AbstractTransferManager {
 	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
 		try {
 			// List folder
-			SmbFile remoteSmbFolder = createSmbFile(RemoteFile.createRemoteFile(getRemoteFilePath(remoteFileClass), SambaRemoteFile.class));
+			long listStartTime = System.nanoTime();
+
+			List<String> remoteFileNames = client.list(getRemoteFolderPath(getRemoteFilePath(remoteFileClass)));
+			recordMetrics(METRICS_METHOD_LIST, remoteFileClass, listStartTime, 0);
 
 			// Create RemoteFile objects
 			Map<String, T> remoteFiles = new HashMap<String, T>();
 
-			for (SmbFile entry : remoteSmbFolder.listFiles()) {
+			for (String remoteFileName : remoteFileNames) {
 				try {
-					T remoteFile = RemoteFile.createRemoteFile(entry.getName(), remoteFileClass);
-					remoteFiles.put(entry.getName(), remoteFile);
+					T remoteFile = RemoteFile.createRemoteFile(remoteFileName, remoteFileClass);
+					remoteFiles.put(remoteFileName, remoteFile);
 				}
 				catch (Exception e) {
-					logger.log(Level.INFO, "Cannot create instance of " + remoteFileClass.getSimpleName() + " for file " + entry.getName() + "; maybe invalid file name pattern. Ignoring file.");
+					logger.log(Level.INFO, "Cannot create instance of " + remoteFileClass.getSimpleName() + " for file " + remoteFileName + "; maybe invalid file name pattern. Ignoring file.");
 				}
 			}
 			return remoteFiles;
@@ -277,14 +531,11 @@ public class SambaTransferManager extends AbstractTransferManager {
 	@Override
 	public boolean testTargetCanWrite() {
 		try {
-			if (createSmbFile(null).isDirectory()) {
-				SmbFile smbfile = createSmbFile(RemoteFile.createRemoteFile("syncany-write-test", SambaRemoteFile.class));
-
-				SmbFileOutputStream smbFIS = new SmbFileOutputStream(smbfile);
-				smbFIS.write("test".getBytes());
-				smbFIS.close();
+			if (client.isDirectory(getRemotePath(null))) {
+				String testRemotePath = getRemotePath(null) + "/syncany-write-test";
 
-				smbfile.delete();
+				client.write(new ByteArrayInputStream("test".getBytes()), testRemotePath, 0);
+				client.delete(testRemotePath);
 
 				logger.log(Level.INFO, "testTargetCanWrite: Can write, test file created/deleted successfully.");
 				return true;
@@ -303,7 +554,7 @@ public class SambaTransferManager extends AbstractTransferManager {
 	@Override
 	public boolean testTargetExists() {
 		try {
-			if (createSmbFile(null).isDirectory()) {
+			if (client.isDirectory(getRemotePath(null))) {
 				logger.log(Level.INFO, "testTargetExists: Target does exist.");
 				return true;
 			}
@@ -327,18 +578,17 @@ public class SambaTransferManager extends AbstractTransferManager {
 
 		// Test parent path permissions
 		try {
-			SmbFile parentSmbFolder = new SmbFile(URI.create(repoPath + "/" + parentPath + "/").normalize().toString(), authentication);
+			if (client.isDirectory(parentPath + "/")) {
+				String testFolderPath = parentPath + "/" + "syncany-folder-test/";
 
-			if (parentSmbFolder.isDirectory()) {
-				SmbFile testSmbFolder = new SmbFile(URI.create(repoPath + "/" + parentPath + "/" + "syncany-folder-test/").normalize().toString(), authentication);
-				testSmbFolder.mkdirs();
-				testSmbFolder.delete();
+				client.mkdirs(testFolderPath);
+				client.delete(testFolderPath);
 
 				logger.log(Level.INFO, "testTargetCanCreate: Can create target at " + parentPath);
 				return true;
 			}
 			else {
-				logger.log(Level.INFO, "testTargetCanWrite: Can NOT create target at" + parentSmbFolder.getPath());
+				logger.log(Level.INFO, "testTargetCanWrite: Can NOT create target at" + parentPath);
 				return false;
 			}
 		}
@@ -351,14 +601,14 @@ public class SambaTransferManager extends AbstractTransferManager {
 	@Override
 	public boolean testRepoFileExists() {
 		try {
-			SmbFile remoteRepoFile = createSmbFile(new SyncanyRemoteFile());
+			String remoteRepoFilePath = getRemotePath(new SyncanyRemoteFile());
 
-			if (remoteRepoFile.isFile()) {
-				logger.log(Level.INFO, "testRepoFileExists: Repo file exists at " + remoteRepoFile);
+			if (client.isFile(remoteRepoFilePath)) {
+				logger.log(Level.INFO, "testRepoFileExists: Repo file exists at " + remoteRepoFilePath);
 				return true;
 			}
 			else {
-				logger.log(Level.INFO, "testRepoFileExists: Repo file DOES NOT exist at " + remoteRepoFile);
+				logger.log(Level.INFO, "testRepoFileExists: Repo file DOES NOT exist at " + remoteRepoFilePath);
 				return false;
 			}
 		}
@@ -368,23 +618,35 @@ public class SambaTransferManager extends AbstractTransferManager {
 		}
 	}
 
-	private SmbFile createSmbFile(RemoteFile remoteFile) throws MalformedURLException {
+	private void recordMetrics(String method, Class<? extends RemoteFile> remoteFileClass, long startTime, long bytes) {
+		if (transferMetrics != null) {
+			transferMetrics.record(method, TransferMetrics.getFileType(remoteFileClass), System.nanoTime() - startTime, bytes, false);
+		}
+	}
+
+	/**
+	 * Returns the share-relative path of the given remote file, or the path
+	 * of the repository folder if the remote file is <tt>null</tt>.
+	 */
+	private String getRemotePath(RemoteFile remoteFile) {
 		if (remoteFile != null) {
-			return new SmbFile(URI.create(repoPath + "/" +
-				getSettings().getPath() + "/" +
-				getRemoteFilePath(remoteFile.getClass()) + "/" +
-				remoteFile.getName()).normalize().toString(), authentication);
+			return getSettings().getPath() + "/" + getRemoteFilePath(remoteFile.getClass()) + "/" + remoteFile.getName();
 		}
 		else {
-			return new SmbFile(URI.create(repoPath + "/" + getSettings().getPath()).toString(), authentication);
+			return getSettings().getPath();
 		}
 	}
 
+	private String getRemoteFolderPath(String folderPath) {
+		return getSettings().getPath() + "/" + folderPath + "/";
+	}
+
 	private String getRemoteFilePath(Class<? extends RemoteFile> remoteFile) {
 		if (remoteFile.equals(MultichunkRemoteFile.class)) {
 			return multichunksPath;
 		}
-		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)) {
+		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)
+				|| remoteFile.equals(GenerationRemoteFile.class)) {
 			return databasesPath;
 		}
 		else if (remoteFile.equals(ActionRemoteFile.class)) {
@@ -400,10 +662,4 @@ public class SambaTransferManager extends AbstractTransferManager {
 			return "";
 		}
 	}
-
-	protected static class SambaRemoteFile extends RemoteFile {
-		public SambaRemoteFile(String name) throws StorageException {
-			super(name);
-		}
-	}
 }
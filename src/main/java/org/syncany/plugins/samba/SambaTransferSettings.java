@@ -18,8 +18,10 @@
 package org.syncany.plugins.samba;
 
 import org.simpleframework.xml.Element;
+import org.simpleframework.xml.core.Validate;
 import org.syncany.plugins.transfer.Encrypted;
 import org.syncany.plugins.transfer.Setup;
+import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferSettings;
 
 import com.google.common.base.Objects;
@@ -29,9 +31,16 @@ import com.google.common.base.Objects;
  * Samba-based storage backend. It can be used to initialize/create an
  * {@link SambaTransferManager} and is part of the {@link SambaTransferPlugin}.
  *
+ * <p>The protocol determines the client library used to talk to the server: <tt>smb1</tt>
+ * uses jcifs (SMB1/CIFS only), <tt>smb2</tt> uses smbj, which negotiates the highest SMB 2/3
+ * dialect the server supports. If no protocol is set, <tt>smb1</tt> is used.
+ *
  * @author Christian Roth <christian.roth@port17.de>
  */
 public class SambaTransferSettings extends TransferSettings {
+	public static final String PROTOCOL_SMB1 = "smb1";
+	public static final String PROTOCOL_SMB2 = "smb2";
+
 	@Element(name = "hostname", required = true)
 	@Setup(order = 1, description = "Hostname")
 	private String hostname;
@@ -53,6 +62,10 @@ public class SambaTransferSettings extends TransferSettings {
 	@Setup(order = 5, description = "path")
 	private String path = "/";
 
+	@Element(name = "protocol", required = false)
+	@Setup(order = 6, description = "Protocol (smb1 or smb2, smb2 includes SMB 3)")
+	private String protocol = PROTOCOL_SMB1;
+
 	public String getHostname() {
 		return hostname;
 	}
@@ -85,6 +98,14 @@ public class SambaTransferSettings extends TransferSettings {
 		this.path = path;
 	}
 
+	public String getProtocol() {
+		return (protocol != null) ? protocol : PROTOCOL_SMB1;
+	}
+
+	public void setProtocol(String protocol) {
+		this.protocol = protocol;
+	}
+
 	public String getUsername() {
 		return username;
 	}
@@ -93,12 +114,20 @@ public class SambaTransferSettings extends TransferSettings {
 		this.username = username;
 	}
 
+	@Validate
+	public void validateProtocol() throws StorageException {
+		if (!PROTOCOL_SMB1.equals(getProtocol()) && !PROTOCOL_SMB2.equals(getProtocol())) {
+			throw new StorageException("Invalid protocol '" + protocol + "', must be " + PROTOCOL_SMB1 + " or " + PROTOCOL_SMB2);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return Objects.toStringHelper(this.getClass())
 			.add("hostname", hostname)
 			.add("share", share)
 			.add("path", path)
+			.add("protocol", getProtocol())
 			.add("username", username)
 			.add("password", password != null ? "<hidden>" : "none")
 			.toString();
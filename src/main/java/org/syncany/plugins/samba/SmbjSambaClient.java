@@ -0,0 +1,438 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+import com.hierynomus.msdtyp.AccessMask;
+import com.hierynomus.mserref.NtStatus;
+import com.hierynomus.msfscc.FileAttributes;
+import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
+import com.hierynomus.msfscc.fileinformation.FileStandardInformation;
+import com.hierynomus.mssmb2.SMB2CreateDisposition;
+import com.hierynomus.mssmb2.SMB2CreateOptions;
+import com.hierynomus.mssmb2.SMB2ShareAccess;
+import com.hierynomus.mssmb2.messages.SMB2ReadResponse;
+import com.hierynomus.smbj.SMBClient;
+import com.hierynomus.smbj.SmbConfig;
+import com.hierynomus.smbj.auth.AuthenticationContext;
+import com.hierynomus.smbj.common.SMBRuntimeException;
+import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.DiskEntry;
+import com.hierynomus.smbj.share.DiskShare;
+import com.hierynomus.smbj.share.File;
+
+/**
+ * Implements a {@link SambaClient} using the smbj library, which speaks SMB 2 and 3.
+ * The client negotiates the highest dialect supported by the server and keeps the
+ * connection and session open until {@link #disconnect()} is called.
+ *
+ * <p>Compared to SMB1, SMB 2.1+ servers grant multiple credits per request, so that a single
+ * request can read or write up to {@link #MAX_BUFFER_SIZE} bytes (bounded by the maximum
+ * read/write size negotiated with the server). Downloads additionally keep up to
+ * {@link #MAX_OUTSTANDING_READS} read requests in flight instead of waiting for each
+ * response, which hides the round-trip time on high-latency links. Reads and writes can
+ * start at any offset, which allows the transfer manager to resume interrupted transfers.
+ *
+ * <p>Note: smbj does not expose compound requests, so opening, writing and closing a
+ * file (and renaming it) are still separate requests.
+ *
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public class SmbjSambaClient implements SambaClient {
+	private static final Logger logger = Logger.getLogger(SmbjSambaClient.class.getSimpleName());
+
+	private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+	private static final int MAX_OUTSTANDING_READS = 4;
+
+	private String hostname;
+	private int port;
+	private String shareName;
+	private String username;
+	private String password;
+
+	private SMBClient client;
+	private Connection connection;
+	private Session session;
+	private DiskShare share;
+
+	public SmbjSambaClient(String hostname, String shareName, String username, String password) {
+		this(hostname, SMBClient.DEFAULT_PORT, shareName, username, password);
+	}
+
+	/**
+	 * Creates a client that connects to a non-standard port (e.g. a Samba server started by a test).
+	 */
+	SmbjSambaClient(String hostname, int port, String shareName, String username, String password) {
+		this.hostname = hostname;
+		this.port = port;
+		this.shareName = shareName;
+		this.username = username;
+		this.password = password;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		if (share != null && connection.isConnected()) {
+			return;
+		}
+
+		disconnect();
+
+		try {
+			SmbConfig smbConfig = SmbConfig.builder()
+				.withReadBufferSize(MAX_BUFFER_SIZE)
+				.withWriteBufferSize(MAX_BUFFER_SIZE)
+				.withTransactBufferSize(MAX_BUFFER_SIZE)
+				.build();
+
+			client = new SMBClient(smbConfig);
+			connection = client.connect(hostname, port);
+			session = connection.authenticate(createAuthenticationContext());
+			share = (DiskShare) session.connectShare(shareName);
+
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "Samba: Connected to {0} using {1}", new Object[] { hostname, connection.getNegotiatedProtocol().getDialect() });
+			}
+		}
+		catch (SMBRuntimeException | ClassCastException e) {
+			disconnect();
+			throw new IOException("Cannot connect to share " + shareName + " at " + hostname, e);
+		}
+		catch (IOException e) {
+			disconnect();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the credentials for the session. Like jcifs, the client logs in anonymously
+	 * if no username is set, and treats a missing password as an empty password (e.g. for
+	 * the <tt>guest</tt> account).
+	 */
+	private AuthenticationContext createAuthenticationContext() {
+		if (username == null || username.isEmpty()) {
+			return AuthenticationContext.anonymous();
+		}
+		else {
+			char[] passwordChars = (password != null) ? password.toCharArray() : new char[0];
+			return new AuthenticationContext(username, passwordChars, "");
+		}
+	}
+
+	@Override
+	public void disconnect() {
+		try {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+		catch (IOException e) {
+			logger.log(Level.FINE, "Samba: Cannot close connection to " + hostname + ", ignoring.", e);
+		}
+		finally {
+			if (client != null) {
+				client.close();
+			}
+
+			client = null;
+			connection = null;
+			session = null;
+			share = null;
+		}
+	}
+
+	@Override
+	public boolean isDirectory(String path) throws IOException {
+		connect();
+
+		try {
+			return share.folderExists(toSmbPath(path));
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot check if " + path + " is a directory", e);
+		}
+	}
+
+	@Override
+	public boolean isFile(String path) throws IOException {
+		connect();
+
+		try {
+			return share.fileExists(toSmbPath(path));
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot check if " + path + " is a file", e);
+		}
+	}
+
+	@Override
+	public void mkdir(String path) throws IOException {
+		connect();
+
+		try {
+			share.mkdir(toSmbPath(path));
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot create directory " + path, e);
+		}
+	}
+
+	@Override
+	public void mkdirs(String path) throws IOException {
+		connect();
+
+		try {
+			String currentPath = "";
+
+			for (String pathElement : toSmbPathElements(path)) {
+				currentPath = currentPath.isEmpty() ? pathElement : currentPath + "\\" + pathElement;
+
+				if (!share.folderExists(currentPath)) {
+					share.mkdir(currentPath);
+				}
+			}
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot create directories " + path, e);
+		}
+	}
+
+	@Override
+	public void delete(String path) throws IOException {
+		connect();
+
+		try {
+			String smbPath = toSmbPath(path);
+
+			if (share.folderExists(smbPath)) {
+				share.rmdir(smbPath, false);
+			}
+			else {
+				share.rm(smbPath);
+			}
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot delete " + path, e);
+		}
+	}
+
+	@Override
+	public void rename(String sourcePath, String targetPath) throws IOException {
+		connect();
+
+		try (DiskEntry sourceEntry = share.open(toSmbPath(sourcePath), EnumSet.of(AccessMask.DELETE), null, SMB2ShareAccess.ALL,
+				SMB2CreateDisposition.FILE_OPEN, null)) {
+
+			sourceEntry.rename(toSmbPath(targetPath), false);
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot rename " + sourcePath + " to " + targetPath, e);
+		}
+	}
+
+	@Override
+	public List<String> list(String path) throws IOException {
+		connect();
+
+		try {
+			List<String> fileNames = new ArrayList<String>();
+
+			for (FileIdBothDirectoryInformation entry : share.list(toSmbPath(path))) {
+				if (!".".equals(entry.getFileName()) && !"..".equals(entry.getFileName())) {
+					fileNames.add(entry.getFileName());
+				}
+			}
+
+			return fileNames;
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot list directory " + path, e);
+		}
+	}
+
+	@Override
+	public long length(String path) throws IOException {
+		connect();
+
+		try {
+			String smbPath = toSmbPath(path);
+
+			if (share.fileExists(smbPath)) {
+				return share.getFileInformation(smbPath).getStandardInformation().getEndOfFile();
+			}
+			else {
+				return -1;
+			}
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot get size of file " + path, e);
+		}
+	}
+
+	/**
+	 * Downloads the given file from the given offset with up to {@link #MAX_OUTSTANDING_READS}
+	 * pipelined read requests of the negotiated maximum read size.
+	 */
+	@Override
+	public long read(String path, long offset, OutputStream outputStream) throws IOException {
+		connect();
+
+		try (File file = openFile(path, AccessMask.GENERIC_READ, SMB2CreateDisposition.FILE_OPEN)) {
+			long fileSize = file.getFileInformation(FileStandardInformation.class).getEndOfFile();
+			int readSize = Math.min(MAX_BUFFER_SIZE, connection.getNegotiatedProtocol().getMaxReadSize());
+
+			Deque<Future<SMB2ReadResponse>> pendingReads = new ArrayDeque<Future<SMB2ReadResponse>>();
+			Deque<Integer> pendingReadLengths = new ArrayDeque<Integer>();
+
+			long requestOffset = offset;
+			long readOffset = offset;
+
+			while (readOffset < fileSize) {
+				while (pendingReads.size() < MAX_OUTSTANDING_READS && requestOffset < fileSize) {
+					int readLength = (int) Math.min(readSize, fileSize - requestOffset);
+
+					pendingReads.add(file.readAsync(requestOffset, readLength));
+					pendingReadLengths.add(readLength);
+
+					requestOffset += readLength;
+				}
+
+				SMB2ReadResponse readResponse = pendingReads.poll().get();
+				int expectedReadLength = pendingReadLengths.poll();
+
+				if (!NtStatus.isSuccess(readResponse.getHeader().getStatusCode())) {
+					throw new IOException("Cannot read " + path + " at offset " + readOffset + ", status " + readResponse.getHeader().getStatusCode());
+				}
+				else if (readResponse.getDataLength() != expectedReadLength) {
+					throw new IOException("Cannot read " + path + " at offset " + readOffset + ", expected " + expectedReadLength + " bytes, got "
+							+ readResponse.getDataLength() + "; file changed during download?");
+				}
+
+				outputStream.write(readResponse.getData(), 0, readResponse.getDataLength());
+				readOffset += readResponse.getDataLength();
+			}
+
+			return Math.max(0, readOffset - offset);
+		}
+		catch (SMBRuntimeException | ExecutionException e) {
+			throw new IOException("Cannot read file " + path, e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading file " + path, e);
+		}
+	}
+
+	/**
+	 * Uploads the given stream in requests of the negotiated maximum write size. If the
+	 * offset is not 0, the existing file is opened without truncating it. If the server
+	 * writes fewer bytes than requested, the rest of the buffer is written again.
+	 */
+	@Override
+	public long write(InputStream inputStream, String path, long offset) throws IOException {
+		connect();
+
+		SMB2CreateDisposition createDisposition = (offset == 0) ? SMB2CreateDisposition.FILE_OVERWRITE_IF : SMB2CreateDisposition.FILE_OPEN_IF;
+
+		try (File file = openFile(path, AccessMask.GENERIC_WRITE, createDisposition)) {
+			byte[] buffer = new byte[Math.min(MAX_BUFFER_SIZE, connection.getNegotiatedProtocol().getMaxWriteSize())];
+			long writeOffset = offset;
+			int readBytes;
+
+			while ((readBytes = IOUtils.read(inputStream, buffer)) > 0) {
+				int bufferOffset = 0;
+
+				while (bufferOffset < readBytes) {
+					long writtenBytes = file.write(buffer, writeOffset, bufferOffset, readBytes - bufferOffset);
+
+					if (writtenBytes <= 0) {
+						throw new IOException("Cannot write " + path + " at offset " + writeOffset + ", server wrote " + writtenBytes + " of "
+								+ (readBytes - bufferOffset) + " bytes");
+					}
+
+					bufferOffset += writtenBytes;
+					writeOffset += writtenBytes;
+				}
+			}
+
+			return writeOffset - offset;
+		}
+		catch (SMBRuntimeException e) {
+			throw new IOException("Cannot write file " + path, e);
+		}
+	}
+
+	private File openFile(String path, AccessMask accessMask, SMB2CreateDisposition createDisposition) {
+		Set<SMB2CreateOptions> createOptions = EnumSet.of(SMB2CreateOptions.FILE_NON_DIRECTORY_FILE);
+		Set<FileAttributes> fileAttributes = EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL);
+
+		return share.openFile(toSmbPath(path), EnumSet.of(accessMask), fileAttributes, SMB2ShareAccess.ALL, createDisposition, createOptions);
+	}
+
+	/**
+	 * Converts a share-relative path with forward slashes (e.g. <tt>/repo//multichunks/../databases/</tt>)
+	 * to the normalized SMB 2 path format (<tt>repo\databases</tt>).
+	 */
+	private String toSmbPath(String path) {
+		StringBuilder smbPath = new StringBuilder();
+
+		for (String pathElement : toSmbPathElements(path)) {
+			if (smbPath.length() > 0) {
+				smbPath.append('\\');
+			}
+
+			smbPath.append(pathElement);
+		}
+
+		return smbPath.toString();
+	}
+
+	private List<String> toSmbPathElements(String path) {
+		LinkedList<String> pathElements = new LinkedList<String>();
+
+		for (String pathElement : path.split("/")) {
+			if ("..".equals(pathElement)) {
+				if (!pathElements.isEmpty()) {
+					pathElements.removeLast();
+				}
+			}
+			else if (!pathElement.isEmpty() && !".".equals(pathElement)) {
+				pathElements.add(pathElement);
+			}
+		}
+
+		return pathElements;
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Implements a {@link SambaClient} that keeps the share in memory. Paths are
+ * normalized like the real clients do, and the same operations fail (e.g. renaming to
+ * an existing file, or creating an existing directory).
+ *
+ * <p>To simulate connection problems, the next read or write can be made to fail after a
+ * given number of bytes, and the next rename can be made to fail before or after renaming.
+ *
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public class FakeSambaClient implements SambaClient {
+	private Set<String> directories;
+	private Map<String, byte[]> files;
+	private boolean connected;
+
+	private long failNextReadAfterBytes;
+	private long failNextWriteAfterBytes;
+	private String failNextWritePathPart;
+	private Boolean failNextRenameAfterRenaming;
+
+	private int writeCount;
+	private long lastReadOffset;
+	private long lastWriteOffset;
+	private Map<String, Long> lastWriteOffsets;
+
+	public FakeSambaClient() {
+		this.directories = new HashSet<String>();
+		this.files = new TreeMap<String, byte[]>();
+		this.connected = false;
+
+		this.failNextReadAfterBytes = -1;
+		this.failNextWriteAfterBytes = -1;
+		this.failNextWritePathPart = null;
+		this.failNextRenameAfterRenaming = null;
+
+		this.lastWriteOffsets = new HashMap<String, Long>();
+		this.directories.add("");
+	}
+
+	@Override
+	public void connect() throws IOException {
+		connected = true;
+	}
+
+	@Override
+	public void disconnect() {
+		connected = false;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	public boolean isDirectory(String path) throws IOException {
+		return directories.contains(normalize(path));
+	}
+
+	@Override
+	public boolean isFile(String path) throws IOException {
+		return files.containsKey(normalize(path));
+	}
+
+	@Override
+	public void mkdir(String path) throws IOException {
+		String normalizedPath = normalize(path);
+
+		if (exists(normalizedPath) || !directories.contains(getParent(normalizedPath))) {
+			throw new IOException("Cannot create directory " + path);
+		}
+
+		directories.add(normalizedPath);
+	}
+
+	@Override
+	public void mkdirs(String path) throws IOException {
+		String currentPath = "";
+
+		for (String pathElement : normalize(path).split("/")) {
+			currentPath = currentPath.isEmpty() ? pathElement : currentPath + "/" + pathElement;
+
+			if (!directories.contains(currentPath)) {
+				mkdir(currentPath);
+			}
+		}
+	}
+
+	@Override
+	public void delete(String path) throws IOException {
+		String normalizedPath = normalize(path);
+
+		if (files.remove(normalizedPath) == null) {
+			if (!directories.contains(normalizedPath) || !list(normalizedPath).isEmpty()) {
+				throw new IOException("Cannot delete " + path);
+			}
+
+			directories.remove(normalizedPath);
+		}
+	}
+
+	@Override
+	public void rename(String sourcePath, String targetPath) throws IOException {
+		String normalizedSourcePath = normalize(sourcePath);
+		String normalizedTargetPath = normalize(targetPath);
+
+		if (!files.containsKey(normalizedSourcePath) || exists(normalizedTargetPath) || !directories.contains(getParent(normalizedTargetPath))) {
+			throw new IOException("Cannot rename " + sourcePath + " to " + targetPath);
+		}
+
+		if (failNextRenameAfterRenaming != null) {
+			boolean renameBeforeFailing = failNextRenameAfterRenaming;
+			failNextRenameAfterRenaming = null;
+
+			if (renameBeforeFailing) {
+				files.put(normalizedTargetPath, files.remove(normalizedSourcePath));
+			}
+
+			throw new IOException("Connection reset while renaming " + sourcePath);
+		}
+
+		files.put(normalizedTargetPath, files.remove(normalizedSourcePath));
+	}
+
+	@Override
+	public List<String> list(String path) throws IOException {
+		String normalizedPath = normalize(path);
+
+		if (!directories.contains(normalizedPath)) {
+			throw new IOException("Cannot list directory " + path);
+		}
+
+		List<String> fileNames = new ArrayList<String>();
+
+		for (String existingPath : getPaths()) {
+			if (!existingPath.isEmpty() && getParent(existingPath).equals(normalizedPath)) {
+				fileNames.add(existingPath.substring(existingPath.lastIndexOf('/') + 1));
+			}
+		}
+
+		return fileNames;
+	}
+
+	@Override
+	public long length(String path) throws IOException {
+		byte[] contents = files.get(normalize(path));
+		return (contents != null) ? contents.length : -1;
+	}
+
+	@Override
+	public long read(String path, long offset, OutputStream outputStream) throws IOException {
+		byte[] contents = files.get(normalize(path));
+
+		if (contents == null) {
+			throw new FileNotFoundException("Cannot read file " + path);
+		}
+
+		int readOffset = (int) Math.min(offset, contents.length);
+		lastReadOffset = offset;
+
+		if (failNextReadAfterBytes >= 0) {
+			int readLength = (int) Math.min(failNextReadAfterBytes, contents.length - readOffset);
+			failNextReadAfterBytes = -1;
+
+			outputStream.write(contents, readOffset, readLength);
+			throw new IOException("Connection reset while reading " + path);
+		}
+
+		outputStream.write(contents, readOffset, contents.length - readOffset);
+
+		return contents.length - readOffset;
+	}
+
+	@Override
+	public long write(InputStream inputStream, String path, long offset) throws IOException {
+		String normalizedPath = normalize(path);
+
+		if (directories.contains(normalizedPath) || !directories.contains(getParent(normalizedPath))) {
+			throw new IOException("Cannot write file " + path);
+		}
+
+		ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		byte[] existingContents = files.get(normalizedPath);
+
+		if (offset > 0 && existingContents != null) {
+			contents.write(existingContents, 0, (int) Math.min(offset, existingContents.length));
+		}
+
+		writeCount++;
+		lastWriteOffset = offset;
+		lastWriteOffsets.put(normalizedPath, offset);
+
+		if (failNextWriteAfterBytes >= 0 && (failNextWritePathPart == null || normalizedPath.contains(failNextWritePathPart))) {
+			long writeLength = failNextWriteAfterBytes;
+			failNextWriteAfterBytes = -1;
+
+			IOUtils.copyLarge(inputStream, contents, 0, writeLength);
+			files.put(normalizedPath, contents.toByteArray());
+
+			throw new IOException("Connection reset while writing " + path);
+		}
+
+		long writtenBytes = IOUtils.copyLarge(inputStream, contents);
+		files.put(normalizedPath, contents.toByteArray());
+
+		return writtenBytes;
+	}
+
+	/**
+	 * Makes the next {@link #read(String, long, OutputStream)} fail
+	 * after reading the given number of bytes.
+	 */
+	public void failNextRead(long afterBytes) {
+		failNextReadAfterBytes = afterBytes;
+	}
+
+	/**
+	 * Makes the next {@link #write(InputStream, String, long)} fail
+	 * after writing the given number of bytes.
+	 */
+	public void failNextWrite(long afterBytes) {
+		failNextWrite(afterBytes, null);
+	}
+
+	/**
+	 * Makes the next {@link #write(InputStream, String, long)} to a path containing
+	 * the given string fail after writing the given number of bytes.
+	 */
+	public void failNextWrite(long afterBytes, String pathPart) {
+		failNextWriteAfterBytes = afterBytes;
+		failNextWritePathPart = pathPart;
+	}
+
+	/**
+	 * Makes the next {@link #rename(String, String)} fail. If <tt>afterRenaming</tt> is
+	 * true, the file is renamed before failing, i.e. only the response is lost.
+	 */
+	public void failNextRename(boolean afterRenaming) {
+		failNextRenameAfterRenaming = afterRenaming;
+	}
+
+	public int getWriteCount() {
+		return writeCount;
+	}
+
+	public long getLastReadOffset() {
+		return lastReadOffset;
+	}
+
+	public long getLastWriteOffset() {
+		return lastWriteOffset;
+	}
+
+	/**
+	 * Returns the offset of the last write to a path containing the given
+	 * string, or -1 if there has been no such write.
+	 */
+	public long getLastWriteOffset(String pathPart) {
+		for (Map.Entry<String, Long> lastWriteOffset : lastWriteOffsets.entrySet()) {
+			if (lastWriteOffset.getKey().contains(pathPart)) {
+				return lastWriteOffset.getValue();
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the contents of the given file, or <tt>null</tt> if it does not exist.
+	 */
+	public byte[] getContents(String path) {
+		byte[] contents = files.get(normalize(path));
+		return (contents != null) ? Arrays.copyOf(contents, contents.length) : null;
+	}
+
+	public void setContents(String path, byte[] contents) {
+		files.put(normalize(path), Arrays.copyOf(contents, contents.length));
+	}
+
+	private boolean exists(String normalizedPath) {
+		return directories.contains(normalizedPath) || files.containsKey(normalizedPath);
+	}
+
+	private Set<String> getPaths() {
+		Set<String> paths = new HashSet<String>(directories);
+		paths.addAll(files.keySet());
+
+		return paths;
+	}
+
+	private String getParent(String normalizedPath) {
+		int lastSlashIndex = normalizedPath.lastIndexOf('/');
+		return (lastSlashIndex >= 0) ? normalizedPath.substring(0, lastSlashIndex) : "";
+	}
+
+	/**
+	 * Normalizes a path like {@link SmbjSambaClient} does, but joins the path
+	 * elements with forward slashes, e.g. <tt>/repo//multichunks/</tt> becomes <tt>repo/multichunks</tt>.
+	 */
+	private String normalize(String path) {
+		LinkedList<String> pathElements = new LinkedList<String>();
+
+		for (String pathElement : path.split("/")) {
+			if ("..".equals(pathElement)) {
+				if (!pathElements.isEmpty()) {
+					pathElements.removeLast();
+				}
+			}
+			else if (!pathElement.isEmpty() && !".".equals(pathElement)) {
+				pathElements.add(pathElement);
+			}
+		}
+
+		StringBuilder normalizedPath = new StringBuilder();
+
+		for (String pathElement : pathElements) {
+			if (normalizedPath.length() > 0) {
+				normalizedPath.append('/');
+			}
+
+			normalizedPath.append(pathElement);
+		}
+
+		return normalizedPath.toString();
+	}
+}
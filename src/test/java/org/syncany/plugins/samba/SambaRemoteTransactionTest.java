@@ -0,0 +1,131 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.transfer.RemoteTransaction;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.tests.util.TestConfigUtil;
+
+/**
+ * Tests the {@link SambaTransferManager} below the transfer manager stack used by
+ * the operations, i.e. wrapped in a {@link RetriableTransferManager} and a
+ * {@link TransactionAwareTransferManager}, and driven by a {@link RemoteTransaction}.
+ *
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public class SambaRemoteTransactionTest {
+	private Config config;
+	private FakeSambaClient client;
+	private SambaTransferManager sambaTransferManager;
+	private TransferManager transferManager;
+	private int originalRetrySleepMillis;
+
+	@Before
+	public void setUp() throws Exception {
+		config = TestConfigUtil.createTestLocalConfig();
+
+		SambaTransferSettings settings = new SambaTransferSettings();
+		settings.setHostname("localhost");
+		settings.setShare("share");
+		settings.setPath("/repo");
+		settings.setUsername("user");
+		settings.setPassword("password");
+
+		client = new FakeSambaClient();
+		sambaTransferManager = new SambaTransferManager(settings, config, client);
+		sambaTransferManager.init(true);
+
+		transferManager = new TransactionAwareTransferManager(new RetriableTransferManager(sambaTransferManager), config);
+
+		originalRetrySleepMillis = RetriableTransferManager.RETRY_SLEEP_MILLIS;
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 50;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = originalRetrySleepMillis;
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	@Test
+	public void testUploadToTempLocationResumesPartialMultiChunkUpload() throws Exception {
+		File localFile = createRandomFile("multichunk", 100 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		// Connection breaks while writing the multichunk's temp file
+		client.failNextWrite(40 * 1024, remoteFile.getName());
+
+		RemoteTransaction remoteTransaction = new RemoteTransaction(config, transferManager);
+		remoteTransaction.uploadToTempLocation(Collections.<File, RemoteFile> singletonMap(localFile, remoteFile));
+
+		// Test: Retry continued at the partial offset
+		assertEquals(40 * 1024, client.getLastWriteOffset(remoteFile.getName()));
+
+		remoteTransaction.commit();
+
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/multichunks/" + remoteFile.getName()));
+		assertTrue(sambaTransferManager.list(TempRemoteFile.class).isEmpty());
+		assertTrue(sambaTransferManager.list(TransactionRemoteFile.class).isEmpty());
+	}
+
+	@Test
+	public void testCommitResumesPartialMultiChunkUpload() throws Exception {
+		File localFile = createRandomFile("multichunk", 100 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		client.failNextWrite(60 * 1024, remoteFile.getName());
+
+		RemoteTransaction remoteTransaction = new RemoteTransaction(config, transferManager);
+		remoteTransaction.upload(localFile, remoteFile);
+		remoteTransaction.commit();
+
+		assertEquals(60 * 1024, client.getLastWriteOffset(remoteFile.getName()));
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/multichunks/" + remoteFile.getName()));
+		assertTrue(sambaTransferManager.list(TempRemoteFile.class).isEmpty());
+	}
+
+	private File createRandomFile(String name, int size) throws Exception {
+		byte[] contents = new byte[size];
+		new Random().nextBytes(contents);
+
+		File file = new File(config.getCacheDir(), name);
+		FileUtils.writeByteArrayToFile(file, contents);
+
+		return file;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Provides a Samba server for tests. Unless an existing server is configured via the
+ * <tt>samba.test.*</tt> system properties, a throwaway <tt>smbd</tt> is started in a
+ * Docker container, with a single writable share. The container's SMB port is mapped to
+ * a random local port, and the container is removed again in {@link #stop()}.
+ *
+ * <p>The server allows SMB1 as well as SMB 2/3, so that both the jcifs and the smbj
+ * client can be tested against it.
+ *
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public class SambaServerFixture {
+	private static final Logger logger = Logger.getLogger(SambaServerFixture.class.getSimpleName());
+
+	private static final String SYSTEM_PROPERTY_PREFIX = "samba.test.";
+
+	private static final String DOCKER_IMAGE = "dperson/samba";
+	private static final String DOCKER_HOSTNAME = "127.0.0.1";
+	private static final int SMB_PORT = 445;
+
+	private static final String SHARE = "syncany";
+	private static final String USERNAME = "syncany";
+	private static final String PASSWORD = "syncany";
+
+	private static final int STARTUP_TIMEOUT_MILLIS = 60 * 1000;
+	private static final int STARTUP_RETRY_MILLIS = 500;
+
+	private String containerId;
+	private String hostname;
+	private int port;
+	private String share;
+	private String username;
+	private String password;
+
+	private SambaServerFixture(String containerId, String hostname, int port, String share, String username, String password) {
+		this.containerId = containerId;
+		this.hostname = hostname;
+		this.port = port;
+		this.share = share;
+		this.username = username;
+		this.password = password;
+	}
+
+	/**
+	 * Returns the server configured via the <tt>samba.test.*</tt> system properties (if
+	 * <tt>samba.test.hostname</tt> is set), or starts a new server in a Docker container.
+	 * Fails if neither is possible.
+	 */
+	public static SambaServerFixture start() throws Exception {
+		String hostname = System.getProperty(SYSTEM_PROPERTY_PREFIX + "hostname");
+
+		if (hostname != null) {
+			logger.log(Level.INFO, "Using existing Samba server at " + hostname);
+
+			return new SambaServerFixture(null, hostname, Integer.parseInt(getProperty("port", Integer.toString(SMB_PORT))),
+					getProperty("share", SHARE), getProperty("username", USERNAME), getProperty("password", PASSWORD));
+		}
+		else {
+			return startContainer();
+		}
+	}
+
+	public void stop() {
+		if (containerId != null) {
+			try {
+				runDocker("rm", "-f", containerId);
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot remove Samba container " + containerId, e);
+			}
+		}
+	}
+
+	public String getHostname() {
+		return hostname;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public String getShare() {
+		return share;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	private static SambaServerFixture startContainer() throws Exception {
+		logger.log(Level.INFO, "Starting Samba server in Docker container (image " + DOCKER_IMAGE + ") ...");
+
+		String containerId;
+
+		try {
+			// -S allows SMB1 (for jcifs), -p fixes the share's permissions for the user
+			containerId = runDocker("run", "-d", "-p", DOCKER_HOSTNAME + "::" + SMB_PORT, DOCKER_IMAGE, "-S", "-p", "-u", USERNAME + ";" + PASSWORD,
+					"-s", SHARE + ";/tmp;yes;no;no;" + USERNAME).trim();
+		}
+		catch (IOException e) {
+			throw new IOException("Cannot start Samba server; Docker is required, or set samba.test.hostname to use an existing server.", e);
+		}
+
+		SambaServerFixture server = null;
+
+		try {
+			String portMapping = runDocker("port", containerId, SMB_PORT + "/tcp").trim().split("\\s+")[0];
+			int port = Integer.parseInt(portMapping.substring(portMapping.lastIndexOf(':') + 1));
+
+			server = new SambaServerFixture(containerId, DOCKER_HOSTNAME, port, SHARE, USERNAME, PASSWORD);
+			server.waitUntilReady();
+
+			logger.log(Level.INFO, "Samba server started in container " + containerId + ", port " + port);
+			return server;
+		}
+		catch (Exception e) {
+			runDocker("rm", "-f", containerId);
+			throw e;
+		}
+	}
+
+	private void waitUntilReady() throws Exception {
+		long startTime = System.currentTimeMillis();
+
+		while (true) {
+			SambaClient client = new SmbjSambaClient(hostname, port, share, username, password);
+
+			try {
+				client.connect();
+				return;
+			}
+			catch (IOException e) {
+				if (System.currentTimeMillis() - startTime > STARTUP_TIMEOUT_MILLIS) {
+					throw new IOException("Samba server did not start within " + STARTUP_TIMEOUT_MILLIS + " ms", e);
+				}
+
+				Thread.sleep(STARTUP_RETRY_MILLIS);
+			}
+			finally {
+				client.disconnect();
+			}
+		}
+	}
+
+	private static String runDocker(String... arguments) throws IOException {
+		String[] command = new String[arguments.length + 1];
+
+		command[0] = "docker";
+		System.arraycopy(arguments, 0, command, 1, arguments.length);
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		String output = IOUtils.toString(process.getInputStream());
+
+		try {
+			if (process.waitFor() != 0) {
+				throw new IOException("Command " + Arrays.toString(command) + " failed: " + output);
+			}
+		}
+		catch (InterruptedException e) {
+			throw new IOException("Interrupted while running " + Arrays.toString(command), e);
+		}
+
+		return output;
+	}
+
+	private static String getProperty(String property, String defaultValue) {
+		return System.getProperty(SYSTEM_PROPERTY_PREFIX + property, defaultValue);
+	}
+}
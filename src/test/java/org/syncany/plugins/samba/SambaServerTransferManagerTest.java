@@ -0,0 +1,234 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+
+/**
+ * Runs the {@link SambaTransferManager} with both clients against a real Samba server.
+ * By default, a throwaway <tt>smbd</tt> is started in a Docker container for the duration
+ * of the test (see {@link SambaServerFixture}). Alternatively, an existing server can be
+ * configured via the system properties <tt>samba.test.hostname</tt>, <tt>samba.test.port</tt>,
+ * <tt>samba.test.share</tt>, <tt>samba.test.username</tt> and <tt>samba.test.password</tt>.
+ *
+ * <p>The test is not part of the default <tt>test</tt> task; run it with <tt>gradle testServer</tt>.
+ *
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public class SambaServerTransferManagerTest {
+	private static final Logger logger = Logger.getLogger(SambaServerTransferManagerTest.class.getSimpleName());
+
+	private static final int THROUGHPUT_FILE_SIZE = 32 * 1024 * 1024;
+
+	private static SambaServerFixture server;
+
+	private File tempDir;
+	private String repoPath;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = SambaServerFixture.start();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = File.createTempFile("syncany-samba-test-", "");
+		tempDir.delete();
+		tempDir.mkdirs();
+
+		repoPath = "/syncany-test-" + Math.abs(new Random().nextInt());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testSmb1() throws Exception {
+		testUploadDownloadMoveAndList(SambaTransferSettings.PROTOCOL_SMB1);
+	}
+
+	@Test
+	public void testSmb2() throws Exception {
+		testUploadDownloadMoveAndList(SambaTransferSettings.PROTOCOL_SMB2);
+	}
+
+	@Test
+	public void testThroughputJcifsVsSmbj() throws Exception {
+		File localFile = createRandomFile("throughput", THROUGHPUT_FILE_SIZE);
+
+		long[] jcifsMillis = measureUploadAndDownload(SambaTransferSettings.PROTOCOL_SMB1, localFile);
+		long[] smbjMillis = measureUploadAndDownload(SambaTransferSettings.PROTOCOL_SMB2, localFile);
+
+		logger.log(Level.INFO, "Samba throughput ({0} MB): jcifs (SMB1) upload {1} MB/s, download {2} MB/s; smbj (SMB2/3) upload {3} MB/s, download {4} MB/s",
+				new Object[] { THROUGHPUT_FILE_SIZE / 1024 / 1024, toMegabytesPerSecond(jcifsMillis[0]), toMegabytesPerSecond(jcifsMillis[1]),
+						toMegabytesPerSecond(smbjMillis[0]), toMegabytesPerSecond(smbjMillis[1]) });
+	}
+
+	private void testUploadDownloadMoveAndList(String protocol) throws Exception {
+		SambaTransferManager transferManager = createTransferManager(protocol);
+
+		try {
+			transferManager.init(true);
+			transferManager.connect();
+
+			// Upload and download (larger than one read/write request)
+			File localFile = createRandomFile("local", 3 * 1024 * 1024 + 17);
+			MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+			TempRemoteFile tempRemoteFile = new TempRemoteFile(remoteFile);
+
+			transferManager.upload(localFile, tempRemoteFile);
+			assertEquals(1, transferManager.list(TempRemoteFile.class).size());
+
+			// Move and list
+			transferManager.move(tempRemoteFile, remoteFile);
+
+			assertTrue(transferManager.list(TempRemoteFile.class).isEmpty());
+			assertTrue(transferManager.list(MultichunkRemoteFile.class).containsKey(remoteFile.getName()));
+
+			File downloadedFile = new File(tempDir, "downloaded");
+			transferManager.download(remoteFile, downloadedFile);
+
+			assertArrayEquals(FileUtils.readFileToByteArray(localFile), FileUtils.readFileToByteArray(downloadedFile));
+
+			// Delete
+			transferManager.delete(remoteFile);
+			assertFalse(transferManager.list(MultichunkRemoteFile.class).containsKey(remoteFile.getName()));
+		}
+		finally {
+			transferManager.disconnect();
+			deleteRepo(protocol);
+		}
+	}
+
+	private long[] measureUploadAndDownload(String protocol, File localFile) throws Exception {
+		SambaTransferManager transferManager = createTransferManager(protocol);
+
+		try {
+			transferManager.init(true);
+			transferManager.connect();
+
+			MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+			File downloadedFile = new File(tempDir, "downloaded-" + protocol);
+
+			long uploadStartTime = System.currentTimeMillis();
+			transferManager.upload(localFile, remoteFile);
+			long uploadMillis = System.currentTimeMillis() - uploadStartTime;
+
+			long downloadStartTime = System.currentTimeMillis();
+			transferManager.download(remoteFile, downloadedFile);
+			long downloadMillis = System.currentTimeMillis() - downloadStartTime;
+
+			assertTrue(FileUtils.contentEquals(localFile, downloadedFile));
+			return new long[] { uploadMillis, downloadMillis };
+		}
+		finally {
+			transferManager.disconnect();
+			deleteRepo(protocol);
+		}
+	}
+
+	private SambaTransferManager createTransferManager(String protocol) {
+		SambaTransferSettings settings = new SambaTransferSettings();
+
+		settings.setHostname(server.getHostname());
+		settings.setShare(server.getShare());
+		settings.setUsername(server.getUsername());
+		settings.setPassword(server.getPassword());
+		settings.setPath(repoPath);
+		settings.setProtocol(protocol);
+
+		return new SambaTransferManager(settings, null, createClient(protocol));
+	}
+
+	private SambaClient createClient(String protocol) {
+		if (SambaTransferSettings.PROTOCOL_SMB2.equals(protocol)) {
+			return new SmbjSambaClient(server.getHostname(), server.getPort(), server.getShare(), server.getUsername(), server.getPassword());
+		}
+		else {
+			return new JcifsSambaClient(server.getHostname(), server.getPort(), server.getShare(), server.getUsername(), server.getPassword());
+		}
+	}
+
+	private void deleteRepo(String protocol) {
+		SambaClient client = createClient(protocol);
+
+		try {
+			for (String folderName : client.list(repoPath)) {
+				String folderPath = repoPath + "/" + folderName.replaceAll("/$", ""); // jcifs lists folders with a trailing slash
+
+				if (client.isDirectory(folderPath)) {
+					for (String fileName : client.list(folderPath)) {
+						client.delete(folderPath + "/" + fileName);
+					}
+				}
+
+				client.delete(folderPath);
+			}
+
+			client.delete(repoPath);
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "Cannot delete test repository " + repoPath, e);
+		}
+		finally {
+			client.disconnect();
+		}
+	}
+
+	private String toMegabytesPerSecond(long millis) {
+		return String.format("%.1f", (THROUGHPUT_FILE_SIZE / 1024.0 / 1024.0) / (Math.max(millis, 1) / 1000.0));
+	}
+
+	private File createRandomFile(String name, int size) throws Exception {
+		byte[] contents = new byte[size];
+		new Random().nextBytes(contents);
+
+		File file = new File(tempDir, name);
+		FileUtils.writeByteArrayToFile(file, contents);
+
+		return file;
+	}
+}
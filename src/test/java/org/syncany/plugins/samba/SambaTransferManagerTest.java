@@ -0,0 +1,343 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+
+public class SambaTransferManagerTest {
+	private File tempDir;
+	private FakeSambaClient client;
+	private SambaTransferManager transferManager;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = File.createTempFile("syncany-samba-test-", "");
+		tempDir.delete();
+		tempDir.mkdirs();
+
+		SambaTransferSettings settings = new SambaTransferSettings();
+		settings.setHostname("localhost");
+		settings.setShare("share");
+		settings.setPath("/repo");
+		settings.setUsername("user");
+		settings.setPassword("password");
+
+		client = new FakeSambaClient();
+		transferManager = new SambaTransferManager(settings, null, client);
+		transferManager.init(true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testInitCreatesFolders() throws Exception {
+		assertTrue(client.isDirectory("repo/multichunks"));
+		assertTrue(client.isDirectory("repo/databases"));
+		assertTrue(client.isDirectory("repo/actions"));
+		assertTrue(client.isDirectory("repo/transactions"));
+		assertTrue(client.isDirectory("repo/temporary"));
+	}
+
+	@Test
+	public void testUploadAndDownload() throws Exception {
+		File localFile = createRandomFile("local", 100 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		transferManager.upload(localFile, remoteFile);
+
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/multichunks/" + remoteFile.getName()));
+		assertNull(client.getContents("repo/temp-" + remoteFile.getName()));
+
+		File downloadedFile = new File(tempDir, "downloaded");
+		transferManager.download(remoteFile, downloadedFile);
+
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), FileUtils.readFileToByteArray(downloadedFile));
+	}
+
+	@Test
+	public void testUploadOverwritesTempFile() throws Exception {
+		File localFile = createRandomFile("local", 1024);
+		DatabaseRemoteFile remoteFile = new DatabaseRemoteFile("A", 1);
+
+		client.setContents("repo/temp-" + remoteFile.getName(), new byte[4096]);
+		transferManager.upload(localFile, remoteFile);
+
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/databases/" + remoteFile.getName()));
+	}
+
+	@Test
+	public void testDownloadNonExistingFile() throws Exception {
+		File downloadedFile = new File(tempDir, "downloaded");
+
+		try {
+			transferManager.download(new DatabaseRemoteFile("A", 1), downloadedFile);
+			fail("Download of non-existing file should fail.");
+		}
+		catch (StorageFileNotFoundException e) {
+			assertFalse(downloadedFile.exists());
+		}
+	}
+
+	@Test
+	public void testMove() throws Exception {
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		TempRemoteFile tempRemoteFile = new TempRemoteFile(remoteFile);
+
+		transferManager.upload(createRandomFile("local", 1024), tempRemoteFile);
+		transferManager.move(tempRemoteFile, remoteFile);
+
+		assertTrue(transferManager.list(TempRemoteFile.class).isEmpty());
+		assertNotNull(transferManager.list(MultichunkRemoteFile.class).get(remoteFile.getName()));
+	}
+
+	@Test
+	public void testList() throws Exception {
+		transferManager.upload(createRandomFile("local1", 1024), new DatabaseRemoteFile("A", 1));
+		transferManager.upload(createRandomFile("local2", 1024), new DatabaseRemoteFile("B", 1));
+		client.setContents("repo/databases/invalid-name", new byte[1]);
+
+		Map<String, DatabaseRemoteFile> databaseFiles = transferManager.list(DatabaseRemoteFile.class);
+
+		assertEquals(2, databaseFiles.size());
+		assertNotNull(databaseFiles.get("database-A-0000000001"));
+		assertNotNull(databaseFiles.get("database-B-0000000001"));
+		assertTrue(transferManager.list(MultichunkRemoteFile.class).isEmpty());
+	}
+
+	@Test
+	public void testDownloadResumesPartialDownload() throws Exception {
+		File localFile = createRandomFile("local", 100 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		File downloadedFile = new File(tempDir, "downloaded");
+
+		transferManager.upload(localFile, remoteFile);
+		client.failNextRead(40 * 1024);
+
+		try {
+			transferManager.download(remoteFile, downloadedFile);
+			fail("Download should fail.");
+		}
+		catch (StorageException e) {
+			assertFalse(e instanceof StorageFileNotFoundException);
+			assertFalse(downloadedFile.exists());
+		}
+
+		transferManager.download(remoteFile, downloadedFile);
+
+		assertEquals(40 * 1024, client.getLastReadOffset());
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), FileUtils.readFileToByteArray(downloadedFile));
+	}
+
+	@Test
+	public void testDownloadDoesNotResumeDatabaseFile() throws Exception {
+		File localFile = createRandomFile("local", 10 * 1024);
+		DatabaseRemoteFile remoteFile = new DatabaseRemoteFile("A", 1);
+		File downloadedFile = new File(tempDir, "downloaded");
+
+		transferManager.upload(localFile, remoteFile);
+		client.failNextRead(4 * 1024);
+
+		try {
+			transferManager.download(remoteFile, downloadedFile);
+			fail("Download should fail.");
+		}
+		catch (StorageException e) {
+			// Expected
+		}
+
+		transferManager.download(remoteFile, downloadedFile);
+
+		assertEquals(0, client.getLastReadOffset());
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), FileUtils.readFileToByteArray(downloadedFile));
+	}
+
+	@Test
+	public void testDisconnectDeletesPartialDownloads() throws Exception {
+		String localFileName = "downloaded-" + Math.abs(new Random().nextLong());
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		transferManager.upload(createRandomFile("local", 100 * 1024), remoteFile);
+		client.failNextRead(40 * 1024);
+
+		try {
+			transferManager.download(remoteFile, new File(tempDir, localFileName));
+			fail("Download should fail.");
+		}
+		catch (StorageException e) {
+			assertEquals(1, getPartialDownloadFiles(localFileName).length);
+		}
+
+		transferManager.disconnect();
+
+		assertFalse(client.isConnected());
+		assertEquals(0, getPartialDownloadFiles(localFileName).length);
+
+		// Download starts from the beginning
+		transferManager.download(remoteFile, new File(tempDir, localFileName));
+		assertEquals(0, client.getLastReadOffset());
+	}
+
+	@Test
+	public void testUploadResumesPartialUpload() throws Exception {
+		File localFile = createRandomFile("local", 100 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		client.failNextWrite(40 * 1024);
+
+		try {
+			transferManager.upload(localFile, remoteFile);
+			fail("Upload should fail.");
+		}
+		catch (StorageException e) {
+			assertEquals(40 * 1024, client.getContents("repo/temp-" + remoteFile.getName()).length);
+		}
+
+		transferManager.upload(localFile, remoteFile);
+
+		assertEquals(40 * 1024, client.getLastWriteOffset());
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/multichunks/" + remoteFile.getName()));
+		assertNull(client.getContents("repo/temp-" + remoteFile.getName()));
+	}
+
+	@Test
+	public void testUploadResumesPartialTempMultiChunkUpload() throws Exception {
+		File localFile = createRandomFile("local", 100 * 1024);
+		TempRemoteFile remoteFile = new TempRemoteFile(new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId()));
+
+		client.failNextWrite(40 * 1024);
+
+		try {
+			transferManager.upload(localFile, remoteFile);
+			fail("Upload should fail.");
+		}
+		catch (StorageException e) {
+			// Expected
+		}
+
+		transferManager.upload(localFile, remoteFile);
+
+		assertEquals(40 * 1024, client.getLastWriteOffset());
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/temporary/" + remoteFile.getName()));
+	}
+
+	@Test
+	public void testUploadRestartsIfTempFileDiffers() throws Exception {
+		File localFile = createRandomFile("local", 100 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		String tempRemotePath = "repo/temp-" + remoteFile.getName();
+
+		client.failNextWrite(40 * 1024);
+
+		try {
+			transferManager.upload(localFile, remoteFile);
+			fail("Upload should fail.");
+		}
+		catch (StorageException e) {
+			// Expected
+		}
+
+		// Change the last byte of the partial temp file
+		byte[] tempFileContents = client.getContents(tempRemotePath);
+		tempFileContents[tempFileContents.length - 1]++;
+		client.setContents(tempRemotePath, tempFileContents);
+
+		transferManager.upload(localFile, remoteFile);
+
+		assertEquals(0, client.getLastWriteOffset());
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/multichunks/" + remoteFile.getName()));
+	}
+
+	@Test
+	public void testUploadRetryOnlyRenames() throws Exception {
+		File localFile = createRandomFile("local", 100 * 1024);
+		DatabaseRemoteFile remoteFile = new DatabaseRemoteFile("A", 1);
+
+		client.failNextRename(false);
+
+		try {
+			transferManager.upload(localFile, remoteFile);
+			fail("Upload should fail.");
+		}
+		catch (StorageException e) {
+			assertNotNull(client.getContents("repo/temp-" + remoteFile.getName()));
+		}
+
+		transferManager.upload(localFile, remoteFile);
+
+		assertEquals(1, client.getWriteCount());
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/databases/" + remoteFile.getName()));
+		assertNull(client.getContents("repo/temp-" + remoteFile.getName()));
+	}
+
+	@Test
+	public void testUploadSucceedsIfRenameResponseLost() throws Exception {
+		File localFile = createRandomFile("local", 100 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+
+		client.failNextRename(true);
+		transferManager.upload(localFile, remoteFile);
+
+		assertEquals(1, client.getWriteCount());
+		assertArrayEquals(FileUtils.readFileToByteArray(localFile), client.getContents("repo/multichunks/" + remoteFile.getName()));
+		assertNull(client.getContents("repo/temp-" + remoteFile.getName()));
+	}
+
+	private File[] getPartialDownloadFiles(final String localFileName) {
+		return new File(System.getProperty("java.io.tmpdir")).listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("temp-" + localFileName + "-");
+			}
+		});
+	}
+
+	private File createRandomFile(String name, int size) throws Exception {
+		byte[] contents = new byte[size];
+		new Random().nextBytes(contents);
+
+		File file = new File(tempDir, name);
+		FileUtils.writeByteArrayToFile(file, contents);
+
+		return file;
+	}
+}
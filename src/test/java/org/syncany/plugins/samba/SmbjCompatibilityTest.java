@@ -0,0 +1,91 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.samba;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+/**
+ * Checks that the smbj dependency (0.10.0, with bouncycastle excluded) runs on the
+ * Java version Syncany supports (1.7): The classes of smbj and of its runtime dependencies
+ * must not be compiled for a newer Java version, and the bouncycastle classes smbj uses for
+ * NTLM and SMB signing/encryption must be provided by the bouncycastle version of syncany-lib.
+ *
+ * <p>This test must pass whenever the smbj version or its exclusions in build.gradle are changed.
+ *
+ * @author Christian Roth <christian.roth@port17.de>
+ */
+public class SmbjCompatibilityTest {
+	private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+	private static final int CLASS_FILE_VERSION_JAVA_7 = 51;
+
+	private static final String[] SMBJ_CLASSES = new String[] {
+		"com.hierynomus.smbj.SMBClient", // smbj
+		"com.hierynomus.security.bc.BCSecurityProvider", // smbj's bouncycastle bindings
+		"com.hierynomus.asn1.ASN1InputStream", // asn-one
+		"net.engio.mbassy.bus.MBassador" // mbassador
+	};
+
+	private static final String[] BOUNCYCASTLE_CLASSES = new String[] {
+		"org.bouncycastle.crypto.digests.MD4Digest", // NTLM
+		"org.bouncycastle.crypto.digests.MD5Digest", // NTLM
+		"org.bouncycastle.crypto.digests.SHA256Digest", // SMB 2 signing
+		"org.bouncycastle.crypto.digests.SHA512Digest", // SMB 3.1.1 preauth integrity
+		"org.bouncycastle.crypto.macs.HMac", // SMB 2 signing
+		"org.bouncycastle.crypto.macs.CMac", // SMB 3 signing
+		"org.bouncycastle.crypto.engines.AESEngine", // SMB 3 signing/encryption
+		"org.bouncycastle.crypto.engines.DESEngine", // NTLM
+		"org.bouncycastle.crypto.engines.RC4Engine", // NTLM
+		"org.bouncycastle.crypto.modes.CCMBlockCipher", // SMB 3 encryption
+		"org.bouncycastle.crypto.modes.GCMBlockCipher" // SMB 3.1.1 encryption
+	};
+
+	@Test
+	public void testSmbjClassesRunOnJava7() throws Exception {
+		for (String className : SMBJ_CLASSES) {
+			int classFileVersion = getClassFileVersion(className);
+			assertTrue(className + " requires class file version " + classFileVersion, classFileVersion <= CLASS_FILE_VERSION_JAVA_7);
+		}
+	}
+
+	@Test
+	public void testBouncyCastleClassesProvidedBySyncanyLib() throws Exception {
+		for (String className : BOUNCYCASTLE_CLASSES) {
+			assertNotNull(Class.forName(className));
+		}
+	}
+
+	private int getClassFileVersion(String className) throws IOException {
+		InputStream classInputStream = getClass().getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+		assertNotNull("Class " + className + " not found", classInputStream);
+
+		try (DataInputStream classDataInputStream = new DataInputStream(classInputStream)) {
+			assertEquals(CLASS_FILE_MAGIC, classDataInputStream.readInt());
+
+			classDataInputStream.readUnsignedShort(); // Minor version
+			return classDataInputStream.readUnsignedShort();
+		}
+	}
+}